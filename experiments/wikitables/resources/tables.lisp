@@ -1,4 +1,8 @@
-(define eval-table (table-id query)
+;; Applies query-fn to the functions for querying the table with
+;; table-id. query-fn receives these functions as arguments, in the
+;; order listed at the end of this definition, which must match
+;; WikiTableEvaluationComparator.TABLE_FUNCTION_NAMES.
+(define with-table (table-id query-fn)
   (let ((table (get-table table-id))
 	(cells (get-table-cells table)))
     (define predicate-to-set (predicate) (set-filter predicate cells))
@@ -28,6 +32,10 @@
 
     (define samevalue (values) (set-filter (lambda y (not (set-contains? values y))) (set-union (set-map (lambda x (cellvalue-set (get-value table x))) values))))
 
-    (eval query)
+    (query-fn table cells predicate-to-set get-values eval-query column cellvalue samerow samecol exists exists2 column-set cellvalue-set samerow-set intersect first-row last-row next-row prev-row samevalue)
     )
 )
+
+;; Evaluates the expression query against the table with table-id.
+(define eval-table (table-id query)
+  (with-table table-id (lambda (table cells predicate-to-set get-values eval-query column cellvalue samerow samecol exists exists2 column-set cellvalue-set samerow-set intersect first-row last-row next-row prev-row samevalue) (eval query))))
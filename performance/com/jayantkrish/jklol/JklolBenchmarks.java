@@ -0,0 +1,129 @@
+package com.jayantkrish.jklol;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jayantkrish.jklol.ccg.CcgParserBenchmarks;
+import com.jayantkrish.jklol.cfg.CfgParserBenchmarks;
+import com.jayantkrish.jklol.cli.AbstractCli;
+import com.jayantkrish.jklol.inference.JunctionTreeBenchmarks;
+import com.jayantkrish.jklol.tensor.DenseTensorBenchmarks;
+import com.jayantkrish.jklol.tensor.SparseTensorBenchmarks;
+import com.jayantkrish.jklol.testing.BenchmarkResult;
+import com.jayantkrish.jklol.testing.BenchmarkRunner;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.util.IoUtils;
+
+/**
+ * Runs the benchmark suite for tensor operations, inference and
+ * parsing. Results can be written to a file, and compared against
+ * the results of a previous run (e.g., of the last release) to
+ * detect performance regressions. If any benchmark is slower than
+ * its baseline by more than {@code --regressionThreshold}, this
+ * program exits with a nonzero status.
+ *
+ * @author jayantk
+ */
+public class JklolBenchmarks extends AbstractCli {
+
+  private OptionSpec<String> filter;
+  private OptionSpec<Integer> warmupIterations;
+  private OptionSpec<Integer> iterations;
+  private OptionSpec<Long> iterationMillis;
+  private OptionSpec<String> output;
+  private OptionSpec<String> baseline;
+  private OptionSpec<Double> regressionThreshold;
+
+  public JklolBenchmarks() {
+    super();
+  }
+
+  @Override
+  public void initializeOptions(OptionParser parser) {
+    filter = parser.accepts("filter", "Only run benchmarks whose names (ClassName.methodName) "
+        + "contain a match for this regular expression.").withRequiredArg().ofType(String.class);
+    warmupIterations = parser.accepts("warmup", "Number of warm-up iterations per benchmark. "
+        + "Defaults to the value given in each benchmark's annotation.")
+        .withRequiredArg().ofType(Integer.class).defaultsTo(-1);
+    iterations = parser.accepts("iterations", "Number of timed iterations per benchmark. "
+        + "Defaults to the value given in each benchmark's annotation.")
+        .withRequiredArg().ofType(Integer.class).defaultsTo(-1);
+    iterationMillis = parser.accepts("iterationMillis", "Minimum duration of each iteration.")
+        .withRequiredArg().ofType(Long.class).defaultsTo(1000L);
+    output = parser.accepts("output", "Write results to this file, in a format that "
+        + "can be given to --baseline.").withRequiredArg().ofType(String.class);
+    baseline = parser.accepts("baseline", "Compare results against the results in this file.")
+        .withRequiredArg().ofType(String.class);
+    regressionThreshold = parser.accepts("regressionThreshold", "Maximum allowable relative "
+        + "slowdown compared to --baseline.").withRequiredArg().ofType(Double.class).defaultsTo(0.1);
+  }
+
+  @Override
+  public void run(OptionSet options) {
+    List<PerformanceTestCase> testCases = Arrays.<PerformanceTestCase>asList(
+        new SparseTensorBenchmarks(), new DenseTensorBenchmarks(), new JunctionTreeBenchmarks(),
+        new CfgParserBenchmarks(), new CcgParserBenchmarks());
+
+    Pattern pattern = options.has(filter) ? Pattern.compile(options.valueOf(filter)) : null;
+    BenchmarkRunner runner = new BenchmarkRunner(options.valueOf(iterationMillis),
+        options.valueOf(warmupIterations), options.valueOf(iterations), pattern);
+
+    List<BenchmarkResult> results = Lists.newArrayList();
+    for (PerformanceTestCase testCase : testCases) {
+      results.addAll(runner.run(testCase));
+    }
+
+    if (options.has(output)) {
+      List<String> lines = Lists.newArrayList();
+      for (BenchmarkResult result : results) {
+        lines.add(result.toTsv());
+      }
+      IoUtils.writeLines(options.valueOf(output), lines);
+    }
+
+    if (options.has(baseline)) {
+      Map<String, BenchmarkResult> baselineResults = Maps.newHashMap();
+      for (String line : IoUtils.readLines(options.valueOf(baseline))) {
+        BenchmarkResult result = BenchmarkResult.fromTsv(line);
+        baselineResults.put(result.getName(), result);
+      }
+
+      double threshold = options.valueOf(regressionThreshold);
+      int numRegressions = 0;
+      System.out.println("\nComparison to baseline:");
+      for (BenchmarkResult result : results) {
+        BenchmarkResult baselineResult = baselineResults.get(result.getName());
+        if (baselineResult == null) {
+          System.out.println(String.format("%-60s (no baseline)", result.getName()));
+          continue;
+        }
+
+        double change = result.getRelativeChange(baselineResult);
+        boolean isRegression = change > threshold;
+        System.out.println(String.format("%-60s %+8.2f%%%s", result.getName(), change * 100,
+            isRegression ? "  REGRESSION" : ""));
+        if (isRegression) {
+          numRegressions++;
+        }
+      }
+
+      if (numRegressions > 0) {
+        System.out.println(numRegressions + " benchmark(s) regressed by more than "
+            + (threshold * 100) + "%");
+        System.exit(1);
+      }
+    }
+  }
+
+  public static void main(String[] args) {
+    new JklolBenchmarks().run(args);
+  }
+}
@@ -0,0 +1,116 @@
+package com.jayantkrish.jklol.ccg;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.ccg.chart.CcgColumnarBeamSearchChart;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.testing.Benchmark;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+import com.jayantkrish.jklol.training.NullLogFunction;
+import com.jayantkrish.jklol.util.Pseudorandom;
+
+/**
+ * Benchmarks for CCG beam search. The parser uses a small lexicon
+ * of spatial descriptions, and parses sentences whose length and
+ * ambiguity (due to prepositional phrase attachment) are similar
+ * to those in semantic parsing data sets.
+ *
+ * @author jayantk
+ */
+public class CcgParserBenchmarks extends PerformanceTestCase {
+
+  private static final String[] lexicon = {
+      "block,N{0},(lambda (x) (pred:block x)),0 pred:block",
+      "object,N{0},(lambda (x) (pred:object x)),0 pred:object",
+      "red,(N{1}/N{1}){0},(lambda ($1) (lambda (x) (and ($1 x) (pred:red x)))),0 pred:red,pred:red 1 1",
+      "green,(N{1}/N{1}){0},(lambda ($1) (lambda (x) (and ($1 x) (pred:green x)))),0 pred:green,pred:green 1 1",
+      "green,N{0},(lambda (x) (pred:green x)),0 pred:green",
+      "the,(N{1}/N{1}){0},(lambda ($1) $1),0 the",
+      "a,(N{1}/N{1}){0},(lambda ($1) $1),0 the",
+      "near,((N{1}\\N{1}){0}/N{2}){0},(lambda ($2 $1) (lambda (x) (exists (lambda (y) (and ($1 x) (pred:close x y) ($2 y)))))),0 pred:close,pred:close 1 1,pred:close 2 2",
+      "near,((N{1}\\N{1}){0}/N{2}){0},(lambda ($2 $1) (lambda (x) (exists (lambda (y) (and ($1 x) (pred:near x y) ($2 y)))))),0 pred:near,pred:near 1 1,pred:near 2 2",
+      "near,((S{1}/(S{1}\\N{0}){1}){0}/N{2}){0},(lambda ($2 $1) ($1 (lambda (x) (exists (lambda (y) (and (pred:near x y) ($2 y))))))),0 pred:near,pred:near 2 2",
+      "near,(PP{0}/N{1}){0},(lambda ($1) $1),0 pred:near,pred:near 2 1",
+      "kinda,((N{1}/N{1}){2}/(N{1}/N{1}){2}){0},(lambda ($1 $2) (lambda (x) ((pred:almost $1) x))),0 pred:almost,pred:almost 1 2",
+      "is,((S{0}\\N{1}){0}/N{2}){0},(lambda ($2 $1) (exists (lambda (x) (and ($1 x) ($2 x))))),0 pred:equals,pred:equals 1 1,pred:equals 2 2",
+      "\",\",((N{1}\\N{1}){0}/N{2}){0},(lambda ($1 $2) (lambda (x) (and ($1 x) ($2 x)))),\"0 ,\",\", 1 1\",\", 2 2\"",
+  };
+
+  private static final String[] unknownLexicon = {
+      "JJ,(N{1}/N{1}){0},,0 pred:unk-jj,pred:unk-jj 1 1",
+      "JJ,N{0},,0 pred:unk-jj",
+  };
+
+  private static final String[] ruleArray = {"N{0} (S{1}/(S{1}\\N{0}){1}){1}"};
+
+  private static final String[] sentenceStrings = {
+      "red block",
+      "the kinda red block near the green object",
+      "red object near the green block near a red block , object",
+      "the red block near the green object is the kinda green block near a red object",
+      "near the object is the red block near the green block near a red object near the block",
+  };
+
+  private static final int BEAM_SIZE = 100;
+
+  private CcgParser parser;
+  private List<AnnotatedSentence> sentences;
+
+  @Override
+  public void setUp() {
+    Set<String> posTags = Sets.newHashSet(ParametricCcgParser.DEFAULT_POS_TAG, "JJ");
+    ParametricCcgParser family = ParametricCcgParser.parseFromLexicon(Arrays.asList(lexicon),
+        Arrays.asList(unknownLexicon), Arrays.asList(ruleArray),
+        new DefaultCcgFeatureFactory(true, false), posTags, true, null, false);
+
+    // Random parameters ensure that the beam search must discriminate
+    // between parses. The seed makes the parameters reproducible.
+    Pseudorandom.get().setSeed(0);
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    parameters.perturb(1.0);
+    parser = family.getModelFromParameters(parameters);
+
+    sentences = Lists.newArrayList();
+    for (int i = 0; i < sentenceStrings.length; i++) {
+      List<String> words = Arrays.asList(sentenceStrings[i].split(" "));
+      sentences.add(new AnnotatedSentence(words,
+          Collections.nCopies(words.size(), ParametricCcgParser.DEFAULT_POS_TAG)));
+    }
+  }
+
+  @Benchmark
+  public int beamSearch() {
+    int numParses = 0;
+    for (AnnotatedSentence sentence : sentences) {
+      numParses += parser.beamSearch(sentence, BEAM_SIZE, null, new NullLogFunction(),
+          -1, Integer.MAX_VALUE, 1).size();
+    }
+    return numParses;
+  }
+
+  @Benchmark
+  public int beamSearchColumnarChart() {
+    int numParses = 0;
+    for (AnnotatedSentence sentence : sentences) {
+      numParses += parser.beamSearch(new CcgColumnarBeamSearchChart(sentence,
+          Integer.MAX_VALUE, BEAM_SIZE), null, new NullLogFunction(), -1, 1).size();
+    }
+    return numParses;
+  }
+
+  @Benchmark
+  public int beamSearchBatch() {
+    int numParses = 0;
+    for (List<CcgParse> parses : parser.beamSearch(sentences, BEAM_SIZE, null,
+        new NullLogFunction(), -1, Integer.MAX_VALUE)) {
+      numParses += parses.size();
+    }
+    return numParses;
+  }
+}
@@ -0,0 +1,98 @@
+package com.jayantkrish.jklol.cfg;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.TableFactorBuilder;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.testing.Benchmark;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+
+/**
+ * Benchmarks for marginal and max-marginal inference in
+ * {@link CfgParser}. The grammar contains random weights for
+ * a fraction of all binary rules over a moderate number of
+ * nonterminals, so that charts contain many nonzero entries.
+ *
+ * @author jayantk
+ */
+public class CfgParserBenchmarks extends PerformanceTestCase {
+
+  private static final int NUM_NONTERMINALS = 20;
+  private static final int NUM_TERMINALS = 50;
+  private static final double BINARY_RULE_DENSITY = 0.2;
+  private static final int SENTENCE_LENGTH = 12;
+
+  private CfgParser parser;
+  private List<String> sentence;
+
+  @Override
+  public void setUp() {
+    Random random = new Random(0);
+    List<String> nonterminals = Lists.newArrayList();
+    for (int i = 0; i < NUM_NONTERMINALS; i++) {
+      nonterminals.add("NT" + i);
+    }
+    List<List<String>> terminals = Lists.newArrayList();
+    for (int i = 0; i < NUM_TERMINALS; i++) {
+      terminals.add(Arrays.asList("w" + i));
+    }
+
+    DiscreteVariable nonterm = new DiscreteVariable("nonterminals", nonterminals);
+    DiscreteVariable terms = new DiscreteVariable("terminals", terminals);
+    DiscreteVariable ruleTypes = new DiscreteVariable("rules", Arrays.asList("rule"));
+
+    VariableNumMap leftVar = new VariableNumMap(Ints.asList(0), Arrays.asList("v0"), Arrays.asList(nonterm));
+    VariableNumMap rightVar = new VariableNumMap(Ints.asList(1), Arrays.asList("v1"), Arrays.asList(nonterm));
+    VariableNumMap termVar = new VariableNumMap(Ints.asList(2), Arrays.asList("v2"), Arrays.asList(terms));
+    VariableNumMap parentVar = new VariableNumMap(Ints.asList(3), Arrays.asList("v3"), Arrays.asList(nonterm));
+    VariableNumMap ruleVar = new VariableNumMap(Ints.asList(4), Arrays.asList("v4"), Arrays.asList(ruleTypes));
+
+    TableFactorBuilder binaryBuilder = new TableFactorBuilder(
+        VariableNumMap.unionAll(parentVar, leftVar, rightVar, ruleVar), SparseTensorBuilder.getFactory());
+    for (String parent : nonterminals) {
+      for (String left : nonterminals) {
+        for (String right : nonterminals) {
+          if (random.nextDouble() < BINARY_RULE_DENSITY) {
+            binaryBuilder.setWeight(binaryBuilder.getVars().outcomeArrayToAssignment(
+                left, right, parent, "rule"), random.nextDouble());
+          }
+        }
+      }
+    }
+
+    TableFactorBuilder terminalBuilder = new TableFactorBuilder(
+        VariableNumMap.unionAll(parentVar, termVar, ruleVar), SparseTensorBuilder.getFactory());
+    for (List<String> terminal : terminals) {
+      // Each terminal is produced by a few nonterminals.
+      for (int i = 0; i < 3; i++) {
+        String parent = nonterminals.get(random.nextInt(NUM_NONTERMINALS));
+        terminalBuilder.setWeight(terminalBuilder.getVars().outcomeArrayToAssignment(
+            terminal, parent, "rule"), random.nextDouble());
+      }
+    }
+
+    parser = new CfgParser(parentVar, leftVar, rightVar, termVar, ruleVar,
+        binaryBuilder.build(), terminalBuilder.build(), false, null);
+
+    sentence = Lists.newArrayList();
+    for (int i = 0; i < SENTENCE_LENGTH; i++) {
+      sentence.add("w" + random.nextInt(NUM_TERMINALS));
+    }
+  }
+
+  @Benchmark
+  public CfgParseChart parseMarginal() {
+    return parser.parseMarginal(sentence, true);
+  }
+
+  @Benchmark
+  public CfgParseChart parseMaxMarginal() {
+    return parser.parseMarginal(sentence, false);
+  }
+}
@@ -0,0 +1,114 @@
+package com.jayantkrish.jklol.inference;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.models.TableFactor;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.testing.Benchmark;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+
+/**
+ * Benchmarks for exact inference with {@link JunctionTree}. Factor
+ * weights are generated from a fixed random seed, so results are
+ * comparable across runs.
+ *
+ * @author jayantk
+ */
+public class JunctionTreeBenchmarks extends PerformanceTestCase {
+
+  private static final int CHAIN_LENGTH = 20;
+  private static final int CHAIN_NUM_VALUES = 50;
+
+  private static final int TRIPLE_CHAIN_LENGTH = 10;
+  private static final int TRIPLE_NUM_VALUES = 30;
+
+  FactorGraph denseChain, sparseTripleChain;
+  JunctionTree junctionTree;
+
+  @Override
+  public void setUp() {
+    Random random = new Random(0);
+    junctionTree = new JunctionTree();
+
+    // A chain of variables with dense pairwise factors.
+    denseChain = addVariables(new FactorGraph(), CHAIN_LENGTH, CHAIN_NUM_VALUES);
+    for (int i = 0; i < CHAIN_LENGTH - 1; i++) {
+      VariableNumMap vars = denseChain.getVariables().getVariablesByName("x" + i, "x" + (i + 1));
+      denseChain = denseChain.addFactor("f" + i, new TableFactor(vars,
+          randomDenseTensor(vars, random)));
+    }
+
+    // A chain of variables with sparse factors over each
+    // consecutive triple of variables.
+    sparseTripleChain = addVariables(new FactorGraph(), TRIPLE_CHAIN_LENGTH, TRIPLE_NUM_VALUES);
+    for (int i = 0; i < TRIPLE_CHAIN_LENGTH - 2; i++) {
+      VariableNumMap vars = sparseTripleChain.getVariables().getVariablesByName(
+          "x" + i, "x" + (i + 1), "x" + (i + 2));
+      sparseTripleChain = sparseTripleChain.addFactor("f" + i, new TableFactor(vars,
+          randomSparseTensor(vars, 0.1, random)));
+    }
+  }
+
+  private static FactorGraph addVariables(FactorGraph factorGraph, int numVars, int numValues) {
+    DiscreteVariable varType = DiscreteVariable.sequence("values", numValues);
+    for (int i = 0; i < numVars; i++) {
+      factorGraph = factorGraph.addVariable("x" + i, varType);
+    }
+    return factorGraph;
+  }
+
+  private static Tensor randomDenseTensor(VariableNumMap vars, Random random) {
+    int[] sizes = vars.getVariableSizes();
+    int numValues = 1;
+    for (int i = 0; i < sizes.length; i++) {
+      numValues *= sizes[i];
+    }
+    double[] values = new double[numValues];
+    for (int i = 0; i < numValues; i++) {
+      values[i] = random.nextDouble() + 0.01;
+    }
+    return new DenseTensor(vars.getVariableNumsArray(), sizes, values);
+  }
+
+  private static Tensor randomSparseTensor(VariableNumMap vars, double density, Random random) {
+    int[] sizes = vars.getVariableSizes();
+    int numValues = 1;
+    for (int i = 0; i < sizes.length; i++) {
+      numValues *= sizes[i];
+    }
+
+    int numKeys = 0;
+    long[] keyNums = new long[numValues];
+    double[] values = new double[numValues];
+    for (int i = 0; i < numValues; i++) {
+      if (random.nextDouble() < density) {
+        keyNums[numKeys] = i;
+        values[numKeys] = random.nextDouble() + 0.01;
+        numKeys++;
+      }
+    }
+    return new SparseTensor(vars.getVariableNumsArray(), sizes,
+        Arrays.copyOf(keyNums, numKeys), Arrays.copyOf(values, numKeys));
+  }
+
+  @Benchmark
+  public FactorMarginalSet computeMarginalsDenseChain() {
+    return junctionTree.computeMarginals(denseChain);
+  }
+
+  @Benchmark
+  public MaxMarginalSet computeMaxMarginalsDenseChain() {
+    return junctionTree.computeMaxMarginals(denseChain);
+  }
+
+  @Benchmark
+  public FactorMarginalSet computeMarginalsSparseTripleChain() {
+    return junctionTree.computeMarginals(sparseTripleChain);
+  }
+}
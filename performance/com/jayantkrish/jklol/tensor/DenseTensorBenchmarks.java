@@ -0,0 +1,91 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Random;
+
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.testing.Benchmark;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+
+/**
+ * Benchmarks for the reduction and product operations of
+ * {@link DenseTensor}.
+ * Tensors are generated from a fixed random seed, so results are
+ * comparable across runs.
+ *
+ * @author jayantk
+ */
+public class DenseTensorBenchmarks extends PerformanceTestCase {
+
+  private static final int[] DIMS = new int[] {0, 1, 2};
+  private static final int[] SIZES = new int[] {100, 100, 100};
+
+  DenseTensor table012;
+  LogSpaceTensorAdapter logTable012;
+  DenseTensor matrix01, matrix12, table013, vector1;
+
+  @Override
+  public void setUp() {
+    Random random = new Random(0);
+    double[] values = new double[SIZES[0] * SIZES[1] * SIZES[2]];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = random.nextDouble();
+    }
+    table012 = new DenseTensor(DIMS, SIZES, values);
+    logTable012 = new LogSpaceTensorAdapter(table012);
+
+    matrix01 = DenseTensor.random(new int[] {0, 1}, new int[] {300, 300}, 0.0, 1.0);
+    matrix12 = DenseTensor.random(new int[] {1, 2}, new int[] {300, 300}, 0.0, 1.0);
+    table013 = DenseTensor.random(new int[] {0, 1, 3}, new int[] {20, 300, 20}, 0.0, 1.0);
+    vector1 = DenseTensor.random(new int[] {1}, new int[] {300}, 0.0, 1.0);
+  }
+
+  @Benchmark
+  public Tensor sumOutLeading() {
+    return table012.sumOutDimensions(Ints.asList(0));
+  }
+
+  @Benchmark
+  public Tensor sumOutMiddle() {
+    return table012.sumOutDimensions(Ints.asList(1));
+  }
+
+  @Benchmark
+  public Tensor sumOutTrailing() {
+    return table012.sumOutDimensions(Ints.asList(2));
+  }
+
+  @Benchmark
+  public Tensor maxOutLeading() {
+    return table012.maxOutDimensions(Ints.asList(0));
+  }
+
+  @Benchmark
+  public Tensor maxOutTrailingWithBackpointers() {
+    return table012.maxOutDimensions(Ints.asList(2), new Backpointers());
+  }
+
+  @Benchmark
+  public Tensor logSumOutTrailing() {
+    return table012.logSumOutDimensions(Ints.asList(2));
+  }
+
+  @Benchmark
+  public Tensor logSpaceSumOutLeading() {
+    return logTable012.sumOutDimensions(Ints.asList(0));
+  }
+
+  @Benchmark
+  public Tensor matrixInnerProduct() {
+    return matrix01.matrixInnerProduct(matrix12);
+  }
+
+  @Benchmark
+  public Tensor matrixInnerProductMiddleAligned() {
+    return table013.matrixInnerProduct(matrix12);
+  }
+
+  @Benchmark
+  public Tensor innerProductVector() {
+    return matrix01.innerProduct(vector1);
+  }
+}
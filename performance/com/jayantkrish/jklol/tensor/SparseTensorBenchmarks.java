@@ -0,0 +1,83 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Random;
+
+import com.jayantkrish.jklol.testing.Benchmark;
+import com.jayantkrish.jklol.testing.PerformanceTestCase;
+
+/**
+ * Benchmarks for the core operations of {@link SparseTensor}.
+ * Tensors are generated from a fixed random seed, so results are
+ * comparable across runs.
+ *
+ * @author jayantk
+ */
+public class SparseTensorBenchmarks extends PerformanceTestCase {
+
+  private static final int[] DIMS = new int[] {0, 1, 2};
+  private static final int[] SIZES = new int[] {1000, 100, 100};
+
+  SparseTensor table012, table012Copy, table01, table12, vector2;
+
+  @Override
+  public void setUp() {
+    Random random = new Random(0);
+    table012 = randomTensor(DIMS, SIZES, 1000000, random);
+    table012Copy = SparseTensor.copyRemovingZeros(table012, table012.getValues());
+    table01 = randomTensor(new int[] {0, 1}, new int[] {1000, 100}, 10000, random);
+    table12 = randomTensor(new int[] {1, 2}, new int[] {100, 100}, 5000, random);
+    vector2 = randomTensor(new int[] {2}, new int[] {100}, 100, random);
+  }
+
+  private static SparseTensor randomTensor(int[] dims, int[] sizes, int numKeys, Random random) {
+    long maxKeyNum = 1;
+    for (int i = 0; i < sizes.length; i++) {
+      maxKeyNum *= sizes[i];
+    }
+
+    long[] keyNums = new long[numKeys];
+    double[] values = new double[numKeys];
+    for (int i = 0; i < numKeys; i++) {
+      // Spread keys evenly, with random jitter, to avoid duplicates.
+      long stride = maxKeyNum / numKeys;
+      keyNums[i] = (i * stride) + (long) (random.nextDouble() * stride);
+      values[i] = random.nextDouble();
+    }
+    return SparseTensor.fromUnorderedKeyValuesNoCopy(dims, sizes, keyNums, values);
+  }
+
+  @Benchmark
+  public Tensor elementwiseProductSelf() {
+    return table012.elementwiseProduct(table012Copy);
+  }
+
+  @Benchmark
+  public Tensor elementwiseProductLeftAligned() {
+    return table012.elementwiseProduct(table01);
+  }
+
+  @Benchmark
+  public Tensor elementwiseProductRightAligned() {
+    return table012.elementwiseProduct(table12);
+  }
+
+  @Benchmark
+  public Tensor innerProductVector() {
+    return table012.innerProduct(vector2);
+  }
+
+  @Benchmark
+  public Tensor innerProductMatrix() {
+    return table012.innerProduct(table12);
+  }
+
+  @Benchmark
+  public Tensor relabelDimensions() {
+    return table012.relabelDimensions(new int[] {3, 2, 1});
+  }
+
+  @Benchmark
+  public Tensor relabelDimensionsNoReordering() {
+    return table012.relabelDimensions(new int[] {1, 2, 3});
+  }
+}
@@ -32,13 +32,23 @@ public class CcgCkyInference implements CcgInference {
   // Number of threads to use while parsing.
   private final int numThreads;
 
+  // If true, parses that exceed the time limit or chart size
+  // are completed greedily instead of failing (see ParseBudget).
+  private final boolean useFallbackParse;
+
   public CcgCkyInference(ChartCost searchFilter, int beamSize, long maxParseTimeMillis,
       int maxChartSize, int numThreads) {
+    this(searchFilter, beamSize, maxParseTimeMillis, maxChartSize, numThreads, false);
+  }
+
+  public CcgCkyInference(ChartCost searchFilter, int beamSize, long maxParseTimeMillis,
+      int maxChartSize, int numThreads, boolean useFallbackParse) {
     this.searchFilter = searchFilter;
     this.beamSize = beamSize;
     this.maxParseTimeMillis = maxParseTimeMillis;
     this.maxChartSize = maxChartSize;
     this.numThreads = numThreads;
+    this.useFallbackParse = useFallbackParse;
   }
 
   /**
@@ -56,8 +66,8 @@ public class CcgCkyInference implements CcgInference {
       ChartCost chartFilter, LogFunction log) {
     ChartCost filter = SumChartCost.create(searchFilter, chartFilter);
     
-    return parser.parse(sentence, filter, log, maxParseTimeMillis,
-        maxChartSize, numThreads);
+    return parser.parse(sentence, filter, log,
+        new ParseBudget(maxParseTimeMillis, useFallbackParse), maxChartSize, numThreads);
   }
 
   @Override
@@ -66,6 +76,6 @@ public class CcgCkyInference implements CcgInference {
     ChartCost filter = SumChartCost.create(searchFilter, chartFilter);
 
     return parser.beamSearch(sentence, beamSize, filter, log,
-        maxParseTimeMillis, maxChartSize, numThreads);
+        new ParseBudget(maxParseTimeMillis, useFallbackParse), maxChartSize, numThreads);
   }
 }
@@ -12,6 +12,7 @@ import com.jayantkrish.jklol.ccg.chart.SyntacticChartCost;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionComparator;
 import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.models.parametric.InstantiationCache;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
 import com.jayantkrish.jklol.training.GradientOracle;
@@ -33,6 +34,10 @@ public class CcgLoglikelihoodOracle implements GradientOracle<CcgParser, CcgExam
   
   private final CcgInference inference;
 
+  // If non-null, used to reuse unchanged parser components across
+  // calls to instantiateModel.
+  private final InstantiationCache instantiationCache;
+
   /**
    * 
    * @param family
@@ -42,9 +47,27 @@ public class CcgLoglikelihoodOracle implements GradientOracle<CcgParser, CcgExam
    */
   public CcgLoglikelihoodOracle(ParametricCcgParser family, ExpressionComparator comparator, 
       CcgInference inference) {
+    this(family, comparator, inference, false);
+  }
+
+  /**
+   * Same as the other constructor, except that if
+   * {@code incrementalInstantiation} is {@code true},
+   * {@link #instantiateModel} only rebuilds the components of the
+   * parser whose parameters have changed since the previous call.
+   * See {@link ParametricCcgParser#getModelFromParameters(SufficientStatistics, InstantiationCache)}.
+   * 
+   * @param family
+   * @param comparator
+   * @param inference
+   * @param incrementalInstantiation
+   */
+  public CcgLoglikelihoodOracle(ParametricCcgParser family, ExpressionComparator comparator, 
+      CcgInference inference, boolean incrementalInstantiation) {
     this.family = Preconditions.checkNotNull(family);
     this.comparator = comparator;
     this.inference = Preconditions.checkNotNull(inference);
+    this.instantiationCache = incrementalInstantiation ? new InstantiationCache() : null;
   }
 
   @Override
@@ -54,7 +77,7 @@ public class CcgLoglikelihoodOracle implements GradientOracle<CcgParser, CcgExam
 
   @Override
   public CcgParser instantiateModel(SufficientStatistics parameters) {
-    return family.getModelFromParameters(parameters);
+    return family.getModelFromParameters(parameters, instantiationCache);
   }
 
   @Override
@@ -4,11 +4,10 @@ import java.io.Serializable;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashMultimap;
@@ -19,18 +18,28 @@ import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.google.common.primitives.Longs;
+import com.jayantkrish.jklol.ccg.chart.CcgBeamChart;
 import com.jayantkrish.jklol.ccg.chart.CcgBeamSearchChart;
+import com.jayantkrish.jklol.ccg.chart.CcgBeamSearchChartPool;
 import com.jayantkrish.jklol.ccg.chart.CcgChart;
+import com.jayantkrish.jklol.ccg.chart.CcgColumnarBeamSearchChart;
+import com.jayantkrish.jklol.ccg.chart.CcgColumnarBeamSearchChart.SpanColumns;
 import com.jayantkrish.jklol.ccg.chart.CcgExactHashTableChart;
 import com.jayantkrish.jklol.ccg.chart.ChartCost;
 import com.jayantkrish.jklol.ccg.chart.ChartEntry;
 import com.jayantkrish.jklol.ccg.lexicon.CcgLexicon;
 import com.jayantkrish.jklol.ccg.lexicon.LexiconScorer;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.metrics.Timer;
 import com.jayantkrish.jklol.models.DiscreteFactor;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.models.VariableNumMap;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
-import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
+import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
+import com.jayantkrish.jklol.parallel.MapReduceExecutor;
+import com.jayantkrish.jklol.parallel.Mapper;
 import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.tensor.TensorHash;
 import com.jayantkrish.jklol.training.LogFunction;
@@ -48,6 +57,13 @@ public class CcgParser implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  private static final Timer INITIALIZE_CHART_TIMER = Metrics.timer("ccg_parse/initialize_chart");
+  private static final Timer INSIDE_BEAM_TIMER = Metrics.timer("ccg_parse/calculate_inside_beam");
+  // Number of parses that exhausted their budget before completing,
+  // and the number of those completed by a fallback parse.
+  private static final Counter ABORTED_PARSES = Metrics.counter("ccg_parse/aborted");
+  private static final Counter FALLBACK_PARSES = Metrics.counter("ccg_parse/fallback");
+
   // Parameters for encoding (filled and unfilled) dependency
   // structures in longs. These are the size of each field, in bits.
   private static final int PREDICATE_BITS = 16;
@@ -91,6 +107,11 @@ public class CcgParser implements Serializable {
   private static final int MAX_CHART_DEPS = 100;
   private static final int MAX_CHART_VAR_INDEX = 100;
 
+  // Parameters of the pool of recycled beam search charts created
+  // by each call to batch beam search.
+  private static final int CHART_CAPACITY_INCREMENT = 8;
+  private static final int MAX_POOLED_CHARTS_PER_THREAD = 4;
+
   // Default names for the variables in the syntactic distribution
   // built by buildSyntacticDistribution
   public static final String LEFT_SYNTAX_VAR_NAME = "leftSyntax";
@@ -391,6 +412,10 @@ public class CcgParser implements Serializable {
   public List<CcgLexicon> getLexicons() {
     return lexicons;
   }
+
+  public List<LexiconScorer> getLexiconScorers() {
+    return lexiconScorers;
+  }
   
   /**
    * Creates a new CCG parser by replacing a lexicon of
@@ -541,9 +566,123 @@ public class CcgParser implements Serializable {
    */
   public List<CcgParse> beamSearch(AnnotatedSentence input, int beamSize, ChartCost beamFilter,
       LogFunction log, long maxParseTimeMillis, int maxChartSize, int numThreads) {
+    return beamSearch(input, beamSize, beamFilter, log, new ParseBudget(maxParseTimeMillis, false),
+        maxChartSize, numThreads);
+  }
+
+  /**
+   * Same as
+   * {@link #beamSearch(AnnotatedSentence, int, ChartCost, LogFunction, long, int, int)},
+   * except that parsing is limited by {@code budget}. If the budget is
+   * exhausted and permits a fallback parse, the returned parses are
+   * drawn from the fallback parse.
+   * 
+   * @param input
+   * @param beamSize
+   * @param beamFilter
+   * @param log
+   * @param budget
+   * @param maxChartSize
+   * @param numThreads
+   * @return
+   */
+  public List<CcgParse> beamSearch(AnnotatedSentence input, int beamSize, ChartCost beamFilter,
+      LogFunction log, ParseBudget budget, int maxChartSize, int numThreads) {
     CcgBeamSearchChart chart = new CcgBeamSearchChart(input, maxChartSize, beamSize);
-    parseCommon(chart, input, beamFilter, log, maxParseTimeMillis, numThreads);
-    
+    parseCommon(chart, input, beamFilter, log, budget, numThreads);
+    return decodeBeamSearchChart(chart, beamSize);
+  }
+
+  /**
+   * Performs beam search to parse the sentence of {@code chart},
+   * storing the search state in the columns of {@code chart}. The
+   * beam size and maximum chart size are determined by
+   * {@code chart}.
+   * 
+   * @param chart an empty chart.
+   * @param beamFilter May be {@code null}, in which case all beam
+   * entries are retained.
+   * @param log
+   * @param maxParseTimeMillis
+   * @param numThreads
+   * @return
+   */
+  public List<CcgParse> beamSearch(CcgColumnarBeamSearchChart chart, ChartCost beamFilter,
+      LogFunction log, long maxParseTimeMillis, int numThreads) {
+    parseCommon(chart, chart.getInput(), beamFilter, log, maxParseTimeMillis, numThreads);
+    return decodeBeamSearchChart(chart, chart.getBeamSize());
+  }
+
+  /**
+   * Performs beam search on each sentence in {@code inputs}. The
+   * sentences are parsed in parallel using the current
+   * {@code MapReduceExecutor} (see {@link MapReduceConfiguration}),
+   * and each parse uses a single thread. Chart storage is recycled
+   * across sentences from a pool of charts that is discarded when
+   * this method returns, which makes
+   * this method considerably more efficient than repeatedly calling
+   * {@link #beamSearch(AnnotatedSentence, int, ChartCost, LogFunction, long, int, int)}
+   * when parsing many short sentences.
+   * 
+   * @param inputs
+   * @param beamSize
+   * @param beamFilter May be {@code null}, in which case all beam
+   * entries are retained.
+   * @param log May be {@code null} to suppress logging output.
+   * @param maxParseTimeMillis (Approximate) maximum amount of time to
+   * spend parsing each sentence. If negative, there is no time limit.
+   * @param maxChartSize maximum number of chart entries to create
+   * while parsing each sentence.
+   * @return the parses of each sentence, in the same order as
+   * {@code inputs}. The list of parses is empty for any sentence
+   * whose parse exceeds the time limit or chart size.
+   */
+  public List<List<CcgParse>> beamSearch(List<AnnotatedSentence> inputs, int beamSize,
+      ChartCost beamFilter, LogFunction log, long maxParseTimeMillis, int maxChartSize) {
+    return beamSearch(inputs, beamSize, beamFilter, log, maxParseTimeMillis, false,
+        maxChartSize);
+  }
+
+  /**
+   * Same as
+   * {@link #beamSearch(List, int, ChartCost, LogFunction, long, int)},
+   * except that each sentence is parsed with a new
+   * {@code ParseBudget(maxParseTimeMillis, useFallbackParse)}, exactly
+   * as in
+   * {@link #beamSearch(AnnotatedSentence, int, ChartCost, LogFunction, ParseBudget, int, int)}.
+   * If {@code useFallbackParse} is {@code true}, sentences whose
+   * budget is exhausted receive the parses of the fallback parse
+   * instead of an empty list.
+   * 
+   * @param inputs
+   * @param beamSize
+   * @param beamFilter
+   * @param log
+   * @param maxParseTimeMillis
+   * @param useFallbackParse
+   * @param maxChartSize
+   * @return
+   */
+  public List<List<CcgParse>> beamSearch(List<AnnotatedSentence> inputs, int beamSize,
+      ChartCost beamFilter, LogFunction log, long maxParseTimeMillis, boolean useFallbackParse,
+      int maxChartSize) {
+    MapReduceExecutor executor = MapReduceConfiguration.getMapReduceExecutor();
+    int maxPooledCharts = MAX_POOLED_CHARTS_PER_THREAD * Runtime.getRuntime().availableProcessors();
+    CcgBeamSearchChartPool chartPool = new CcgBeamSearchChartPool(beamSize,
+        CHART_CAPACITY_INCREMENT, maxPooledCharts);
+    try {
+      return executor.map(inputs, new BatchBeamSearchMapper(this, chartPool,
+          beamFilter, log, maxParseTimeMillis, useFallbackParse, maxChartSize));
+    } finally {
+      chartPool.clear();
+    }
+  }
+
+  /**
+   * Gets the {@code beamSize} best parses of the entire sentence
+   * from {@code chart}, or an empty list if parsing did not finish.
+   */
+  private List<CcgParse> decodeBeamSearchChart(CcgBeamChart chart, int beamSize) {
     if (chart.isFinishedParsing()) {
       int numParses = Math.min(beamSize, chart.getNumChartEntriesForSpan(0, chart.size() - 1));
       return chart.decodeBestParsesForSpan(0, chart.size() - 1, numParses, this);
@@ -567,8 +706,28 @@ public class CcgParser implements Serializable {
    */
   public CcgParse parse(AnnotatedSentence input, ChartCost beamFilter, LogFunction log,
       long maxParseTimeMillis, int maxChartSize, int numThreads) {
+    return parse(input, beamFilter, log, new ParseBudget(maxParseTimeMillis, false),
+        maxChartSize, numThreads);
+  }
+
+  /**
+   * Same as
+   * {@link #parse(AnnotatedSentence, ChartCost, LogFunction, long, int, int)},
+   * except that parsing is limited by {@code budget}. If the budget is
+   * exhausted and permits a fallback parse, returns the fallback parse.
+   * 
+   * @param input
+   * @param beamFilter
+   * @param log
+   * @param budget
+   * @param maxChartSize
+   * @param numThreads
+   * @return
+   */
+  public CcgParse parse(AnnotatedSentence input, ChartCost beamFilter, LogFunction log,
+      ParseBudget budget, int maxChartSize, int numThreads) {
     CcgExactHashTableChart chart = new CcgExactHashTableChart(input, maxChartSize);
-    parseCommon(chart, input, beamFilter, log, maxParseTimeMillis, numThreads);
+    parseCommon(chart, input, beamFilter, log, budget, numThreads);
 
     if (chart.isFinishedParsing()) {
       return chart.decodeBestParseForSpan(0, chart.size() - 1, this);
@@ -590,6 +749,25 @@ public class CcgParser implements Serializable {
 
   public void parseCommon(CcgChart chart, AnnotatedSentence input, ChartCost beamFilter,
       LogFunction log, long maxParseTimeMillis, int numThreads) {
+    parseCommon(chart, input, beamFilter, log, new ParseBudget(maxParseTimeMillis, false),
+        numThreads);
+  }
+
+  /**
+   * Parses {@code input}, storing the search state in {@code chart}.
+   * Parsing stops early if {@code budget} is exhausted, in which case
+   * the chart is marked finished only if {@code budget} permits a
+   * fallback parse and that parse succeeds.
+   * 
+   * @param chart
+   * @param input
+   * @param beamFilter
+   * @param log
+   * @param budget
+   * @param numThreads
+   */
+  public void parseCommon(CcgChart chart, AnnotatedSentence input, ChartCost beamFilter,
+      LogFunction log, ParseBudget budget, int numThreads) {
     if (log == null) {
       log = new NullLogFunction();
     }
@@ -597,19 +775,32 @@ public class CcgParser implements Serializable {
     Preconditions.checkState(input.getWords().size() <= MAX_WORDS,
         "Maximum sentence length is %s", MAX_WORDS);
 
-    log.startTimer("ccg_parse/initialize_chart");
+    long start = INITIALIZE_CHART_TIMER.start();
     initializeChart(chart, input, beamFilter);
     initializeChartTerminals(chart, input, wordSkipFactor != null);
-    log.stopTimer("ccg_parse/initialize_chart");
+    INITIALIZE_CHART_TIMER.stop(start);
 
-    log.startTimer("ccg_parse/calculate_inside_beam");
+    start = INSIDE_BEAM_TIMER.start();
+    boolean[] completedSpans = new boolean[chart.size() * chart.size()];
     boolean finishedParsing = false;
     if (numThreads <= 1) {
-      finishedParsing = calculateInsideBeamSingleThreaded(chart, log, maxParseTimeMillis);
+      finishedParsing = calculateInsideBeamSingleThreaded(chart, log, budget, completedSpans);
     } else {
-      finishedParsing = calculateInsideBeamParallel(chart, log, maxParseTimeMillis, numThreads);
+      finishedParsing = calculateInsideBeamParallel(chart, log, budget, completedSpans,
+          numThreads);
+    }
+    INSIDE_BEAM_TIMER.stop(start);
+
+    if (!finishedParsing) {
+      ABORTED_PARSES.increment();
+      if (budget.useFallbackParse()) {
+        finishedParsing = calculateFallbackParse(chart, log, budget.getFallbackBudget(),
+            completedSpans);
+        if (finishedParsing) {
+          FALLBACK_PARSES.increment();
+        }
+      }
     }
-    log.stopTimer("ccg_parse/calculate_inside_beam");
 
     if (finishedParsing) {
       reweightRootEntries(chart);
@@ -640,14 +831,19 @@ public class CcgParser implements Serializable {
     chart.setChartCost(chartFilter);
 
     // Create one accumulator per token in the sentence. This permits
-    // parsing in parallel while reusing the accumulators.
-    chart.setAssignmentVarIndexAccumulator(new int[input.size()][MAX_CHART_VAR_INDEX]);
-    chart.setAssignmentAccumulator(new long[input.size()][MAX_CHART_ASSIGNMENTS]);
-    chart.setFilledDepAccumulator(new long[input.size()][MAX_CHART_DEPS]);
-    chart.setUnfilledDepVarIndexAccumulator(new int[input.size()][MAX_CHART_VAR_INDEX]);
-    chart.setUnfilledDepAccumulator(new long[input.size()][MAX_CHART_DEPS]);
-    chart.setDepLongCache(new long[input.size()]);
-    chart.setDepProbCache(new double[input.size()]);
+    // parsing in parallel while reusing the accumulators. Charts
+    // with recycled storage may already have large enough
+    // accumulators.
+    if (chart.getAssignmentAccumulator() == null
+        || chart.getAssignmentAccumulator().length < input.size()) {
+      chart.setAssignmentVarIndexAccumulator(new int[input.size()][MAX_CHART_VAR_INDEX]);
+      chart.setAssignmentAccumulator(new long[input.size()][MAX_CHART_ASSIGNMENTS]);
+      chart.setFilledDepAccumulator(new long[input.size()][MAX_CHART_DEPS]);
+      chart.setUnfilledDepVarIndexAccumulator(new int[input.size()][MAX_CHART_VAR_INDEX]);
+      chart.setUnfilledDepAccumulator(new long[input.size()][MAX_CHART_DEPS]);
+      chart.setDepLongCache(new long[input.size()]);
+      chart.setDepProbCache(new double[input.size()]);
+    }
   }
 
   public void initializeChartTerminals(CcgChart chart, AnnotatedSentence sentence, boolean wordSkip) {
@@ -848,84 +1044,163 @@ public class CcgParser implements Serializable {
    * @param log
    */
   public boolean calculateInsideBeamSingleThreaded(CcgChart chart, LogFunction log, long maxParseTimeMillis) {
+    return calculateInsideBeamSingleThreaded(chart, log, new ParseBudget(maxParseTimeMillis, false),
+        new boolean[chart.size() * chart.size()]);
+  }
+
+  private boolean calculateInsideBeamSingleThreaded(CcgChart chart, LogFunction log,
+      ParseBudget budget, boolean[] completedSpans) {
     int chartSize = chart.size();
-    long currentTime = 0;
-    long endTime = System.currentTimeMillis() + maxParseTimeMillis;
-    for (int spanSize = 1; spanSize < chartSize; spanSize++) {
-      for (int spanStart = 0; spanStart + spanSize < chartSize; spanStart++) {
-        int spanEnd = spanStart + spanSize;
-        calculateInsideBeam(spanStart, spanEnd, chart, log);
-        
-        if (maxParseTimeMillis >= 0) {
-          currentTime = System.currentTimeMillis();
-          if (currentTime > endTime) {
+    chart.setParseBudget(budget);
+    try {
+      for (int spanSize = 1; spanSize < chartSize; spanSize++) {
+        for (int spanStart = 0; spanStart + spanSize < chartSize; spanStart++) {
+          int spanEnd = spanStart + spanSize;
+          calculateInsideBeam(spanStart, spanEnd, chart, log);
+          completedSpans[(spanStart * chartSize) + spanEnd] = true;
+
+          if (budget.checkExhausted(chart)) {
             return false;
           }
+          // System.out.println(spanStart + "." + spanEnd + " : " +
+          // chart.getNumChartEntriesForSpan(spanStart, spanEnd));
         }
-        
-        if (chart.getTotalNumChartEntries() > chart.getMaxChartEntries()) {
-          return false;
-        }
-        // System.out.println(spanStart + "." + spanEnd + " : " +
-        // chart.getNumChartEntriesForSpan(spanStart, spanEnd));
       }
+    } finally {
+      chart.setParseBudget(null);
     }
     return true;
   }
 
+  /**
+   * Performs a beam search over possible CCG parses given a
+   * {@code chart} initialized with entries for all terminals, using
+   * {@code numThreads} threads. Each span is computed as soon as its
+   * subspans are complete (see {@link ParallelInsideBeamSchedule}).
+   * The threads are drawn from a pool that is shared by all parsers.
+   * If the current thread is itself a worker of that pool, the beam
+   * search is performed on the current thread, as waiting for the
+   * pool from one of its own workers may deadlock.
+   * 
+   * @param chart
+   * @param log
+   * @param maxParseTimeMillis
+   * @param numThreads
+   * @return
+   */
   public boolean calculateInsideBeamParallel(CcgChart chart, LogFunction log, long maxParseTimeMillis,
       int numThreads) {
-    int chartSize = chart.size();
-    long currentTime = 0;
-    long endTime = System.currentTimeMillis() + maxParseTimeMillis;
-    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    return calculateInsideBeamParallel(chart, log, new ParseBudget(maxParseTimeMillis, false),
+        new boolean[chart.size() * chart.size()], numThreads);
+  }
+
+  private boolean calculateInsideBeamParallel(CcgChart chart, LogFunction log, ParseBudget budget,
+      boolean[] completedSpans, int numThreads) {
+    ForkJoinPool pool = ForkJoinPools.getSharedPool(numThreads);
+    if (ForkJoinPools.isWorkerOf(pool)) {
+      return calculateInsideBeamSingleThreaded(chart, log, budget, completedSpans);
+    }
+
+    ParallelInsideBeamSchedule schedule = new ParallelInsideBeamSchedule(this, chart, log,
+        budget, completedSpans, pool);
+    chart.setParseBudget(budget);
     try {
-      List<Future<Void>> results = Lists.newArrayListWithCapacity(chartSize);
-      for (int spanSize = 1; spanSize < chartSize; spanSize++) {
-        results.clear();
-        for (int spanStart = 0; spanStart + spanSize < chartSize; spanStart++) {
-          int spanEnd = spanStart + spanSize;
-          results.add(executor.submit(new CalculateInsideBeamCallable(this, chart, spanStart, spanEnd, log)));
-        }
+      return schedule.run();
+    } finally {
+      chart.setParseBudget(null);
+    }
+  }
 
-        // Wait for the current set of spans to finish.
-        for (Future<Void> result : results) {
-          result.get();
-        }
+  /**
+   * Completes a parse whose budget was exhausted, by computing every
+   * span of {@code chart} that is not in {@code completedSpans} (or
+   * that is empty) using only the highest-scoring entry of each of its
+   * subspans. Returns
+   * {@code true} if the resulting chart contains a parse of the
+   * entire sentence, or {@code false} if there is no such parse or
+   * {@code fallbackBudget} is exhausted first.
+   * 
+   * @param chart
+   * @param log
+   * @param fallbackBudget
+   * @param completedSpans
+   * @return
+   */
+  private boolean calculateFallbackParse(CcgChart chart, LogFunction log,
+      ParseBudget fallbackBudget, boolean[] completedSpans) {
+    chart.setParseBudget(fallbackBudget);
+    try {
+      return calculateFallbackParseHelper(chart, log, fallbackBudget, completedSpans);
+    } finally {
+      chart.setParseBudget(null);
+    }
+  }
+
+  private boolean calculateFallbackParseHelper(CcgChart chart, LogFunction log,
+      ParseBudget fallbackBudget, boolean[] completedSpans) {
+    int chartSize = chart.size();
+    // The best entry of each span, as a map from syntactic category
+    // to entry index, or null if the span has no entries.
+    IntMultimap[] bestEntries = new IntMultimap[chartSize * chartSize];
+    for (int spanSize = 0; spanSize < chartSize; spanSize++) {
+      for (int spanStart = 0; spanStart + spanSize < chartSize; spanStart++) {
+        int spanEnd = spanStart + spanSize;
+        int spanIndex = (spanStart * chartSize) + spanEnd;
+        if (spanSize > 0 && (!completedSpans[spanIndex]
+            || chart.getNumChartEntriesForSpan(spanStart, spanEnd) == 0)) {
+          if (completedSpans[spanIndex]) {
+            // Spans that were being computed when the budget ran out
+            // may be empty despite being complete.
+            chart.clearChartEntriesForSpan(spanStart, spanEnd);
+          }
+          for (int i = 0; i < spanSize; i++) {
+            IntMultimap leftTypes = bestEntries[(spanStart * chartSize) + spanStart + i];
+            IntMultimap rightTypes = bestEntries[((spanStart + i + 1) * chartSize) + spanEnd];
+            applySearchMoves(chart, spanStart, spanStart + i, spanStart + i + 1, spanEnd,
+                getChartEntriesForSearch(chart, spanStart, spanStart + i),
+                chart.getChartEntryProbsForSpan(spanStart, spanStart + i), leftTypes,
+                getChartEntriesForSearch(chart, spanStart + i + 1, spanEnd),
+                chart.getChartEntryProbsForSpan(spanStart + i + 1, spanEnd), rightTypes, log);
+          }
+          chart.doneAddingChartEntriesForSpan(spanStart, spanEnd);
+          completedSpans[spanIndex] = true;
 
-        if (maxParseTimeMillis >= 0) {
-          currentTime = System.currentTimeMillis();
-          if (currentTime > endTime) {
+          if (fallbackBudget.checkExhausted(chart)) {
             return false;
           }
         }
-        
-        if (chart.getTotalNumChartEntries() > chart.getMaxChartEntries()) {
-          return false;
-        }        
+        bestEntries[spanIndex] = getBestEntry(chart, spanStart, spanEnd);
       }
-    } catch (InterruptedException e) {
-      e.printStackTrace();
-      e.getCause().printStackTrace();
-      throw new RuntimeException(e);
-    } catch (ExecutionException e) {
-      e.printStackTrace();
-      e.getCause().printStackTrace();
-      throw new RuntimeException(e);
-    } finally {
-      executor.shutdown();
     }
-    return true;
+    return chart.getNumChartEntriesForSpan(0, chartSize - 1) > 0;
+  }
+
+  private static IntMultimap getBestEntry(CcgChart chart, int spanStart, int spanEnd) {
+    int numEntries = chart.getNumChartEntriesForSpan(spanStart, spanEnd);
+    if (numEntries == 0) {
+      return null;
+    }
+
+    ChartEntry[] entries = chart.getChartEntriesForSpan(spanStart, spanEnd);
+    double[] probs = chart.getChartEntryProbsForSpan(spanStart, spanEnd);
+    int best = 0;
+    for (int i = 1; i < numEntries; i++) {
+      if (probs[i] > probs[best]) {
+        best = i;
+      }
+    }
+    return IntMultimap.createFromUnsortedArrays(new int[] {entries[best].getHeadedSyntax()},
+        new int[] {best}, 0);
   }
 
   private void calculateInsideBeam(int spanStart, int spanEnd, CcgChart chart, LogFunction log) {
     for (int i = 0; i < spanEnd - spanStart; i++) {
       // Index j only gets used if we allow the skipping of terminals.
-      ChartEntry[] leftTrees = chart.getChartEntriesForSpan(spanStart, spanStart + i);
+      ChartEntry[] leftTrees = getChartEntriesForSearch(chart, spanStart, spanStart + i);
       double[] leftProbs = chart.getChartEntryProbsForSpan(spanStart, spanStart + i);
       IntMultimap leftTypes = chart.getChartEntriesBySyntacticCategoryForSpan(spanStart, spanStart + i);
 
-      ChartEntry[] rightTrees = chart.getChartEntriesForSpan(spanStart + i + 1, spanEnd);
+      ChartEntry[] rightTrees = getChartEntriesForSearch(chart, spanStart + i + 1, spanEnd);
       double[] rightProbs = chart.getChartEntryProbsForSpan(spanStart + i + 1, spanEnd);
       IntMultimap rightTypes = chart.getChartEntriesBySyntacticCategoryForSpan(spanStart + i + 1, spanEnd);
 
@@ -935,15 +1210,35 @@ public class CcgParser implements Serializable {
 
     chart.doneAddingChartEntriesForSpan(spanStart, spanEnd);
   }
-  
+
+  /**
+   * Gets the chart entries of a span to pass to
+   * {@link #applySearchMoves}. Returns {@code null} for
+   * {@link CcgColumnarBeamSearchChart}s, whose entries are read
+   * directly from the chart's columns.
+   */
+  private static ChartEntry[] getChartEntriesForSearch(CcgChart chart, int spanStart, int spanEnd) {
+    if (chart instanceof CcgColumnarBeamSearchChart) {
+      return null;
+    }
+    return chart.getChartEntriesForSpan(spanStart, spanEnd);
+  }
+
+  /**
+   * Applies every search move to the chart entries of two adjacent
+   * spans, adding the resulting entries to {@code chart}. If
+   * {@code chart} is a {@link CcgColumnarBeamSearchChart},
+   * {@code leftTrees} and {@code rightTrees} are ignored and may be
+   * {@code null}; the entries are instead read from the chart's
+   * columns.
+   */
   public final void applySearchMoves(CcgChart chart, int leftSpanStart, int leftSpanEnd,
       int rightSpanStart, int rightSpanEnd, ChartEntry[] leftTrees, double[] leftProbs,
       IntMultimap leftTypes, ChartEntry[] rightTrees, double[] rightProbs, IntMultimap rightTypes,
       LogFunction log) {
     
     Tensor binaryRuleTensor = binaryRuleDistribution.getWeights();
-    SparseTensor syntaxDistributionTensor = (SparseTensor) compiledSyntaxDistribution.getWeights();
-    long[] syntaxKeyNums = syntaxDistributionTensor.getKeyNums();
+    Tensor syntaxDistributionTensor = compiledSyntaxDistribution.getWeights();
     long[] dimensionOffsets = syntaxDistributionTensor.getDimensionOffsets();
     int tensorSize = syntaxDistributionTensor.size();
 
@@ -953,6 +1248,18 @@ public class CcgParser implements Serializable {
       return;
     }
 
+    // If non-null, parsing stops as soon as this budget is exhausted.
+    ParseBudget budget = chart.getParseBudget();
+
+    CcgColumnarBeamSearchChart columnarChart = null;
+    SpanColumns leftColumns = null;
+    SpanColumns rightColumns = null;
+    if (chart instanceof CcgColumnarBeamSearchChart) {
+      columnarChart = (CcgColumnarBeamSearchChart) chart;
+      leftColumns = columnarChart.getColumnsForSpan(leftSpanStart, leftSpanEnd);
+      rightColumns = columnarChart.getColumnsForSpan(rightSpanStart, rightSpanEnd);
+    }
+
     // log.startTimer("ccg_parse/beam_loop");
     for (int leftType : leftTypes.keySetArray()) {
       long keyNumPrefix = leftType * dimensionOffsets[0]; // syntaxDistributionTensor.dimKeyPrefixToKeyNum(key);
@@ -961,7 +1268,7 @@ public class CcgParser implements Serializable {
         continue;
       }
       long maxKeyNum = keyNumPrefix + dimensionOffsets[0];
-      long curKeyNum = syntaxKeyNums[index];
+      long curKeyNum = syntaxDistributionTensor.indexToKeyNum(index);
 
       while (curKeyNum < maxKeyNum && index < tensorSize) {
         int rightType = (int) (((curKeyNum - keyNumPrefix) / dimensionOffsets[1]) % dimensionOffsets[0]);
@@ -974,7 +1281,10 @@ public class CcgParser implements Serializable {
           double ruleProb = binaryRuleTensor.get(searchMove.getBinaryCombinatorKeyNum());
 
           for (int leftIndex : leftTypes.getArray(leftType)) {
-            ChartEntry leftRoot = leftTrees[leftIndex];
+            if (budget != null && budget.checkExhausted(chart)) {
+              return;
+            }
+
             double leftProb = leftProbs[leftIndex];
 
             long leftUnaryKeyNum = searchMove.getLeftUnaryKeyNum();
@@ -983,7 +1293,6 @@ public class CcgParser implements Serializable {
             }
 
             for (int rightIndex : rightTypes.getArray(rightType)) {
-              ChartEntry rightRoot = rightTrees[rightIndex];
               double rightProb = rightProbs[rightIndex];
 
               long rightUnaryKeyNum = searchMove.getRightUnaryKeyNum();
@@ -991,9 +1300,15 @@ public class CcgParser implements Serializable {
                 rightProb *= unaryRuleTensor.get(searchMove.getRightUnaryKeyNum());
               }
 
-              applyBinary(chart, leftSpanStart, leftSpanEnd, leftIndex, leftRoot, leftProb,
-                  rightSpanStart, rightSpanEnd, rightIndex, rightRoot, rightProb, searchMove, ruleProb,
-                  log);
+              if (columnarChart == null) {
+                applyBinary(chart, leftSpanStart, leftSpanEnd, leftIndex, leftTrees[leftIndex],
+                    leftProb, rightSpanStart, rightSpanEnd, rightIndex, rightTrees[rightIndex],
+                    rightProb, searchMove, ruleProb, log);
+              } else {
+                applyBinary(columnarChart, leftSpanStart, leftSpanEnd, leftIndex, leftColumns,
+                    leftProb, rightSpanStart, rightSpanEnd, rightIndex, rightColumns, rightProb,
+                    searchMove, ruleProb);
+              }
             }
           } 
         }
@@ -1001,7 +1316,7 @@ public class CcgParser implements Serializable {
         // Advance the iterator over rules.
         index++;
         if (index < tensorSize) {
-          curKeyNum = syntaxKeyNums[index];
+          curKeyNum = syntaxDistributionTensor.indexToKeyNum(index);
         }
       }
     }
@@ -1012,6 +1327,68 @@ public class CcgParser implements Serializable {
       int leftSpanStart, int leftSpanEnd, int leftIndex, ChartEntry leftRoot, double leftProb,
       int rightSpanStart, int rightSpanEnd, int rightIndex, ChartEntry rightRoot, double rightProb,
       CcgSearchMove searchMove, double ruleProb, LogFunction log) {
+    applyBinary(chart, null,
+        leftSpanStart, leftSpanEnd, leftIndex, leftRoot.getDerivingCombinatorType(),
+        leftRoot.isProducedByConjunction(), leftRoot.getAssignmentVarIndex(), 0,
+        leftRoot.getAssignments(), 0, leftRoot.getUnfilledDependencyVarIndex(), 0,
+        leftRoot.getUnfilledDependencies(), 0, leftProb,
+        rightSpanStart, rightSpanEnd, rightIndex, rightRoot.getDerivingCombinatorType(),
+        rightRoot.getAssignmentVarIndex(), 0, rightRoot.getAssignments(), 0,
+        rightRoot.getUnfilledDependencyVarIndex(), 0, rightRoot.getUnfilledDependencies(), 0,
+        rightProb, searchMove, ruleProb);
+  }
+
+  /**
+   * Applies {@code searchMove} to a pair of chart entries stored in
+   * the columns of {@code chart}, writing the result directly into
+   * the chart's columns.
+   */
+  private final void applyBinary(CcgColumnarBeamSearchChart chart,
+      int leftSpanStart, int leftSpanEnd, int leftIndex, SpanColumns leftColumns, double leftProb,
+      int rightSpanStart, int rightSpanEnd, int rightIndex, SpanColumns rightColumns, double rightProb,
+      CcgSearchMove searchMove, double ruleProb) {
+    int leftSlot = leftColumns.getSlot(leftIndex);
+    int[] leftInts = leftColumns.getIntPool();
+    long[] leftLongs = leftColumns.getLongPool();
+    int rightSlot = rightColumns.getSlot(rightIndex);
+    int[] rightInts = rightColumns.getIntPool();
+    long[] rightLongs = rightColumns.getLongPool();
+
+    applyBinary(chart, chart,
+        leftSpanStart, leftSpanEnd, leftIndex, leftColumns.getDerivingCombinatorType(leftSlot),
+        leftColumns.isProducedByConjunction(leftSlot),
+        leftInts, leftColumns.getAssignmentVarIndexStart(leftSlot),
+        leftLongs, leftColumns.getAssignmentStart(leftSlot),
+        leftInts, leftColumns.getUnfilledDepVarIndexStart(leftSlot),
+        leftLongs, leftColumns.getUnfilledDepStart(leftSlot), leftProb,
+        rightSpanStart, rightSpanEnd, rightIndex, rightColumns.getDerivingCombinatorType(rightSlot),
+        rightInts, rightColumns.getAssignmentVarIndexStart(rightSlot),
+        rightLongs, rightColumns.getAssignmentStart(rightSlot),
+        rightInts, rightColumns.getUnfilledDepVarIndexStart(rightSlot),
+        rightLongs, rightColumns.getUnfilledDepStart(rightSlot), rightProb,
+        searchMove, ruleProb);
+  }
+
+  /**
+   * Applies {@code searchMove} to a pair of chart entries and adds
+   * the result to {@code chart}. The variable-length values of each
+   * entry are read from arrays starting at the given offsets, which
+   * permits the entries to be stored either in {@code ChartEntry}s
+   * (with offsets of 0) or in the columns of
+   * {@code columnarChart}. If {@code columnarChart} is non-null, it
+   * must be {@code chart}, and the result is written directly into
+   * its columns.
+   */
+  private final void applyBinary(CcgChart chart, CcgColumnarBeamSearchChart columnarChart,
+      int leftSpanStart, int leftSpanEnd, int leftIndex, Combinator.Type leftCombinator,
+      boolean leftIsProducedByConjunction, int[] leftAssignmentVarIndex, int leftAssignmentVarIndexOffset,
+      long[] leftAssignment, int leftAssignmentOffset, int[] leftUnfilledDepsVarIndex,
+      int leftUnfilledDepsVarIndexOffset, long[] leftUnfilledDeps, int leftUnfilledDepsOffset,
+      double leftProb, int rightSpanStart, int rightSpanEnd, int rightIndex,
+      Combinator.Type rightCombinator, int[] rightAssignmentVarIndex, int rightAssignmentVarIndexOffset,
+      long[] rightAssignment, int rightAssignmentOffset, int[] rightUnfilledDepsVarIndex,
+      int rightUnfilledDepsVarIndexOffset, long[] rightUnfilledDeps, int rightUnfilledDepsOffset,
+      double rightProb, CcgSearchMove searchMove, double ruleProb) {
 
     int[] assignmentVarIndexAccumulator = chart.getAssignmentVarIndexAccumulator()[leftSpanStart];
     long[] assignmentAccumulator = chart.getAssignmentAccumulator()[leftSpanStart];
@@ -1036,7 +1413,6 @@ public class CcgParser implements Serializable {
     // left (right) element of a forward (backward) combinator.
     boolean isProducedByConjunction = false;
     if (normalFormOnly) {
-      Combinator.Type leftCombinator = leftRoot.getDerivingCombinatorType();
       Combinator.Type resultCombinatorType = resultCombinator.getType();
       if (leftCombinator == Combinator.Type.FORWARD_COMPOSITION
           && searchMove.getLeftUnaryKeyNum() == -1
@@ -1045,7 +1421,6 @@ public class CcgParser implements Serializable {
         return;
       }
 
-      Combinator.Type rightCombinator = rightRoot.getDerivingCombinatorType();
       if (rightCombinator == Combinator.Type.BACKWARD_COMPOSITION
           && searchMove.getRightUnaryKeyNum() == -1
           && (resultCombinator.getType() == Combinator.Type.BACKWARD_APPLICATION
@@ -1057,7 +1432,7 @@ public class CcgParser implements Serializable {
       // right branching analyses.
       if (rightCombinator == Combinator.Type.CONJUNCTION
           && resultCombinatorType == Combinator.Type.BACKWARD_APPLICATION) {
-        if (leftRoot.isProducedByConjunction()) {
+        if (leftIsProducedByConjunction) {
           return;
         } else {
           isProducedByConjunction = true;
@@ -1069,11 +1444,13 @@ public class CcgParser implements Serializable {
     // Fill dependencies based on the current assignment.
     // (Filling dependencies takes a trivial amount of time.) 
     int numFilledDeps = 0;
-    numFilledDeps = fillDependencies(leftRoot.getAssignmentVarIndex(), leftRoot.getAssignments(),
-        rightRoot.getUnfilledDependencyVarIndex(), rightRoot.getUnfilledDependencies(), 
+    numFilledDeps = fillDependencies(leftAssignmentVarIndex, leftAssignmentVarIndexOffset,
+        leftAssignment, leftAssignmentOffset, rightUnfilledDepsVarIndex,
+        rightUnfilledDepsVarIndexOffset, rightUnfilledDeps, rightUnfilledDepsOffset,
         searchMove.getRightDepRelabeling(), filledDepAccumulator, numFilledDeps);
-    numFilledDeps = fillDependencies(rightRoot.getAssignmentVarIndex(), rightRoot.getAssignments(),
-        leftRoot.getUnfilledDependencyVarIndex(), leftRoot.getUnfilledDependencies(), 
+    numFilledDeps = fillDependencies(rightAssignmentVarIndex, rightAssignmentVarIndexOffset,
+        rightAssignment, rightAssignmentOffset, leftUnfilledDepsVarIndex,
+        leftUnfilledDepsVarIndexOffset, leftUnfilledDeps, leftUnfilledDepsOffset,
         searchMove.getLeftDepRelabeling(), filledDepAccumulator, numFilledDeps);
 
     // Fill dependencies created by the binary rule.
@@ -1089,11 +1466,13 @@ public class CcgParser implements Serializable {
       combinatorUnfilledDepsVarIndex = new int[maxVarNum + 2];
       orderUnfilledDependencies(unfilledDepsOrig, combinatorUnfilledDeps, combinatorUnfilledDepsVarIndex);
 
-      numFilledDeps = fillDependencies(leftRoot.getAssignmentVarIndex(), leftRoot.getAssignments(),
-          combinatorUnfilledDepsVarIndex, combinatorUnfilledDeps, searchMove.getLeftInverseRelabeling(),
+      numFilledDeps = fillDependencies(leftAssignmentVarIndex, leftAssignmentVarIndexOffset,
+          leftAssignment, leftAssignmentOffset, combinatorUnfilledDepsVarIndex, 0,
+          combinatorUnfilledDeps, 0, searchMove.getLeftInverseRelabeling(),
           filledDepAccumulator, numFilledDeps);
-      numFilledDeps = fillDependencies(rightRoot.getAssignmentVarIndex(), rightRoot.getAssignments(),
-          combinatorUnfilledDepsVarIndex, combinatorUnfilledDeps, searchMove.getRightInverseRelabeling(),
+      numFilledDeps = fillDependencies(rightAssignmentVarIndex, rightAssignmentVarIndexOffset,
+          rightAssignment, rightAssignmentOffset, combinatorUnfilledDepsVarIndex, 0,
+          combinatorUnfilledDeps, 0, searchMove.getRightInverseRelabeling(),
           filledDepAccumulator, numFilledDeps);
     }
     // log.stopTimer("ccg_parse/beam_loop/fill_dependencies");
@@ -1109,38 +1488,33 @@ public class CcgParser implements Serializable {
     int[] rightInverseRelabeling = searchMove.getRightToReturnInverseRelabeling();
     int numResultVars = leftInverseRelabeling.length;
 
-    int[] leftAssignmentVarIndex = leftRoot.getAssignmentVarIndex();
-    long[] leftAssignment = leftRoot.getAssignments();
-    int[] rightAssignmentVarIndex = rightRoot.getAssignmentVarIndex();
-    long[] rightAssignment = rightRoot.getAssignments();
-
     int numAssignments = 0;
     for (int k = 0; k < numResultVars; k++) {
       assignmentVarIndexAccumulator[k] = numAssignments;
       int leftVarNum = leftInverseRelabeling[k];
       if (leftVarNum != -1) {
-        int startIndex = leftAssignmentVarIndex[leftVarNum];
-        int endIndex = leftAssignmentVarIndex[leftVarNum + 1];
+        int startIndex = leftAssignmentVarIndex[leftAssignmentVarIndexOffset + leftVarNum];
+        int endIndex = leftAssignmentVarIndex[leftAssignmentVarIndexOffset + leftVarNum + 1];
         for (int l = startIndex; l < endIndex; l++) {
           if (numAssignments >= assignmentAccumulator.length) {
             return;
           }
-          assignmentAccumulator[numAssignments] = replaceAssignmentVarNum(leftAssignment[l],
-              leftVarNum, k);
+          assignmentAccumulator[numAssignments] = replaceAssignmentVarNum(
+              leftAssignment[leftAssignmentOffset + l], leftVarNum, k);
           numAssignments++;
         }
       }
 
       int rightVarNum = rightInverseRelabeling[k];
       if (rightVarNum != -1) {
-        int startIndex = rightAssignmentVarIndex[rightVarNum];
-        int endIndex = rightAssignmentVarIndex[rightVarNum + 1];
+        int startIndex = rightAssignmentVarIndex[rightAssignmentVarIndexOffset + rightVarNum];
+        int endIndex = rightAssignmentVarIndex[rightAssignmentVarIndexOffset + rightVarNum + 1];
         for (int l = startIndex; l < endIndex; l++) {
           if (numAssignments >= assignmentAccumulator.length) {
             return;
           }
-          assignmentAccumulator[numAssignments] = replaceAssignmentVarNum(rightAssignment[l],
-              rightVarNum, k);
+          assignmentAccumulator[numAssignments] = replaceAssignmentVarNum(
+              rightAssignment[rightAssignmentOffset + l], rightVarNum, k);
           numAssignments++;
         }
       }
@@ -1151,10 +1525,6 @@ public class CcgParser implements Serializable {
     // Determine which unfilled dependencies should be propagated to
     // the result.
     // log.startTimer("ccg_parse/beam_loop/propagate_dependencies");
-    int[] leftUnfilledDepsVarIndex = leftRoot.getUnfilledDependencyVarIndex();
-    long[] leftUnfilledDeps = leftRoot.getUnfilledDependencies();
-    int[] rightUnfilledDepsVarIndex = rightRoot.getUnfilledDependencyVarIndex();
-    long[] rightUnfilledDeps = rightRoot.getUnfilledDependencies();
     int[] leftToReturnInverseRelabeling = searchMove.getLeftToReturnInverseRelabeling();
     int[] rightToReturnInverseRelabeling = searchMove.getRightToReturnInverseRelabeling();
     int[] combinatorToReturnInverseRelabeling = null;
@@ -1174,20 +1544,23 @@ public class CcgParser implements Serializable {
       // Unfilled dependencies are copied (with possible variable 
       // relabeling) from the left and right chart entries, and
       // also the combinator (if it creates new dependencies). 
-      numUnfilledDeps = propagateUnfilledDependencies(leftUnfilledDeps, leftUnfilledDepsVarIndex, 
-          leftToReturnInverseRelabeling, k, unfilledDepAccumulator, numUnfilledDeps);
+      numUnfilledDeps = propagateUnfilledDependencies(leftUnfilledDeps, leftUnfilledDepsOffset,
+          leftUnfilledDepsVarIndex, leftUnfilledDepsVarIndexOffset, leftToReturnInverseRelabeling,
+          k, unfilledDepAccumulator, numUnfilledDeps);
       if (numUnfilledDeps >= unfilledDepAccumulator.length) {
         return;
       }
-      numUnfilledDeps = propagateUnfilledDependencies(rightUnfilledDeps, rightUnfilledDepsVarIndex, 
-          rightToReturnInverseRelabeling, k, unfilledDepAccumulator, numUnfilledDeps);
+      numUnfilledDeps = propagateUnfilledDependencies(rightUnfilledDeps, rightUnfilledDepsOffset,
+          rightUnfilledDepsVarIndex, rightUnfilledDepsVarIndexOffset, rightToReturnInverseRelabeling,
+          k, unfilledDepAccumulator, numUnfilledDeps);
       if (numUnfilledDeps >= unfilledDepAccumulator.length) {
         return;
       }
 
       if (combinatorUnfilledDeps != null) {
-        numUnfilledDeps = propagateUnfilledDependencies(combinatorUnfilledDeps, combinatorUnfilledDepsVarIndex, 
-            combinatorToReturnInverseRelabeling, k, unfilledDepAccumulator, numUnfilledDeps);
+        numUnfilledDeps = propagateUnfilledDependencies(combinatorUnfilledDeps, 0,
+            combinatorUnfilledDepsVarIndex, 0, combinatorToReturnInverseRelabeling, k,
+            unfilledDepAccumulator, numUnfilledDeps);
         if (numUnfilledDeps >= unfilledDepAccumulator.length) {
           return;
         }
@@ -1196,31 +1569,16 @@ public class CcgParser implements Serializable {
     unfilledDepVarIndexAccumulator[numVars] = numUnfilledDeps;
     // log.stopTimer("ccg_parse/beam_loop/propagate_dependencies");
 
-    // log.startTimer("ccg_parse/beam_loop/copy_stuff");
-    long[] filledDepArray = Arrays.copyOf(filledDepAccumulator, numFilledDeps);
-    int[] unfilledDepVarIndex = Arrays.copyOf(unfilledDepVarIndexAccumulator, numVars + 1);
-    long[] unfilledDepArray = Arrays.copyOf(unfilledDepAccumulator, numUnfilledDeps);
-
-    int[] newAssignmentVarIndex = Arrays.copyOfRange(assignmentVarIndexAccumulator, 0,
-        searchMove.getLeftToReturnInverseRelabeling().length + 1);
-    long[] newAssignments = Arrays.copyOfRange(assignmentAccumulator, 0, numAssignments);
-
-    ChartEntry result = new ChartEntry(resultSyntax, resultSyntaxUniqueVars, resultSyntaxHead,
-        null, searchMove.getLeftUnary(), searchMove.getRightUnary(), newAssignmentVarIndex, newAssignments,
-        unfilledDepVarIndex, unfilledDepArray, filledDepArray, leftSpanStart, leftSpanEnd,
-        leftIndex, rightSpanStart, rightSpanEnd, rightIndex, resultCombinator, isProducedByConjunction);
-    // log.stopTimer("ccg_parse/beam_loop/copy_stuff");
-
     // Get the weights of applying this syntactic combination rule 
     // given the word and POS tag of the result's head.
     // log.startTimer("ccg_parse/beam_loop/headed_rule_weights");
     double headedRuleProb = 1.0;
     long binaryCombinatorKeyNumWithOffset = searchMove.getBinaryCombinatorKeyNum()
         * headedBinaryRuleCombinatorOffset;
-    int syntaxStartIndex = newAssignmentVarIndex[resultSyntaxHead];
-    int syntaxEndIndex = newAssignmentVarIndex[resultSyntaxHead + 1];
+    int syntaxStartIndex = assignmentVarIndexAccumulator[resultSyntaxHead];
+    int syntaxEndIndex = assignmentVarIndexAccumulator[resultSyntaxHead + 1];
     for (int assignmentIndex = syntaxStartIndex; assignmentIndex < syntaxEndIndex; assignmentIndex++) {
-      long assignment = newAssignments[assignmentIndex];
+      long assignment = assignmentAccumulator[assignmentIndex];
       long predicate = (assignment >> ASSIGNMENT_PREDICATE_OFFSET) & PREDICATE_MASK;
       int wordIndex = (int) ((assignment >> ASSIGNMENT_WORD_IND_OFFSET) & WORD_IND_MASK);
       int posTag = currentPosTags[wordIndex];
@@ -1238,12 +1596,11 @@ public class CcgParser implements Serializable {
     double curDepProb = 1.0;
     long[] depLongCache = chart.getDepLongCache();
     double[] depProbCache = chart.getDepProbCache();
-    int filledDepArrayLength = filledDepArray.length;
-    for (int depIndex = 0; depIndex < filledDepArrayLength; depIndex++) {
+    for (int depIndex = 0; depIndex < numFilledDeps; depIndex++) {
       // The contents of this loop takes ~1/3 of all parsing time.
       // TODO: possible speed improvement: use a hash table to cache
       // more than one depLong per core.
-      long depLong = filledDepArray[depIndex];
+      long depLong = filledDepAccumulator[depIndex];
       if (depLong == depLongCache[leftSpanStart]) {
         depProb *= depProbCache[leftSpanStart];
         continue;
@@ -1302,7 +1659,28 @@ public class CcgParser implements Serializable {
 
     // log.startTimer("chart_entry/add_chart_entry");
     double totalProb = ruleProb * headedRuleProb * leftProb * rightProb * depProb;
-    chart.addChartEntryForSpan(result, totalProb, leftSpanStart, rightSpanEnd, syntaxVarType);
+    if (columnarChart != null) {
+      columnarChart.addChartEntryForSpan(resultSyntax, resultSyntaxUniqueVars, resultSyntaxHead,
+          searchMove.getLeftUnary(), searchMove.getRightUnary(), numVars,
+          assignmentVarIndexAccumulator, assignmentAccumulator, numAssignments,
+          unfilledDepVarIndexAccumulator, unfilledDepAccumulator, numUnfilledDeps,
+          filledDepAccumulator, numFilledDeps, leftSpanStart, leftSpanEnd, leftIndex,
+          rightSpanStart, rightSpanEnd, rightIndex, resultCombinator, isProducedByConjunction,
+          totalProb, syntaxVarType);
+    } else {
+      long[] filledDepArray = Arrays.copyOf(filledDepAccumulator, numFilledDeps);
+      int[] unfilledDepVarIndex = Arrays.copyOf(unfilledDepVarIndexAccumulator, numVars + 1);
+      long[] unfilledDepArray = Arrays.copyOf(unfilledDepAccumulator, numUnfilledDeps);
+
+      int[] newAssignmentVarIndex = Arrays.copyOfRange(assignmentVarIndexAccumulator, 0, numVars + 1);
+      long[] newAssignments = Arrays.copyOfRange(assignmentAccumulator, 0, numAssignments);
+
+      ChartEntry result = new ChartEntry(resultSyntax, resultSyntaxUniqueVars, resultSyntaxHead,
+          null, searchMove.getLeftUnary(), searchMove.getRightUnary(), newAssignmentVarIndex, newAssignments,
+          unfilledDepVarIndex, unfilledDepArray, filledDepArray, leftSpanStart, leftSpanEnd,
+          leftIndex, rightSpanStart, rightSpanEnd, rightIndex, resultCombinator, isProducedByConjunction);
+      chart.addChartEntryForSpan(result, totalProb, leftSpanStart, rightSpanEnd, syntaxVarType);
+    }
     // log.stopTimer("chart_entry/add_chart_entry");
   }
 
@@ -1353,8 +1731,10 @@ public class CcgParser implements Serializable {
     }
   }
 
-  private static final int fillDependencies(int[] assignmentVarIndex, long[] assignment, int[] unfilledDepVarIndex,
-      long[] unfilledDeps, int[] depToAssignmentRelabeling, long[] filledDepAccumulator, int numFilledDeps) {
+  private static final int fillDependencies(int[] assignmentVarIndex, int assignmentVarIndexOffset,
+      long[] assignment, int assignmentOffset, int[] unfilledDepVarIndex, int unfilledDepVarIndexOffset,
+      long[] unfilledDeps, int unfilledDepOffset, int[] depToAssignmentRelabeling,
+      long[] filledDepAccumulator, int numFilledDeps) {
     if (numFilledDeps == -1) {
       return -1;
     }
@@ -1366,10 +1746,10 @@ public class CcgParser implements Serializable {
         continue;
       }
 
-      int startIndex = unfilledDepVarIndex[i];
-      int endIndex = unfilledDepVarIndex[i + 1];
-      int assignmentStartIndex = assignmentVarIndex[assignmentVar];
-      int assignmentEndIndex = assignmentVarIndex[assignmentVar + 1];
+      int startIndex = unfilledDepOffset + unfilledDepVarIndex[unfilledDepVarIndexOffset + i];
+      int endIndex = unfilledDepOffset + unfilledDepVarIndex[unfilledDepVarIndexOffset + i + 1];
+      int assignmentStartIndex = assignmentOffset + assignmentVarIndex[assignmentVarIndexOffset + assignmentVar];
+      int assignmentEndIndex = assignmentOffset + assignmentVarIndex[assignmentVarIndexOffset + assignmentVar + 1];
       if (endIndex == startIndex || assignmentStartIndex == assignmentEndIndex) {
         continue;
       }
@@ -1394,13 +1774,17 @@ public class CcgParser implements Serializable {
     return numFilledDeps;
   }
   
-  private static final int propagateUnfilledDependencies(long[] originalUnfilledDeps, int[] originalUnfilledDepsVarIndex,
-      int[] inverseRelabeling, int k, long[] unfilledDepAccumulator, int numUnfilledDeps) {
+  private static final int propagateUnfilledDependencies(long[] originalUnfilledDeps,
+      int originalUnfilledDepsOffset, int[] originalUnfilledDepsVarIndex,
+      int originalUnfilledDepsVarIndexOffset, int[] inverseRelabeling, int k,
+      long[] unfilledDepAccumulator, int numUnfilledDeps) {
     int originalVarNum = inverseRelabeling[k];
     long unfilledDependency;
     if (originalVarNum != -1) {
-      int startIndex = originalUnfilledDepsVarIndex[originalVarNum];
-      int endIndex = originalUnfilledDepsVarIndex[originalVarNum + 1];
+      int startIndex = originalUnfilledDepsOffset
+          + originalUnfilledDepsVarIndex[originalUnfilledDepsVarIndexOffset + originalVarNum];
+      int endIndex = originalUnfilledDepsOffset
+          + originalUnfilledDepsVarIndex[originalUnfilledDepsVarIndexOffset + originalVarNum + 1];
 
       if (startIndex != endIndex) {
         for (int m = startIndex; m < endIndex; m++) {
@@ -1666,28 +2050,173 @@ public class CcgParser implements Serializable {
     return assignment ^ (((long) oldVarNum ^ newVarNum) << ASSIGNMENT_VAR_NUM_OFFSET);
   }
   
-  private static class CalculateInsideBeamCallable implements Callable<Void> {
+  /**
+   * Dependency-driven schedule for computing the inside beam of a
+   * chart in parallel. Span {@code (i, j)} can be computed as soon as
+   * spans {@code (i, j - 1)} and {@code (i + 1, j)} are complete, as
+   * these spans are only complete once all of their subspans are.
+   * Each span is submitted to the pool when its last predecessor
+   * finishes, so spans of different lengths may be computed
+   * concurrently.
+   * <p>
+   * This schedule guarantees that no two spans with the same start
+   * (or end) index are computed concurrently, since they are ordered
+   * by the dependencies above. The chart's search accumulators are
+   * indexed by span start, and rely on this property.
+   */
+  private static class ParallelInsideBeamSchedule {
     private final CcgParser parser;
     private final CcgChart chart;
-
-    private final int spanStart;
-    private final int spanEnd;
-
     private final LogFunction log;
-
-    public CalculateInsideBeamCallable(CcgParser parser, CcgChart chart, int spanStart, int spanEnd,
-        LogFunction log) {
+    private final ForkJoinPool pool;
+
+    private final int chartSize;
+    private final ParseBudget budget;
+    // Spans that have been computed, indexed by
+    // (spanStart * chartSize) + spanEnd.
+    private final boolean[] completedSpans;
+
+    // Number of incomplete predecessors of each span, indexed by
+    // (spanStart * chartSize) + spanEnd.
+    private final AtomicIntegerArray numPendingPredecessors;
+    private final CountDownLatch numRemainingSpans;
+
+    // Set if parsing exceeds its time or chart size budget, or if
+    // an error occurs. Spans scheduled after this is set are skipped.
+    private volatile boolean aborted;
+    private final AtomicReference<Throwable> error;
+
+    public ParallelInsideBeamSchedule(CcgParser parser, CcgChart chart, LogFunction log,
+        ParseBudget budget, boolean[] completedSpans, ForkJoinPool pool) {
       this.parser = Preconditions.checkNotNull(parser);
       this.chart = Preconditions.checkNotNull(chart);
-      this.spanStart = spanStart;
-      this.spanEnd = spanEnd;
       this.log = log;
+      this.pool = Preconditions.checkNotNull(pool);
+
+      this.chartSize = chart.size();
+      this.budget = Preconditions.checkNotNull(budget);
+      this.completedSpans = Preconditions.checkNotNull(completedSpans);
+
+      this.numPendingPredecessors = new AtomicIntegerArray(chartSize * chartSize);
+      for (int spanStart = 0; spanStart < chartSize; spanStart++) {
+        for (int spanEnd = spanStart + 2; spanEnd < chartSize; spanEnd++) {
+          numPendingPredecessors.set((spanStart * chartSize) + spanEnd, 2);
+        }
+      }
+      this.numRemainingSpans = new CountDownLatch((chartSize * (chartSize - 1)) / 2);
+      this.aborted = false;
+      this.error = new AtomicReference<Throwable>(null);
+    }
+
+    /**
+     * Computes all spans of the chart, blocking until they are
+     * complete. Returns {@code false} if parsing was stopped early
+     * because the budget was exhausted.
+     * 
+     * @return
+     */
+    public boolean run() {
+      for (int spanStart = 0; spanStart + 1 < chartSize; spanStart++) {
+        submit(spanStart, spanStart + 1);
+      }
+
+      try {
+        numRemainingSpans.await();
+      } catch (InterruptedException e) {
+        aborted = true;
+        throw new RuntimeException(e);
+      }
+
+      Throwable cause = error.get();
+      if (cause != null) {
+        throw new RuntimeException(cause);
+      }
+      return !aborted;
+    }
+
+    private void submit(final int spanStart, final int spanEnd) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          computeSpan(spanStart, spanEnd);
+        }
+      });
+    }
+
+    private void computeSpan(int spanStart, int spanEnd) {
+      try {
+        if (!aborted) {
+          parser.calculateInsideBeam(spanStart, spanEnd, chart, log);
+          // Read by the thread that called run() after
+          // numRemainingSpans reaches zero.
+          completedSpans[(spanStart * chartSize) + spanEnd] = true;
+
+          if (budget.checkExhausted(chart)) {
+            aborted = true;
+          }
+        }
+      } catch (Throwable t) {
+        error.compareAndSet(null, t);
+        aborted = true;
+      } finally {
+        // The successors of this span are (spanStart - 1, spanEnd)
+        // and (spanStart, spanEnd + 1). Successors are released even
+        // if parsing is aborted, so that every span eventually counts
+        // down numRemainingSpans.
+        if (spanStart > 0) {
+          release(spanStart - 1, spanEnd);
+        }
+        if (spanEnd + 1 < chartSize) {
+          release(spanStart, spanEnd + 1);
+        }
+        numRemainingSpans.countDown();
+      }
+    }
+
+    private void release(int spanStart, int spanEnd) {
+      if (numPendingPredecessors.decrementAndGet((spanStart * chartSize) + spanEnd) == 0) {
+        submit(spanStart, spanEnd);
+      }
+    }
+  }
+
+  /**
+   * Parses a single sentence of a batch using a chart from
+   * {@code chartPool}.
+   */
+  private static class BatchBeamSearchMapper extends Mapper<AnnotatedSentence, List<CcgParse>> {
+    private final CcgParser parser;
+    private final CcgBeamSearchChartPool chartPool;
+    private final ChartCost beamFilter;
+    private final LogFunction log;
+    private final long maxParseTimeMillis;
+    private final boolean useFallbackParse;
+    private final int maxChartSize;
+
+    public BatchBeamSearchMapper(CcgParser parser, CcgBeamSearchChartPool chartPool,
+        ChartCost beamFilter, LogFunction log, long maxParseTimeMillis,
+        boolean useFallbackParse, int maxChartSize) {
+      this.parser = parser;
+      this.chartPool = chartPool;
+      this.beamFilter = beamFilter;
+      this.log = log;
+      this.maxParseTimeMillis = maxParseTimeMillis;
+      this.useFallbackParse = useFallbackParse;
+      this.maxChartSize = maxChartSize;
     }
 
     @Override
-    public Void call() {
-      parser.calculateInsideBeam(spanStart, spanEnd, chart, log);
-      return null;
+    public List<CcgParse> map(AnnotatedSentence input) {
+      CcgBeamSearchChart chart = chartPool.acquire(input, maxChartSize);
+      try {
+        // The budget's time limit starts when it is constructed, so
+        // each sentence needs its own budget.
+        ParseBudget budget = new ParseBudget(maxParseTimeMillis, useFallbackParse);
+        parser.parseCommon(chart, input, beamFilter, log, budget, 1);
+        return parser.decodeBeamSearchChart(chart, chartPool.getBeamSize());
+      } finally {
+        chartPool.release(chart);
+      }
     }
   }
-}
\ No newline at end of file
+}
@@ -8,6 +8,7 @@ import com.jayantkrish.jklol.ccg.chart.SumChartCost;
 import com.jayantkrish.jklol.ccg.chart.SyntacticChartCost;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionComparator;
 import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.models.parametric.InstantiationCache;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.training.GradientOracle;
 import com.jayantkrish.jklol.training.LogFunction;
@@ -23,6 +24,10 @@ public class CcgPerceptronOracle implements GradientOracle<CcgParser, CcgExample
 
   private final double marginCost;
 
+  // If non-null, used to reuse unchanged parser components across
+  // calls to instantiateModel.
+  private final InstantiationCache instantiationCache;
+
   /**
    * Create a gradient oracle for training a CCG with either 
    * a max-margin or perceptron objective.
@@ -36,11 +41,30 @@ public class CcgPerceptronOracle implements GradientOracle<CcgParser, CcgExample
    */
   public CcgPerceptronOracle(ParametricCcgParser family, ExpressionComparator comparator,
       CcgInference inferenceAlgorithm, double marginCost) {
+    this(family, comparator, inferenceAlgorithm, marginCost, false);
+  }
+
+  /**
+   * Same as the other constructor, except that if
+   * {@code incrementalInstantiation} is {@code true},
+   * {@link #instantiateModel} only rebuilds the components of the
+   * parser whose parameters have changed since the previous call.
+   * See {@link ParametricCcgParser#getModelFromParameters(SufficientStatistics, InstantiationCache)}.
+   * 
+   * @param family
+   * @param comparator
+   * @param inferenceAlgorithm
+   * @param marginCost
+   * @param incrementalInstantiation
+   */
+  public CcgPerceptronOracle(ParametricCcgParser family, ExpressionComparator comparator,
+      CcgInference inferenceAlgorithm, double marginCost, boolean incrementalInstantiation) {
     this.family = Preconditions.checkNotNull(family);
     this.comparator = comparator;
     this.inferenceAlgorithm = Preconditions.checkNotNull(inferenceAlgorithm);
 
     this.marginCost = marginCost;
+    this.instantiationCache = incrementalInstantiation ? new InstantiationCache() : null;
   }
 
   @Override
@@ -50,7 +74,7 @@ public class CcgPerceptronOracle implements GradientOracle<CcgParser, CcgExample
 
   @Override
   public CcgParser instantiateModel(SufficientStatistics parameters) {
-    return family.getModelFromParameters(parameters);
+    return family.getModelFromParameters(parameters, instantiationCache);
   }
 
   @Override
@@ -8,6 +8,7 @@ import java.util.Map;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -24,11 +25,12 @@ import com.jayantkrish.jklol.models.TableFactorBuilder;
 import com.jayantkrish.jklol.models.VariableNumMap;
 import com.jayantkrish.jklol.models.loglinear.DiscreteLogLinearFactor;
 import com.jayantkrish.jklol.models.parametric.ListSufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.InstantiationCache;
 import com.jayantkrish.jklol.models.parametric.ParametricFactor;
 import com.jayantkrish.jklol.models.parametric.ParametricFamily;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
-import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
+import com.jayantkrish.jklol.tensor.HashSparseTensorBuilder;
 import com.jayantkrish.jklol.util.Assignment;
 import com.jayantkrish.jklol.util.IndexedList;
 
@@ -115,6 +117,9 @@ public class ParametricCcgParser implements ParametricFamily<CcgParser> {
   public static final String ROOT_SYNTAX_PARAMETERS = "rootSyntax";
   public static final String HEADED_ROOT_SYNTAX_PARAMETERS = "headedRootSyntax";
 
+  // Key for the complete parser in an InstantiationCache.
+  private static final String PARSER_CACHE_KEY = "parser";
+
   /**
    * Default part-of-speech tag.
    */
@@ -346,7 +351,7 @@ public class ParametricCcgParser implements ParametricFamily<CcgParser> {
     DiscreteVariable posType = new DiscreteVariable("pos", posTagSet);
     VariableNumMap posVar = VariableNumMap.singleton(0, "pos", posType);
 
-    TableFactorBuilder terminalBuilder = new TableFactorBuilder(terminalWordVars, SparseTensorBuilder.getFactory());
+    TableFactorBuilder terminalBuilder = new TableFactorBuilder(terminalWordVars, HashSparseTensorBuilder.getFactory());
     for (LexiconEntry lexiconEntry : lexiconEntries) {
       List<String> lexiconWords = lexiconEntry.getWords();
       for (String word : lexiconWords) {
@@ -359,7 +364,7 @@ public class ParametricCcgParser implements ParametricFamily<CcgParser> {
 
     VariableNumMap posTerminalVars = VariableNumMap.unionAll(posVar, ccgCategoryVar); 
     TableFactorBuilder unknownTerminalBuilder = new TableFactorBuilder(posTerminalVars,
-        SparseTensorBuilder.getFactory());
+        HashSparseTensorBuilder.getFactory());
     for (LexiconEntry unknownLexiconEntry : unknownLexiconEntries) {
       List<String> lexiconWords = unknownLexiconEntry.getWords();
       Preconditions.checkArgument(lexiconWords.size() == 1);
@@ -541,50 +546,83 @@ public class ParametricCcgParser implements ParametricFamily<CcgParser> {
    */
   @Override
   public CcgParser getModelFromParameters(SufficientStatistics parameters) {
+    return getModelFromParameters(parameters, null);
+  }
+
+  /**
+   * Instantiates a {@code CcgParser} whose probability distributions
+   * are derived from {@code parameters}. If {@code cache} is
+   * non-null, components of the parser (e.g., lexicons and
+   * distributions) whose parameters have not changed since the
+   * previous call with the same {@code cache} are reused rather than
+   * rebuilt, and the previous parser is returned if no component
+   * changed. This is useful during training, where many components
+   * may not change between iterations.
+   * 
+   * @param parameters
+   * @param cache may be {@code null}.
+   * @return
+   */
+  public CcgParser getModelFromParameters(final SufficientStatistics parameters,
+      final InstantiationCache cache) {
+    if (cache == null) {
+      return buildParser(parameters, null);
+    }
+
+    // Reuse the entire parser if none of its components changed.
+    return cache.getModel(PARSER_CACHE_KEY, parameters, new Supplier<CcgParser>() {
+      @Override
+      public CcgParser get() {
+        return buildParser(parameters, cache);
+      }
+    });
+  }
+
+  private CcgParser buildParser(SufficientStatistics parameters, InstantiationCache cache) {
     ListSufficientStatistics parameterList = parameters.coerceToList();
     
     List<SufficientStatistics> lexiconParameterList = parameterList
         .getStatisticByName(LEXICON_PARAMETERS).coerceToList().getStatistics();
     List<CcgLexicon> lexicons = Lists.newArrayList();
     for (int i = 0; i < lexiconFamilies.size(); i++) {
-      lexicons.add(lexiconFamilies.get(i).getModelFromParameters(lexiconParameterList.get(i)));
+      lexicons.add(getComponent(LEXICON_PARAMETERS + i, lexiconFamilies.get(i),
+          lexiconParameterList.get(i), cache));
     }
     
     List<SufficientStatistics> lexiconScorerParameterList = parameterList
         .getStatisticByName(LEXICON_SCORER_PARAMETERS).coerceToList().getStatistics();
     List<LexiconScorer> lexiconScorers = Lists.newArrayList();
     for (int i = 0; i < lexiconScorerFamilies.size(); i++) {
-      lexiconScorers.add(lexiconScorerFamilies.get(i).getModelFromParameters(
-          lexiconScorerParameterList.get(i)));
+      lexiconScorers.add(getComponent(LEXICON_SCORER_PARAMETERS + i, lexiconScorerFamilies.get(i),
+          lexiconScorerParameterList.get(i), cache));
     }
     
     DiscreteFactor wordSkipFactor = null;
     if (wordSkipFamily != null) {
-      wordSkipFactor = wordSkipFamily.getModelFromParameters(
-          parameterList.getStatisticByName(WORD_SKIP_PARAMETERS)).coerceToDiscrete();
+      wordSkipFactor = getFactor(WORD_SKIP_PARAMETERS, wordSkipFamily, parameterList, cache);
     }
 
-    DiscreteFactor dependencyDistribution = dependencyFamily.getModelFromParameters(
-        parameterList.getStatisticByName(DEPENDENCY_PARAMETERS)).coerceToDiscrete();
+    DiscreteFactor dependencyDistribution = getFactor(DEPENDENCY_PARAMETERS, dependencyFamily,
+        parameterList, cache);
 
-    DiscreteFactor wordDistanceDistribution = wordDistanceFamily.getModelFromParameters(
-        parameterList.getStatisticByName(WORD_DISTANCE_PARAMETERS)).coerceToDiscrete();
-    DiscreteFactor puncDistanceDistribution = puncDistanceFamily.getModelFromParameters(
-        parameterList.getStatisticByName(PUNC_DISTANCE_PARAMETERS)).coerceToDiscrete();
-    DiscreteFactor verbDistanceDistribution = verbDistanceFamily.getModelFromParameters(
-        parameterList.getStatisticByName(VERB_DISTANCE_PARAMETERS)).coerceToDiscrete();
+    DiscreteFactor wordDistanceDistribution = getFactor(WORD_DISTANCE_PARAMETERS,
+        wordDistanceFamily, parameterList, cache);
+    DiscreteFactor puncDistanceDistribution = getFactor(PUNC_DISTANCE_PARAMETERS,
+        puncDistanceFamily, parameterList, cache);
+    DiscreteFactor verbDistanceDistribution = getFactor(VERB_DISTANCE_PARAMETERS,
+        verbDistanceFamily, parameterList, cache);
 
-    DiscreteFactor syntaxDistribution = syntaxFamily.getModelFromParameters(
-        parameterList.getStatisticByName(SYNTAX_PARAMETERS)).coerceToDiscrete();
-    DiscreteFactor unaryRuleDistribution = unaryRuleFamily.getModelFromParameters(
-        parameterList.getStatisticByName(UNARY_RULE_PARAMETERS)).coerceToDiscrete();
-    DiscreteFactor headedSyntaxDistribution = headedBinaryRuleFamily.getModelFromParameters(
-        parameterList.getStatisticByName(HEADED_SYNTAX_PARAMETERS)).coerceToDiscrete();
+    DiscreteFactor syntaxDistribution = getFactor(SYNTAX_PARAMETERS, syntaxFamily,
+        parameterList, cache);
+    DiscreteFactor unaryRuleDistribution = getFactor(UNARY_RULE_PARAMETERS, unaryRuleFamily,
+        parameterList, cache);
+    DiscreteFactor headedSyntaxDistribution = getFactor(HEADED_SYNTAX_PARAMETERS,
+        headedBinaryRuleFamily, parameterList, cache);
 
-    DiscreteFactor rootSyntaxDistribution = rootSyntaxFamily.getModelFromParameters(
-        parameterList.getStatisticByName(ROOT_SYNTAX_PARAMETERS)).coerceToDiscrete();
-    DiscreteFactor headedRootSyntaxDistribution = headedRootSyntaxFamily.getModelFromParameters(
-        parameterList.getStatisticByName(HEADED_ROOT_SYNTAX_PARAMETERS)).coerceToDiscrete();
+    DiscreteFactor rootSyntaxDistribution = getFactor(ROOT_SYNTAX_PARAMETERS, rootSyntaxFamily,
+        parameterList, cache);
+    DiscreteFactor headedRootSyntaxDistribution = getFactor(HEADED_ROOT_SYNTAX_PARAMETERS,
+        headedRootSyntaxFamily, parameterList, cache);
 
     return new CcgParser(lexicons, lexiconScorers, wordSkipWordVar, wordSkipFactor,
         dependencyHeadVar, dependencySyntaxVar, dependencyArgNumVar, dependencyArgVar,
@@ -598,6 +636,21 @@ public class ParametricCcgParser implements ParametricFamily<CcgParser> {
         headedRootSyntaxDistribution, normalFormOnly);
   }
 
+  private static <T> T getComponent(String name, ParametricFamily<T> family,
+      SufficientStatistics parameters, InstantiationCache cache) {
+    if (cache == null) {
+      return family.getModelFromParameters(parameters);
+    } else {
+      return cache.<T>getModel(name, family, parameters);
+    }
+  }
+
+  private static DiscreteFactor getFactor(String name, ParametricFactor family,
+      ListSufficientStatistics parameterList, InstantiationCache cache) {
+    return getComponent(name, family, parameterList.getStatisticByName(name), cache)
+        .coerceToDiscrete();
+  }
+
   /**
    * Increments {@code gradient} by
    * {@code count * features(dependency)} for all dependency
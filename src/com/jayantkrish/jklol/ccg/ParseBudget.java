@@ -0,0 +1,129 @@
+package com.jayantkrish.jklol.ccg;
+
+import com.jayantkrish.jklol.ccg.chart.CcgChart;
+
+/**
+ * Limits on the work performed while parsing a single sentence. A
+ * budget is exhausted when parsing exceeds its time limit, when the
+ * chart exceeds its maximum number of entries, or when another thread
+ * calls {@link #cancel()}. {@link CcgParser} checks the budget once
+ * per left entry of each binary rule application, so parsing stops
+ * shortly after the budget is exhausted, even in the middle of a
+ * span.
+ * <p>
+ * If {@code useFallbackParse} is set, a parse whose budget is
+ * exhausted is completed greedily, by combining only the single best
+ * entry of every subspan that was not fully searched. The fallback
+ * still considers every split point of every remaining span, so its
+ * running time is cubic in the sentence length, but each split
+ * combines only two entries. The fallback parse is itself limited
+ * by {@link #getFallbackBudget()}, and produces no parse if that
+ * budget is exhausted.
+ *
+ * @author jayantk
+ */
+public class ParseBudget {
+
+  // The fallback parse may use this multiple of the original
+  // time limit and number of chart entries.
+  private static final int FALLBACK_BUDGET_MULTIPLE = 2;
+
+  private final long maxParseTimeMillis;
+  private final long deadlineNanos;
+  private final boolean useFallbackParse;
+  // The chart may contain this multiple of its maximum number
+  // of entries before the budget is exhausted.
+  private final int chartSizeMultiple;
+
+  private volatile boolean exhausted;
+
+  /**
+   * Creates a budget whose time limit begins when this constructor
+   * is invoked.
+   *
+   * @param maxParseTimeMillis (Approximate) maximum amount of time to
+   * spend parsing. If negative, there is no time limit.
+   * @param useFallbackParse if {@code true}, greedily complete the
+   * parse once the budget is exhausted.
+   */
+  public ParseBudget(long maxParseTimeMillis, boolean useFallbackParse) {
+    this(maxParseTimeMillis, useFallbackParse, 1);
+  }
+
+  private ParseBudget(long maxParseTimeMillis, boolean useFallbackParse,
+      int chartSizeMultiple) {
+    this.maxParseTimeMillis = maxParseTimeMillis;
+    this.deadlineNanos = System.nanoTime() + (maxParseTimeMillis * 1000000L);
+    this.useFallbackParse = useFallbackParse;
+    this.chartSizeMultiple = chartSizeMultiple;
+    this.exhausted = false;
+  }
+
+  /**
+   * Gets a budget with no time limit.
+   *
+   * @return
+   */
+  public static ParseBudget unlimited() {
+    return new ParseBudget(-1, false);
+  }
+
+  public boolean useFallbackParse() {
+    return useFallbackParse;
+  }
+
+  /**
+   * Gets the budget for the fallback parse that completes a parse
+   * whose budget was exhausted. The fallback's time limit begins
+   * when this method is invoked and is a fixed multiple of this
+   * budget's time limit; the chart may also grow by a fixed multiple
+   * of its maximum number of entries. The returned budget is
+   * independent of this one, so cancelling this budget does not
+   * cancel the fallback.
+   *
+   * @return
+   */
+  public ParseBudget getFallbackBudget() {
+    long fallbackTimeMillis = maxParseTimeMillis >= 0 ?
+        maxParseTimeMillis * FALLBACK_BUDGET_MULTIPLE : -1;
+    return new ParseBudget(fallbackTimeMillis, false,
+        chartSizeMultiple + FALLBACK_BUDGET_MULTIPLE);
+  }
+
+  /**
+   * Returns {@code true} if this budget has been exhausted, checking
+   * the clock and {@code chart}'s size. This method reads no
+   * mutable shared state other than the exhausted flag, so multiple
+   * threads can check the same budget without contention.
+   *
+   * @param chart
+   * @return
+   */
+  public boolean checkExhausted(CcgChart chart) {
+    if (!exhausted) {
+      if ((maxParseTimeMillis >= 0 && System.nanoTime() - deadlineNanos > 0)
+          || chart.getTotalNumChartEntries() > ((long) chart.getMaxChartEntries()) * chartSizeMultiple) {
+        exhausted = true;
+      }
+    }
+    return exhausted;
+  }
+
+  /**
+   * Exhausts this budget, causing any parse using it to stop as soon
+   * as possible. This method may be called from any thread.
+   */
+  public void cancel() {
+    exhausted = true;
+  }
+
+  /**
+   * Returns {@code true} if this budget was exhausted by a
+   * previous check or by {@link #cancel()}.
+   *
+   * @return
+   */
+  public boolean isExhausted() {
+    return exhausted;
+  }
+}
@@ -9,6 +9,7 @@ import com.jayantkrish.jklol.ccg.CcgParse;
 import com.jayantkrish.jklol.ccg.CcgParser;
 import com.jayantkrish.jklol.ccg.HeadedSyntacticCategory;
 import com.jayantkrish.jklol.ccg.LexiconEntryInfo;
+import com.jayantkrish.jklol.ccg.ParseBudget;
 import com.jayantkrish.jklol.models.DiscreteFactor;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
@@ -50,6 +51,7 @@ public abstract class AbstractCcgChart implements CcgChart {
   private double[] depProbCache;
 
   private boolean finishedParsing;
+  private ParseBudget parseBudget;
 
   public AbstractCcgChart(AnnotatedSentence input, int maxChartSize) {
     this.input = input;
@@ -61,6 +63,7 @@ public abstract class AbstractCcgChart implements CcgChart {
     // left null, and must be manually set.
 
     this.finishedParsing = false;
+    this.parseBudget = null;
   }
 
   @Override
@@ -217,6 +220,16 @@ public abstract class AbstractCcgChart implements CcgChart {
     this.finishedParsing = finished;
   }
 
+  @Override
+  public final ParseBudget getParseBudget() {
+    return parseBudget;
+  }
+
+  @Override
+  public final void setParseBudget(ParseBudget parseBudget) {
+    this.parseBudget = parseBudget;
+  }
+
   /**
    * Decodes the CCG parse which is the {@code beamIndex}'th parse in
    * the beam for the given span.
@@ -229,7 +242,7 @@ public abstract class AbstractCcgChart implements CcgChart {
    */
   public CcgParse decodeParseFromSpan(int spanStart, int spanEnd, int beamIndex, CcgParser parser) {
     DiscreteVariable syntaxVarType = parser.getSyntaxVarType();
-    ChartEntry entry = getChartEntriesForSpan(spanStart, spanEnd)[beamIndex];
+    ChartEntry entry = getChartEntryForSpan(spanStart, spanEnd, beamIndex);
     HeadedSyntacticCategory syntax = (HeadedSyntacticCategory) syntaxVarType.getValue(
         entry.getHeadedSyntax());
 
@@ -272,6 +285,21 @@ public abstract class AbstractCcgChart implements CcgChart {
     }
   }
 
+  /**
+   * Gets the {@code index}'th chart entry spanning {@code spanStart}
+   * to {@code spanEnd}. Charts that do not store {@code ChartEntry}
+   * objects can override this method to avoid creating all of the
+   * span's entries.
+   * 
+   * @param spanStart
+   * @param spanEnd
+   * @param index
+   * @return
+   */
+  protected ChartEntry getChartEntryForSpan(int spanStart, int spanEnd, int index) {
+    return getChartEntriesForSpan(spanStart, spanEnd)[index];
+  }
+
   protected  IntMultimap aggregateBySyntacticType(ChartEntry[] entries, int numEntries) {
     int[] keys = new int[numEntries];
     int[] values = new int[numEntries];
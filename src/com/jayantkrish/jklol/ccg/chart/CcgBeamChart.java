@@ -0,0 +1,37 @@
+package com.jayantkrish.jklol.ccg.chart;
+
+import java.util.List;
+
+import com.jayantkrish.jklol.ccg.CcgParse;
+import com.jayantkrish.jklol.ccg.CcgParser;
+
+/**
+ * A chart for beam search, which retains at most
+ * {@link #getBeamSize()} entries per span and can decode the best
+ * several parses of any span.
+ *
+ * @author jayantk
+ */
+public interface CcgBeamChart extends CcgChart {
+
+  /**
+   * Gets the size of the beam, which is the maximum number of parses
+   * to retain any span during beam search.
+   *
+   * @return
+   */
+  public int getBeamSize();
+
+  /**
+   * Gets the {@code numParses} best CCG parses spanning
+   * {@code spanStart} to {@code spanEnd}.
+   *
+   * @param spanStart
+   * @param spanEnd
+   * @param numParses
+   * @param parser
+   * @return
+   */
+  public List<CcgParse> decodeBestParsesForSpan(int spanStart, int spanEnd, int numParses,
+      CcgParser parser);
+}
@@ -4,6 +4,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.jayantkrish.jklol.ccg.CcgParse;
@@ -19,7 +20,7 @@ import com.jayantkrish.jklol.util.IntMultimap;
  * 
  * @author jayant
  */
-public class CcgBeamSearchChart extends AbstractCcgChart {
+public class CcgBeamSearchChart extends AbstractCcgChart implements CcgBeamChart {
 
   private final int beamSize;
   private final int numTerminals;
@@ -41,26 +42,106 @@ public class CcgBeamSearchChart extends AbstractCcgChart {
    * @param beamSize
    */
   public CcgBeamSearchChart(AnnotatedSentence sentence, int maxChartSize, int beamSize) {
+    this(sentence, maxChartSize, beamSize, sentence.size());
+  }
+
+  /**
+   * Creates a CCG chart whose storage can hold sentences with up to
+   * {@code capacity} terminals. The chart's storage can be reused
+   * to parse any such sentence (see
+   * {@link #CcgBeamSearchChart(AnnotatedSentence, int, CcgBeamSearchChart)}).
+   * 
+   * @param sentence
+   * @param maxChartSize
+   * @param beamSize
+   * @param capacity
+   */
+  public CcgBeamSearchChart(AnnotatedSentence sentence, int maxChartSize, int beamSize,
+      int capacity) {
     super(sentence, maxChartSize);
+    Preconditions.checkArgument(capacity >= sentence.size());
     this.beamSize = beamSize;
 
     numTerminals = sentence.size();
-    this.chart = new ChartEntry[numTerminals][numTerminals][beamSize + 1];
-    this.probabilities = new double[numTerminals][numTerminals][beamSize + 1];
-    this.chartSizes = new int[numTerminals * numTerminals];
+    this.chart = new ChartEntry[capacity][capacity][beamSize + 1];
+    this.probabilities = new double[capacity][capacity][beamSize + 1];
+    this.chartSizes = new int[capacity * capacity];
     Arrays.fill(chartSizes, 0);
 
-    this.chartEntriesBySyntacticCategory = new IntMultimap[numTerminals][numTerminals];
+    this.chartEntriesBySyntacticCategory = new IntMultimap[capacity][capacity];
 
     this.totalChartSize = 0;
   }
 
+  /**
+   * Creates a CCG chart for {@code sentence} that reuses the storage
+   * (including the parser's accumulators) of {@code recycled}, which
+   * avoids reallocating the chart's arrays. {@code sentence} must
+   * fit within the capacity of {@code recycled}, and
+   * {@code recycled} must not be used after calling this
+   * constructor.
+   * 
+   * @param sentence
+   * @param maxChartSize
+   * @param recycled
+   */
+  public CcgBeamSearchChart(AnnotatedSentence sentence, int maxChartSize,
+      CcgBeamSearchChart recycled) {
+    super(sentence, maxChartSize);
+    Preconditions.checkArgument(sentence.size() <= recycled.getCapacity(),
+        "Sentence of length %s exceeds chart capacity %s", sentence.size(), recycled.getCapacity());
+    this.beamSize = recycled.beamSize;
+    this.numTerminals = sentence.size();
+    this.chart = recycled.chart;
+    this.probabilities = recycled.probabilities;
+    this.chartSizes = recycled.chartSizes;
+    this.chartEntriesBySyntacticCategory = recycled.chartEntriesBySyntacticCategory;
+    this.totalChartSize = 0;
+
+    // Clear only the portion of the storage used by the previous
+    // sentence. Stale probabilities are never read, since they lie
+    // beyond the number of entries for each span.
+    int oldNumTerminals = recycled.numTerminals;
+    for (int i = 0; i < oldNumTerminals; i++) {
+      for (int j = i; j < oldNumTerminals; j++) {
+        Arrays.fill(chart[i][j], null);
+        chartEntriesBySyntacticCategory[i][j] = null;
+      }
+    }
+    Arrays.fill(chartSizes, 0, oldNumTerminals * oldNumTerminals, 0);
+
+    // The accumulators are scratch space, but the dependency caches
+    // depend on the sentence and must be reset.
+    if (recycled.getAssignmentAccumulator() != null) {
+      setAssignmentVarIndexAccumulator(recycled.getAssignmentVarIndexAccumulator());
+      setAssignmentAccumulator(recycled.getAssignmentAccumulator());
+      setFilledDepAccumulator(recycled.getFilledDepAccumulator());
+      setUnfilledDepVarIndexAccumulator(recycled.getUnfilledDepVarIndexAccumulator());
+      setUnfilledDepAccumulator(recycled.getUnfilledDepAccumulator());
+      Arrays.fill(recycled.getDepLongCache(), 0L);
+      Arrays.fill(recycled.getDepProbCache(), 0.0);
+      setDepLongCache(recycled.getDepLongCache());
+      setDepProbCache(recycled.getDepProbCache());
+    }
+  }
+
+  /**
+   * Gets the maximum number of terminals that this chart's storage
+   * can accommodate.
+   * 
+   * @return
+   */
+  public int getCapacity() {
+    return chart.length;
+  }
+
   /**
    * Gets the size of the beam, which is the maximum number of parses
    * to retain any span during beam search.
    * 
    * @return
    */
+  @Override
   public int getBeamSize() {
     return beamSize;
   }
@@ -75,6 +156,7 @@ public class CcgBeamSearchChart extends AbstractCcgChart {
    * @param parser
    * @return
    */
+  @Override
   public List<CcgParse> decodeBestParsesForSpan(int spanStart, int spanEnd, int numParses,
       CcgParser parser) {
     // Perform a heap sort on the array indexes paired with the
@@ -0,0 +1,134 @@
+package com.jayantkrish.jklol.ccg.chart;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+
+/**
+ * A pool of {@code CcgBeamSearchChart}s whose storage is reused
+ * across sentences. Allocating a chart's storage is expensive for
+ * short sentences, where it may dominate the cost of parsing;
+ * recycling charts avoids this allocation (and the resulting garbage
+ * collection) when many sentences are parsed.
+ * <p>
+ * Charts are pooled by capacity, where capacities are sentence
+ * lengths rounded up to a multiple of {@code capacityIncrement}. The
+ * pool retains at most {@code maxPooledCharts} charts; charts
+ * released beyond this limit are discarded. Pools are intended to be
+ * scoped to a batch of sentences, and {@link #clear()} releases all
+ * of the pooled storage.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author jayantk
+ */
+public class CcgBeamSearchChartPool {
+
+  private final int beamSize;
+  private final int capacityIncrement;
+  private final int maxPooledCharts;
+
+  private final ConcurrentMap<Integer, Queue<CcgBeamSearchChart>> charts;
+  // Approximate number of charts in charts. This count may
+  // briefly exceed the true number while charts are released.
+  private final AtomicInteger numPooledCharts;
+
+  public CcgBeamSearchChartPool(int beamSize, int capacityIncrement, int maxPooledCharts) {
+    Preconditions.checkArgument(beamSize > 0);
+    Preconditions.checkArgument(capacityIncrement > 0);
+    Preconditions.checkArgument(maxPooledCharts >= 0);
+    this.beamSize = beamSize;
+    this.capacityIncrement = capacityIncrement;
+    this.maxPooledCharts = maxPooledCharts;
+    this.charts = Maps.newConcurrentMap();
+    this.numPooledCharts = new AtomicInteger(0);
+  }
+
+  public int getBeamSize() {
+    return beamSize;
+  }
+
+  /**
+   * Gets the number of charts currently retained by this pool.
+   *
+   * @return
+   */
+  public int getNumPooledCharts() {
+    return numPooledCharts.get();
+  }
+
+  /**
+   * Gets an empty chart for parsing {@code sentence}, reusing the
+   * storage of a previously released chart if one of the appropriate
+   * capacity is available. The returned chart should be returned
+   * to the pool using {@link #release} after parsing.
+   *
+   * @param sentence
+   * @param maxChartSize
+   * @return
+   */
+  public CcgBeamSearchChart acquire(AnnotatedSentence sentence, int maxChartSize) {
+    int capacity = getCapacity(sentence.size());
+    // Remove the chart from the pool, so that concurrent or nested
+    // acquisitions never share storage.
+    Queue<CcgBeamSearchChart> queue = charts.get(capacity);
+    CcgBeamSearchChart recycled = queue != null ? queue.poll() : null;
+    if (recycled != null) {
+      numPooledCharts.decrementAndGet();
+      return new CcgBeamSearchChart(sentence, maxChartSize, recycled);
+    } else {
+      return new CcgBeamSearchChart(sentence, maxChartSize, beamSize, capacity);
+    }
+  }
+
+  /**
+   * Returns {@code chart} to this pool, making its storage available
+   * to future calls to {@link #acquire}. {@code chart} must not be
+   * used after it is released.
+   *
+   * @param chart
+   */
+  public void release(CcgBeamSearchChart chart) {
+    Preconditions.checkArgument(chart.getBeamSize() == beamSize);
+    int capacity = chart.getCapacity();
+    if (capacity != getCapacity(capacity)) {
+      return;
+    }
+
+    if (numPooledCharts.incrementAndGet() > maxPooledCharts) {
+      numPooledCharts.decrementAndGet();
+      return;
+    }
+
+    Queue<CcgBeamSearchChart> queue = charts.get(capacity);
+    if (queue == null) {
+      Queue<CcgBeamSearchChart> newQueue = new ConcurrentLinkedQueue<CcgBeamSearchChart>();
+      queue = charts.putIfAbsent(capacity, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    queue.offer(chart);
+  }
+
+  /**
+   * Discards all of the charts in this pool.
+   */
+  public void clear() {
+    for (Queue<CcgBeamSearchChart> queue : charts.values()) {
+      while (queue.poll() != null) {
+        numPooledCharts.decrementAndGet();
+      }
+    }
+  }
+
+  private int getCapacity(int sentenceLength) {
+    int numIncrements = (Math.max(sentenceLength, 1) + capacityIncrement - 1) / capacityIncrement;
+    return numIncrements * capacityIncrement;
+  }
+}
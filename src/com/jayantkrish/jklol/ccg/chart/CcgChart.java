@@ -4,6 +4,7 @@ import java.util.List;
 
 import com.jayantkrish.jklol.ccg.CcgParse;
 import com.jayantkrish.jklol.ccg.CcgParser;
+import com.jayantkrish.jklol.ccg.ParseBudget;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
 import com.jayantkrish.jklol.util.IntMultimap;
@@ -196,4 +197,14 @@ public interface CcgChart {
   public boolean isFinishedParsing();
   
   public void setFinishedParsing(boolean finished);
+
+  /**
+   * Gets the budget of the parse currently using this chart, or
+   * {@code null} if the parse is unlimited.
+   * 
+   * @return
+   */
+  public ParseBudget getParseBudget();
+
+  public void setParseBudget(ParseBudget budget);
 }
\ No newline at end of file
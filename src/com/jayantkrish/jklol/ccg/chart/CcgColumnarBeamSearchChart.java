@@ -0,0 +1,804 @@
+package com.jayantkrish.jklol.ccg.chart;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.ccg.CcgCategory;
+import com.jayantkrish.jklol.ccg.CcgParse;
+import com.jayantkrish.jklol.ccg.CcgParser;
+import com.jayantkrish.jklol.ccg.Combinator;
+import com.jayantkrish.jklol.ccg.UnaryCombinator;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.util.ArrayUtils;
+import com.jayantkrish.jklol.util.HeapUtils;
+import com.jayantkrish.jklol.util.IntMultimap;
+
+/**
+ * A beam search chart that stores chart entries in flat, per-span
+ * columns instead of as {@code ChartEntry} objects. Each span has
+ * one column for each scalar value of a chart entry (e.g., the
+ * syntactic category, the backpointers, etc.). The variable-length
+ * values of an entry (its unique variables, assignments, unfilled
+ * dependencies and filled dependencies) are stored as ranges of
+ * two primitive arrays that are shared by every entry in the span.
+ * <p>
+ * {@link CcgParser} reads the entries of this chart directly from
+ * its columns (see {@link #getColumnsForSpan}), and writes the
+ * entries it derives directly into them, so parsing with this chart
+ * retains a small, constant number of objects per span and creates
+ * no objects per chart entry. This considerably reduces memory
+ * usage and garbage collection time when parsing long sentences
+ * with large beams.
+ * <p>
+ * The {@code ChartEntry}s returned by this chart, e.g., by
+ * {@link #getChartEntriesForSpan}, are copies of the stored entries.
+ * Creating these copies is slow, so these methods should only be
+ * used outside of the parser's inner loop, e.g., when decoding
+ * parses.
+ *
+ * @author jayantk
+ */
+public class CcgColumnarBeamSearchChart extends AbstractCcgChart implements CcgBeamChart {
+
+  private final int beamSize;
+  private final int numTerminals;
+
+  // Indexed by spanEnd + (numTerminals * spanStart). The columns of
+  // a span are created when its first entry is added.
+  private final SpanColumns[] spans;
+  private final IntMultimap[] chartEntriesBySyntacticCategory;
+
+  // Copies of each span's entries created by getChartEntriesForSpan.
+  // A span's copies are discarded when the span is modified.
+  private final ChartEntry[][] chartEntryCopies;
+
+  private int totalChartSize;
+
+  // The initial number of slots in the columns of each span.
+  private static final int INITIAL_NUM_SLOTS = 8;
+
+  private static final double[] EMPTY_PROBS = new double[0];
+  private static final ChartEntry[] EMPTY_ENTRIES = new ChartEntry[0];
+
+  public CcgColumnarBeamSearchChart(AnnotatedSentence sentence, int maxChartSize, int beamSize) {
+    super(sentence, maxChartSize);
+    this.beamSize = beamSize;
+    this.numTerminals = sentence.size();
+
+    this.spans = new SpanColumns[numTerminals * numTerminals];
+    this.chartEntriesBySyntacticCategory = new IntMultimap[numTerminals * numTerminals];
+    this.chartEntryCopies = new ChartEntry[numTerminals * numTerminals][];
+    this.totalChartSize = 0;
+  }
+
+  /**
+   * Gets the size of the beam, which is the maximum number of parses
+   * to retain any span during beam search.
+   *
+   * @return
+   */
+  @Override
+  public int getBeamSize() {
+    return beamSize;
+  }
+
+  /**
+   * Gets the columns storing the chart entries spanning
+   * {@code spanStart} to {@code spanEnd}, or {@code null} if no
+   * entries have been added to the span. The returned columns are
+   * only valid until the span is next modified.
+   *
+   * @param spanStart
+   * @param spanEnd
+   * @return
+   */
+  public SpanColumns getColumnsForSpan(int spanStart, int spanEnd) {
+    return spans[spanEnd + (numTerminals * spanStart)];
+  }
+
+  /**
+   * Gets the {@code numParses} best CCG parses spanning
+   * {@code spanStart} to {@code spanEnd}.
+   *
+   * @param spanStart
+   * @param spanEnd
+   * @param numParses
+   * @param parser
+   * @return
+   */
+  @Override
+  public List<CcgParse> decodeBestParsesForSpan(int spanStart, int spanEnd, int numParses,
+      CcgParser parser) {
+    // Perform a heap sort on the array indexes paired with the
+    // probabilities.
+    int numChartEntries = getNumChartEntriesForSpan(spanStart, spanEnd);
+    double[] probsCopy = ArrayUtils.copyOf(getChartEntryProbsForSpan(spanStart, spanEnd),
+        numChartEntries);
+    Integer[] chartEntryIndexes = new Integer[numChartEntries];
+    for (int i = 0; i < chartEntryIndexes.length; i++) {
+      chartEntryIndexes[i] = i;
+    }
+
+    // Heaps are min-heaps, so we throw away the initial entries.
+    // Then the remaining entries are the best parses.
+    List<CcgParse> bestParses = Lists.newArrayList();
+    while (numChartEntries > 0) {
+      if (numChartEntries <= numParses) {
+        bestParses.add(decodeParseFromSpan(spanStart, spanEnd, chartEntryIndexes[0], parser));
+      }
+
+      HeapUtils.removeMin(chartEntryIndexes, probsCopy, numChartEntries);
+      numChartEntries--;
+    }
+
+    Collections.reverse(bestParses);
+    return bestParses;
+  }
+
+  @Override
+  public CcgParse decodeBestParse(CcgParser parser) {
+    List<CcgParse> bestParses = decodeBestParsesForSpan(0, size() - 1, 1, parser);
+    return Iterables.getFirst(bestParses, null);
+  }
+
+  @Override
+  public ChartEntry[] getChartEntriesForSpan(int spanStart, int spanEnd) {
+    int spanIndex = spanEnd + (numTerminals * spanStart);
+    SpanColumns columns = spans[spanIndex];
+    if (columns == null) {
+      return EMPTY_ENTRIES;
+    }
+
+    if (chartEntryCopies[spanIndex] == null) {
+      ChartEntry[] copies = new ChartEntry[columns.size];
+      for (int i = 0; i < copies.length; i++) {
+        copies[i] = columns.getChartEntry(columns.getSlot(i));
+      }
+      chartEntryCopies[spanIndex] = copies;
+    }
+    return chartEntryCopies[spanIndex];
+  }
+
+  @Override
+  protected ChartEntry getChartEntryForSpan(int spanStart, int spanEnd, int index) {
+    SpanColumns columns = spans[spanEnd + (numTerminals * spanStart)];
+    return columns.getChartEntry(columns.getSlot(index));
+  }
+
+  @Override
+  public double[] getChartEntryProbsForSpan(int spanStart, int spanEnd) {
+    SpanColumns columns = spans[spanEnd + (numTerminals * spanStart)];
+    return columns == null ? EMPTY_PROBS : columns.probabilities;
+  }
+
+  @Override
+  public IntMultimap getChartEntriesBySyntacticCategoryForSpan(int spanStart, int spanEnd) {
+    return chartEntriesBySyntacticCategory[spanEnd + (numTerminals * spanStart)];
+  }
+
+  @Override
+  public int getNumChartEntriesForSpan(int spanStart, int spanEnd) {
+    SpanColumns columns = spans[spanEnd + (numTerminals * spanStart)];
+    return columns == null ? 0 : columns.size;
+  }
+
+  @Override
+  public int getTotalNumChartEntries() {
+    return totalChartSize;
+  }
+
+  @Override
+  public void addChartEntryForSpan(ChartEntry entry, double probability, int spanStart,
+      int spanEnd, DiscreteVariable syntaxVarType) {
+    if (entryFilter != null) {
+      probability *= Math.exp(entryFilter.apply(entry, spanStart, spanEnd, numTerminals, syntaxVarType));
+    }
+
+    if (probability != 0.0) {
+      SpanColumns columns = getOrCreateColumns(spanStart, spanEnd);
+      if (isTruncated(columns, probability)) {
+        offerSlot(columns, columns.getUnusedSlot(), probability, spanStart, spanEnd);
+        return;
+      }
+      int slot = columns.getUnusedSlot();
+      columns.set(slot, entry);
+      offerSlot(columns, slot, probability, spanStart, spanEnd);
+    }
+  }
+
+  /**
+   * Adds the chart entry for a nonterminal spanning
+   * {@code leftSpanStart} to {@code rightSpanEnd}, copying its
+   * values directly into the span's columns. This method is
+   * equivalent to calling {@link #addChartEntryForSpan} with a
+   * {@code ChartEntry} created by its constructor for nonterminals,
+   * except that the entry's variable-length values are read from the
+   * initial elements of the given arrays. Hence, these arrays may be
+   * reused accumulators.
+   *
+   * @param syntax
+   * @param syntaxUniqueVars
+   * @param syntaxHeadVar
+   * @param leftUnaryRule
+   * @param rightUnaryRule
+   * @param numVars the number of variables in {@code syntax}. The
+   * first {@code numVars + 1} elements of
+   * {@code assignmentVarIndex} and
+   * {@code unfilledDependencyVarIndex} are used.
+   * @param assignmentVarIndex
+   * @param assignments
+   * @param numAssignments
+   * @param unfilledDependencyVarIndex
+   * @param unfilledDependencies
+   * @param numUnfilledDependencies
+   * @param deps
+   * @param numDeps
+   * @param leftSpanStart
+   * @param leftSpanEnd
+   * @param leftChartIndex
+   * @param rightSpanStart
+   * @param rightSpanEnd
+   * @param rightChartIndex
+   * @param combinator
+   * @param isProducedByConjunction
+   * @param probability
+   * @param syntaxVarType
+   */
+  public void addChartEntryForSpan(int syntax, int[] syntaxUniqueVars, int syntaxHeadVar,
+      UnaryCombinator leftUnaryRule, UnaryCombinator rightUnaryRule, int numVars,
+      int[] assignmentVarIndex, long[] assignments, int numAssignments,
+      int[] unfilledDependencyVarIndex, long[] unfilledDependencies, int numUnfilledDependencies,
+      long[] deps, int numDeps, int leftSpanStart, int leftSpanEnd, int leftChartIndex,
+      int rightSpanStart, int rightSpanEnd, int rightChartIndex, Combinator combinator,
+      boolean isProducedByConjunction, double probability, DiscreteVariable syntaxVarType) {
+    SpanColumns columns = getOrCreateColumns(leftSpanStart, rightSpanEnd);
+    if (entryFilter == null && isTruncated(columns, probability)) {
+      offerSlot(columns, columns.getUnusedSlot(), probability, leftSpanStart, rightSpanEnd);
+      return;
+    }
+
+    int slot = columns.getUnusedSlot();
+    columns.setNonterminal(slot, syntax, syntaxUniqueVars, syntaxHeadVar, leftUnaryRule,
+        rightUnaryRule, numVars, assignmentVarIndex, assignments, numAssignments,
+        unfilledDependencyVarIndex, unfilledDependencies, numUnfilledDependencies, deps, numDeps,
+        leftSpanStart, leftSpanEnd, leftChartIndex, rightSpanStart, rightSpanEnd, rightChartIndex,
+        combinator, isProducedByConjunction);
+
+    if (entryFilter != null) {
+      probability *= Math.exp(entryFilter.apply(columns.getChartEntry(slot), leftSpanStart,
+          rightSpanEnd, numTerminals, syntaxVarType));
+    }
+
+    if (probability != 0.0) {
+      offerSlot(columns, slot, probability, leftSpanStart, rightSpanEnd);
+    }
+  }
+
+  @Override
+  public void clearChartEntriesForSpan(int spanStart, int spanEnd) {
+    int spanIndex = spanEnd + (numTerminals * spanStart);
+    SpanColumns columns = spans[spanIndex];
+    if (columns != null) {
+      totalChartSize -= columns.size;
+      columns.clear();
+    }
+    chartEntriesBySyntacticCategory[spanIndex] = null;
+    chartEntryCopies[spanIndex] = null;
+  }
+
+  @Override
+  public void doneAddingChartEntriesForSpan(int spanStart, int spanEnd) {
+    int spanIndex = spanEnd + (numTerminals * spanStart);
+    SpanColumns columns = spans[spanIndex];
+    int numEntries = getNumChartEntriesForSpan(spanStart, spanEnd);
+    int[] keys = new int[numEntries];
+    int[] values = new int[numEntries];
+    for (int i = 0; i < numEntries; i++) {
+      keys[i] = columns.syntax[columns.getSlot(i)];
+      values[i] = i;
+    }
+    chartEntriesBySyntacticCategory[spanIndex] = IntMultimap.createFromUnsortedArrays(keys, values, 0);
+  }
+
+  private SpanColumns getOrCreateColumns(int spanStart, int spanEnd) {
+    int spanIndex = spanEnd + (numTerminals * spanStart);
+    if (spans[spanIndex] == null) {
+      spans[spanIndex] = new SpanColumns(beamSize + 1);
+    }
+    return spans[spanIndex];
+  }
+
+  /**
+   * Returns {@code true} if an entry with {@code probability} would
+   * be immediately discarded from the full beam in {@code columns}.
+   * Such entries need not be copied into the columns; however, they
+   * must still be offered to the heap (using an unused slot) so that
+   * the order of the remaining entries matches
+   * {@link CcgBeamSearchChart}.
+   */
+  private final boolean isTruncated(SpanColumns columns, double probability) {
+    return columns.size == beamSize && beamSize > 0 && probability < columns.probabilities[0];
+  }
+
+  /**
+   * Adds the entry in {@code slot} to the beam of its span. This
+   * operation implements beam truncation by discarding the minimum
+   * probability entry when the beam is full.
+   */
+  private final void offerSlot(SpanColumns columns, int slot, double probability,
+      int spanStart, int spanEnd) {
+    HeapUtils.offer(columns.heapSlots, columns.probabilities, columns.size, slot, probability);
+    columns.size++;
+    totalChartSize++;
+
+    if (columns.size > beamSize) {
+      // Return the evicted entry's slot to the unused portion
+      // of the heap.
+      long evictedSlot = columns.heapSlots[0];
+      HeapUtils.removeMin(columns.heapSlots, columns.probabilities, columns.size);
+      columns.size--;
+      columns.heapSlots[columns.size] = evictedSlot;
+      totalChartSize--;
+    }
+    chartEntryCopies[spanEnd + (numTerminals * spanStart)] = null;
+  }
+
+  /**
+   * The chart entries of a single span. Each entry occupies one slot
+   * (i.e., index) of every column. The entries are ordered by a heap
+   * over their probabilities, whose i'th element is the slot of the
+   * span's i'th entry (see {@link #getSlot}).
+   * <p>
+   * The variable-length values of the entry in each slot are stored
+   * in two ranges, one of {@link #getIntPool()} and one of
+   * {@link #getLongPool()}. The int range contains the entry's
+   * unique variables, assignment variable index and unfilled
+   * dependency variable index, in that order, and the long range
+   * contains the entry's assignments, unfilled dependencies and
+   * filled dependencies. A slot's ranges are reused when the slot is
+   * overwritten with an entry that fits in them.
+   */
+  public static final class SpanColumns {
+    // The columns initially have a few slots, and grow as entries
+    // are added until they have maxSlots slots.
+    private final int maxSlots;
+
+    // Positions 0 to size - 1 are the heap, and the remaining
+    // positions hold the unused slots. Slots are stored as longs
+    // to reuse HeapUtils.
+    private long[] heapSlots;
+    private double[] probabilities;
+    private int size;
+
+    private int[] syntax;
+    private int[] syntaxHeadVar;
+    private long[] syntaxHeadHashCode;
+
+    private UnaryCombinator[] rootUnaryRule;
+    private UnaryCombinator[] leftUnaryRule;
+    private UnaryCombinator[] rightUnaryRule;
+
+    private CcgCategory[] lexiconEntry;
+    private Object[] lexiconTrigger;
+    private int[] lexiconIndex;
+
+    private int[] leftSpanStart;
+    private int[] leftSpanEnd;
+    private int[] leftChartIndex;
+    private int[] rightSpanStart;
+    private int[] rightSpanEnd;
+    private int[] rightChartIndex;
+
+    private Combinator[] combinator;
+    private boolean[] isProducedByConjunction;
+    private Object[] additionalInfo;
+
+    private int[] intPool;
+    private int intPoolSize;
+    private int[] intStart;
+    private int[] intCapacity;
+    private int[] numUniqueVars;
+    private int[] numAssignmentVarIndex;
+    private int[] numUnfilledDepVarIndex;
+
+    private long[] longPool;
+    private int longPoolSize;
+    private int[] longStart;
+    private int[] longCapacity;
+    private int[] numAssignments;
+    private int[] numUnfilledDeps;
+    private int[] numDeps;
+
+    private SpanColumns(int maxSlots) {
+      this.maxSlots = maxSlots;
+      int numSlots = Math.min(maxSlots, INITIAL_NUM_SLOTS);
+      heapSlots = new long[numSlots];
+      for (int i = 0; i < numSlots; i++) {
+        heapSlots[i] = i;
+      }
+      probabilities = new double[numSlots];
+      size = 0;
+
+      syntax = new int[numSlots];
+      syntaxHeadVar = new int[numSlots];
+      syntaxHeadHashCode = new long[numSlots];
+
+      rootUnaryRule = new UnaryCombinator[numSlots];
+      leftUnaryRule = new UnaryCombinator[numSlots];
+      rightUnaryRule = new UnaryCombinator[numSlots];
+
+      lexiconEntry = new CcgCategory[numSlots];
+      lexiconTrigger = new Object[numSlots];
+      lexiconIndex = new int[numSlots];
+
+      leftSpanStart = new int[numSlots];
+      leftSpanEnd = new int[numSlots];
+      leftChartIndex = new int[numSlots];
+      rightSpanStart = new int[numSlots];
+      rightSpanEnd = new int[numSlots];
+      rightChartIndex = new int[numSlots];
+
+      combinator = new Combinator[numSlots];
+      isProducedByConjunction = new boolean[numSlots];
+      additionalInfo = new Object[numSlots];
+
+      intPool = new int[numSlots * 8];
+      intPoolSize = 0;
+      intStart = new int[numSlots];
+      intCapacity = new int[numSlots];
+      numUniqueVars = new int[numSlots];
+      numAssignmentVarIndex = new int[numSlots];
+      numUnfilledDepVarIndex = new int[numSlots];
+
+      longPool = new long[numSlots * 8];
+      longPoolSize = 0;
+      longStart = new int[numSlots];
+      longCapacity = new int[numSlots];
+      numAssignments = new int[numSlots];
+      numUnfilledDeps = new int[numSlots];
+      numDeps = new int[numSlots];
+    }
+
+    /**
+     * Gets the slot containing the {@code index}'th chart entry of
+     * this span.
+     *
+     * @param index
+     * @return
+     */
+    public int getSlot(int index) {
+      return (int) heapSlots[index];
+    }
+
+    public int[] getIntPool() {
+      return intPool;
+    }
+
+    public long[] getLongPool() {
+      return longPool;
+    }
+
+    public int getAssignmentVarIndexStart(int slot) {
+      return intStart[slot] + numUniqueVars[slot];
+    }
+
+    public int getUnfilledDepVarIndexStart(int slot) {
+      return intStart[slot] + numUniqueVars[slot] + numAssignmentVarIndex[slot];
+    }
+
+    public int getAssignmentStart(int slot) {
+      return longStart[slot];
+    }
+
+    public int getUnfilledDepStart(int slot) {
+      return longStart[slot] + numAssignments[slot];
+    }
+
+    /**
+     * Gets the type of the combinator used to produce the entry in
+     * {@code slot}.
+     *
+     * @param slot
+     * @return
+     */
+    public Combinator.Type getDerivingCombinatorType(int slot) {
+      if (combinator[slot] == null) {
+        return Combinator.Type.OTHER;
+      } else {
+        return combinator[slot].getType();
+      }
+    }
+
+    public boolean isProducedByConjunction(int slot) {
+      return isProducedByConjunction[slot];
+    }
+
+    /**
+     * Gets a copy of the chart entry in {@code slot}.
+     *
+     * @param slot
+     * @return
+     */
+    public ChartEntry getChartEntry(int slot) {
+      int uniqueVarStart = intStart[slot];
+      int assignmentVarIndexStart = getAssignmentVarIndexStart(slot);
+      int unfilledDepVarIndexStart = getUnfilledDepVarIndexStart(slot);
+      int assignmentStart = getAssignmentStart(slot);
+      int unfilledDepStart = getUnfilledDepStart(slot);
+      int depStart = unfilledDepStart + numUnfilledDeps[slot];
+
+      return new ChartEntry(syntax[slot],
+          Arrays.copyOfRange(intPool, uniqueVarStart, uniqueVarStart + numUniqueVars[slot]),
+          syntaxHeadVar[slot], rootUnaryRule[slot], leftUnaryRule[slot], rightUnaryRule[slot],
+          Arrays.copyOfRange(intPool, assignmentVarIndexStart,
+              assignmentVarIndexStart + numAssignmentVarIndex[slot]),
+          Arrays.copyOfRange(longPool, assignmentStart, assignmentStart + numAssignments[slot]),
+          Arrays.copyOfRange(intPool, unfilledDepVarIndexStart,
+              unfilledDepVarIndexStart + numUnfilledDepVarIndex[slot]),
+          Arrays.copyOfRange(longPool, unfilledDepStart, unfilledDepStart + numUnfilledDeps[slot]),
+          Arrays.copyOfRange(longPool, depStart, depStart + numDeps[slot]),
+          syntaxHeadHashCode[slot], lexiconEntry[slot], lexiconTrigger[slot], lexiconIndex[slot],
+          leftSpanStart[slot], leftSpanEnd[slot], leftChartIndex[slot], rightSpanStart[slot],
+          rightSpanEnd[slot], rightChartIndex[slot], combinator[slot],
+          isProducedByConjunction[slot], additionalInfo[slot]);
+    }
+
+    private int getUnusedSlot() {
+      if (size == heapSlots.length) {
+        grow();
+      }
+      return (int) heapSlots[size];
+    }
+
+    /**
+     * Increases the number of slots in every column.
+     */
+    private void grow() {
+      int oldNumSlots = heapSlots.length;
+      int numSlots = Math.min(maxSlots, oldNumSlots * 2);
+      heapSlots = Arrays.copyOf(heapSlots, numSlots);
+      for (int i = oldNumSlots; i < numSlots; i++) {
+        heapSlots[i] = i;
+      }
+      probabilities = Arrays.copyOf(probabilities, numSlots);
+
+      syntax = Arrays.copyOf(syntax, numSlots);
+      syntaxHeadVar = Arrays.copyOf(syntaxHeadVar, numSlots);
+      syntaxHeadHashCode = Arrays.copyOf(syntaxHeadHashCode, numSlots);
+
+      rootUnaryRule = Arrays.copyOf(rootUnaryRule, numSlots);
+      leftUnaryRule = Arrays.copyOf(leftUnaryRule, numSlots);
+      rightUnaryRule = Arrays.copyOf(rightUnaryRule, numSlots);
+
+      lexiconEntry = Arrays.copyOf(lexiconEntry, numSlots);
+      lexiconTrigger = Arrays.copyOf(lexiconTrigger, numSlots);
+      lexiconIndex = Arrays.copyOf(lexiconIndex, numSlots);
+
+      leftSpanStart = Arrays.copyOf(leftSpanStart, numSlots);
+      leftSpanEnd = Arrays.copyOf(leftSpanEnd, numSlots);
+      leftChartIndex = Arrays.copyOf(leftChartIndex, numSlots);
+      rightSpanStart = Arrays.copyOf(rightSpanStart, numSlots);
+      rightSpanEnd = Arrays.copyOf(rightSpanEnd, numSlots);
+      rightChartIndex = Arrays.copyOf(rightChartIndex, numSlots);
+
+      combinator = Arrays.copyOf(combinator, numSlots);
+      isProducedByConjunction = Arrays.copyOf(isProducedByConjunction, numSlots);
+      additionalInfo = Arrays.copyOf(additionalInfo, numSlots);
+
+      intStart = Arrays.copyOf(intStart, numSlots);
+      intCapacity = Arrays.copyOf(intCapacity, numSlots);
+      numUniqueVars = Arrays.copyOf(numUniqueVars, numSlots);
+      numAssignmentVarIndex = Arrays.copyOf(numAssignmentVarIndex, numSlots);
+      numUnfilledDepVarIndex = Arrays.copyOf(numUnfilledDepVarIndex, numSlots);
+
+      longStart = Arrays.copyOf(longStart, numSlots);
+      longCapacity = Arrays.copyOf(longCapacity, numSlots);
+      numAssignments = Arrays.copyOf(numAssignments, numSlots);
+      numUnfilledDeps = Arrays.copyOf(numUnfilledDeps, numSlots);
+      numDeps = Arrays.copyOf(numDeps, numSlots);
+    }
+
+    private void clear() {
+      size = 0;
+      // Every entry of this span is discarded, so the pools can be
+      // reused from the beginning.
+      intPoolSize = 0;
+      longPoolSize = 0;
+      Arrays.fill(intCapacity, 0);
+      Arrays.fill(longCapacity, 0);
+    }
+
+    /**
+     * Copies the values of {@code entry} into {@code slot}.
+     */
+    private void set(int slot, ChartEntry entry) {
+      int[] uniqueVars = entry.getSyntaxUniqueVars();
+      int[] assignmentVarIndex = entry.getAssignmentVarIndex();
+      int[] unfilledDepVarIndex = entry.getUnfilledDependencyVarIndex();
+      long[] assignments = entry.getAssignments();
+      long[] unfilledDeps = entry.getUnfilledDependencies();
+      long[] deps = entry.getDependencies();
+      reserve(slot, uniqueVars.length + assignmentVarIndex.length + unfilledDepVarIndex.length,
+          assignments.length + unfilledDeps.length + deps.length);
+
+      numUniqueVars[slot] = uniqueVars.length;
+      numAssignmentVarIndex[slot] = assignmentVarIndex.length;
+      numUnfilledDepVarIndex[slot] = unfilledDepVarIndex.length;
+      int start = intStart[slot];
+      System.arraycopy(uniqueVars, 0, intPool, start, uniqueVars.length);
+      start += uniqueVars.length;
+      System.arraycopy(assignmentVarIndex, 0, intPool, start, assignmentVarIndex.length);
+      start += assignmentVarIndex.length;
+      System.arraycopy(unfilledDepVarIndex, 0, intPool, start, unfilledDepVarIndex.length);
+
+      numAssignments[slot] = assignments.length;
+      numUnfilledDeps[slot] = unfilledDeps.length;
+      numDeps[slot] = deps.length;
+      start = longStart[slot];
+      System.arraycopy(assignments, 0, longPool, start, assignments.length);
+      start += assignments.length;
+      System.arraycopy(unfilledDeps, 0, longPool, start, unfilledDeps.length);
+      start += unfilledDeps.length;
+      System.arraycopy(deps, 0, longPool, start, deps.length);
+
+      syntax[slot] = entry.getHeadedSyntax();
+      syntaxHeadVar[slot] = entry.getHeadVariable();
+      syntaxHeadHashCode[slot] = entry.getSyntaxHeadHashCode();
+
+      rootUnaryRule[slot] = entry.getRootUnaryRule();
+      leftUnaryRule[slot] = entry.getLeftUnaryRule();
+      rightUnaryRule[slot] = entry.getRightUnaryRule();
+
+      lexiconEntry[slot] = entry.getLexiconEntry();
+      lexiconTrigger[slot] = entry.getLexiconTrigger();
+      lexiconIndex[slot] = entry.getLexiconIndex();
+
+      leftSpanStart[slot] = entry.getLeftSpanStart();
+      leftSpanEnd[slot] = entry.getLeftSpanEnd();
+      leftChartIndex[slot] = entry.getLeftChartIndex();
+      rightSpanStart[slot] = entry.getRightSpanStart();
+      rightSpanEnd[slot] = entry.getRightSpanEnd();
+      rightChartIndex[slot] = entry.getRightChartIndex();
+
+      combinator[slot] = entry.getCombinator();
+      isProducedByConjunction[slot] = entry.isProducedByConjunction();
+      additionalInfo[slot] = entry.getAdditionalInfo();
+    }
+
+    /**
+     * Copies the values of a nonterminal chart entry into
+     * {@code slot}. See
+     * {@link CcgColumnarBeamSearchChart#addChartEntryForSpan(int, int[], int, UnaryCombinator, UnaryCombinator, int, int[], long[], int, int[], long[], int, long[], int, int, int, int, int, int, int, Combinator, boolean, double, DiscreteVariable)}.
+     */
+    private void setNonterminal(int slot, int syntax, int[] syntaxUniqueVars, int syntaxHeadVar,
+        UnaryCombinator leftUnaryRule, UnaryCombinator rightUnaryRule, int numVars,
+        int[] assignmentVarIndex, long[] assignments, int numAssignments,
+        int[] unfilledDependencyVarIndex, long[] unfilledDependencies, int numUnfilledDependencies,
+        long[] deps, int numDeps, int leftSpanStart, int leftSpanEnd, int leftChartIndex,
+        int rightSpanStart, int rightSpanEnd, int rightChartIndex, Combinator combinator,
+        boolean isProducedByConjunction) {
+      int varIndexLength = numVars + 1;
+      reserve(slot, syntaxUniqueVars.length + (2 * varIndexLength),
+          numAssignments + numUnfilledDependencies + numDeps);
+
+      numUniqueVars[slot] = syntaxUniqueVars.length;
+      numAssignmentVarIndex[slot] = varIndexLength;
+      numUnfilledDepVarIndex[slot] = varIndexLength;
+      int start = intStart[slot];
+      System.arraycopy(syntaxUniqueVars, 0, intPool, start, syntaxUniqueVars.length);
+      start += syntaxUniqueVars.length;
+      System.arraycopy(assignmentVarIndex, 0, intPool, start, varIndexLength);
+      start += varIndexLength;
+      System.arraycopy(unfilledDependencyVarIndex, 0, intPool, start, varIndexLength);
+
+      this.numAssignments[slot] = numAssignments;
+      this.numUnfilledDeps[slot] = numUnfilledDependencies;
+      this.numDeps[slot] = numDeps;
+      int assignmentStart = longStart[slot];
+      int unfilledDepStart = assignmentStart + numAssignments;
+      System.arraycopy(assignments, 0, longPool, assignmentStart, numAssignments);
+      System.arraycopy(unfilledDependencies, 0, longPool, unfilledDepStart, numUnfilledDependencies);
+      System.arraycopy(deps, 0, longPool, unfilledDepStart + numUnfilledDependencies, numDeps);
+
+      this.syntax[slot] = syntax;
+      this.syntaxHeadVar[slot] = syntaxHeadVar;
+      this.syntaxHeadHashCode[slot] = ChartEntry.computeSyntaxHeadHashCode(syntax, longPool,
+          assignmentStart, numAssignments, longPool, unfilledDepStart, numUnfilledDependencies,
+          isProducedByConjunction);
+
+      this.rootUnaryRule[slot] = null;
+      this.leftUnaryRule[slot] = leftUnaryRule;
+      this.rightUnaryRule[slot] = rightUnaryRule;
+
+      this.lexiconEntry[slot] = null;
+      this.lexiconTrigger[slot] = null;
+      this.lexiconIndex[slot] = -1;
+
+      this.leftSpanStart[slot] = leftSpanStart;
+      this.leftSpanEnd[slot] = leftSpanEnd;
+      this.leftChartIndex[slot] = leftChartIndex;
+      this.rightSpanStart[slot] = rightSpanStart;
+      this.rightSpanEnd[slot] = rightSpanEnd;
+      this.rightChartIndex[slot] = rightChartIndex;
+
+      this.combinator[slot] = combinator;
+      this.isProducedByConjunction[slot] = isProducedByConjunction;
+      this.additionalInfo[slot] = null;
+    }
+
+    /**
+     * Ensures that the ranges of {@code slot} can hold
+     * {@code numInts} ints and {@code numLongs} longs.
+     */
+    private void reserve(int slot, int numInts, int numLongs) {
+      if (numInts > intCapacity[slot]) {
+        // The slot's current range is abandoned.
+        intCapacity[slot] = 0;
+        if (intPoolSize + numInts > intPool.length) {
+          compactIntPool(numInts);
+        }
+        intStart[slot] = intPoolSize;
+        intCapacity[slot] = numInts;
+        intPoolSize += numInts;
+      }
+
+      if (numLongs > longCapacity[slot]) {
+        longCapacity[slot] = 0;
+        if (longPoolSize + numLongs > longPool.length) {
+          compactLongPool(numLongs);
+        }
+        longStart[slot] = longPoolSize;
+        longCapacity[slot] = numLongs;
+        longPoolSize += numLongs;
+      }
+    }
+
+    /**
+     * Copies the ranges of every slot into a new int pool with room
+     * for at least {@code numInts} additional ints. This discards
+     * the ranges abandoned by slots that outgrew them.
+     */
+    private void compactIntPool(int numInts) {
+      int used = 0;
+      for (int i = 0; i < intCapacity.length; i++) {
+        used += intCapacity[i];
+      }
+
+      int[] newPool = new int[Math.max(intPool.length, 2 * (used + numInts))];
+      int newPoolSize = 0;
+      for (int i = 0; i < intCapacity.length; i++) {
+        System.arraycopy(intPool, intStart[i], newPool, newPoolSize, intCapacity[i]);
+        intStart[i] = newPoolSize;
+        newPoolSize += intCapacity[i];
+      }
+      intPool = newPool;
+      intPoolSize = newPoolSize;
+    }
+
+    /**
+     * Copies the ranges of every slot into a new long pool with
+     * room for at least {@code numLongs} additional longs. This
+     * discards the ranges abandoned by slots that outgrew them.
+     */
+    private void compactLongPool(int numLongs) {
+      int used = 0;
+      for (int i = 0; i < longCapacity.length; i++) {
+        used += longCapacity[i];
+      }
+
+      long[] newPool = new long[Math.max(longPool.length, 2 * (used + numLongs))];
+      int newPoolSize = 0;
+      for (int i = 0; i < longCapacity.length; i++) {
+        System.arraycopy(longPool, longStart[i], newPool, newPoolSize, longCapacity[i]);
+        longStart[i] = newPoolSize;
+        newPoolSize += longCapacity[i];
+      }
+      longPool = newPool;
+      longPoolSize = newPoolSize;
+    }
+  }
+}
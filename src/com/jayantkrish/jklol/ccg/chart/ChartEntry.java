@@ -118,7 +118,7 @@ public class ChartEntry {
    * @param isProducedByConjunction
    * @param additionalInfo
    */
-  private ChartEntry(int syntax, int[] syntaxUniqueVars, int syntaxHeadVar,
+  ChartEntry(int syntax, int[] syntaxUniqueVars, int syntaxHeadVar,
       UnaryCombinator rootUnaryRule, UnaryCombinator leftUnaryRule, UnaryCombinator rightUnaryRule,
       int[] assignmentVarIndex, long[] assignments, int[] unfilledDependencyVarIndex,
       long[] unfilledDependencies, long[] deps, long syntaxHeadHashCode, CcgCategory lexiconEntry,
@@ -192,8 +192,8 @@ public class ChartEntry {
     this.assignments = Preconditions.checkNotNull(assignments);
     this.unfilledDependencyVarIndex = Preconditions.checkNotNull(unfilledDependencyVarIndex);
     this.unfilledDependencies = Preconditions.checkNotNull(unfilledDependencies);
-    this.syntaxHeadHashCode = computeSyntaxHeadHashCode(syntax, assignments, unfilledDependencies,
-        isProducedByConjunction);
+    this.syntaxHeadHashCode = computeSyntaxHeadHashCode(syntax, assignments, 0, assignments.length,
+        unfilledDependencies, 0, unfilledDependencies.length, isProducedByConjunction);
 
     this.lexiconEntry = null;
     this.lexiconTrigger = null;
@@ -250,7 +250,8 @@ public class ChartEntry {
     this.assignments = Preconditions.checkNotNull(assignments);
     this.unfilledDependencyVarIndex = Preconditions.checkNotNull(unfilledDependencyVarIndex);
     this.unfilledDependencies = Preconditions.checkNotNull(unfilledDependencies);
-    this.syntaxHeadHashCode = computeSyntaxHeadHashCode(syntax, assignments, unfilledDependencies, false);
+    this.syntaxHeadHashCode = computeSyntaxHeadHashCode(syntax, assignments, 0, assignments.length,
+        unfilledDependencies, 0, unfilledDependencies.length, false);
 
     this.lexiconEntry = ccgCategory;
     this.lexiconTrigger = lexiconTrigger;
@@ -499,16 +500,23 @@ public class ChartEntry {
         + " " + Arrays.toString(deps) + " " + Arrays.toString(unfilledDependencies) + "]";
   }
 
-  private static long computeSyntaxHeadHashCode(int syntax, long[] assignments,
-      long[] unfilledDependencies, boolean isProducedByConjunction) {
+  /**
+   * Computes the hash code of a chart entry's syntactic category,
+   * assignments and unfilled dependencies. The assignments and
+   * unfilled dependencies are read from the given ranges of
+   * {@code assignments} and {@code unfilledDependencies}.
+   */
+  static long computeSyntaxHeadHashCode(int syntax, long[] assignments, int assignmentStart,
+      int numAssignments, long[] unfilledDependencies, int unfilledDependencyStart,
+      int numUnfilledDependencies, boolean isProducedByConjunction) {
 
     long assignmentHashCode = 3;
-    for (int i = 0; i < assignments.length; i++) {
+    for (int i = assignmentStart; i < assignmentStart + numAssignments; i++) {
       assignmentHashCode *= assignments[i];
     }
 
     long depHashCode = 5;
-    for (int i = 0; i < unfilledDependencies.length; i++) {
+    for (int i = unfilledDependencyStart; i < unfilledDependencyStart + numUnfilledDependencies; i++) {
       depHashCode *= unfilledDependencies[i];
     }
 
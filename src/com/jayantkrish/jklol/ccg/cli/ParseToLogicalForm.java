@@ -38,6 +38,7 @@ public class ParseToLogicalForm extends AbstractCli {
   private OptionSpec<Long> maxParseTimeMillis;
   private OptionSpec<Integer> maxChartSize;
   private OptionSpec<Integer> parserThreads;
+  private OptionSpec<Void> fallbackParse;
   
   public ParseToLogicalForm() {
     super();
@@ -64,6 +65,8 @@ public class ParseToLogicalForm extends AbstractCli {
         .defaultsTo(Integer.MAX_VALUE);
     parserThreads = optionParser.accepts("parserThreads").withRequiredArg().ofType(Integer.class)
         .defaultsTo(1);
+    fallbackParse = optionParser.accepts("fallbackParse", "Greedily complete parses that exceed "
+        + "maxParseTimeMillis or maxChartSize, instead of returning no parse.");
   }
 
   @Override
@@ -75,7 +78,8 @@ public class ParseToLogicalForm extends AbstractCli {
 
     SupertaggingCcgParser supertaggingParser = new SupertaggingCcgParser(ccgParser, 
         new CcgCkyInference(null, options.valueOf(beamSize), options.valueOf(maxParseTimeMillis),
-            options.valueOf(maxChartSize), options.valueOf(parserThreads)),
+            options.valueOf(maxChartSize), options.valueOf(parserThreads),
+            options.has(fallbackParse)),
         tagger, tagThresholds, TrainSyntacticCcgParser.SUPERTAG_ANNOTATION_NAME);
 
     // Read the logical form templates.
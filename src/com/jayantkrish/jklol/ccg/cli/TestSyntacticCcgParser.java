@@ -56,6 +56,7 @@ public class TestSyntacticCcgParser extends AbstractCli {
   private OptionSpec<Integer> beamSize;
   private OptionSpec<Integer> numParses;
   private OptionSpec<Long> maxParseTimeMillis;
+  private OptionSpec<Void> fallbackParse;
   private OptionSpec<Integer> maxChartSize;
   private OptionSpec<Integer> parserThreads;
   private OptionSpec<Void> atomic;
@@ -87,6 +88,8 @@ public class TestSyntacticCcgParser extends AbstractCli {
     beamSize = parser.accepts("beamSize").withRequiredArg().ofType(Integer.class).defaultsTo(100);
     numParses = parser.accepts("numParses").withRequiredArg().ofType(Integer.class).defaultsTo(1);
     maxParseTimeMillis = parser.accepts("maxParseTimeMillis").withRequiredArg().ofType(Long.class).defaultsTo(-1L);
+    fallbackParse = parser.accepts("fallbackParse", "Greedily complete parses that exceed "
+        + "maxParseTimeMillis or maxChartSize, instead of returning no parse.");
     maxChartSize = parser.accepts("maxChartSize").withRequiredArg().ofType(Integer.class).defaultsTo(Integer.MAX_VALUE);
     parserThreads = parser.accepts("parserThreads").withRequiredArg().ofType(Integer.class).defaultsTo(1);
     atomic = parser.accepts("atomic", "Only print parses whose root category is atomic (i.e., non-functional).");
@@ -116,7 +119,8 @@ public class TestSyntacticCcgParser extends AbstractCli {
     // Configure inference options
     CcgInference inferenceAlgorithm = null;
     inferenceAlgorithm = new CcgCkyInference(null, options.valueOf(beamSize),
-        options.valueOf(maxParseTimeMillis), options.valueOf(maxChartSize), options.valueOf(parserThreads));
+        options.valueOf(maxParseTimeMillis), options.valueOf(maxChartSize), options.valueOf(parserThreads),
+        options.has(fallbackParse));
     
     if (options.has(testFile)) {
       // Parse all test examples.
@@ -55,6 +55,7 @@ public class TrainSemanticParser extends AbstractCli {
 
   // Where the trained parser is saved.
   private OptionSpec<String> modelOutput;
+  private OptionSpec<Void> mappedOutput;
   
   public static final String START_WORD = "**start**";
 
@@ -75,6 +76,8 @@ public class TrainSemanticParser extends AbstractCli {
         "Binary and unary rules to use during CCG parsing, in addition to function application and composition.")
         .withRequiredArg().ofType(String.class).required();
     modelOutput = parser.accepts("output").withRequiredArg().ofType(String.class).required();
+    mappedOutput = parser.accepts("mappedOutput", "Save the trained parser in a binary "
+        + "format that loads much faster than Java serialization.");
     
     // At least one of the training data options is required. 
     jsonTrainingData = parser.accepts("jsonTrainingData").withRequiredArg().ofType(String.class);
@@ -120,7 +123,11 @@ public class TrainSemanticParser extends AbstractCli {
     CcgParser ccgParser = family.getModelFromParameters(parameters);
 
     System.out.println("Serializing trained model...");
-    IoUtils.serializeObjectToFile(ccgParser, options.valueOf(modelOutput));
+    if (options.has(mappedOutput)) {
+      IoUtils.serializeObjectToMappedFile(ccgParser, options.valueOf(modelOutput));
+    } else {
+      IoUtils.serializeObjectToFile(ccgParser, options.valueOf(modelOutput));
+    }
 
     System.out.println("Trained model parameters:");
     System.out.println(family.getParameterDescription(parameters));
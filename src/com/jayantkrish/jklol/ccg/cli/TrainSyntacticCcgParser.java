@@ -58,6 +58,7 @@ public class TrainSyntacticCcgParser extends AbstractCli {
 
   private OptionSpec<String> trainingData;
   private OptionSpec<String> modelOutput;
+  private OptionSpec<Void> mappedOutput;
 
   // CCG parser options
   private OptionSpec<String> ccgLexicon;
@@ -78,6 +79,7 @@ public class TrainSyntacticCcgParser extends AbstractCli {
   private OptionSpec<Void> ignoreSemantics;
   private OptionSpec<Void> onlyObservedBinaryRules;
   private OptionSpec<Void> exactInference;
+  private OptionSpec<Void> incrementalInstantiation;
   
   public static final String SUPERTAG_ANNOTATION_NAME = "supertags";
 
@@ -90,6 +92,8 @@ public class TrainSyntacticCcgParser extends AbstractCli {
     // Required arguments.
     trainingData = parser.accepts("trainingData").withRequiredArg().ofType(String.class).required();
     modelOutput = parser.accepts("output").withRequiredArg().ofType(String.class).required();
+    mappedOutput = parser.accepts("mappedOutput", "Save the trained parser in a binary "
+        + "format that loads much faster than Java serialization.");
     
     // CCG parser arguments
     ccgLexicon = parser.accepts("lexicon",
@@ -116,6 +120,8 @@ public class TrainSyntacticCcgParser extends AbstractCli {
     maxMargin = parser.accepts("maxMargin").withRequiredArg().ofType(Double.class);
     ignoreSemantics = parser.accepts("ignoreSemantics");
     onlyObservedBinaryRules = parser.accepts("onlyObservedBinaryRules");
+    incrementalInstantiation = parser.accepts("incrementalInstantiation",
+        "During training, only rebuild the components of the parser whose parameters changed.");
   }
 
   @Override
@@ -179,9 +185,11 @@ public class TrainSyntacticCcgParser extends AbstractCli {
     GradientOracle<CcgParser, CcgExample> oracle = null;
     ExpressionComparator comparator = new SimplificationComparator(ExpressionSimplifier.lambdaCalculus());
     if (options.has(maxMargin)) {
-      oracle = new CcgPerceptronOracle(family, comparator, inferenceAlgorithm, options.valueOf(maxMargin));
+      oracle = new CcgPerceptronOracle(family, comparator, inferenceAlgorithm,
+          options.valueOf(maxMargin), options.has(incrementalInstantiation));
     } else {
-      oracle = new CcgLoglikelihoodOracle(family, comparator, inferenceAlgorithm);
+      oracle = new CcgLoglikelihoodOracle(family, comparator, inferenceAlgorithm,
+          options.has(incrementalInstantiation));
     }
     GradientOptimizer trainer = createGradientOptimizer(trainingExamples.size());
     SufficientStatistics parameters = trainer.train(oracle, oracle.initializeGradient(),
@@ -189,7 +197,11 @@ public class TrainSyntacticCcgParser extends AbstractCli {
     CcgParser ccgParser = family.getModelFromParameters(parameters);
 
     System.out.println("Serializing trained model...");
-    IoUtils.serializeObjectToFile(ccgParser, options.valueOf(modelOutput));
+    if (options.has(mappedOutput)) {
+      IoUtils.serializeObjectToMappedFile(ccgParser, options.valueOf(modelOutput));
+    } else {
+      IoUtils.serializeObjectToFile(ccgParser, options.valueOf(modelOutput));
+    }
 
     System.out.println("Trained model parameters:");
     System.out.println(family.getParameterDescription(parameters, 10000));
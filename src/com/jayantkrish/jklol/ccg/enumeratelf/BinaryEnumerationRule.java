@@ -26,6 +26,14 @@ public class BinaryEnumerationRule {
     this.typeDeclaration = Preconditions.checkNotNull(typeDeclaration);
   }
 
+  public Type getArg1Type() {
+    return arg1Type;
+  }
+
+  public Type getArg2Type() {
+    return arg2Type;
+  }
+
   public boolean isApplicable(LfNode arg1Node, LfNode arg2Node) {
     boolean[] arg1Mentions = arg1Node.getUsedMentions();
     boolean[] arg2Mentions = arg2Node.getUsedMentions();
@@ -3,19 +3,24 @@ package com.jayantkrish.jklol.ccg.enumeratelf;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
 import com.jayantkrish.jklol.ccg.lambda.Type;
 import com.jayantkrish.jklol.ccg.lambda.TypeDeclaration;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
+import com.jayantkrish.jklol.ccg.lambda2.Expression2Interner;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionSimplifier;
 import com.jayantkrish.jklol.ccg.lambda2.StaticAnalysis;
+import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
+import com.jayantkrish.jklol.parallel.Mapper;
 
 public class LogicalFormEnumerator {
 
@@ -25,6 +30,8 @@ public class LogicalFormEnumerator {
   
   private final List<EnumerationRuleFilter> filters;
 
+  private static final int PARALLEL_BATCH_SIZE = 64;
+
   public LogicalFormEnumerator(List<UnaryEnumerationRule> unaryRules,
       List<BinaryEnumerationRule> binaryRules, List<EnumerationRuleFilter> filters,
       TypeDeclaration typeDeclaration) {
@@ -64,12 +71,37 @@ public class LogicalFormEnumerator {
   }
 
   public List<Expression2> enumerate(List<Expression2> startNodes, List<EnumerationRuleFilter> addedFilters, int max) {
+    return enumerate(startNodes, addedFilters, max, false);
+  }
+
+  /**
+   * Enumerates logical forms by breadth-first search, starting from
+   * {@code startNodes}, until at least {@code max} logical forms have
+   * been found or no more can be generated.
+   * <p>
+   * If {@code parallel} is {@code true}, batches of logical forms
+   * from the front of the search queue are expanded in parallel using
+   * {@link MapReduceConfiguration#getMapReduceExecutor()}. The
+   * parallel search returns the same logical forms as the sequential
+   * search, but the rules and filters must be thread-safe.
+   *
+   * @param startNodes
+   * @param addedFilters
+   * @param max
+   * @param parallel
+   * @return
+   */
+  public List<Expression2> enumerate(List<Expression2> startNodes, List<EnumerationRuleFilter> addedFilters,
+      int max, boolean parallel) {
     List<EnumerationRuleFilter> allFilters = Lists.newArrayList(filters);
     allFilters.addAll(addedFilters);
     
+    // Enumerated logical forms share many subexpressions, so they
+    // are interned to save memory and to make comparisons cheap.
+    Expression2Interner interner = new Expression2Interner();
     Queue<LfNode> queue = new LinkedList<LfNode>();
     for (int i = 0; i < startNodes.size(); i++) {
-      Expression2 startNode = startNodes.get(i);
+      Expression2 startNode = interner.intern(startNodes.get(i));
       Type type = StaticAnalysis.inferType(startNode, typeDeclaration);
       boolean[] usedStartNodes = new boolean[startNodes.size()];
       usedStartNodes[i] = true;
@@ -77,50 +109,101 @@ public class LogicalFormEnumerator {
     }
     
     Set<LfNode> queuedNodes = Sets.newHashSet(queue);
-    Set<LfNode> exploredNodes = Sets.newHashSet();
+    ExploredNodes exploredNodes = new ExploredNodes();
     while (queue.size() > 0 && queuedNodes.size() < max) {
-      LfNode node = queue.poll();
-      
-      for (UnaryEnumerationRule rule : unaryRules) {
-        if (rule.isApplicable(node)) {
-          LfNode result = rule.apply(node);
-          
-          if (passesFilters(result, node, allFilters)) {
-            enqueue(result, queue, queuedNodes);
+      if (parallel) {
+        // Expand a batch of nodes from the front of the queue in
+        // parallel. Small batches bound the number of expansions
+        // that are discarded once max logical forms are found.
+        int batchSize = Math.min(queue.size(), PARALLEL_BATCH_SIZE);
+        List<Integer> batchIds = Lists.newArrayList();
+        for (int i = 0; i < batchSize; i++) {
+          batchIds.add(exploredNodes.add(queue.poll()));
+        }
+
+        List<List<LfNode>> results = MapReduceConfiguration.getMapReduceExecutor().map(
+            batchIds, new ExpansionMapper(this, exploredNodes, allFilters));
+        for (List<LfNode> nodeResults : results) {
+          // Stop at the same point as the sequential search.
+          if (queuedNodes.size() >= max) {
+            break;
+          }
+          for (LfNode result : nodeResults) {
+            enqueue(result, queue, queuedNodes, interner);
           }
         }
+      } else {
+        LfNode node = queue.poll();
+        int id = exploredNodes.add(node);
+        for (LfNode result : expand(id, exploredNodes, allFilters)) {
+          enqueue(result, queue, queuedNodes, interner);
+        }
       }
-      
-      for (BinaryEnumerationRule rule : binaryRules) {
-        for (LfNode exploredNode : exploredNodes) {
+    }
+
+    List<Expression2> expressions = Lists.newArrayList();
+    for (LfNode node : queuedNodes) {
+      expressions.add(node.getLf());
+    }
+    return expressions;
+  }
+
+  /**
+   * Applies every rule to the explored node {@code id}, combining it
+   * with the nodes explored before it using the binary rules.
+   */
+  private List<LfNode> expand(int id, ExploredNodes exploredNodes,
+      List<EnumerationRuleFilter> allFilters) {
+    LfNode node = exploredNodes.get(id);
+    List<LfNode> results = Lists.newArrayList();
+    for (UnaryEnumerationRule rule : unaryRules) {
+      if (rule.isApplicable(node)) {
+        LfNode result = rule.apply(node);
+
+        if (passesFilters(result, node, allFilters)) {
+          results.add(result);
+        }
+      }
+    }
+
+    for (BinaryEnumerationRule rule : binaryRules) {
+      // Only explored nodes of the type required by the rule
+      // can be combined with node.
+      if (rule.getArg1Type().equals(node.getType())) {
+        for (int otherId : exploredNodes.getIdsWithType(rule.getArg2Type())) {
+          if (otherId >= id) {
+            break;
+          }
+          LfNode exploredNode = exploredNodes.get(otherId);
           if (rule.isApplicable(node, exploredNode)) {
             LfNode result = rule.apply(node, exploredNode);
-          
+
             if (passesFilters(result, node, allFilters) && passesFilters(result, exploredNode, allFilters)) {
-              enqueue(result, queue, queuedNodes);
+              results.add(result);
             }
           }
-          
+        }
+      }
+
+      if (rule.getArg2Type().equals(node.getType())) {
+        for (int otherId : exploredNodes.getIdsWithType(rule.getArg1Type())) {
+          if (otherId >= id) {
+            break;
+          }
+          LfNode exploredNode = exploredNodes.get(otherId);
           if (rule.isApplicable(exploredNode, node)) {
             LfNode result = rule.apply(exploredNode, node);
 
             if (passesFilters(result, node, allFilters) && passesFilters(result, exploredNode, allFilters)) {
-              enqueue(result, queue, queuedNodes);
+              results.add(result);
             }
           }
         }
       }
-      
-      exploredNodes.add(node);
     }
-
-    List<Expression2> expressions = Lists.newArrayList();
-    for (LfNode node : queuedNodes) {
-      expressions.add(node.getLf());
-    }
-    return expressions;
+    return results;
   }
-  
+
   private static boolean passesFilters(LfNode result, LfNode from, List<EnumerationRuleFilter> filters) {
     for (EnumerationRuleFilter filter : filters) {
       if (!filter.apply(from, result)) {
@@ -130,10 +213,70 @@ public class LogicalFormEnumerator {
     return true;
   }
 
-  private static void enqueue(LfNode node, Queue<LfNode> queue, Set<LfNode> queuedNodes) {
+  private static void enqueue(LfNode node, Queue<LfNode> queue, Set<LfNode> queuedNodes,
+      Expression2Interner interner) {
+    node = new LfNode(interner.intern(node.getLf()), node.getType(), node.getUsedMentions());
     if (!queuedNodes.contains(node)) {
       queuedNodes.add(node);
       queue.add(node);
     }
   }
+
+  /**
+   * The explored nodes of a search, indexed by their types. Each
+   * node is identified by the order in which it was explored.
+   */
+  private static class ExploredNodes {
+    private final List<LfNode> nodes;
+    private final Map<Type, List<Integer>> idsByType;
+
+    public ExploredNodes() {
+      this.nodes = Lists.newArrayList();
+      this.idsByType = Maps.newHashMap();
+    }
+
+    public int add(LfNode node) {
+      int id = nodes.size();
+      nodes.add(node);
+
+      List<Integer> ids = idsByType.get(node.getType());
+      if (ids == null) {
+        ids = Lists.newArrayList();
+        idsByType.put(node.getType(), ids);
+      }
+      ids.add(id);
+      return id;
+    }
+
+    public LfNode get(int id) {
+      return nodes.get(id);
+    }
+
+    /**
+     * Gets the ids of the explored nodes with {@code type}, in
+     * increasing order.
+     */
+    public List<Integer> getIdsWithType(Type type) {
+      List<Integer> ids = idsByType.get(type);
+      return ids != null ? ids : Collections.<Integer>emptyList();
+    }
+  }
+
+  private static class ExpansionMapper extends Mapper<Integer, List<LfNode>> {
+    private final LogicalFormEnumerator enumerator;
+    private final ExploredNodes exploredNodes;
+    private final List<EnumerationRuleFilter> filters;
+
+    public ExpansionMapper(LogicalFormEnumerator enumerator, ExploredNodes exploredNodes,
+        List<EnumerationRuleFilter> filters) {
+      this.enumerator = enumerator;
+      this.exploredNodes = exploredNodes;
+      this.filters = filters;
+    }
+
+    @Override
+    public List<LfNode> map(Integer id) {
+      return enumerator.expand(id, exploredNodes, filters);
+    }
+  }
 }
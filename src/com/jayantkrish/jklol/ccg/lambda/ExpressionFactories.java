@@ -3,6 +3,7 @@ package com.jayantkrish.jklol.ccg.lambda;
 import java.util.List;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
 import com.jayantkrish.jklol.lisp.ConstantValue;
 import com.jayantkrish.jklol.lisp.SExpression;
@@ -30,6 +31,29 @@ public class ExpressionFactories {
     return new Expression2Factory();
   }
 
+  /**
+   * Converts {@code expression} into the representation built by
+   * {@code factory}. This method produces the same result as
+   * parsing {@code expression.toString()} with {@code factory}, but
+   * avoids printing and re-tokenizing the expression.
+   *
+   * @param expression
+   * @param factory
+   * @return
+   */
+  public static <T> T convert(Expression2 expression, ExpressionFactory<T> factory) {
+    if (expression.isConstant()) {
+      return factory.createTokenExpression(expression.getConstant());
+    } else {
+      List<Expression2> subexpressions = expression.getSubexpressions();
+      List<T> converted = Lists.newArrayListWithCapacity(subexpressions.size());
+      for (Expression2 subexpression : subexpressions) {
+        converted.add(convert(subexpression, factory));
+      }
+      return factory.createExpression(converted);
+    }
+  }
+
   public static ExpressionFactory<Type> getTypeFactory() {
     return new ExpressionFactory<Type>() {
       public Type createTokenExpression(String token) {
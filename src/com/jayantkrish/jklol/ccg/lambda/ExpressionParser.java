@@ -9,6 +9,7 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Chars;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
+import com.jayantkrish.jklol.ccg.lambda2.Expression2Interner;
 import com.jayantkrish.jklol.lisp.SExpression;
 import com.jayantkrish.jklol.util.IndexedList;
 
@@ -69,12 +70,29 @@ public class ExpressionParser<T> {
     this.closeParenExpression = factory.createTokenExpression(Character.toString(closeParen));
   }
 
+  public ExpressionFactory<T> getFactory() {
+    return factory;
+  }
+
   public static ExpressionParser<Expression2> expression2() {
     return new ExpressionParser<Expression2>(DEFAULT_OPEN_PAREN, DEFAULT_CLOSE_PAREN,
         DEFAULT_QUOTE, DEFAULT_QUOTE, DEFAULT_ESCAPE, true, DEFAULT_SEPARATOR, new String[0], new String[0],
         ExpressionFactories.getExpression2Factory());
   }
 
+  /**
+   * Gets a parser that returns canonical expressions from
+   * {@code interner}.
+   *
+   * @param interner
+   * @return
+   */
+  public static ExpressionParser<Expression2> expression2(Expression2Interner interner) {
+    return new ExpressionParser<Expression2>(DEFAULT_OPEN_PAREN, DEFAULT_CLOSE_PAREN,
+        DEFAULT_QUOTE, DEFAULT_QUOTE, DEFAULT_ESCAPE, true, DEFAULT_SEPARATOR, new String[0], new String[0],
+        interner);
+  }
+
   public static ExpressionParser<SExpression> sExpression(IndexedList<String> symbolTable) {
     return new ExpressionParser<SExpression>(DEFAULT_OPEN_PAREN, DEFAULT_CLOSE_PAREN,
         DEFAULT_QUOTE, DEFAULT_QUOTE, DEFAULT_ESCAPE, true, DEFAULT_SEPARATOR, new String[0], new String[0],
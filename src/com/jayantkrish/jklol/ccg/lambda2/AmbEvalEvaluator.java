@@ -1,35 +1,150 @@
 package com.jayantkrish.jklol.ccg.lambda2;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.jayantkrish.jklol.ccg.lambda.ExpressionFactories;
+import com.jayantkrish.jklol.ccg.lambda.ExpressionFactory;
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
 import com.jayantkrish.jklol.lisp.AmbEval;
+import com.jayantkrish.jklol.lisp.AmbEvalCompiler;
+import com.jayantkrish.jklol.lisp.AmbEvalCompiler.CompiledExpression;
 import com.jayantkrish.jklol.lisp.Environment;
+import com.jayantkrish.jklol.lisp.EvalContext;
 import com.jayantkrish.jklol.lisp.EvalError;
 import com.jayantkrish.jklol.lisp.SExpression;
+import com.jayantkrish.jklol.training.NullLogFunction;
 
+/**
+ * Evaluates logical forms using {@link AmbEval}. Each logical form
+ * is converted directly into an {@code SExpression} and compiled
+ * with {@link AmbEvalCompiler}; compiled forms are cached, so
+ * repeatedly evaluating the same logical form only pays for
+ * execution. Logical forms are cached as given, so callers should
+ * simplify them (which canonicalizes variable names) to maximize
+ * cache hits.
+ * <p>
+ * Compiled forms capture the values of {@code env}'s bindings, so
+ * {@code env} should not be modified after this evaluator is
+ * created.
+ * <p>
+ * If a {@link DenotationCache} is provided, the values of logical
+ * forms (and any {@code EvalError}s they raise) are also cached,
+ * keyed by the logical form and this evaluator's environment. This
+ * is only appropriate if evaluating logical forms has no side
+ * effects.
+ *
+ * @author jayantk
+ */
 public class AmbEvalEvaluator implements ExpressionEvaluator {
-  private final ExpressionParser<SExpression> sexpParser;
+  private final ExpressionFactory<SExpression> sexpFactory;
   private final AmbEval eval;
   private final Environment env;
-  
+
+  private final AmbEvalCompiler compiler;
+  private final LoadingCache<Expression2, CompiledExpression> compiled;
+  private final DenotationCache denotations;
+
+  public static final int DEFAULT_MAX_CACHED_EXPRESSIONS = 100000;
+
   public AmbEvalEvaluator(ExpressionParser<SExpression> sexpParser, AmbEval eval, Environment env) {
-    this.sexpParser = Preconditions.checkNotNull(sexpParser);
+    this(sexpParser, eval, env, DEFAULT_MAX_CACHED_EXPRESSIONS);
+  }
+
+  public AmbEvalEvaluator(ExpressionParser<SExpression> sexpParser, AmbEval eval, Environment env,
+      int maxCachedExpressions) {
+    this(sexpParser, eval, env, maxCachedExpressions, null);
+  }
+
+  /**
+   * Creates an evaluator that caches denotations in
+   * {@code denotations}, which may be shared with other evaluators.
+   *
+   * @param sexpParser
+   * @param eval
+   * @param env
+   * @param maxCachedExpressions
+   * @param denotations
+   */
+  public AmbEvalEvaluator(ExpressionParser<SExpression> sexpParser, AmbEval eval, Environment env,
+      int maxCachedExpressions, DenotationCache denotations) {
+    this.sexpFactory = sexpParser.getFactory();
     this.eval = Preconditions.checkNotNull(eval);
     this.env = Preconditions.checkNotNull(env);
+
+    this.compiler = new AmbEvalCompiler(eval);
+    this.compiled = CacheBuilder.newBuilder().maximumSize(maxCachedExpressions)
+        .build(new CacheLoader<Expression2, CompiledExpression>() {
+          @Override
+          public CompiledExpression load(Expression2 lf) {
+            return compile(lf);
+          }
+        });
+    this.denotations = denotations;
+  }
+
+  public AmbEval getEval() {
+    return eval;
+  }
+
+  public Environment getEnvironment() {
+    return env;
+  }
+
+  /**
+   * Converts {@code lf} into an {@code SExpression} that can be
+   * evaluated by {@code AmbEval}.
+   *
+   * @param lf
+   * @return
+   */
+  public SExpression toSExpression(Expression2 lf) {
+    return ExpressionFactories.convert(lf, sexpFactory);
+  }
+
+  /**
+   * Compiles {@code lf} without consulting the cache.
+   *
+   * @param lf
+   * @return
+   */
+  public CompiledExpression compile(Expression2 lf) {
+    return compiler.compile(toSExpression(lf), env);
   }
 
   @Override
   public Object evaluate(Expression2 lf) {
-    SExpression sexp = sexpParser.parse(lf.toString());
-    return eval.eval(sexp, env, null).getValue();
+    if (denotations == null) {
+      return evaluateUncached(lf);
+    }
+
+    Object value = denotations.get(env, lf);
+    if (value == null) {
+      try {
+        value = evaluateUncached(lf);
+      } catch (EvalError e) {
+        value = e;
+      }
+      denotations.put(env, lf, value);
+    }
+
+    if (value instanceof EvalError) {
+      throw (EvalError) value;
+    }
+    return value;
   }
-  
+
+  private Object evaluateUncached(Expression2 lf) {
+    CompiledExpression expression = compiled.getUnchecked(lf);
+    return expression.eval(null, new EvalContext(new NullLogFunction())).getValue();
+  }
+
   @Override
   public Object evaluateSilentErrors(Expression2 lf, String errorValue) {
-    SExpression sexp = sexpParser.parse(lf.toString());
     Object value = null;
     try {
-      value = eval.eval(sexp, env, null).getValue();
+      value = evaluate(lf);
     } catch (EvalError e) {
       value = errorValue + "(" + e.getMessage() + ")";
     }
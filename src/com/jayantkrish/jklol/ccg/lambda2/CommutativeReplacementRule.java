@@ -12,7 +12,7 @@ import com.google.common.collect.Lists;
  * @author jayantk
  *
  */
-public class CommutativeReplacementRule implements ExpressionReplacementRule {
+public class CommutativeReplacementRule implements LocalReplacementRule {
   
   private final String conjunctionPred;
   
@@ -20,16 +20,25 @@ public class CommutativeReplacementRule implements ExpressionReplacementRule {
     this.conjunctionPred = conjunctionPred;
   }
 
+  @Override
+  public String getHeadSymbol() {
+    return conjunctionPred;
+  }
+
   @Override
   public Expression2 getReplacement(Expression2 expression, int index) {
-    Expression2 subexpression = expression.getSubexpression(index);
+    return getReplacement(expression.getSubexpression(index));
+  }
+
+  @Override
+  public Expression2 getReplacement(Expression2 subexpression) {
     if (isConjunction(subexpression)) {
       
       List<Expression2> conjuncts = Lists.newArrayList();
-      int[] childIndexes = expression.getChildIndexes(index);
-      for (int i = 1; i < childIndexes.length; i++) {
+      List<Expression2> arguments = subexpression.getSubexpressions();
+      for (int i = 1; i < arguments.size(); i++) {
         // Check if any argument to the conjunction is also a conjunction
-        Expression2 conjunct = expression.getSubexpression(childIndexes[i]);
+        Expression2 conjunct = arguments.get(i);
         if (isConjunction(conjunct)) {
           List<Expression2> conjunctConjuncts = conjunct.getSubexpressions();
           conjuncts.addAll(conjunctConjuncts.subList(1, conjunctConjuncts.size()));
@@ -0,0 +1,105 @@
+package com.jayantkrish.jklol.ccg.lambda2;
+
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
+
+/**
+ * A bounded, thread-safe cache of the denotations of logical forms.
+ * Each denotation is keyed by a logical form and the world it was
+ * evaluated in (e.g., a table id or an evaluation environment), so a
+ * single cache can be shared across all of the examples in a data
+ * set. The cache evicts the least-recently used denotations once it
+ * contains more than {@code maxSize} entries.
+ * <p>
+ * Logical forms are compared syntactically, so callers should
+ * simplify logical forms before using them as keys. Cache hits and
+ * misses are recorded in the {@code <name>/hits} and
+ * {@code <name>/misses} counters of {@link Metrics}.
+ *
+ * @author jayantk
+ */
+public class DenotationCache {
+
+  private final Cache<Key, Object> cache;
+
+  private final Counter hits;
+  private final Counter misses;
+
+  public static final int DEFAULT_MAX_SIZE = 100000;
+
+  public DenotationCache(String name, int maxSize) {
+    this.cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+    this.hits = Metrics.counter(name + "/hits");
+    this.misses = Metrics.counter(name + "/misses");
+  }
+
+  /**
+   * Gets the cached denotation of {@code lf} in {@code world}, or
+   * {@code null} if there is no cached denotation.
+   *
+   * @param world
+   * @param lf
+   * @return
+   */
+  public Object get(Object world, Expression2 lf) {
+    Object denotation = cache.getIfPresent(new Key(world, lf));
+    if (denotation != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return denotation;
+  }
+
+  /**
+   * Caches {@code denotation} as the denotation of {@code lf} in
+   * {@code world}.
+   *
+   * @param world
+   * @param lf
+   * @param denotation
+   */
+  public void put(Object world, Expression2 lf, Object denotation) {
+    cache.put(new Key(world, lf), Preconditions.checkNotNull(denotation));
+  }
+
+  public long size() {
+    return cache.size();
+  }
+
+  public void clear() {
+    cache.invalidateAll();
+  }
+
+  private static class Key {
+    private final Object world;
+    private final Expression2 lf;
+    private final int hashCode;
+
+    public Key(Object world, Expression2 lf) {
+      this.world = Preconditions.checkNotNull(world);
+      this.lf = Preconditions.checkNotNull(lf);
+      this.hashCode = 31 * world.hashCode() + lf.hashCode();
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) obj;
+      return hashCode == other.hashCode && world.equals(other.world) && lf.equals(other.lf);
+    }
+  }
+}
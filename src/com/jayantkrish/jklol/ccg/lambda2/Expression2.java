@@ -10,12 +10,30 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
 
+/**
+ * An immutable expression in the lambda calculus, represented as a
+ * tree whose leaves are constants. Expressions share structure:
+ * methods that return modified copies of an expression reuse any
+ * subexpressions that are unchanged. Use {@link Expression2Interner}
+ * to obtain canonical instances of expressions, which can be
+ * compared for equality in constant time.
+ *
+ * @author jayantk
+ */
 public class Expression2 implements Serializable, Comparable<Expression2> {
   private static final long serialVersionUID = 1L;
 
   protected final String constantName;
   protected final List<Expression2> subexpressions;
   protected final int size;
+
+  // Cached hash code, computed on first use. 0 means
+  // that the hash code has not been computed.
+  private transient int hashCode;
+  // The interner for which this expression is the canonical
+  // instance, if any. Two distinct expressions with the same
+  // interner are never equal.
+  transient Expression2Interner interner;
   
   private Expression2(String constantName, List<Expression2> subexpressions, int size) {
     Preconditions.checkArgument(constantName == null || subexpressions == null);
@@ -275,30 +293,50 @@ public class Expression2 implements Serializable, Comparable<Expression2> {
   public Expression2 substitute(Expression2 value, Expression2 replacement) {
     if (this.equals(value)) {
       return replacement;
-    } else if (this.isConstant()) {
+    } else if (this.isConstant() || size <= value.size()) {
       return this;
     } else {
-      List<Expression2> newSubexpressions = Lists.newArrayList();
-      for (Expression2 sub : subexpressions) {
-        newSubexpressions.add(sub.substitute(value, replacement));
+      List<Expression2> newSubexpressions = null;
+      for (int i = 0; i < subexpressions.size(); i++) {
+        Expression2 sub = subexpressions.get(i);
+        Expression2 newSub = sub.substitute(value, replacement);
+        if (newSub != sub && newSubexpressions == null) {
+          newSubexpressions = Lists.newArrayList(subexpressions.subList(0, i));
+        }
+        if (newSubexpressions != null) {
+          newSubexpressions.add(newSub);
+        }
       }
-      return Expression2.nested(newSubexpressions);
+      return newSubexpressions == null ? this : Expression2.nested(newSubexpressions);
     }
   }
-  
+
+  /**
+   * Replaces each occurrence of the constant {@code value} in
+   * this expression with the elements of {@code replacement},
+   * spliced into the expression containing the constant.
+   *
+   * @param value
+   * @param replacement
+   * @return
+   */
   public Expression2 substituteInline(String value, List<Expression2> replacement) {
     if (this.isConstant()) {
       return this;
     } else {
       List<Expression2> newSubexpressions = Lists.newArrayList();
+      boolean changed = false;
       for (Expression2 sub : subexpressions) {
         if (sub.isConstant() && sub.getConstant().equals(value)) {
           newSubexpressions.addAll(replacement);
+          changed = true;
         } else {
-          newSubexpressions.add(sub.substituteInline(value, replacement));
+          Expression2 newSub = sub.substituteInline(value, replacement);
+          newSubexpressions.add(newSub);
+          changed = changed || newSub != sub;
         }
       }
-      return Expression2.nested(newSubexpressions);
+      return changed ? Expression2.nested(newSubexpressions) : this;
     }
   }
   
@@ -364,11 +402,15 @@ public class Expression2 implements Serializable, Comparable<Expression2> {
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-    result = prime * result + ((constantName == null) ? 0 : constantName.hashCode());
-    result = prime * result + size;
-    result = prime * result + ((subexpressions == null) ? 0 : subexpressions.hashCode());
+    int result = hashCode;
+    if (result == 0) {
+      final int prime = 31;
+      result = 1;
+      result = prime * result + ((constantName == null) ? 0 : constantName.hashCode());
+      result = prime * result + size;
+      result = prime * result + ((subexpressions == null) ? 0 : subexpressions.hashCode());
+      hashCode = result;
+    }
     return result;
   }
 
@@ -381,7 +423,9 @@ public class Expression2 implements Serializable, Comparable<Expression2> {
     if (getClass() != obj.getClass())
       return false;
     Expression2 other = (Expression2) obj;
-    if (size != other.size)
+    if (interner != null && interner == other.interner)
+      return false;
+    if (size != other.size || hashCode() != other.hashCode())
       return false;
     if (constantName == null) {
       if (other.constantName != null)
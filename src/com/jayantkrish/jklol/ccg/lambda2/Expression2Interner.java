@@ -0,0 +1,143 @@
+package com.jayantkrish.jklol.ccg.lambda2;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.ccg.lambda.ExpressionFactory;
+
+/**
+ * Hash-conses {@link Expression2}s. {@link #intern} returns a
+ * canonical instance of an expression whose subexpressions are
+ * also canonical, so structurally equal expressions interned by
+ * the same interner share all of their nodes. Canonical instances
+ * are compared for equality by identity, and their hash codes are
+ * computed only once.
+ * <p>
+ * Canonical instances are weakly referenced, so an interner does
+ * not prevent expressions from being garbage collected. This
+ * class is thread-safe. It also implements
+ * {@code ExpressionFactory}, so it can be used with
+ * {@link com.jayantkrish.jklol.ccg.lambda.ExpressionParser} to
+ * parse canonical expressions.
+ *
+ * @author jayantk
+ */
+public class Expression2Interner implements ExpressionFactory<Expression2> {
+
+  private final Interner<Expression2> interner;
+
+  public Expression2Interner() {
+    this.interner = Interners.newWeakInterner();
+  }
+
+  /**
+   * Returns {@code true} if {@code expression} is a canonical
+   * instance returned by this interner.
+   *
+   * @param expression
+   * @return
+   */
+  public boolean isInterned(Expression2 expression) {
+    return expression.interner == this;
+  }
+
+  /**
+   * Gets the canonical instance of {@code expression}.
+   *
+   * @param expression
+   * @return
+   */
+  public Expression2 intern(Expression2 expression) {
+    if (expression.interner == this) {
+      return expression;
+    }
+
+    if (expression.isConstant()) {
+      return canonicalize(expression);
+    }
+
+    List<Expression2> subexpressions = expression.getSubexpressions();
+    List<Expression2> internedSubexpressions = null;
+    for (int i = 0; i < subexpressions.size(); i++) {
+      Expression2 subexpression = subexpressions.get(i);
+      Expression2 internedSubexpression = intern(subexpression);
+      if (internedSubexpression != subexpression && internedSubexpressions == null) {
+        internedSubexpressions = Lists.newArrayList(subexpressions.subList(0, i));
+      }
+      if (internedSubexpressions != null) {
+        internedSubexpressions.add(internedSubexpression);
+      }
+    }
+
+    if (internedSubexpressions == null) {
+      return canonicalize(expression);
+    } else {
+      return canonicalize(Expression2.nested(internedSubexpressions));
+    }
+  }
+
+  /**
+   * Replaces the subexpression of {@code expression} at
+   * {@code index} with {@code newExpression}, returning a canonical
+   * instance. Only the expressions on the path from the root to
+   * {@code index} are rebuilt; all other subexpressions are shared
+   * with {@code expression}.
+   *
+   * @param expression
+   * @param index
+   * @param newExpression
+   * @return
+   */
+  public Expression2 substitute(Expression2 expression, int index, Expression2 newExpression) {
+    Preconditions.checkArgument(index < expression.size());
+    if (index == 0) {
+      return intern(newExpression);
+    }
+
+    List<Expression2> subexpressions = expression.getSubexpressions();
+    int startIndex = 1;
+    for (int i = 0; i < subexpressions.size(); i++) {
+      Expression2 subexpression = subexpressions.get(i);
+      if (index < startIndex + subexpression.size()) {
+        List<Expression2> newSubexpressions = Lists.newArrayList(subexpressions);
+        newSubexpressions.set(i, substitute(subexpression, index - startIndex, newExpression));
+        return intern(Expression2.nested(newSubexpressions));
+      }
+      startIndex += subexpression.size();
+    }
+    // This should never happen due to the preconditions
+    // check at the beginning.
+    throw new IllegalArgumentException("Something bad happened.");
+  }
+
+  @Override
+  public Expression2 createTokenExpression(String token) {
+    return intern(Expression2.constant(token));
+  }
+
+  @Override
+  public Expression2 createExpression(List<Expression2> subexpressions) {
+    return intern(Expression2.nested(subexpressions));
+  }
+
+  /**
+   * Gets the canonical instance of {@code expression}, whose
+   * subexpressions must already be canonical.
+   */
+  private Expression2 canonicalize(Expression2 expression) {
+    if (expression.interner != null) {
+      // expression is the canonical instance for another interner.
+      expression = expression.isConstant() ? Expression2.constant(expression.getConstant())
+          : Expression2.nested(expression.getSubexpressions());
+    }
+    Expression2 canonical = interner.intern(expression);
+    // Other threads may briefly observe a canonical instance
+    // without this field set, in which case they fall back on
+    // structural comparisons.
+    canonical.interner = this;
+    return canonical;
+  }
+}
@@ -1,9 +1,16 @@
 package com.jayantkrish.jklol.ccg.lambda2;
 
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
 
 /**
  * Simplification engine for expressions. Repeatedly applies
@@ -13,23 +20,95 @@ import com.google.common.collect.Lists;
  * Other application-specific semantics-preserving
  * transformations can also be applied using additional
  * rules.
- * 
+ * <p>
+ * Rules that implement {@link LocalReplacementRule} are applied
+ * in a single bottom-up traversal of the expression, and each
+ * subexpression is only tested against the rules for its head
+ * symbol. Any other rules are applied to the resulting expression
+ * at every index, after which the local rules are re-applied if
+ * necessary. Simplified expressions are memoized, and the number
+ * of rewrites performed by each rule is recorded in the
+ * {@code expression_simplifier/<rule class>} counter of
+ * {@link Metrics}.
+ *
  * @author jayant
- * 
+ *
  */
 public class ExpressionSimplifier {
-  
+
   private final List<ExpressionReplacementRule> rules;
 
+  // Local rules that may apply to an expression with a given head
+  // symbol, in the same order as rules.
+  private final Map<String, List<LocalReplacementRule>> localRulesByHead;
+  // Local rules that may apply to an expression whose head symbol
+  // is not in localRulesByHead.
+  private final List<LocalReplacementRule> unindexedLocalRules;
+  private final List<ExpressionReplacementRule> globalRules;
+  private final Map<ExpressionReplacementRule, Counter> ruleCounters;
+
+  private final Cache<Expression2, Expression2> cache;
+
+  public static final int DEFAULT_MAX_CACHE_SIZE = 10000;
+
   public ExpressionSimplifier(List<ExpressionReplacementRule> rules) {
+    this(rules, DEFAULT_MAX_CACHE_SIZE);
+  }
+
+  /**
+   * Creates a simplifier that memoizes the simplified forms of up to
+   * {@code maxCacheSize} expressions. If {@code maxCacheSize} is 0,
+   * simplified forms are not memoized.
+   *
+   * @param rules
+   * @param maxCacheSize
+   */
+  public ExpressionSimplifier(List<ExpressionReplacementRule> rules, int maxCacheSize) {
     this.rules = ImmutableList.copyOf(rules);
+
+    this.localRulesByHead = Maps.newHashMap();
+    this.unindexedLocalRules = Lists.newArrayList();
+    this.globalRules = Lists.newArrayList();
+    this.ruleCounters = new IdentityHashMap<ExpressionReplacementRule, Counter>();
+    for (ExpressionReplacementRule rule : rules) {
+      if (rule instanceof LocalReplacementRule) {
+        String head = ((LocalReplacementRule) rule).getHeadSymbol();
+        if (head != null && !localRulesByHead.containsKey(head)) {
+          localRulesByHead.put(head, Lists.<LocalReplacementRule>newArrayList());
+        }
+      }
+      ruleCounters.put(rule, Metrics.counter("expression_simplifier/"
+          + rule.getClass().getSimpleName()));
+    }
+    for (ExpressionReplacementRule rule : rules) {
+      if (rule instanceof LocalReplacementRule) {
+        LocalReplacementRule localRule = (LocalReplacementRule) rule;
+        String head = localRule.getHeadSymbol();
+        if (head == null) {
+          unindexedLocalRules.add(localRule);
+          for (List<LocalReplacementRule> headRules : localRulesByHead.values()) {
+            headRules.add(localRule);
+          }
+        } else {
+          localRulesByHead.get(head).add(localRule);
+        }
+      } else {
+        globalRules.add(rule);
+      }
+    }
+
+    if (maxCacheSize > 0) {
+      this.cache = CacheBuilder.newBuilder().maximumSize(maxCacheSize).build();
+    } else {
+      this.cache = null;
+    }
   }
-  
+
   /**
    * Default simplifier for lambda calculus expressions. This
    * simplifier performs beta reduction of lambda expressions
-   * and canonicalizes variable names. 
-   * 
+   * and canonicalizes variable names.
+   *
    * @return
    */
   public static ExpressionSimplifier lambdaCalculus() {
@@ -39,25 +118,113 @@ public class ExpressionSimplifier {
     return new ExpressionSimplifier(rules);
   }
 
+  /**
+   * Gets the head symbol of {@code expression}, which is the constant
+   * reached by repeatedly taking the first subexpression of
+   * {@code expression}. For example, the head symbol of both
+   * {@code (and x y)} and {@code ((lambda (x) x) y)} is the first
+   * constant of the expression. Returns {@code null} if there is no
+   * such constant.
+   *
+   * @param expression
+   * @return
+   */
+  public static String getHeadSymbol(Expression2 expression) {
+    while (!expression.isConstant()) {
+      List<Expression2> subexpressions = expression.getSubexpressions();
+      if (subexpressions.size() == 0) {
+        return null;
+      }
+      expression = subexpressions.get(0);
+    }
+    return expression.getConstant();
+  }
+
   public Expression2 apply(Expression2 expression) {
+    if (cache != null) {
+      Expression2 cached = cache.getIfPresent(expression);
+      if (cached != null) {
+        return cached;
+      }
+    }
+
+    Expression2 result = expression;
     boolean changed = true;
     while (changed) {
+      result = applyLocalRules(result);
+
       // Iterate backward to not have to worry about the
-      // expression getting shorter on each pass. This order
-      // also first performs replacement on the most deeply
-      // nested expressions, moving up the expression tree.
+      // expression getting shorter on each pass.
       changed = false;
-      for (ExpressionReplacementRule rule : rules) {
-        for (int i = expression.size() - 1; i >= 0; i--) {
-          Expression2 result = rule.getReplacement(expression, i);
-          if (result != null) {
-            expression = expression.substitute(i, result);
+      for (ExpressionReplacementRule rule : globalRules) {
+        for (int i = result.size() - 1; i >= 0; i--) {
+          Expression2 replacement = rule.getReplacement(result, i);
+          if (replacement != null) {
+            result = result.substitute(i, replacement);
+            ruleCounters.get(rule).increment();
             changed = true;
           }
         }
       }
     }
-    return expression;
+
+    if (cache != null) {
+      cache.put(expression, result);
+    }
+    return result;
+  }
+
+  /**
+   * Applies the local rules to every subexpression of
+   * {@code expression}, bottom-up, until none of them applies.
+   * Unchanged subexpressions are shared with {@code expression}.
+   */
+  private Expression2 applyLocalRules(Expression2 expression) {
+    Expression2 current = expression;
+    if (!expression.isConstant()) {
+      List<Expression2> subexpressions = expression.getSubexpressions();
+      List<Expression2> newSubexpressions = null;
+      for (int i = 0; i < subexpressions.size(); i++) {
+        Expression2 subexpression = subexpressions.get(i);
+        Expression2 newSubexpression = applyLocalRules(subexpression);
+        if (newSubexpression != subexpression && newSubexpressions == null) {
+          newSubexpressions = Lists.newArrayList(subexpressions.subList(0, i));
+        }
+        if (newSubexpressions != null) {
+          newSubexpressions.add(newSubexpression);
+        }
+      }
+
+      if (newSubexpressions != null) {
+        current = Expression2.nested(newSubexpressions);
+      }
+    }
+
+    List<LocalReplacementRule> candidates = getCandidateRules(current);
+    for (LocalReplacementRule rule : candidates) {
+      Expression2 replacement = rule.getReplacement(current);
+      if (replacement != null) {
+        ruleCounters.get(rule).increment();
+
+        // The replacement may contain new opportunities for
+        // simplification, e.g., after beta reduction.
+        return applyLocalRules(replacement);
+      }
+    }
+    return current;
+  }
+
+  private List<LocalReplacementRule> getCandidateRules(Expression2 expression) {
+    if (localRulesByHead.size() > 0) {
+      String head = getHeadSymbol(expression);
+      if (head != null) {
+        List<LocalReplacementRule> headRules = localRulesByHead.get(head);
+        if (headRules != null) {
+          return headRules;
+        }
+      }
+    }
+    return unindexedLocalRules;
   }
 
   public List<ExpressionReplacementRule> getReplacementRules() {
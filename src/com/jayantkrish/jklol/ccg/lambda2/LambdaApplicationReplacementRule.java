@@ -12,11 +12,20 @@ import com.google.common.collect.Lists;
  * @author jayant
  *
  */
-public class LambdaApplicationReplacementRule implements ExpressionReplacementRule {
+public class LambdaApplicationReplacementRule implements LocalReplacementRule {
+
+  @Override
+  public String getHeadSymbol() {
+    return StaticAnalysis.LAMBDA;
+  }
 
   @Override
   public Expression2 getReplacement(Expression2 expression, int index) {
-    Expression2 subexpression = expression.getSubexpression(index);
+    return getReplacement(expression.getSubexpression(index));
+  }
+
+  @Override
+  public Expression2 getReplacement(Expression2 subexpression) {
     if (!subexpression.isConstant() && StaticAnalysis.isLambda(subexpression, 1)) {
       List<Expression2> applicationTerms = subexpression.getSubexpressions();
       Expression2 lambdaExpression = applicationTerms.get(0);
@@ -27,12 +36,7 @@ public class LambdaApplicationReplacementRule implements ExpressionReplacementRu
 
       int numArgsToApply = Math.min(applicationArgs.size(), lambdaArgs.size());
       for (int i = 0; i < numArgsToApply; i++) {
-        int[] freeIndexes = StaticAnalysis.getIndexesOfFreeVariable(body, lambdaArgs.get(i));
-        for (int j = freeIndexes.length - 1; j >= 0; j--) {
-          // Do substitutions in backward order to prevent the indexes
-          // from changing as the body is modified.
-          body = body.substitute(freeIndexes[j], applicationArgs.get(i));
-        }
+        body = substituteFreeVariable(body, lambdaArgs.get(i), applicationArgs.get(i));
       }
 
       if (applicationArgs.size() < lambdaArgs.size()) {
@@ -48,4 +52,44 @@ public class LambdaApplicationReplacementRule implements ExpressionReplacementRu
     }
     return null;
   }
+
+  /**
+   * Replaces every free occurrence of {@code variableName} in
+   * {@code expression} with {@code value}. This is equivalent to
+   * substituting at each index returned by
+   * {@link StaticAnalysis#getIndexesOfFreeVariable}, but only
+   * traverses {@code expression} once and shares any subexpressions
+   * that do not contain the variable.
+   */
+  private static Expression2 substituteFreeVariable(Expression2 expression,
+      String variableName, Expression2 value) {
+    if (expression.isConstant()) {
+      return expression.getConstant().equals(variableName) ? value : expression;
+    }
+
+    List<Expression2> subexpressions = expression.getSubexpressions();
+    if (subexpressions.size() > 1 && subexpressions.get(0).isConstant()
+        && subexpressions.get(0).getConstant().equals(StaticAnalysis.LAMBDA)
+        && !subexpressions.get(1).isConstant()) {
+      for (Expression2 argument : subexpressions.get(1).getSubexpressions()) {
+        if (argument.isConstant() && argument.getConstant().equals(variableName)) {
+          // The variable is bound by this lambda expression.
+          return expression;
+        }
+      }
+    }
+
+    List<Expression2> newSubexpressions = null;
+    for (int i = 0; i < subexpressions.size(); i++) {
+      Expression2 subexpression = subexpressions.get(i);
+      Expression2 newSubexpression = substituteFreeVariable(subexpression, variableName, value);
+      if (newSubexpression != subexpression && newSubexpressions == null) {
+        newSubexpressions = Lists.newArrayList(subexpressions.subList(0, i));
+      }
+      if (newSubexpressions != null) {
+        newSubexpressions.add(newSubexpression);
+      }
+    }
+    return newSubexpressions == null ? expression : Expression2.nested(newSubexpressions);
+  }
 }
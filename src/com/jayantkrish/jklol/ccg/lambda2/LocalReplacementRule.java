@@ -0,0 +1,33 @@
+package com.jayantkrish.jklol.ccg.lambda2;
+
+/**
+ * A replacement rule whose replacement for a subexpression depends
+ * only on that subexpression, and not on the expression containing
+ * it. {@link ExpressionSimplifier} applies local rules in a single
+ * bottom-up traversal of an expression, and only tries a rule on
+ * subexpressions whose head symbol (see
+ * {@link ExpressionSimplifier#getHeadSymbol}) matches
+ * {@link #getHeadSymbol()}.
+ * 
+ * @author jayantk
+ */
+public interface LocalReplacementRule extends ExpressionReplacementRule {
+
+  /**
+   * Gets the head symbol of every expression that this rule can
+   * replace, or {@code null} if this rule may replace expressions
+   * with any head symbol.
+   * 
+   * @return
+   */
+  public String getHeadSymbol();
+
+  /**
+   * Gets the replacement for {@code expression}, or {@code null} if
+   * this rule does not apply to it.
+   * 
+   * @param expression
+   * @return
+   */
+  public Expression2 getReplacement(Expression2 expression);
+}
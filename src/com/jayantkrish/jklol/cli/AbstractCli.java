@@ -15,17 +15,23 @@ import com.google.common.collect.Iterables;
 import com.google.common.collect.Sets;
 import com.jayantkrish.jklol.boost.FunctionalGradientAscent;
 import com.jayantkrish.jklol.dtree.RegressionTreeTrainer;
+import com.jayantkrish.jklol.metrics.Metrics;
 import com.jayantkrish.jklol.parallel.LocalMapReduceExecutor;
 import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
 import com.jayantkrish.jklol.sequence.cli.TrainSequenceModel;
+import com.jayantkrish.jklol.training.AsynchronousStochasticGradientTrainer;
 import com.jayantkrish.jklol.training.DefaultLogFunction;
 import com.jayantkrish.jklol.training.GradientOptimizer;
+import com.jayantkrish.jklol.training.LazyL2Regularizer;
 import com.jayantkrish.jklol.training.Lbfgs;
 import com.jayantkrish.jklol.training.LogFunction;
 import com.jayantkrish.jklol.training.LogFunctions;
 import com.jayantkrish.jklol.training.MinibatchLbfgs;
 import com.jayantkrish.jklol.training.NullLogFunction;
 import com.jayantkrish.jklol.training.StochasticGradientTrainer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.AdagradL2Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.StochasticL2Regularizer;
 import com.jayantkrish.jklol.util.Pseudorandom;
 import com.jayantkrish.jklol.util.TimeUtils;
 
@@ -91,6 +97,9 @@ public abstract class AbstractCli {
   protected OptionSpec<Long> randomSeed;
   // Prevents the program from printing out the input options
   protected OptionSpec<Void> noPrintOptions;
+  // Exports timing metrics to a file or via JMX
+  protected OptionSpec<String> metricsFile;
+  protected OptionSpec<Void> metricsJmx;
 
   // Stochastic gradient options.
   protected OptionSpec<Long> sgdIterations;
@@ -102,6 +111,12 @@ public abstract class AbstractCli {
   protected OptionSpec<Double> sgdRegularizationFrequency;
   protected OptionSpec<Double> sgdClipGradients;
   protected OptionSpec<Void> sgdAdagrad;
+  protected OptionSpec<Integer> sgdLazyRegularization;
+  protected OptionSpec<Integer> sgdAsynchronous;
+  protected OptionSpec<Integer> sgdAsynchronousLockStripes;
+  protected OptionSpec<Integer> sgdAsynchronousRefreshInterval;
+  protected OptionSpec<Void> sgdPipelineInstantiation;
+  protected OptionSpec<Void> sgdSparseGradients;
 
   // LBFGS options.
   protected OptionSpec<Void> lbfgs;
@@ -206,6 +221,10 @@ public abstract class AbstractCli {
     long startTime = System.currentTimeMillis();
     processOptions(parsedOptions);
     run(parsedOptions);
+    MapReduceConfiguration.shutdown();
+    if (parsedOptions.has(metricsFile)) {
+      Metrics.getRegistry().writeReport(parsedOptions.valueOf(metricsFile));
+    }
     long endTime = System.currentTimeMillis();
 
     if (!parsedOptions.has(noPrintOptions)) {
@@ -246,6 +265,12 @@ public abstract class AbstractCli {
     noPrintOptions = parser.accepts("noPrintOptions", "Don't print out the command-line options "
         + "passed in to this program or final runtime statistics.");
 
+    metricsFile = parser.accepts("metricsFile", "Write timing metrics (e.g., parsing and "
+        + "inference latency percentiles) to this file when the program completes.")
+        .withRequiredArg().ofType(String.class);
+    metricsJmx = parser.accepts("metricsJmx", "Expose timing metrics via JMX while the "
+        + "program runs.");
+
     if (opts.contains(CommonOptions.STOCHASTIC_GRADIENT)) {
       sgdIterations = parser.accepts("iterations",
           "Number of iterations (passes over the data) for stochastic gradient descent.").
@@ -269,6 +294,22 @@ public abstract class AbstractCli {
       sgdClipGradients = parser.accepts("clipGradients", "Clip gradients to a max l2 norm of the given value.")
           .withRequiredArg().ofType(Double.class).defaultsTo(Double.MAX_VALUE);
       sgdAdagrad = parser.accepts("adagrad", "Use the adagrad algorithm for stochastic gradient descent.");
+      sgdLazyRegularization = parser.accepts("lazyRegularization",
+          "Apply L2 regularization and parameter averaging lazily, only to parameters with a nonzero gradient. Deferred updates are applied to all parameters every N iterations.")
+          .withRequiredArg().ofType(Integer.class);
+      sgdAsynchronous = parser.accepts("asynchronous",
+          "Run asynchronous (Hogwild-style) stochastic gradient descent with the given number of workers. Workers update the parameters without waiting for each other. Requires --noReturnAveragedParameters.")
+          .withRequiredArg().ofType(Integer.class);
+      sgdAsynchronousLockStripes = parser.accepts("asynchronousLockStripes",
+          "Number of locks guarding parameter updates during asynchronous stochastic gradient descent. If 0, updates are lock-free, and concurrent updates to the same parameter may be lost.")
+          .withRequiredArg().ofType(Integer.class).defaultsTo(64);
+      sgdAsynchronousRefreshInterval = parser.accepts("asynchronousRefreshInterval",
+          "Number of parameter updates each asynchronous stochastic gradient descent worker makes before re-instantiating its model from the shared parameters.")
+          .withRequiredArg().ofType(Integer.class).defaultsTo(1);
+      sgdPipelineInstantiation = parser.accepts("pipelineInstantiation",
+          "Instantiate the model for each iteration of stochastic gradient descent in the background during the previous iteration. Gradients are computed using parameters that are one iteration out of date.");
+      sgdSparseGradients = parser.accepts("sparseGradients",
+          "Accumulate gradients in a sparse representation, so the cost of each iteration depends on the number of features with a nonzero gradient instead of the number of parameters. Best combined with --lazyRegularization. Asynchronous stochastic gradient descent always uses sparse gradients.");
     }
 
     if (opts.contains(CommonOptions.LBFGS)) {
@@ -349,6 +390,10 @@ public abstract class AbstractCli {
   private void processOptions(OptionSet options) {
     Pseudorandom.get().setSeed(options.valueOf(randomSeed));
 
+    if (options.has(metricsJmx)) {
+      Metrics.getRegistry().registerMBeans(Metrics.JMX_DOMAIN);
+    }
+
     if (opts.contains(CommonOptions.MAP_REDUCE)) {
       MapReduceConfiguration.setMapReduceExecutor(new LocalMapReduceExecutor(
           options.valueOf(mrMaxThreads), options.valueOf(mrMaxBatchesPerThread)));
@@ -367,14 +412,15 @@ public abstract class AbstractCli {
   }
 
   /**
-   * Creates a {@code StochasticGradientTrainer} configured using the
+   * Creates a {@code StochasticGradientTrainer} (or an
+   * {@code AsynchronousStochasticGradientTrainer}) configured using the
    * provided options. In order to use this method, pass
    * {@link CommonOptions#STOCHASTIC_GRADIENT} to the constructor.
    * 
    * @return a stochastic gradient trainer configured using any
    * command-line options passed to the program
    */
-  private StochasticGradientTrainer createStochasticGradientTrainer(int numExamples) {
+  private GradientOptimizer createStochasticGradientTrainer(int numExamples) {
     Preconditions.checkState(opts.contains(CommonOptions.STOCHASTIC_GRADIENT));
 
     long iterationsOption = parsedOptions.valueOf(sgdIterations);
@@ -387,19 +433,51 @@ public abstract class AbstractCli {
     double l2Regularization = parsedOptions.valueOf(sgdL2Regularization);
 
     LogFunction log = LogFunctions.getLogFunction();
-    StochasticGradientTrainer trainer = null;
-    if (!parsedOptions.has(sgdAdagrad)) {
-      trainer = StochasticGradientTrainer.createWithStochasticL2Regularization(
-          numIterations, batchSize, initialStepSize, !parsedOptions.has(sgdNoDecayStepSize),
-          !parsedOptions.has(sgdNoReturnAveragedParameters), parsedOptions.valueOf(sgdClipGradients),
-          l2Regularization, parsedOptions.valueOf(sgdRegularizationFrequency), log);
+    if (parsedOptions.has(sgdAsynchronous)) {
+      // The asynchronous trainer always returns the last parameter
+      // iterate and applies unclipped, eagerly regularized updates
+      // to the shared parameters.
+      Preconditions.checkState(!parsedOptions.has(sgdAdagrad),
+          "--asynchronous cannot be used with --adagrad");
+      Preconditions.checkState(parsedOptions.has(sgdNoReturnAveragedParameters),
+          "--asynchronous does not average parameters and requires --noReturnAveragedParameters");
+      Preconditions.checkState(!parsedOptions.has(sgdClipGradients),
+          "--asynchronous cannot be used with --clipGradients");
+      Preconditions.checkState(!parsedOptions.has(sgdRegularizationFrequency),
+          "--asynchronous cannot be used with --regularizationFrequency");
+      Preconditions.checkState(!parsedOptions.has(sgdLazyRegularization),
+          "--asynchronous cannot be used with --lazyRegularization");
+      Preconditions.checkState(!parsedOptions.has(sgdPipelineInstantiation),
+          "--asynchronous cannot be used with --pipelineInstantiation");
+      return new AsynchronousStochasticGradientTrainer(numIterations, batchSize, initialStepSize,
+          !parsedOptions.has(sgdNoDecayStepSize), l2Regularization,
+          parsedOptions.valueOf(sgdAsynchronous),
+          parsedOptions.valueOf(sgdAsynchronousRefreshInterval),
+          parsedOptions.valueOf(sgdAsynchronousLockStripes), log);
+    }
+
+    boolean adaGrad = parsedOptions.has(sgdAdagrad);
+    Regularizer regularizer = null;
+    if (parsedOptions.has(sgdLazyRegularization)) {
+      Preconditions.checkState(!adaGrad, "--lazyRegularization cannot be used with --adagrad");
+      Preconditions.checkState(!parsedOptions.has(sgdRegularizationFrequency),
+          "--lazyRegularization cannot be used with --regularizationFrequency");
+      regularizer = new LazyL2Regularizer(l2Regularization,
+          parsedOptions.valueOf(sgdLazyRegularization));
+    } else if (!adaGrad) {
+      regularizer = new StochasticL2Regularizer(l2Regularization,
+          parsedOptions.valueOf(sgdRegularizationFrequency));
     } else {
-      trainer = StochasticGradientTrainer.createAdagrad(
-          numIterations, batchSize, initialStepSize, !parsedOptions.has(sgdNoDecayStepSize),
-          !parsedOptions.has(sgdNoReturnAveragedParameters), parsedOptions.valueOf(sgdClipGradients),
-          l2Regularization, parsedOptions.valueOf(sgdRegularizationFrequency), log);
+      regularizer = new AdagradL2Regularizer(l2Regularization,
+          parsedOptions.valueOf(sgdRegularizationFrequency));
     }
 
+    StochasticGradientTrainer trainer = new StochasticGradientTrainer(numIterations, batchSize,
+        initialStepSize, !parsedOptions.has(sgdNoDecayStepSize),
+        !parsedOptions.has(sgdNoReturnAveragedParameters), adaGrad,
+        parsedOptions.valueOf(sgdClipGradients), regularizer,
+        parsedOptions.has(sgdPipelineInstantiation), parsedOptions.has(sgdSparseGradients), log);
+
     return trainer;
   }
 
@@ -461,6 +539,22 @@ public abstract class AbstractCli {
     throw new UnsupportedOperationException("To use createGradientOptimizer, the CLI constructor must specify STOCHASTIC_GRADIENT and/or LBFGS.");
   }
 
+  /**
+   * Returns {@code true} if the optimizer returned by
+   * {@link #createGradientOptimizer} copies all of its training data
+   * into memory (as LBFGS and asynchronous stochastic gradient descent
+   * do), in which case streaming the training data saves no memory.
+   * 
+   * @return
+   */
+  protected boolean gradientOptimizerLoadsTrainingData() {
+    if (opts.contains(CommonOptions.LBFGS) && (!opts.contains(CommonOptions.STOCHASTIC_GRADIENT)
+        || parsedOptions.has(lbfgs))) {
+      return true;
+    }
+    return opts.contains(CommonOptions.STOCHASTIC_GRADIENT) && parsedOptions.has(sgdAsynchronous);
+  }
+
   protected FunctionalGradientAscent createFunctionalGradientAscent(int numExamples) {
     Preconditions.checkState(opts.contains(CommonOptions.FUNCTIONAL_GRADIENT_ASCENT));
 
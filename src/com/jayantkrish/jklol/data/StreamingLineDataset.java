@@ -0,0 +1,385 @@
+package com.jayantkrish.jklol.data;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A data set that is read from a file containing one item per line,
+ * without holding the entire data set in memory. Each call to
+ * {@link #iterator()} begins a new pass over the file. During a pass,
+ * a background thread reads lines and submits them in chunks to a pool
+ * of parsing threads, keeping at most a bounded number of parsed items
+ * ahead of the consumer. Items are returned in file order, unless the
+ * data set is shuffled.
+ * <p>
+ * Shuffled data sets use a two-pass shuffle on disk: lines are first
+ * randomly partitioned into temporary bucket files, then the buckets
+ * are visited in random order, and each bucket is shuffled in memory.
+ * Each pass uses a different permutation. Memory usage is proportional
+ * to the bucket size.
+ * <p>
+ * Like {@link com.jayantkrish.jklol.util.IoUtils#readLines}, blank lines
+ * are ignored. {@code format} is invoked concurrently from multiple
+ * threads, and so must be thread-safe. Each data set owns a pool of
+ * parsing threads, which is released by {@link #close()}.
+ *
+ * @author jayantk
+ *
+ * @param <T> Type of item in the data set.
+ */
+public class StreamingLineDataset<T> implements Iterable<T>, Closeable {
+
+  // Number of lines parsed by each parsing task.
+  private static final int LINES_PER_CHUNK = 64;
+  // How often a blocked reader thread checks whether its iterator
+  // has been discarded.
+  private static final long ABANDONED_CHECK_MILLIS = 200;
+
+  private final String filename;
+  private final DataFormat<T> format;
+  private final int prefetchSize;
+  private final int shuffleBucketSize;
+  private final long seed;
+
+  private final ExecutorService parsingExecutor;
+  private final AtomicInteger numPasses;
+  private volatile int numItems;
+
+  /**
+   * Creates a data set which returns the lines of {@code filename} in
+   * order, parsed using {@code format}.
+   *
+   * @param filename
+   * @param format
+   * @param numThreads number of threads used to parse lines.
+   * @param prefetchSize approximate maximum number of items parsed
+   * ahead of the consumer.
+   */
+  public StreamingLineDataset(String filename, DataFormat<T> format, int numThreads,
+      int prefetchSize) {
+    this(filename, format, numThreads, prefetchSize, -1, 0L);
+  }
+
+  /**
+   * Creates a data set which returns the lines of {@code filename} in
+   * a random order, parsed using {@code format}. If
+   * {@code shuffleBucketSize} is not positive, lines are not shuffled.
+   *
+   * @param filename
+   * @param format
+   * @param numThreads number of threads used to parse lines.
+   * @param prefetchSize approximate maximum number of items parsed
+   * ahead of the consumer.
+   * @param shuffleBucketSize expected number of lines in each
+   * temporary bucket file.
+   * @param seed random seed for the first shuffle.
+   */
+  public StreamingLineDataset(String filename, DataFormat<T> format, int numThreads,
+      int prefetchSize, int shuffleBucketSize, long seed) {
+    Preconditions.checkArgument(numThreads > 0);
+    Preconditions.checkArgument(prefetchSize > 0);
+    this.filename = Preconditions.checkNotNull(filename);
+    this.format = Preconditions.checkNotNull(format);
+    this.prefetchSize = prefetchSize;
+    this.shuffleBucketSize = shuffleBucketSize;
+    this.seed = seed;
+
+    this.parsingExecutor = Executors.newFixedThreadPool(numThreads, new ThreadFactoryBuilder()
+        .setDaemon(true).setNameFormat("streaming-dataset-%d").build());
+    this.numPasses = new AtomicInteger(0);
+    this.numItems = -1;
+  }
+
+  /**
+   * Gets the number of items in this data set. The first invocation of
+   * this method reads the entire file.
+   *
+   * @return
+   */
+  public int size() {
+    if (numItems == -1) {
+      int count = 0;
+      try {
+        BufferedReader in = new BufferedReader(new FileReader(filename));
+        try {
+          String line;
+          while ((line = in.readLine()) != null) {
+            if (line.trim().length() > 0) {
+              count++;
+            }
+          }
+        } finally {
+          in.close();
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      numItems = count;
+    }
+    return numItems;
+  }
+
+  @Override
+  public Iterator<T> iterator() {
+    Preconditions.checkState(!parsingExecutor.isShutdown(), "Data set is closed: %s", filename);
+    int queueSize = Math.max(1, prefetchSize / LINES_PER_CHUNK);
+    BlockingQueue<Future<List<T>>> queue = new ArrayBlockingQueue<Future<List<T>>>(queueSize);
+    StreamingIterator<T> iterator = new StreamingIterator<T>(queue);
+
+    Random random = shuffleBucketSize > 0 ? new Random(seed + numPasses.getAndIncrement()) : null;
+    Thread reader = new Thread(new LineReader<T>(this, queue, iterator, random),
+        "streaming-dataset-reader");
+    reader.setDaemon(true);
+    reader.start();
+    return iterator;
+  }
+
+  /**
+   * Shuts down the parsing threads of this data set. Any pass in
+   * progress fails, and {@link #iterator()} may not be called again.
+   */
+  @Override
+  public void close() {
+    for (Runnable task : parsingExecutor.shutdownNow()) {
+      // Unblock any consumer waiting for a chunk that will never be parsed.
+      if (task instanceof Future) {
+        ((Future<?>) task).cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Reads lines, submits them for parsing, and enqueues the parsing
+   * results. Holds only a weak reference to the iterator consuming
+   * the queue, so that the reader can stop if the iterator is
+   * discarded before the pass completes.
+   */
+  private static class LineReader<T> implements Runnable {
+    private final StreamingLineDataset<T> dataset;
+    private final BlockingQueue<Future<List<T>>> queue;
+    private final WeakReference<StreamingIterator<T>> consumer;
+    private final Random random;
+
+    public LineReader(StreamingLineDataset<T> dataset, BlockingQueue<Future<List<T>>> queue,
+        StreamingIterator<T> consumer, Random random) {
+      this.dataset = dataset;
+      this.queue = queue;
+      this.consumer = new WeakReference<StreamingIterator<T>>(consumer);
+      this.random = random;
+    }
+
+    @Override
+    public void run() {
+      try {
+        boolean completed = (random == null) ? readLines() : readShuffledLines();
+        if (completed) {
+          put(Futures.<List<T>>immediateFuture(null));
+        }
+      } catch (Exception e) {
+        try {
+          put(Futures.<List<T>>immediateFailedFuture(e));
+        } catch (InterruptedException ie) {
+          // The error cannot be delivered, so this thread simply exits.
+        }
+      }
+    }
+
+    /**
+     * Reads the lines of the file in order. Returns {@code false} if
+     * the consumer was discarded before reading finished.
+     */
+    private boolean readLines() throws IOException, InterruptedException {
+      BufferedReader in = new BufferedReader(new FileReader(dataset.filename));
+      try {
+        List<String> chunk = Lists.newArrayListWithCapacity(LINES_PER_CHUNK);
+        String line;
+        while ((line = in.readLine()) != null) {
+          if (line.trim().length() > 0) {
+            chunk.add(line);
+            if (chunk.size() == LINES_PER_CHUNK) {
+              if (!submit(chunk)) {
+                return false;
+              }
+              chunk = Lists.newArrayListWithCapacity(LINES_PER_CHUNK);
+            }
+          }
+        }
+        return chunk.size() == 0 || submit(chunk);
+      } finally {
+        in.close();
+      }
+    }
+
+    /**
+     * Partitions the lines of the file into randomly-chosen bucket
+     * files, then reads the buckets in random order, shuffling each
+     * bucket. Returns {@code false} if the consumer was discarded before
+     * reading finished.
+     */
+    private boolean readShuffledLines() throws IOException, InterruptedException {
+      int numBuckets = Math.max(1, (dataset.size() + dataset.shuffleBucketSize - 1)
+          / dataset.shuffleBucketSize);
+      List<File> buckets = Lists.newArrayList();
+      try {
+        List<BufferedWriter> writers = Lists.newArrayList();
+        try {
+          for (int i = 0; i < numBuckets; i++) {
+            File bucket = File.createTempFile("jklol-shuffle", ".txt");
+            bucket.deleteOnExit();
+            buckets.add(bucket);
+            writers.add(new BufferedWriter(new FileWriter(bucket)));
+          }
+
+          BufferedReader in = new BufferedReader(new FileReader(dataset.filename));
+          try {
+            String line;
+            while ((line = in.readLine()) != null) {
+              if (line.trim().length() > 0) {
+                BufferedWriter writer = writers.get(random.nextInt(numBuckets));
+                writer.write(line);
+                writer.write("\n");
+              }
+            }
+          } finally {
+            in.close();
+          }
+        } finally {
+          for (BufferedWriter writer : writers) {
+            writer.close();
+          }
+        }
+
+        Collections.shuffle(buckets, random);
+        for (File bucket : buckets) {
+          List<String> lines = Lists.newArrayList();
+          BufferedReader in = new BufferedReader(new FileReader(bucket));
+          try {
+            String line;
+            while ((line = in.readLine()) != null) {
+              lines.add(line);
+            }
+          } finally {
+            in.close();
+          }
+          bucket.delete();
+          Collections.shuffle(lines, random);
+
+          for (int i = 0; i < lines.size(); i += LINES_PER_CHUNK) {
+            List<String> chunk = Lists.newArrayList(
+                lines.subList(i, Math.min(lines.size(), i + LINES_PER_CHUNK)));
+            if (!submit(chunk)) {
+              return false;
+            }
+          }
+        }
+        return true;
+      } finally {
+        for (File bucket : buckets) {
+          bucket.delete();
+        }
+      }
+    }
+
+    private boolean submit(final List<String> lines) throws InterruptedException {
+      final DataFormat<T> format = dataset.format;
+      return put(dataset.parsingExecutor.submit(new Callable<List<T>>() {
+        @Override
+        public List<T> call() {
+          List<T> items = Lists.newArrayListWithCapacity(lines.size());
+          for (String line : lines) {
+            items.add(format.parseFrom(line));
+          }
+          return items;
+        }
+      }));
+    }
+
+    /**
+     * Enqueues {@code result}, blocking while the queue is full.
+     * Returns {@code false} if the consumer is discarded while blocked.
+     */
+    private boolean put(Future<List<T>> result) throws InterruptedException {
+      while (!queue.offer(result, ABANDONED_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+        if (consumer.get() == null) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Iterator over the items produced by a {@code LineReader}.
+   */
+  private static class StreamingIterator<T> implements Iterator<T> {
+    private final BlockingQueue<Future<List<T>>> queue;
+
+    private List<T> currentChunk;
+    private int currentIndex;
+    private boolean finished;
+
+    public StreamingIterator(BlockingQueue<Future<List<T>>> queue) {
+      this.queue = queue;
+      this.currentChunk = null;
+      this.currentIndex = 0;
+      this.finished = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (!finished && (currentChunk == null || currentIndex >= currentChunk.size())) {
+        try {
+          currentChunk = queue.take().get();
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+          finished = true;
+          throw new RuntimeException(e.getCause());
+        }
+        currentIndex = 0;
+        finished = currentChunk == null;
+      }
+      return !finished;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      T item = currentChunk.get(currentIndex);
+      currentIndex++;
+      return item;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
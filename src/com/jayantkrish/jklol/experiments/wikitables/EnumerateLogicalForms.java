@@ -1,5 +1,6 @@
 package com.jayantkrish.jklol.experiments.wikitables;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -15,7 +16,6 @@ import com.jayantkrish.jklol.ccg.enumeratelf.LogicalFormEnumerator;
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
 import com.jayantkrish.jklol.ccg.lambda.RegexTypeDeclaration;
 import com.jayantkrish.jklol.ccg.lambda.TypeDeclaration;
-import com.jayantkrish.jklol.ccg.lambda2.AmbEvalEvaluator;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionComparator;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionEvaluator;
@@ -35,6 +35,7 @@ public class EnumerateLogicalForms extends AbstractCli {
   private OptionSpec<String> tablesDir;
   private OptionSpec<String> environment;
   private OptionSpec<String> typeDeclaration;
+  private OptionSpec<Void> parallelEnumeration;
 
   public EnumerateLogicalForms() {
     super(CommonOptions.MAP_REDUCE);
@@ -46,6 +47,7 @@ public class EnumerateLogicalForms extends AbstractCli {
     tablesDir = parser.accepts("tablesDir").withRequiredArg().ofType(String.class).required();
     environment = parser.accepts("environment").withRequiredArg().ofType(String.class).withValuesSeparatedBy(',');
     typeDeclaration = parser.accepts("typeDeclaration").withRequiredArg().ofType(String.class);
+    parallelEnumeration = parser.accepts("parallelEnumeration");
   }
 
   @Override
@@ -74,7 +76,7 @@ public class EnumerateLogicalForms extends AbstractCli {
     TypeDeclaration types = RegexTypeDeclaration.fromCsv(IoUtils.readLines(options.valueOf(typeDeclaration)));
 
     ExpressionSimplifier simplifier = WikiTablesUtil.getExpressionSimplifier();
-    ExpressionEvaluator evaluator = new AmbEvalEvaluator(sexpParser, eval, env);
+    ExpressionEvaluator evaluator = WikiTablesUtil.getExpressionEvaluator(sexpParser, eval, env);
     ExpressionComparator comparator = new WikiTableEvaluationComparator(simplifier, evaluator);
 
     // TODO: refactor me.
@@ -97,11 +99,11 @@ public class EnumerateLogicalForms extends AbstractCli {
       }
       
       System.out.println(example.getQuestion() + " " + example.getAnswer());
-      List<Expression2> enumerated = enumerator.enumerate(mentionExpressions, 100);
+      List<Expression2> enumerated = enumerator.enumerate(mentionExpressions,
+          Collections.<EnumerationRuleFilter>emptyList(), 100, options.has(parallelEnumeration));
       for (Expression2 e : enumerated) {
         if (comparator.equals(e, WikiTablesUtil.getAnswerExpression(example))) {
-          Expression2 sexpression = ExpressionParser.expression2().parse(
-              "(eval-table \"" + table.getId() + "\" (quote (get-values " + e + ")))");
+          Expression2 sexpression = WikiTableEvaluationComparator.getTableQuery(table.getId(), e);
           Object value = evaluator.evaluateSilentErrors(sexpression, "ERROR");
 
           System.out.println(e + " " + e.hashCode() + " " + value);
@@ -18,7 +18,6 @@ import com.jayantkrish.jklol.ccg.CcgParse;
 import com.jayantkrish.jklol.ccg.CcgParser;
 import com.jayantkrish.jklol.ccg.ParametricCcgParser;
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
-import com.jayantkrish.jklol.ccg.lambda2.AmbEvalEvaluator;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionComparator;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionEvaluator;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionSimplifier;
@@ -103,7 +102,7 @@ public class TrainSemanticParser extends AbstractCli {
         lexiconLines, unknownLexiconLines, rules, factory, null, false, null, true);
     
     ExpressionSimplifier simplifier = WikiTablesUtil.getExpressionSimplifier();
-    ExpressionEvaluator evaluator = new AmbEvalEvaluator(sexpParser, eval, env);
+    ExpressionEvaluator evaluator = WikiTablesUtil.getExpressionEvaluator(sexpParser, eval, env);
     ExpressionComparator comparator = new WikiTableEvaluationComparator(simplifier, evaluator);
     
     List<CcgExample> ccgExamples = Lists.newArrayList();
@@ -1,12 +1,12 @@
 package com.jayantkrish.jklol.experiments.wikitables;
 
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
-import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
+import com.jayantkrish.jklol.ccg.lambda2.DenotationCache;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionComparator;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionEvaluator;
@@ -14,25 +14,28 @@ import com.jayantkrish.jklol.ccg.lambda2.ExpressionSimplifier;
 
 
 public class WikiTableEvaluationComparator implements ExpressionComparator {
-  
+
+  /**
+   * Names of the functions that {@code with-table} (in
+   * {@code tables.lisp}) passes to its query function, in order.
+   */
+  public static final List<String> TABLE_FUNCTION_NAMES = Arrays.asList("table", "cells",
+      "predicate-to-set", "get-values", "eval-query", "column", "cellvalue", "samerow",
+      "samecol", "exists", "exists2", "column-set", "cellvalue-set", "samerow-set", "intersect",
+      "first-row", "last-row", "next-row", "prev-row", "samevalue");
+
   private final ExpressionSimplifier simplifier;
   
   private final ExpressionEvaluator evaluator;
   
-  private final Map<Expression2, Object> lruCache;
+  private final DenotationCache cache;
     
   public WikiTableEvaluationComparator(ExpressionSimplifier simplifier, ExpressionEvaluator evaluator) {
     this.simplifier = Preconditions.checkNotNull(simplifier);
     this.evaluator = Preconditions.checkNotNull(evaluator);
     
-    int cacheSize = 100;
-    this.lruCache = new LinkedHashMap<Expression2, Object>(cacheSize*4/3, 0.75f, true) {
-      private static final long serialVersionUID = 1L;
-      @Override
-      protected boolean removeEldestEntry(Map.Entry<Expression2,Object> eldest) {
-        return size() > cacheSize;
-      }
-    };
+    this.cache = new DenotationCache("wikitables/denotation_cache",
+        DenotationCache.DEFAULT_MAX_SIZE);
   }
 
   @Override
@@ -43,15 +46,10 @@ public class WikiTableEvaluationComparator implements ExpressionComparator {
     Object answer = evaluator.evaluateSilentErrors(subexpressions.get(2), "ANS-ERROR");
     
     a = simplifier.apply(a);
-    Object value = null;
-    if (lruCache.containsKey(a)) {
-      // XXX: The keys need to include the table id.
-      value = lruCache.get(a);
-    } else {
-      Expression2 sexpression = ExpressionParser.expression2().parse(
-          "(eval-table \"" + tableId + "\" (quote (get-values " + a.toString() + ")))");
-      value = evaluator.evaluateSilentErrors(sexpression, "ERROR");
-      lruCache.put(a, value);
+    Object value = cache.get(tableId, a);
+    if (value == null) {
+      value = evaluator.evaluateSilentErrors(getTableQuery(tableId, a), "ERROR");
+      cache.put(tableId, a, value);
     }
 
     /*
@@ -68,4 +66,28 @@ public class WikiTableEvaluationComparator implements ExpressionComparator {
     // numerics and yes/no questions.
     return answer.equals(value);
   }
+
+  /**
+   * Gets an expression that evaluates {@code lf} against the table
+   * with {@code tableId}. The logical form is the body of a lambda
+   * whose arguments are the table's query functions, so the
+   * evaluator compiles it along with the rest of the expression,
+   * rather than interpreting a quoted copy with {@code eval-table}.
+   *
+   * @param tableId
+   * @param lf
+   * @return
+   */
+  public static Expression2 getTableQuery(String tableId, Expression2 lf) {
+    List<Expression2> arguments = Lists.newArrayList();
+    for (String name : TABLE_FUNCTION_NAMES) {
+      arguments.add(Expression2.constant(name));
+    }
+
+    Expression2 queryFn = Expression2.nested(Expression2.constant("lambda"),
+        Expression2.nested(arguments),
+        Expression2.nested(Expression2.constant("get-values"), lf));
+    return Expression2.nested(Expression2.constant("with-table"),
+        Expression2.stringValue(tableId), queryFn);
+  }
 }
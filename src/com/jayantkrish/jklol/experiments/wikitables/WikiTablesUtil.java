@@ -12,8 +12,12 @@ import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.jayantkrish.jklol.ccg.CcgExample;
 import com.jayantkrish.jklol.ccg.ParametricCcgParser;
+import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
+import com.jayantkrish.jklol.ccg.lambda2.AmbEvalEvaluator;
 import com.jayantkrish.jklol.ccg.lambda2.CommutativeReplacementRule;
+import com.jayantkrish.jklol.ccg.lambda2.DenotationCache;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
+import com.jayantkrish.jklol.ccg.lambda2.ExpressionEvaluator;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionReplacementRule;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionSimplifier;
 import com.jayantkrish.jklol.ccg.lambda2.LambdaApplicationReplacementRule;
@@ -21,6 +25,7 @@ import com.jayantkrish.jklol.ccg.lambda2.VariableCanonicalizationReplacementRule
 import com.jayantkrish.jklol.lisp.AmbEval;
 import com.jayantkrish.jklol.lisp.AmbEval.RaisedBuiltinFunction;
 import com.jayantkrish.jklol.lisp.Environment;
+import com.jayantkrish.jklol.lisp.SExpression;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
 import com.jayantkrish.jklol.util.CsvParser;
 import com.jayantkrish.jklol.util.IndexedList;
@@ -166,6 +171,27 @@ public class WikiTablesUtil {
     rules.add(new CommutativeReplacementRule("and"));
     return new ExpressionSimplifier(rules);
   }
+
+  /**
+   * Gets an evaluator for logical forms over the tables in
+   * {@code env}. Evaluating table queries has no side effects, so the
+   * evaluator caches the denotations of the logical forms it
+   * evaluates, including the answer expressions that
+   * {@link WikiTableEvaluationComparator} evaluates for every
+   * comparison.
+   *
+   * @param sexpParser
+   * @param eval
+   * @param env
+   * @return
+   */
+  public static ExpressionEvaluator getExpressionEvaluator(
+      ExpressionParser<SExpression> sexpParser, AmbEval eval, Environment env) {
+    DenotationCache denotations = new DenotationCache("wikitables/evaluator_denotation_cache",
+        DenotationCache.DEFAULT_MAX_SIZE);
+    return new AmbEvalEvaluator(sexpParser, eval, env,
+        AmbEvalEvaluator.DEFAULT_MAX_CACHED_EXPRESSIONS, denotations);
+  }
   
   public static CcgExample convertExample(WikiTableExample example, List<WikiTable> tables,
       Map<String, Integer> tableIndexMap) {
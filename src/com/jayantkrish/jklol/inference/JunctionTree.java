@@ -1,30 +1,43 @@
 package com.jayantkrish.jklol.inference;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReference;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.google.common.collect.TreeMultimap;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.metrics.Timer;
 import com.jayantkrish.jklol.models.Factor;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.SeparatorSet;
 import com.jayantkrish.jklol.models.TableFactor;
 import com.jayantkrish.jklol.models.VariableNumMap;
-import com.jayantkrish.jklol.training.LogFunction;
-import com.jayantkrish.jklol.training.LogFunctions;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
 import com.jayantkrish.jklol.util.Assignment;
 
 /**
@@ -39,12 +52,27 @@ import com.jayantkrish.jklol.util.Assignment;
  * to the original model. Essentially all graphical models where inference is
  * tractable should fall into this class. If an input factor graph cannot be
  * simplified, the marginal computation will throw an exception.
+ * <p>
+ * Message passing can optionally use multiple threads, in which case messages
+ * are computed as soon as their inbound messages are available (see
+ * {@link ParallelMessageSchedule}). This is beneficial for wide clique trees
+ * with large factors.
  */
 public class JunctionTree implements MarginalCalculator {
   private static final long serialVersionUID = 1L;
 
+  private static final Timer BUILD_CLIQUE_TREE_TIMER = Metrics.timer("inference/build_clique_tree");
+  private static final Timer MESSAGE_PASSING_TIMER = Metrics.timer("inference/message_passing");
+  private static final Timer BUILD_MARGINALS_TIMER = Metrics.timer("inference/build_marginals");
+  private static final Timer BUILD_MAX_MARGINALS_TIMER = Metrics.timer("inference/build_max_marginals");
+  private static final Counter STRUCTURE_CACHE_HITS = Metrics.counter("inference/clique_tree_cache_hits");
+  private static final Counter STRUCTURE_CACHE_MISSES = Metrics.counter("inference/clique_tree_cache_misses");
+
   private final boolean renormalize;
   private final PruningStrategy pruningStrategy;
+  // Number of threads used for message passing. Values <= 1
+  // use sequential message passing.
+  private final int numThreads;
 
   /**
    * Creates a new junction tree without renormalization.
@@ -52,6 +80,7 @@ public class JunctionTree implements MarginalCalculator {
   public JunctionTree() {
     this.renormalize = false;
     this.pruningStrategy = null;
+    this.numThreads = 1;
   }
 
   /**
@@ -65,11 +94,33 @@ public class JunctionTree implements MarginalCalculator {
   public JunctionTree(boolean renormalize) {
     this.renormalize = renormalize;
     this.pruningStrategy = null;
+    this.numThreads = 1;
   }
 
   public JunctionTree(boolean renormalize, PruningStrategy pruningStrategy) {
     this.renormalize = renormalize;
     this.pruningStrategy = pruningStrategy;
+    this.numThreads = 1;
+  }
+
+  /**
+   * Creates a new junction tree that passes messages using
+   * {@code numThreads} threads. The threads are drawn from a pool
+   * shared by the whole program. The computed marginals do not depend
+   * on the order in which the threads compute messages, so repeated
+   * invocations return identical results. However, these marginals may
+   * differ slightly (i.e., by floating point error) from those computed
+   * by a junction tree using a single thread.
+   * 
+   * @param renormalize
+   * @param pruningStrategy
+   * @param numThreads
+   */
+  public JunctionTree(boolean renormalize, PruningStrategy pruningStrategy, int numThreads) {
+    Preconditions.checkArgument(numThreads > 0);
+    this.renormalize = renormalize;
+    this.pruningStrategy = pruningStrategy;
+    this.numThreads = numThreads;
   }
 
   @Override
@@ -89,20 +140,17 @@ public class JunctionTree implements MarginalCalculator {
           factorGraph.getConditionedVariables(), factorGraph.getConditionedValues());
     }
     
-    // long time = System.nanoTime();
-    CliqueTree cliqueTree = CliqueTree.fromHeuristicVariableElimination(factorGraph);
-    // long delta = (System.nanoTime() - time) / 1000;
-    // System.out.println("building clique tree: " + delta);
-    
-    // time = System.nanoTime();
+    long start = BUILD_CLIQUE_TREE_TIMER.start();
+    CliqueTree cliqueTree = CliqueTree.fromFactorGraph(factorGraph);
+    BUILD_CLIQUE_TREE_TIMER.stop(start);
+
+    start = MESSAGE_PASSING_TIMER.start();
     Set<Integer> rootFactorNums = runMessagePassing(cliqueTree, true);
-    // delta = (System.nanoTime() - time) / 1000;
-    // System.out.println("Running message passing: " + delta);
+    MESSAGE_PASSING_TIMER.stop(start);
 
-    // time = System.nanoTime();
+    start = BUILD_MARGINALS_TIMER.start();
     FactorMarginalSet marginals = cliqueTreeToMarginalSet(cliqueTree, rootFactorNums, factorGraph);
-    // delta = (System.nanoTime() - time) / 1000;
-    // System.out.println("marginals: " + delta);
+    BUILD_MARGINALS_TIMER.stop(start);
 
     return marginals;
   }
@@ -116,19 +164,17 @@ public class JunctionTree implements MarginalCalculator {
           factorGraph.getConditionedValues());
     }
 
-    LogFunction log = LogFunctions.getLogFunction();
-
-    log.startTimer("inference/build_clique_tree");
-    CliqueTree cliqueTree = CliqueTree.fromHeuristicVariableElimination(factorGraph);
-    log.stopTimer("inference/build_clique_tree");
+    long start = BUILD_CLIQUE_TREE_TIMER.start();
+    CliqueTree cliqueTree = CliqueTree.fromFactorGraph(factorGraph);
+    BUILD_CLIQUE_TREE_TIMER.stop(start);
 
-    log.startTimer("inference/message_passing");
+    start = MESSAGE_PASSING_TIMER.start();
     runMessagePassing(cliqueTree, false);
-    log.stopTimer("inference/message_passing");
+    MESSAGE_PASSING_TIMER.stop(start);
 
-    log.startTimer("inference/build_max_marginals");
+    start = BUILD_MAX_MARGINALS_TIMER.start();
     MaxMarginalSet maxMarginals = cliqueTreeToMaxMarginalSet(cliqueTree, factorGraph);
-    log.stopTimer("inference/build_max_marginals");
+    BUILD_MAX_MARGINALS_TIMER.stop(start);
     return maxMarginals;
   }
 
@@ -138,6 +184,14 @@ public class JunctionTree implements MarginalCalculator {
    * max-product.
    */
   private Set<Integer> runMessagePassing(CliqueTree cliqueTree, boolean useSumProduct) {
+    if (numThreads > 1 && cliqueTree.numFactors() > 2) {
+      ForkJoinPool pool = ForkJoinPools.getSharedPool(numThreads);
+      if (!ForkJoinPools.isWorkerOf(pool)) {
+        return new ParallelMessageSchedule(cliqueTree, useSumProduct, renormalize,
+            pruningStrategy, pool).run();
+      }
+    }
+
     Set<Integer> rootFactors = Sets.newHashSet();
     int numFactors = cliqueTree.numFactors();
 
@@ -314,18 +368,298 @@ public class JunctionTree implements MarginalCalculator {
     return new FactorMaxMarginalSet(cliqueTree, originalFactorGraph.getConditionedValues());
   }
   
+  /**
+   * Dependency-driven schedule for passing messages in a clique tree using
+   * multiple threads. Each connected component of the clique tree is rooted at
+   * its last factor in elimination order. Each factor first multiplies its
+   * original factor by the messages from its children and sends the result
+   * to its parent. Once the message from its parent arrives, the factor
+   * computes its marginal and sends a message to each child. Every one of
+   * these steps is submitted to the pool as soon as its inbound messages are
+   * available, so independent subtrees are processed concurrently.
+   * <p>
+   * Each message is computed by a fixed formula, with factors multiplied in
+   * a fixed order, so the results do not depend on the order in which tasks
+   * execute.
+   */
+  private static class ParallelMessageSchedule {
+    private final CliqueTree cliqueTree;
+    private final boolean useSumProduct;
+    private final boolean renormalize;
+    private final PruningStrategy pruningStrategy;
+    private final ForkJoinPool pool;
+
+    private final int numFactors;
+    private final int[] parents;
+    private final int[][] children;
+    private final Set<Integer> roots;
+
+    // The product of each factor and the messages from its children,
+    // the message from each factor to its parent, the message from
+    // each factor's parent to it, and the marginal of each factor.
+    // Each element is written by a single task, before that task
+    // releases the tasks that read it.
+    private final Factor[] childProducts;
+    private final Factor[] upwardMessages;
+    private final Factor[] downwardMessages;
+    private final Factor[] marginals;
+
+    // Number of messages that each factor is waiting on before
+    // sending its upward message and computing its marginal.
+    private final AtomicIntegerArray numPendingUpward;
+    private final AtomicIntegerArray numPendingMarginal;
+    private final CountDownLatch numRemainingMarginals;
+
+    // Set if an error occurs. Tasks scheduled after this is set are skipped.
+    private volatile boolean aborted;
+    private final AtomicReference<Throwable> error;
+
+    public ParallelMessageSchedule(CliqueTree cliqueTree, boolean useSumProduct,
+        boolean renormalize, PruningStrategy pruningStrategy, ForkJoinPool pool) {
+      this.cliqueTree = Preconditions.checkNotNull(cliqueTree);
+      this.useSumProduct = useSumProduct;
+      this.renormalize = renormalize;
+      this.pruningStrategy = pruningStrategy;
+      this.pool = Preconditions.checkNotNull(pool);
+
+      numFactors = cliqueTree.numFactors();
+      parents = new int[numFactors];
+      Arrays.fill(parents, -1);
+      children = new int[numFactors][];
+      roots = Sets.newHashSet();
+
+      // Root each component of the clique tree at the factor
+      // which occurs last in the elimination order.
+      boolean[] visited = new boolean[numFactors];
+      List<Integer> eliminationOrder = cliqueTree.getFactorEliminationOrder();
+      for (int i = numFactors - 1; i >= 0; i--) {
+        int root = eliminationOrder.get(i);
+        if (visited[root]) {
+          continue;
+        }
+        roots.add(root);
+        visited[root] = true;
+        LinkedList<Integer> queue = Lists.newLinkedList();
+        queue.add(root);
+        while (queue.size() > 0) {
+          int factorNum = queue.removeFirst();
+          List<Integer> factorChildren = Lists.newArrayList();
+          for (int neighbor : cliqueTree.getNeighboringFactors(factorNum)) {
+            if (!visited[neighbor]) {
+              visited[neighbor] = true;
+              parents[neighbor] = factorNum;
+              factorChildren.add(neighbor);
+              queue.add(neighbor);
+            }
+          }
+          children[factorNum] = Ints.toArray(factorChildren);
+          Arrays.sort(children[factorNum]);
+        }
+      }
+
+      childProducts = new Factor[numFactors];
+      upwardMessages = new Factor[numFactors];
+      downwardMessages = new Factor[numFactors];
+      marginals = new Factor[numFactors];
+
+      numPendingUpward = new AtomicIntegerArray(numFactors);
+      numPendingMarginal = new AtomicIntegerArray(numFactors);
+      for (int i = 0; i < numFactors; i++) {
+        numPendingUpward.set(i, children[i].length);
+        // The marginal requires the child product and the
+        // message from the parent.
+        numPendingMarginal.set(i, parents[i] == -1 ? 1 : 2);
+      }
+      numRemainingMarginals = new CountDownLatch(numFactors);
+      aborted = false;
+      error = new AtomicReference<Throwable>(null);
+    }
+
+    /**
+     * Passes all messages, blocking until they are computed, then stores
+     * the messages and marginals in the clique tree. Returns the root
+     * factor of each component of the clique tree.
+     * 
+     * @return
+     */
+    public Set<Integer> run() {
+      for (int i = 0; i < numFactors; i++) {
+        if (children[i].length == 0) {
+          submitUpward(i);
+        }
+      }
+
+      try {
+        numRemainingMarginals.await();
+      } catch (InterruptedException e) {
+        aborted = true;
+        throw new RuntimeException(e);
+      }
+
+      Throwable cause = error.get();
+      if (cause instanceof RuntimeException) {
+        // Rethrow errors such as ZeroProbabilityError without wrapping.
+        throw (RuntimeException) cause;
+      } else if (cause != null) {
+        throw new RuntimeException(cause);
+      }
+
+      for (int i = 0; i < numFactors; i++) {
+        if (parents[i] != -1) {
+          cliqueTree.addMessage(i, parents[i], upwardMessages[i]);
+          cliqueTree.addMessage(parents[i], i, downwardMessages[i]);
+        }
+        cliqueTree.setMarginal(i, marginals[i]);
+        cliqueTree.addFactorsToMarginal(i, cliqueTree.getNeighboringFactors(i));
+      }
+      return roots;
+    }
+
+    private void submitUpward(final int factorNum) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          computeUpward(factorNum);
+        }
+      });
+    }
+
+    private void submitMarginal(final int factorNum) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          computeMarginal(factorNum);
+        }
+      });
+    }
+
+    private void submitDownward(final int factorNum) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          computeDownward(factorNum);
+        }
+      });
+    }
+
+    /**
+     * Multiplies {@code factorNum} by the messages from its children and
+     * sends a message to its parent.
+     */
+    private void computeUpward(int factorNum) {
+      int parent = parents[factorNum];
+      try {
+        if (!aborted) {
+          List<Factor> messages = Lists.newArrayListWithCapacity(children[factorNum].length);
+          for (int child : children[factorNum]) {
+            messages.add(upwardMessages[child]);
+          }
+          Factor product = cliqueTree.getFactor(factorNum).product(messages);
+          if (renormalize) {
+            product = product.product(1.0 / product.getTotalUnnormalizedProbability());
+          }
+          if (pruningStrategy != null) {
+            product = pruningStrategy.apply(product);
+          }
+          childProducts[factorNum] = product;
+
+          if (parent != -1) {
+            upwardMessages[factorNum] = eliminateAllBut(product,
+                cliqueTree.getFactor(parent).getVars());
+          }
+        }
+      } catch (Throwable t) {
+        error.compareAndSet(null, t);
+        aborted = true;
+      } finally {
+        if (parent != -1 && numPendingUpward.decrementAndGet(parent) == 0) {
+          submitUpward(parent);
+        }
+        if (numPendingMarginal.decrementAndGet(factorNum) == 0) {
+          submitMarginal(factorNum);
+        }
+      }
+    }
+
+    /**
+     * Computes the marginal of {@code factorNum} from its child product
+     * and the message from its parent, then sends messages to its children.
+     */
+    private void computeMarginal(int factorNum) {
+      try {
+        if (!aborted) {
+          Factor marginal = childProducts[factorNum];
+          if (parents[factorNum] != -1) {
+            marginal = marginal.product(downwardMessages[factorNum]);
+          }
+          marginals[factorNum] = marginal;
+        }
+      } catch (Throwable t) {
+        error.compareAndSet(null, t);
+        aborted = true;
+      } finally {
+        for (int child : children[factorNum]) {
+          submitDownward(child);
+        }
+        numRemainingMarginals.countDown();
+      }
+    }
+
+    /**
+     * Sends a message from the parent of {@code factorNum} to
+     * {@code factorNum}. The message is the parent's marginal divided by
+     * the message from {@code factorNum} to the parent.
+     */
+    private void computeDownward(int factorNum) {
+      try {
+        if (!aborted) {
+          Factor message = eliminateAllBut(marginals[parents[factorNum]],
+              cliqueTree.getFactor(factorNum).getVars());
+          downwardMessages[factorNum] = message.product(upwardMessages[factorNum].inverse());
+        }
+      } catch (Throwable t) {
+        error.compareAndSet(null, t);
+        aborted = true;
+      } finally {
+        if (numPendingMarginal.decrementAndGet(factorNum) == 0) {
+          submitMarginal(factorNum);
+        }
+      }
+    }
+
+    private Factor eliminateAllBut(Factor factor, VariableNumMap destinationVars) {
+      VariableNumMap sharedVars = factor.getVars().intersection(destinationVars);
+      Collection<Integer> varsToEliminate = factor.getVars().removeAll(sharedVars).getVariableNums();
+      if (useSumProduct) {
+        return factor.marginalize(varsToEliminate);
+      } else {
+        return factor.maxMarginalize(varsToEliminate);
+      }
+    }
+  }
+
   /**
    * Clique tree data structure used to implement the junction tree
    * algorithm. Represents factors over cliques of variables in the graphical
    * model with edges (separator sets) between factors that share variables.
+   * <p>
+   * The structure of a clique tree (i.e., its edges, separator sets and
+   * elimination order) depends only on the variables of the factor graph's
+   * factors. {@link #fromFactorGraph} caches these structures, so that 
+   * factor graphs instantiated from the same template (e.g., during
+   * training) are only triangulated once.
    */
   public static class CliqueTree {
 
+    // Maximum number of clique tree structures retained by the cache.
+    private static final int MAX_CACHED_STRUCTURES = 1000;
+    private static final Cache<List<VariableNumMap>, CliqueTreeStructure> structureCache =
+        CacheBuilder.newBuilder().maximumSize(MAX_CACHED_STRUCTURES).build();
+
     private List<Factor> cliqueFactors;
+    private final CliqueTreeStructure structure;
 
-    // These data structures represent the actual junction tree.
-    private HashMultimap<Integer, Integer> factorEdges;
-    private List<Map<Integer, SeparatorSet>> separatorSets;
+    // Messages passed along the edges of the junction tree.
     private List<Map<Integer, Factor>> messages;
 
     // As message passing progresses, we will multiply together the factors
@@ -335,27 +669,14 @@ public class JunctionTree implements MarginalCalculator {
     private List<Factor> marginals;
     private List<Set<Integer>> factorsInMarginals;
 
-    private List<Integer> cliqueEliminationOrder;
-
-    private CliqueTree(List<Factor> cliqueFactors, HashMultimap<Integer, Integer> factorEdges,
-        List<Integer> cliqueEliminationOrder) {
+    private CliqueTree(List<Factor> cliqueFactors, CliqueTreeStructure structure) {
       this.cliqueFactors = Preconditions.checkNotNull(cliqueFactors);
-      this.factorEdges = Preconditions.checkNotNull(factorEdges);
-
-      this.cliqueEliminationOrder = Preconditions.checkNotNull(cliqueEliminationOrder);
+      this.structure = Preconditions.checkNotNull(structure);
+      Preconditions.checkArgument(cliqueFactors.size() == structure.getNumFactors());
 
-      // Initialize messages and separator sets along the
-      // edges of the clique tree.
-      this.separatorSets = new ArrayList<Map<Integer, SeparatorSet>>();
       this.messages = new ArrayList<Map<Integer, Factor>>();
       for (int i = 0; i < cliqueFactors.size(); i++) {
-        separatorSets.add(Maps.<Integer, SeparatorSet> newHashMap());
         messages.add(Maps.<Integer, Factor> newHashMap());
-
-        for (Integer adjacentFactor : factorEdges.get(i)) {
-          separatorSets.get(i).put(adjacentFactor, new SeparatorSet(i, adjacentFactor,
-              cliqueFactors.get(i).getVars().intersection(cliqueFactors.get(adjacentFactor).getVars())));
-        }
       }
 
       marginals = Lists.newArrayList(cliqueFactors);
@@ -365,9 +686,52 @@ public class JunctionTree implements MarginalCalculator {
       }
     }
 
+    /**
+     * Constructs a clique tree for {@code factorGraph}, reusing the
+     * structure of a previously-constructed clique tree whose factor
+     * graph's minimal factors were defined over the same variables.
+     * If no such tree exists, the structure is computed using
+     * {@link #fromHeuristicVariableElimination} and cached.
+     * 
+     * @param factorGraph
+     * @return
+     */
+    public static CliqueTree fromFactorGraph(FactorGraph factorGraph) {
+      List<Factor> minimalFactors = factorGraph.getMinimalFactors();
+      List<VariableNumMap> signature = Lists.newArrayListWithCapacity(minimalFactors.size());
+      for (Factor factor : minimalFactors) {
+        signature.add(factor.getVars());
+      }
+
+      CliqueTreeStructure structure = structureCache.getIfPresent(signature);
+      if (structure != null) {
+        STRUCTURE_CACHE_HITS.increment();
+        return structure.bind(minimalFactors);
+      }
+
+      STRUCTURE_CACHE_MISSES.increment();
+      CliqueTree cliqueTree = fromMinimalFactors(minimalFactors, factorGraph);
+      structureCache.put(signature, cliqueTree.structure);
+      return cliqueTree;
+    }
+
+    /**
+     * Constructs a clique tree for {@code factorGraph} by heuristically
+     * eliminating variables. Unlike {@link #fromFactorGraph}, this
+     * method always recomputes the clique tree's structure.
+     * 
+     * @param factorGraph
+     * @return
+     */
     public static CliqueTree fromHeuristicVariableElimination(FactorGraph factorGraph) {
+      return fromMinimalFactors(factorGraph.getMinimalFactors(), factorGraph);
+    }
+
+    private static CliqueTree fromMinimalFactors(List<Factor> minimalFactors,
+        FactorGraph factorGraph) {
       // Initialize cliqueFactors with minimal cliques from the factor graph.
-      List<Factor> cliqueFactors = new ArrayList<Factor>(factorGraph.getMinimalFactors());
+      int numMinimalFactors = minimalFactors.size();
+      List<Factor> cliqueFactors = new ArrayList<Factor>(minimalFactors);
       HashMultimap<Integer, Integer> factorEdges = HashMultimap.create();
 
       // Store factors which contain each variable so that we can
@@ -489,7 +853,8 @@ public class JunctionTree implements MarginalCalculator {
         // cliqueFactors.get(bestEliminationOrder.get(position)).getVars());
       }
       
-      return new CliqueTree(cliqueFactors, factorEdges, cliqueEliminationOrder);
+      return new CliqueTree(cliqueFactors, CliqueTreeStructure.create(cliqueFactors,
+          numMinimalFactors, factorEdges, cliqueEliminationOrder));
     }
 
     /*
@@ -571,14 +936,25 @@ public class JunctionTree implements MarginalCalculator {
       return cliqueFactors.get(factorNum);
     }
 
+    /**
+     * Returns {@code true} if {@code this} and {@code other} were
+     * constructed from the same cached clique tree structure.
+     * 
+     * @param other
+     * @return
+     */
+    public boolean sharesStructureWith(CliqueTree other) {
+      return structure == other.structure;
+    }
+
     public List<Integer> getFactorEliminationOrder() {
-      return cliqueEliminationOrder;
+      return structure.getEliminationOrder();
     }
 
     public Map<SeparatorSet, Factor> getInboundMessages(int factorNum) {
       Map<SeparatorSet, Factor> inboundMessages = Maps.newHashMap();
       for (int neighbor : getNeighboringFactors(factorNum)) {
-        SeparatorSet separatorSet = separatorSets.get(factorNum).get(neighbor);
+        SeparatorSet separatorSet = structure.getSeparatorSet(factorNum, neighbor);
         if (messages.get(neighbor).containsKey(factorNum)) {
           inboundMessages.put(separatorSet, messages.get(neighbor).get(factorNum));
         } else {
@@ -589,7 +965,7 @@ public class JunctionTree implements MarginalCalculator {
     }
 
     public Set<Integer> getNeighboringFactors(int factorNum) {
-      return factorEdges.get(factorNum);
+      return structure.getNeighboringFactors(factorNum);
     }
 
     public Set<Integer> getOutboundFactors(int factorNum) {
@@ -624,4 +1000,82 @@ public class JunctionTree implements MarginalCalculator {
       factorsInMarginals.get(factorNum).addAll(factorsToAdd);
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * The structure of a {@code CliqueTree}, which can be shared by
+   * clique trees whose minimal factors are defined over the same
+   * variables. Immutable.
+   */
+  private static class CliqueTreeStructure {
+    private final int numMinimalFactors;
+    // Variables of the cliques created by variable elimination, which
+    // are not in the original factor graph.
+    private final List<VariableNumMap> addedCliqueVars;
+
+    private final ImmutableSetMultimap<Integer, Integer> factorEdges;
+    private final List<Map<Integer, SeparatorSet>> separatorSets;
+    private final List<Integer> eliminationOrder;
+
+    private CliqueTreeStructure(int numMinimalFactors, List<VariableNumMap> addedCliqueVars,
+        ImmutableSetMultimap<Integer, Integer> factorEdges,
+        List<Map<Integer, SeparatorSet>> separatorSets, List<Integer> eliminationOrder) {
+      this.numMinimalFactors = numMinimalFactors;
+      this.addedCliqueVars = addedCliqueVars;
+      this.factorEdges = factorEdges;
+      this.separatorSets = separatorSets;
+      this.eliminationOrder = eliminationOrder;
+    }
+
+    public static CliqueTreeStructure create(List<Factor> cliqueFactors, int numMinimalFactors,
+        Multimap<Integer, Integer> factorEdges, List<Integer> eliminationOrder) {
+      List<VariableNumMap> addedCliqueVars = Lists.newArrayList();
+      for (int i = numMinimalFactors; i < cliqueFactors.size(); i++) {
+        addedCliqueVars.add(cliqueFactors.get(i).getVars());
+      }
+
+      // Initialize separator sets along the edges of the clique tree.
+      List<Map<Integer, SeparatorSet>> separatorSets = Lists.newArrayList();
+      for (int i = 0; i < cliqueFactors.size(); i++) {
+        Map<Integer, SeparatorSet> factorSeparatorSets = Maps.newHashMap();
+        for (Integer adjacentFactor : factorEdges.get(i)) {
+          factorSeparatorSets.put(adjacentFactor, new SeparatorSet(i, adjacentFactor,
+              cliqueFactors.get(i).getVars().intersection(cliqueFactors.get(adjacentFactor).getVars())));
+        }
+        separatorSets.add(Collections.unmodifiableMap(factorSeparatorSets));
+      }
+
+      return new CliqueTreeStructure(numMinimalFactors, ImmutableList.copyOf(addedCliqueVars),
+          ImmutableSetMultimap.copyOf(factorEdges), ImmutableList.copyOf(separatorSets),
+          ImmutableList.copyOf(eliminationOrder));
+    }
+
+    /**
+     * Creates a clique tree with this structure whose factors are
+     * {@code minimalFactors}.
+     */
+    public CliqueTree bind(List<Factor> minimalFactors) {
+      Preconditions.checkArgument(minimalFactors.size() == numMinimalFactors);
+      List<Factor> cliqueFactors = new ArrayList<Factor>(minimalFactors);
+      for (VariableNumMap cliqueVars : addedCliqueVars) {
+        cliqueFactors.add(TableFactor.unity(cliqueVars));
+      }
+      return new CliqueTree(cliqueFactors, this);
+    }
+
+    public int getNumFactors() {
+      return numMinimalFactors + addedCliqueVars.size();
+    }
+
+    public Set<Integer> getNeighboringFactors(int factorNum) {
+      return factorEdges.get(factorNum);
+    }
+
+    public SeparatorSet getSeparatorSet(int startFactor, int endFactor) {
+      return separatorSets.get(startFactor).get(endFactor);
+    }
+
+    public List<Integer> getEliminationOrder() {
+      return eliminationOrder;
+    }
+  }
+}
@@ -43,25 +43,25 @@ public class AmbEval {
 
   // Indexes in the symbol table for built-in special forms.
   // The indexes are defined by the order in getInitialSymbolTable()
-  private static final int DEFINE_SYMBOL_INDEX = 0;
-  private static final int BEGIN_SYMBOL_INDEX = 1;
-  private static final int LET_SYMBOL_INDEX = 2;
-  private static final int LAMBDA_SYMBOL_INDEX = 3;
-  private static final int QUOTE_SYMBOL_INDEX = 4;
-
-  private static final int EVAL_SYMBOL_INDEX = 5;
-  private static final int APPLY_SYMBOL_INDEX = 6;
-  private static final int IF_SYMBOL_INDEX = 7;
-  private static final int AMB_SYMBOL_INDEX = 8;
-  private static final int GET_BEST_VALUE_SYMBOL_INDEX = 9;
-
-  private static final int GET_MARGINALS_SYMBOL_INDEX = 10;
-  private static final int ADD_WEIGHT_SYMBOL_INDEX = 11;
-  private static final int OPT_SYMBOL_INDEX = 12;
-  private static final int OPT_MM_SYMBOL_INDEX = 13;
-  private static final int NEW_FG_SCOPE_INDEX = 14;
+  static final int DEFINE_SYMBOL_INDEX = 0;
+  static final int BEGIN_SYMBOL_INDEX = 1;
+  static final int LET_SYMBOL_INDEX = 2;
+  static final int LAMBDA_SYMBOL_INDEX = 3;
+  static final int QUOTE_SYMBOL_INDEX = 4;
+
+  static final int EVAL_SYMBOL_INDEX = 5;
+  static final int APPLY_SYMBOL_INDEX = 6;
+  static final int IF_SYMBOL_INDEX = 7;
+  static final int AMB_SYMBOL_INDEX = 8;
+  static final int GET_BEST_VALUE_SYMBOL_INDEX = 9;
+
+  static final int GET_MARGINALS_SYMBOL_INDEX = 10;
+  static final int ADD_WEIGHT_SYMBOL_INDEX = 11;
+  static final int OPT_SYMBOL_INDEX = 12;
+  static final int OPT_MM_SYMBOL_INDEX = 13;
+  static final int NEW_FG_SCOPE_INDEX = 14;
   
-  private static final int PERIOD_INDEX = 15;
+  static final int PERIOD_INDEX = 15;
   
   private final IndexedList<String> symbolTable;
 
@@ -88,7 +88,7 @@ public class AmbEval {
     return eval(expression, environment, builder, new EvalContext(log));
   }
 
-  private EvalResult eval(SExpression expression, Environment environment,
+  EvalResult eval(SExpression expression, Environment environment,
       ParametricBfgBuilder builder, EvalContext context) {
     if (expression.isConstant()) {
       // The expression may be a primitive type or a variable.
@@ -567,6 +567,22 @@ public class AmbEval {
 
     Object functionObject = values.get(0);
     List<Object> argumentValues = values.subList(1, values.size());
+    return applyFunction(functionObject, argumentValues, gfgBuilder, context);
+  }
+
+  /**
+   * Applies {@code functionObject}, which may be an
+   * {@code AmbFunctionValue} or an {@code AmbValue} over functions,
+   * to {@code argumentValues}.
+   *
+   * @param functionObject
+   * @param argumentValues
+   * @param gfgBuilder
+   * @param context
+   * @return
+   */
+  public EvalResult applyFunction(Object functionObject, List<Object> argumentValues,
+      ParametricBfgBuilder gfgBuilder, EvalContext context) {
     if (functionObject instanceof AmbFunctionValue) {
       AmbFunctionValue function = (AmbFunctionValue) functionObject;
       EvalResult result = new EvalResult(function.apply(argumentValues, context, gfgBuilder));
@@ -637,7 +653,7 @@ public class AmbEval {
       return new EvalResult(new AmbValue(returnValueVar));
     } else {
       throw new IllegalArgumentException("Tried applying a non-function value: " + functionObject
-          + "\n subexpressions: " + subexpressions);
+          + "\n arguments: " + argumentValues);
     }
   }
 
@@ -0,0 +1,378 @@
+package com.jayantkrish.jklol.lisp;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.lisp.AmbEval.AmbFunctionValue;
+import com.jayantkrish.jklol.lisp.LispEval.EvalResult;
+import com.jayantkrish.jklol.util.IndexedList;
+
+/**
+ * Compiles {@code SExpression}s into trees of closures that can be
+ * evaluated repeatedly without re-dispatching on the syntax of the
+ * expression. Compilation resolves every variable reference ahead
+ * of time: variables bound by an enclosing {@code lambda} become
+ * slots in an array-backed frame, and all other variables are looked
+ * up once in the global environment.
+ * <p>
+ * Only constants, variables, {@code quote}, {@code if},
+ * single-body {@code lambda}s and function applications are
+ * compiled. Any other special form (e.g., {@code define} or
+ * {@code amb}) is evaluated by the {@link AmbEval} interpreter, so
+ * compiled expressions return the same values as
+ * {@link AmbEval#eval}. Because global variables are resolved at
+ * compile time, a compiled expression does not observe bindings
+ * added to or changed in the global environment after compilation.
+ *
+ * @author jayantk
+ */
+public class AmbEvalCompiler {
+
+  private final AmbEval eval;
+  private final IndexedList<String> symbolTable;
+
+  public AmbEvalCompiler(AmbEval eval) {
+    this.eval = Preconditions.checkNotNull(eval);
+    this.symbolTable = eval.getSymbolTable();
+  }
+
+  /**
+   * Compiles {@code expression}, resolving its free variables in
+   * {@code environment}.
+   *
+   * @param expression
+   * @param environment
+   * @return
+   */
+  public CompiledExpression compile(SExpression expression, Environment environment) {
+    return new CompiledExpression(compile(expression, environment, null), expression);
+  }
+
+  private Node compile(SExpression expression, Environment environment, Scope scope) {
+    if (expression.isConstant()) {
+      Object primitiveValue = expression.getConstantPrimitiveValue();
+      if (primitiveValue != null) {
+        return new ConstantNode(primitiveValue);
+      }
+      return compileVariable(expression, environment, scope);
+    }
+
+    List<SExpression> subexpressions = expression.getSubexpressions();
+    if (subexpressions.size() == 0) {
+      return new InterpretedNode(expression, environment, scope, eval);
+    }
+
+    SExpression first = subexpressions.get(0);
+    if (first.isConstant() && first.getConstantIndex() <= AmbEval.NEW_FG_SCOPE_INDEX) {
+      switch (first.getConstantIndex()) {
+      case AmbEval.QUOTE_SYMBOL_INDEX:
+        if (subexpressions.size() == 2) {
+          return new ConstantNode(subexpressions.get(1));
+        }
+        break;
+      case AmbEval.IF_SYMBOL_INDEX:
+        if (subexpressions.size() == 4) {
+          return new IfNode(compile(subexpressions.get(1), environment, scope),
+              compile(subexpressions.get(2), environment, scope),
+              compile(subexpressions.get(3), environment, scope), subexpressions);
+        }
+        break;
+      case AmbEval.LAMBDA_SYMBOL_INDEX:
+        Node lambda = compileLambda(expression, environment, scope);
+        if (lambda != null) {
+          return lambda;
+        }
+        break;
+      }
+      // All other special forms, and any malformed expression, are
+      // left to the interpreter.
+      return new InterpretedNode(expression, environment, scope, eval);
+    }
+
+    Node[] nodes = new Node[subexpressions.size()];
+    for (int i = 0; i < nodes.length; i++) {
+      nodes[i] = compile(subexpressions.get(i), environment, scope);
+    }
+    return new ApplicationNode(nodes, eval);
+  }
+
+  private Node compileVariable(SExpression expression, Environment environment, Scope scope) {
+    int nameIndex = expression.getConstantIndex();
+    int depth = 0;
+    for (Scope s = scope; s != null; s = s.parent) {
+      // Later arguments shadow earlier arguments with the same name.
+      for (int i = s.nameIndexes.length - 1; i >= 0; i--) {
+        if (s.nameIndexes[i] == nameIndex) {
+          return new LocalVariableNode(depth, i);
+        }
+      }
+      depth++;
+    }
+
+    try {
+      return new ConstantNode(environment.getValue(nameIndex, symbolTable));
+    } catch (EvalError e) {
+      // Defer the error until the variable is evaluated.
+      return new InterpretedNode(expression, environment, scope, eval);
+    }
+  }
+
+  /**
+   * Compiles a {@code lambda} expression, returning {@code null} if
+   * the expression uses a feature that is not supported by
+   * compilation, such as varargs or multiple body expressions.
+   */
+  private Node compileLambda(SExpression expression, Environment environment, Scope scope) {
+    List<SExpression> subexpressions = expression.getSubexpressions();
+    if (subexpressions.size() != 3) {
+      return null;
+    }
+
+    SExpression arguments = subexpressions.get(1);
+    List<SExpression> argumentExpressions = arguments.isConstant() ? Arrays.asList(arguments)
+        : arguments.getSubexpressions();
+    int[] nameIndexes = new int[argumentExpressions.size()];
+    for (int i = 0; i < nameIndexes.length; i++) {
+      SExpression argument = argumentExpressions.get(i);
+      if (!argument.isConstant() || argument.getConstantIndex() == AmbEval.PERIOD_INDEX) {
+        return null;
+      }
+      nameIndexes[i] = argument.getConstantIndex();
+    }
+
+    Scope bodyScope = new Scope(nameIndexes, scope);
+    Node body = compile(subexpressions.get(2), environment, bodyScope);
+    return new LambdaNode(nameIndexes.length, body, expression);
+  }
+
+  /**
+   * The result of compiling an expression.
+   */
+  public static class CompiledExpression {
+    private final Node root;
+    private final SExpression expression;
+
+    private CompiledExpression(Node root, SExpression expression) {
+      this.root = Preconditions.checkNotNull(root);
+      this.expression = Preconditions.checkNotNull(expression);
+    }
+
+    public SExpression getExpression() {
+      return expression;
+    }
+
+    public EvalResult eval(ParametricBfgBuilder builder, EvalContext context) {
+      return new EvalResult(root.eval(null, builder, context));
+    }
+
+    @Override
+    public String toString() {
+      return expression.toString();
+    }
+  }
+
+  /**
+   * Compile-time record of the names bound by the enclosing
+   * {@code lambda}s.
+   */
+  private static class Scope {
+    private final int[] nameIndexes;
+    private final Scope parent;
+
+    public Scope(int[] nameIndexes, Scope parent) {
+      this.nameIndexes = nameIndexes;
+      this.parent = parent;
+    }
+  }
+
+  /**
+   * Run-time values of the variables in a {@code Scope}.
+   */
+  private static class Frame {
+    private final Object[] values;
+    private final Frame parent;
+
+    public Frame(Object[] values, Frame parent) {
+      this.values = values;
+      this.parent = parent;
+    }
+  }
+
+  private static abstract class Node {
+    public abstract Object eval(Frame frame, ParametricBfgBuilder builder, EvalContext context);
+  }
+
+  private static class ConstantNode extends Node {
+    private final Object value;
+
+    public ConstantNode(Object value) {
+      this.value = value;
+    }
+
+    @Override
+    public Object eval(Frame frame, ParametricBfgBuilder builder, EvalContext context) {
+      return value;
+    }
+  }
+
+  private static class LocalVariableNode extends Node {
+    private final int depth;
+    private final int slot;
+
+    public LocalVariableNode(int depth, int slot) {
+      this.depth = depth;
+      this.slot = slot;
+    }
+
+    @Override
+    public Object eval(Frame frame, ParametricBfgBuilder builder, EvalContext context) {
+      for (int i = 0; i < depth; i++) {
+        frame = frame.parent;
+      }
+      return frame.values[slot];
+    }
+  }
+
+  private static class IfNode extends Node {
+    private final Node condition;
+    private final Node trueBranch;
+    private final Node falseBranch;
+    private final List<SExpression> subexpressions;
+
+    public IfNode(Node condition, Node trueBranch, Node falseBranch,
+        List<SExpression> subexpressions) {
+      this.condition = condition;
+      this.trueBranch = trueBranch;
+      this.falseBranch = falseBranch;
+      this.subexpressions = subexpressions;
+    }
+
+    @Override
+    public Object eval(Frame frame, ParametricBfgBuilder builder, EvalContext context) {
+      Object testCondition = condition.eval(frame, builder, context);
+      Preconditions.checkArgument(!(testCondition instanceof AmbValue),
+          "Cannot use amb values in conditions of if statements. Subexpressions: %s", subexpressions);
+      if (ConstantValue.TRUE.equals(testCondition)) {
+        return trueBranch.eval(frame, builder, context);
+      } else {
+        return falseBranch.eval(frame, builder, context);
+      }
+    }
+  }
+
+  private static class ApplicationNode extends Node {
+    private final Node[] nodes;
+    private final AmbEval eval;
+
+    public ApplicationNode(Node[] nodes, AmbEval eval) {
+      this.nodes = nodes;
+      this.eval = eval;
+    }
+
+    @Override
+    public Object eval(Frame frame, ParametricBfgBuilder builder, EvalContext context) {
+      Object functionObject = nodes[0].eval(frame, builder, context);
+      Object[] argumentValues = new Object[nodes.length - 1];
+      for (int i = 1; i < nodes.length; i++) {
+        argumentValues[i - 1] = nodes[i].eval(frame, builder, context);
+      }
+
+      List<Object> argumentList = Arrays.asList(argumentValues);
+      if (functionObject instanceof AmbFunctionValue) {
+        return ((AmbFunctionValue) functionObject).apply(argumentList, context, builder);
+      } else {
+        return eval.applyFunction(functionObject, argumentList, builder, context).getValue();
+      }
+    }
+  }
+
+  private static class LambdaNode extends Node {
+    private final int numArguments;
+    private final Node body;
+    private final SExpression expression;
+
+    public LambdaNode(int numArguments, Node body, SExpression expression) {
+      this.numArguments = numArguments;
+      this.body = body;
+      this.expression = expression;
+    }
+
+    @Override
+    public Object eval(Frame frame, ParametricBfgBuilder builder, EvalContext context) {
+      return new CompiledLambdaValue(this, frame);
+    }
+  }
+
+  private static class CompiledLambdaValue implements AmbFunctionValue {
+    private final LambdaNode lambda;
+    private final Frame frame;
+
+    public CompiledLambdaValue(LambdaNode lambda, Frame frame) {
+      this.lambda = lambda;
+      this.frame = frame;
+    }
+
+    @Override
+    public Object apply(List<Object> argumentValues, EvalContext context,
+        ParametricBfgBuilder gfgBuilder) {
+      LispUtil.checkArgument(argumentValues.size() == lambda.numArguments,
+          "Wrong number of arguments: expected %s, got %s to procedure: %s",
+          lambda.numArguments, argumentValues, this);
+      Frame boundFrame = new Frame(argumentValues.toArray(), frame);
+      return lambda.body.eval(boundFrame, gfgBuilder, context);
+    }
+
+    @Override
+    public String toString() {
+      return lambda.expression.toString();
+    }
+  }
+
+  /**
+   * Evaluates an expression with the interpreter, in an environment
+   * containing the current values of all enclosing {@code lambda}
+   * arguments.
+   */
+  private static class InterpretedNode extends Node {
+    private final SExpression expression;
+    private final Environment environment;
+    private final List<int[]> scopeNameIndexes;
+    private final AmbEval eval;
+
+    public InterpretedNode(SExpression expression, Environment environment, Scope scope,
+        AmbEval eval) {
+      this.expression = expression;
+      this.environment = environment;
+      this.eval = eval;
+
+      // Store the scopes outermost first.
+      this.scopeNameIndexes = Lists.newArrayList();
+      for (Scope s = scope; s != null; s = s.parent) {
+        scopeNameIndexes.add(0, s.nameIndexes);
+      }
+    }
+
+    @Override
+    public Object eval(Frame frame, ParametricBfgBuilder builder, EvalContext context) {
+      Environment env = environment;
+      if (scopeNameIndexes.size() > 0) {
+        Frame[] frames = new Frame[scopeNameIndexes.size()];
+        for (int i = frames.length - 1; i >= 0; i--) {
+          frames[i] = frame;
+          frame = frame.parent;
+        }
+
+        for (int i = 0; i < frames.length; i++) {
+          env = Environment.extend(env);
+          int[] nameIndexes = scopeNameIndexes.get(i);
+          for (int j = 0; j < nameIndexes.length; j++) {
+            env.bindName(nameIndexes[j], frames[i].values[j]);
+          }
+        }
+      }
+      return eval.eval(expression, env, builder, context).getValue();
+    }
+  }
+}
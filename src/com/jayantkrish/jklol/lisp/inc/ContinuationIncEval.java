@@ -5,9 +5,12 @@ import java.util.Collections;
 import java.util.List;
 
 import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Lists;
 import com.jayantkrish.jklol.ccg.HeadedSyntacticCategory;
 import com.jayantkrish.jklol.ccg.gi.GroundedCcgParse;
+import com.jayantkrish.jklol.ccg.lambda.ExpressionFactories;
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
 import com.jayantkrish.jklol.ccg.lambda2.CpsTransform;
 import com.jayantkrish.jklol.ccg.lambda2.Expression2;
@@ -23,6 +26,8 @@ import com.jayantkrish.jklol.lisp.FunctionValue;
 import com.jayantkrish.jklol.lisp.LispEval.EvalResult;
 import com.jayantkrish.jklol.lisp.LispUtil;
 import com.jayantkrish.jklol.lisp.SExpression;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
 import com.jayantkrish.jklol.training.LogFunction;
 
 /**
@@ -48,6 +53,15 @@ public class ContinuationIncEval extends AbstractIncEval {
   protected final int queueContinuationsIndex;
   protected final int continuationHolderIndex;
 
+  // Cache of CPS-transformed logical forms. The transformation
+  // does not depend on the environment, so it can be reused by
+  // every evaluation of the same logical form.
+  private final Cache<Expression2, SExpression> cpsCache;
+
+  private static final int MAX_CPS_CACHE_SIZE = 100000;
+  private static final Counter CPS_CACHE_HITS = Metrics.counter("inc_eval/cps_cache/hits");
+  private static final Counter CPS_CACHE_MISSES = Metrics.counter("inc_eval/cps_cache/misses");
+
   public static final String FINAL_CONTINUATION = "final-continuation";
   public static final String QUEUE_CONTINUATIONS = "queue-k";
   public static final String CONTINUATION_HOLDER = "continuation-inc-eval:continuation-holder";
@@ -64,6 +78,8 @@ public class ContinuationIncEval extends AbstractIncEval {
     this.finalContinuationIndex = this.eval.getSymbolTable().add(FINAL_CONTINUATION);
     this.queueContinuationsIndex = this.eval.getSymbolTable().add(QUEUE_CONTINUATIONS);
     this.continuationHolderIndex = this.eval.getSymbolTable().add(CONTINUATION_HOLDER);
+
+    this.cpsCache = CacheBuilder.newBuilder().maximumSize(MAX_CPS_CACHE_SIZE).build();
   }
   
   public AmbEval getEval() {
@@ -170,12 +186,21 @@ public class ContinuationIncEval extends AbstractIncEval {
   
   @Override
   public AmbFunctionValue lfToContinuation(Expression2 lf, Environment env) {
-    lf = simplifier.apply(lf);
-    // System.out.println("lfToContinuation: " + lf);
-    Expression2 cpsLf = simplifier.apply(CpsTransform.apply(lf, Expression2.constant(FINAL_CONTINUATION)));
-    // System.out.println(cpsLf);
-    
-    SExpression cpsSexp = sexpParser.parse(cpsLf.toString());
+    SExpression cpsSexp = cpsCache.getIfPresent(lf);
+    if (cpsSexp == null) {
+      CPS_CACHE_MISSES.increment();
+      Expression2 simplifiedLf = simplifier.apply(lf);
+      // System.out.println("lfToContinuation: " + simplifiedLf);
+      Expression2 cpsLf = simplifier.apply(CpsTransform.apply(simplifiedLf,
+          Expression2.constant(FINAL_CONTINUATION)));
+      // System.out.println(cpsLf);
+
+      cpsSexp = ExpressionFactories.convert(cpsLf, sexpParser.getFactory());
+      cpsCache.put(lf, cpsSexp);
+    } else {
+      CPS_CACHE_HITS.increment();
+    }
+
     EvalResult evalResult = eval.eval(cpsSexp, env, null);
     // System.out.println(evalResult.getValue());
 
@@ -0,0 +1,44 @@
+package com.jayantkrish.jklol.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A named count of events, such as the number of parses that exceeded
+ * their time limit. Counters are thread-safe, and increments are
+ * striped across threads to avoid contention.
+ *
+ * @author jayantk
+ */
+public class Counter implements CounterMXBean {
+
+  private final String name;
+  private final LongAdder count;
+
+  public Counter(String name) {
+    this.name = Preconditions.checkNotNull(name);
+    this.count = new LongAdder();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public void increment() {
+    count.increment();
+  }
+
+  public void increment(long amount) {
+    count.add(amount);
+  }
+
+  public void reset() {
+    count.reset();
+  }
+
+  @Override
+  public long getCount() {
+    return count.sum();
+  }
+}
@@ -0,0 +1,11 @@
+package com.jayantkrish.jklol.metrics;
+
+/**
+ * JMX view of a {@link Counter}.
+ *
+ * @author jayantk
+ */
+public interface CounterMXBean {
+
+  public long getCount();
+}
@@ -0,0 +1,206 @@
+package com.jayantkrish.jklol.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A concurrent histogram of non-negative {@code long} values, such as
+ * durations in nanoseconds. Values are counted in log-linear buckets:
+ * each power of two is divided into {@code 2^SUB_BUCKET_BITS} equal
+ * buckets, so percentiles are accurate to within about 6% of the true
+ * value. The count, sum and maximum of the recorded values are exact.
+ * <p>
+ * Recording is lock-free and allocation-free. To avoid contention,
+ * each thread records into one of several stripes (chosen by thread
+ * id), which are only combined when a {@link Snapshot} is taken.
+ *
+ * @author jayantk
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 3;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int NUM_BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  // Each stripe stores the bucket counts, followed by the sum and
+  // maximum of the recorded values.
+  private static final int SUM_INDEX = NUM_BUCKETS;
+  private static final int MAX_INDEX = NUM_BUCKETS + 1;
+  private static final int STRIPE_SIZE = NUM_BUCKETS + 2;
+
+  private static final int NUM_STRIPES = Math.min(16,
+      Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+  // Stripes are allocated the first time a thread records into them.
+  private final AtomicReferenceArray<AtomicLongArray> stripes;
+
+  public LatencyHistogram() {
+    this.stripes = new AtomicReferenceArray<AtomicLongArray>(NUM_STRIPES);
+  }
+
+  /**
+   * Records a single occurrence of {@code value}.
+   *
+   * @param value
+   */
+  public void record(long value) {
+    Preconditions.checkArgument(value >= 0, "Negative value: %s", value);
+    AtomicLongArray stripe = getStripe();
+    stripe.incrementAndGet(getBucketIndex(value));
+    stripe.addAndGet(SUM_INDEX, value);
+
+    long max = stripe.get(MAX_INDEX);
+    while (value > max && !stripe.compareAndSet(MAX_INDEX, max, value)) {
+      max = stripe.get(MAX_INDEX);
+    }
+  }
+
+  /**
+   * Removes all recorded values. Values recorded concurrently with
+   * this method may or may not be removed.
+   */
+  public void reset() {
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      AtomicLongArray stripe = stripes.get(i);
+      if (stripe != null) {
+        for (int j = 0; j < STRIPE_SIZE; j++) {
+          stripe.set(j, 0L);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the values recorded in this histogram so far.
+   *
+   * @return
+   */
+  public Snapshot getSnapshot() {
+    long[] counts = new long[NUM_BUCKETS];
+    long sum = 0;
+    long max = 0;
+    for (int i = 0; i < NUM_STRIPES; i++) {
+      AtomicLongArray stripe = stripes.get(i);
+      if (stripe != null) {
+        for (int j = 0; j < NUM_BUCKETS; j++) {
+          counts[j] += stripe.get(j);
+        }
+        sum += stripe.get(SUM_INDEX);
+        max = Math.max(max, stripe.get(MAX_INDEX));
+      }
+    }
+    return new Snapshot(counts, sum, max);
+  }
+
+  private AtomicLongArray getStripe() {
+    int index = (int) (Thread.currentThread().getId() & (NUM_STRIPES - 1));
+    AtomicLongArray stripe = stripes.get(index);
+    if (stripe == null) {
+      stripes.compareAndSet(index, null, new AtomicLongArray(STRIPE_SIZE));
+      stripe = stripes.get(index);
+    }
+    return stripe;
+  }
+
+  /**
+   * Gets the index of the bucket containing {@code value}. Values
+   * less than {@code SUB_BUCKETS} have their own bucket; larger values
+   * are bucketed by their highest {@code SUB_BUCKET_BITS + 1} bits.
+   */
+  static int getBucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  /**
+   * Gets the smallest value contained in bucket {@code index}.
+   */
+  static long getBucketLowerBound(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index >> SUB_BUCKET_BITS) - 1;
+    return ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))) << shift;
+  }
+
+  /**
+   * Gets the number of values contained in bucket {@code index}.
+   */
+  static long getBucketWidth(int index) {
+    if (index < SUB_BUCKETS) {
+      return 1;
+    }
+    return 1L << ((index >> SUB_BUCKET_BITS) - 1);
+  }
+
+  /**
+   * An immutable copy of the values recorded in a histogram.
+   */
+  public static class Snapshot {
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    private Snapshot(long[] counts, long sum, long max) {
+      this.counts = counts;
+      long count = 0;
+      for (int i = 0; i < counts.length; i++) {
+        count += counts[i];
+      }
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public double getMean() {
+      return count == 0 ? 0.0 : ((double) sum) / count;
+    }
+
+    /**
+     * Gets an estimate of the {@code quantile}th quantile of the
+     * recorded values, i.e., {@code getPercentile(0.99)} estimates the
+     * 99th percentile. Returns 0 if no values have been recorded.
+     *
+     * @param quantile a number between 0 and 1.
+     * @return
+     */
+    public long getPercentile(double quantile) {
+      Preconditions.checkArgument(quantile >= 0.0 && quantile <= 1.0);
+      if (count == 0) {
+        return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(quantile * count));
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          // Use the midpoint of the bucket, but never exceed the
+          // largest recorded value.
+          long estimate = getBucketLowerBound(i) + (getBucketWidth(i) - 1) / 2;
+          return Math.min(estimate, max);
+        }
+      }
+      return max;
+    }
+  }
+}
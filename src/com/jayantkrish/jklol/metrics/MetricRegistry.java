@@ -0,0 +1,212 @@
+package com.jayantkrish.jklol.metrics;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+/**
+ * A collection of named {@link Timer}s and {@link Counter}s. Looking
+ * up a metric by name is relatively expensive, so code on hot paths
+ * should retrieve its metrics once (e.g., into a static field) and
+ * reuse them. Requesting the same name twice returns the same metric.
+ * <p>
+ * The contents of a registry can be written to a file with
+ * {@link #writeReport}, or exposed via JMX with
+ * {@link #registerMBeans}.
+ *
+ * @author jayantk
+ */
+public class MetricRegistry {
+
+  private final ConcurrentMap<String, Timer> timers;
+  private final ConcurrentMap<String, Counter> counters;
+
+  // If non-null, metrics are registered with JMX under this domain
+  // when they are created.
+  private volatile String jmxDomain;
+
+  public MetricRegistry() {
+    this.timers = new ConcurrentHashMap<String, Timer>();
+    this.counters = new ConcurrentHashMap<String, Counter>();
+    this.jmxDomain = null;
+  }
+
+  /**
+   * Gets the timer named {@code name}, creating it if necessary.
+   *
+   * @param name
+   * @return
+   */
+  public Timer timer(String name) {
+    Timer timer = timers.get(name);
+    if (timer == null) {
+      Timer newTimer = new Timer(name);
+      timer = timers.putIfAbsent(name, newTimer);
+      if (timer == null) {
+        timer = newTimer;
+        registerMBean(timer);
+      }
+    }
+    return timer;
+  }
+
+  /**
+   * Gets the counter named {@code name}, creating it if necessary.
+   *
+   * @param name
+   * @return
+   */
+  public Counter counter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      Counter newCounter = new Counter(name);
+      counter = counters.putIfAbsent(name, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+        registerMBean(counter);
+      }
+    }
+    return counter;
+  }
+
+  /**
+   * Gets all timers in this registry, sorted by name.
+   *
+   * @return
+   */
+  public List<Timer> getTimers() {
+    List<String> names = Ordering.natural().sortedCopy(timers.keySet());
+    List<Timer> sorted = Lists.newArrayList();
+    for (String name : names) {
+      sorted.add(timers.get(name));
+    }
+    return sorted;
+  }
+
+  /**
+   * Gets all counters in this registry, sorted by name.
+   *
+   * @return
+   */
+  public List<Counter> getCounters() {
+    List<String> names = Ordering.natural().sortedCopy(counters.keySet());
+    List<Counter> sorted = Lists.newArrayList();
+    for (String name : names) {
+      sorted.add(counters.get(name));
+    }
+    return sorted;
+  }
+
+  /**
+   * Resets every metric in this registry to zero. Handles to the
+   * metrics remain valid.
+   */
+  public void reset() {
+    for (Timer timer : timers.values()) {
+      timer.reset();
+    }
+    for (Counter counter : counters.values()) {
+      counter.reset();
+    }
+  }
+
+  /**
+   * Gets a human-readable summary of every metric in this registry
+   * that has recorded at least one event, with one metric per line.
+   *
+   * @return
+   */
+  public List<String> getReport() {
+    List<String> lines = Lists.newArrayList();
+    for (Timer timer : getTimers()) {
+      LatencyHistogram.Snapshot snapshot = timer.getSnapshot();
+      if (snapshot.getCount() > 0) {
+        lines.add(timer.getName() + ": " + Timer.formatSnapshot(snapshot));
+      }
+    }
+    for (Counter counter : getCounters()) {
+      long count = counter.getCount();
+      if (count > 0) {
+        lines.add(counter.getName() + ": " + count);
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Writes {@link #getReport()} to {@code filename}, replacing its
+   * contents.
+   *
+   * @param filename
+   */
+  public void writeReport(String filename) {
+    try {
+      Writer out = new FileWriter(filename);
+      try {
+        for (String line : getReport()) {
+          out.write(line);
+          out.write("\n");
+        }
+      } finally {
+        out.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Registers every metric in this registry with the platform
+   * {@code MBeanServer}, under the JMX domain {@code domain}. Metrics
+   * created after this call are registered as they are created.
+   *
+   * @param domain
+   */
+  public void registerMBeans(String domain) {
+    jmxDomain = Preconditions.checkNotNull(domain);
+    for (Timer timer : getTimers()) {
+      registerMBean(timer);
+    }
+    for (Counter counter : getCounters()) {
+      registerMBean(counter);
+    }
+  }
+
+  private void registerMBean(Timer timer) {
+    if (jmxDomain != null) {
+      registerMBean(timer, "Timer", timer.getName());
+    }
+  }
+
+  private void registerMBean(Counter counter) {
+    if (jmxDomain != null) {
+      registerMBean(counter, "Counter", counter.getName());
+    }
+  }
+
+  private void registerMBean(Object metric, String type, String name) {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = new ObjectName(jmxDomain + ":type=" + type + ",name="
+          + ObjectName.quote(name));
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+      server.registerMBean(metric, objectName);
+    } catch (JMException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package com.jayantkrish.jklol.metrics;
+
+/**
+ * Static access to the process-wide {@link MetricRegistry}. Library
+ * code records its hot-path timings here, for example:
+ *
+ * <pre>
+ * private static final Timer PARSE_TIMER = Metrics.timer("ccg_parse/parse");
+ * </pre>
+ *
+ * @author jayantk
+ */
+public class Metrics {
+
+  private static final MetricRegistry registry = new MetricRegistry();
+
+  /**
+   * The JMX domain under which {@code AbstractCli} programs register
+   * the default registry's metrics.
+   */
+  public static final String JMX_DOMAIN = "com.jayantkrish.jklol";
+
+  public static final MetricRegistry getRegistry() {
+    return registry;
+  }
+
+  public static final Timer timer(String name) {
+    return registry.timer(name);
+  }
+
+  public static final Counter counter(String name) {
+    return registry.counter(name);
+  }
+
+  private Metrics() {
+    // Prevent instantiation.
+  }
+}
@@ -0,0 +1,132 @@
+package com.jayantkrish.jklol.metrics;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A named timer that records a latency distribution for a section of
+ * code. Timers are obtained once from a {@link MetricRegistry}, then
+ * used on hot paths without any further lookups:
+ *
+ * <pre>
+ * long start = timer.start();
+ * ...
+ * timer.stop(start);
+ * </pre>
+ *
+ * Timers are thread-safe, and {@code start}/{@code stop} neither lock
+ * nor allocate.
+ *
+ * @author jayantk
+ */
+public class Timer implements TimerMXBean {
+
+  private static final double NANOS_PER_MILLI = 1000000.0;
+
+  private final String name;
+  private final LatencyHistogram histogram;
+
+  public Timer(String name) {
+    this.name = Preconditions.checkNotNull(name);
+    this.histogram = new LatencyHistogram();
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Begins timing an event. The returned value must be passed to
+   * {@link #stop(long)} when the event completes.
+   *
+   * @return
+   */
+  public long start() {
+    return System.nanoTime();
+  }
+
+  /**
+   * Records an event that began at {@code startNanos}, which must be
+   * a value returned by {@link #start()}.
+   *
+   * @param startNanos
+   * @return the duration of the event, in nanoseconds.
+   */
+  public long stop(long startNanos) {
+    long elapsed = Math.max(0, System.nanoTime() - startNanos);
+    histogram.record(elapsed);
+    return elapsed;
+  }
+
+  /**
+   * Records an event that lasted {@code nanos} nanoseconds.
+   *
+   * @param nanos
+   */
+  public void record(long nanos) {
+    histogram.record(nanos);
+  }
+
+  public void reset() {
+    histogram.reset();
+  }
+
+  /**
+   * Gets the distribution of durations recorded by this timer, in
+   * nanoseconds.
+   *
+   * @return
+   */
+  public LatencyHistogram.Snapshot getSnapshot() {
+    return histogram.getSnapshot();
+  }
+
+  @Override
+  public long getCount() {
+    return histogram.getSnapshot().getCount();
+  }
+
+  @Override
+  public double getTotalMillis() {
+    return histogram.getSnapshot().getSum() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMeanMillis() {
+    return histogram.getSnapshot().getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getMaxMillis() {
+    return histogram.getSnapshot().getMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double get50thPercentileMillis() {
+    return histogram.getSnapshot().getPercentile(0.5) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double get95thPercentileMillis() {
+    return histogram.getSnapshot().getPercentile(0.95) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double get99thPercentileMillis() {
+    return histogram.getSnapshot().getPercentile(0.99) / NANOS_PER_MILLI;
+  }
+
+  /**
+   * Formats {@code snapshot} as a single line of text, with durations
+   * converted to milliseconds.
+   *
+   * @param snapshot
+   * @return
+   */
+  public static String formatSnapshot(LatencyHistogram.Snapshot snapshot) {
+    return String.format("%.3f sec (%.3f ms * %d) p50=%.3f ms p95=%.3f ms p99=%.3f ms max=%.3f ms",
+        snapshot.getSum() / (NANOS_PER_MILLI * 1000), snapshot.getMean() / NANOS_PER_MILLI,
+        snapshot.getCount(), snapshot.getPercentile(0.5) / NANOS_PER_MILLI,
+        snapshot.getPercentile(0.95) / NANOS_PER_MILLI,
+        snapshot.getPercentile(0.99) / NANOS_PER_MILLI, snapshot.getMax() / NANOS_PER_MILLI);
+  }
+}
@@ -0,0 +1,23 @@
+package com.jayantkrish.jklol.metrics;
+
+/**
+ * JMX view of a {@link Timer}. Durations are in milliseconds.
+ *
+ * @author jayantk
+ */
+public interface TimerMXBean {
+
+  public long getCount();
+
+  public double getTotalMillis();
+
+  public double getMeanMillis();
+
+  public double getMaxMillis();
+
+  public double get50thPercentileMillis();
+
+  public double get95thPercentileMillis();
+
+  public double get99thPercentileMillis();
+}
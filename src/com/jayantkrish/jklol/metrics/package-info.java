@@ -0,0 +1,5 @@
+/**
+ * Low-overhead timers, counters and latency histograms for
+ * instrumenting training, inference and parsing.
+ */
+package com.jayantkrish.jklol.metrics;
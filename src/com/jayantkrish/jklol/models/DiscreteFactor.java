@@ -17,8 +17,8 @@ import com.google.common.collect.Sets;
 import com.google.common.collect.SortedSetMultimap;
 import com.google.common.collect.TreeMultimap;
 import com.jayantkrish.jklol.tensor.CachedSparseTensor;
+import com.jayantkrish.jklol.tensor.HashSparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.SparseTensor;
-import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.util.Assignment;
 import com.jayantkrish.jklol.util.Pair;
@@ -84,7 +84,7 @@ public abstract class DiscreteFactor extends AbstractFactor {
 
   public TableFactor cacheWeightPermutations() {
     return new TableFactor(getVars(), CachedSparseTensor.cacheAllPermutations(
-         (SparseTensor) getWeights()));
+         SparseTensor.copyOf(getWeights())));
   }
 
   // /////////////////////////////////////////////////////////////////////////////////
@@ -232,7 +232,7 @@ public abstract class DiscreteFactor extends AbstractFactor {
     // This implementation is slow, but Tensors currently don't support all
     // outer products.
     TableFactorBuilder builder = new TableFactorBuilder(getVars().union(other.getVars()),
-        SparseTensorBuilder.getFactory());
+        HashSparseTensorBuilder.getFactory());
     Iterator<Outcome> myIter = outcomeIterator();
     while (myIter.hasNext()) {
       Outcome myOutcome = myIter.next();
@@ -149,6 +149,17 @@ public class DiscreteVariable implements Variable, Serializable {
     return name + " (" + values.size() + " values)";
   }
 
+  @Override
+  public int hashCode() {
+    // Hashing every value is expensive for variables with many
+    // values, and the size suffices to agree with equals().
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + name.hashCode();
+    result = prime * result + values.size();
+    return result;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) {
@@ -67,6 +67,17 @@ public class LinearClassifierFactor extends ClassifierFactor {
     return logWeights;
   }
 
+  /**
+   * Gets the output variables whose distribution is normalized
+   * conditioned on the remaining output variables. Empty if the
+   * classifier's scores are unnormalized.
+   * 
+   * @return
+   */
+  public VariableNumMap getConditionalVariables() {
+    return conditionalVars;
+  }
+
   /**
    * Returns a vector (1-dimensional tensor) containing the feature weights used
    * to predict {@code outputClass}. {@code outputClass} must contain a value
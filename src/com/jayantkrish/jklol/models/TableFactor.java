@@ -13,8 +13,8 @@ import com.google.common.collect.Lists;
 import com.jayantkrish.jklol.models.VariableNumMap.VariableRelabeling;
 import com.jayantkrish.jklol.tensor.DenseTensor;
 import com.jayantkrish.jklol.tensor.DenseTensorBuilder;
+import com.jayantkrish.jklol.tensor.HashSparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.LogSpaceTensorAdapter;
-import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
 import com.jayantkrish.jklol.util.Assignment;
@@ -61,7 +61,7 @@ public class TableFactor extends DiscreteFactor {
    * @return
    */
   public static TableFactor pointDistribution(VariableNumMap vars, Assignment... assignments) {
-    TableFactorBuilder builder = new TableFactorBuilder(vars, SparseTensorBuilder.getFactory());
+    TableFactorBuilder builder = new TableFactorBuilder(vars, HashSparseTensorBuilder.getFactory());
     for (int i = 0; i < assignments.length; i++) {
       builder.setWeight(assignments[i], 1.0);
     }
@@ -72,7 +72,7 @@ public class TableFactor extends DiscreteFactor {
 
   public static TableFactor vector(VariableNumMap vars, Assignment[] assignments, double[] values) {
     Preconditions.checkArgument(assignments.length == values.length);
-    TableFactorBuilder builder = new TableFactorBuilder(vars, SparseTensorBuilder.getFactory());
+    TableFactorBuilder builder = new TableFactorBuilder(vars, HashSparseTensorBuilder.getFactory());
     for (int i = 0; i < assignments.length; i++) {
       builder.setWeight(assignments[i], values[i]);
     }
@@ -104,7 +104,7 @@ public class TableFactor extends DiscreteFactor {
    * @return
    */
   public static TableFactor zero(VariableNumMap vars) {
-    TableFactorBuilder builder = new TableFactorBuilder(vars, SparseTensorBuilder.getFactory());
+    TableFactorBuilder builder = new TableFactorBuilder(vars, HashSparseTensorBuilder.getFactory());
     return builder.build();
   }
 
@@ -116,7 +116,7 @@ public class TableFactor extends DiscreteFactor {
    * @return
    */
   public static TableFactor logUnity(VariableNumMap vars) {
-    TableFactorBuilder builder = new TableFactorBuilder(vars, SparseTensorBuilder.getFactory());
+    TableFactorBuilder builder = new TableFactorBuilder(vars, HashSparseTensorBuilder.getFactory());
     return builder.buildSparseInLogSpace();
   }
 
@@ -161,7 +161,7 @@ public class TableFactor extends DiscreteFactor {
       boolean ignoreInvalidAssignments) {
     int numVars = variables.size();
     VariableNumMap allVars = VariableNumMap.unionAll(variables);
-    TableFactorBuilder builder = new TableFactorBuilder(allVars, SparseTensorBuilder.getFactory());
+    TableFactorBuilder builder = new TableFactorBuilder(allVars, HashSparseTensorBuilder.getFactory());
     for (String line : lines) {
       // Ignore blank lines.
       if (line.trim().length() == 0) {
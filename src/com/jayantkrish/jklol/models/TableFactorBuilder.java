@@ -12,10 +12,10 @@ import com.google.common.primitives.Ints;
 import com.jayantkrish.jklol.models.DiscreteFactor.Outcome;
 import com.jayantkrish.jklol.tensor.CachedSparseTensor;
 import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.HashSparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.LogSpaceTensorAdapter;
 import com.jayantkrish.jklol.tensor.SparseLogSpaceTensorAdapter;
 import com.jayantkrish.jklol.tensor.SparseTensor;
-import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
 import com.jayantkrish.jklol.tensor.TensorBuilder;
 import com.jayantkrish.jklol.tensor.TensorFactory;
@@ -44,7 +44,7 @@ public class TableFactorBuilder {
    * This constructor is deprecated -- please use
    * {@link #TableFactorBuilder(VariableNumMap, TensorFactory)} instead. Note
    * that an equivalent effect can be given by passing
-   * {@code SparseTensorBuilder.getFactory()} as the tensor factory.
+   * {@code HashSparseTensorBuilder.getFactory()} as the tensor factory.
    * 
    * @param vars
    */
@@ -52,7 +52,7 @@ public class TableFactorBuilder {
   public TableFactorBuilder(VariableNumMap variables) {
     Preconditions.checkArgument(variables.size() == variables.getDiscreteVariables().size());
     this.vars = variables;
-    this.weightBuilder = new SparseTensorBuilder(Ints.toArray(vars.getVariableNums()),
+    this.weightBuilder = new HashSparseTensorBuilder(Ints.toArray(vars.getVariableNums()),
         vars.getVariableSizes());
   }
 
@@ -284,7 +284,7 @@ public class TableFactorBuilder {
    */
   public TableFactor buildWithCache() {
     return new TableFactor(vars, CachedSparseTensor.cacheAllPermutations(
-        SparseTensorBuilder.copyOf(weightBuilder).build()));
+        HashSparseTensorBuilder.copyOf(weightBuilder).build()));
   }
 
   /**
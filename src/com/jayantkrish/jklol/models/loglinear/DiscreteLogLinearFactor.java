@@ -24,8 +24,8 @@ import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
 import com.jayantkrish.jklol.preprocessing.FeatureGenerator;
 import com.jayantkrish.jklol.tensor.DenseTensorBuilder;
+import com.jayantkrish.jklol.tensor.HashSparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.LogSpaceTensorAdapter;
-import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
 import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.util.AllAssignmentIterator;
 import com.jayantkrish.jklol.util.Assignment;
@@ -224,7 +224,7 @@ public class DiscreteLogLinearFactor extends AbstractParametricFactor {
         featureVariable);
 
     TableFactorBuilder featureValueBuilder = new TableFactorBuilder(vars.union(featureVarMap),
-        SparseTensorBuilder.getFactory());
+        HashSparseTensorBuilder.getFactory());
     for (List<Object> featureValues : features) {
       Assignment newAssignment = vars.outcomeToAssignment(featureValues)
           .union(featureVarMap.outcomeArrayToAssignment(featureValues));
@@ -298,7 +298,7 @@ public class DiscreteLogLinearFactor extends AbstractParametricFactor {
     VariableNumMap featureVar = VariableNumMap.singleton(
         Ints.max(factor.getVars().getVariableNumsArray()) + 1, FEATURE_VAR_NAME, featureType);
     TableFactorBuilder builder = new TableFactorBuilder(
-        factor.getVars().union(featureVar), SparseTensorBuilder.getFactory());
+        factor.getVars().union(featureVar), HashSparseTensorBuilder.getFactory());
     
     iter = factor.outcomeIterator();
     while (iter.hasNext()) {
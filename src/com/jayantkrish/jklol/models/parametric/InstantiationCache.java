@@ -0,0 +1,155 @@
+package com.jayantkrish.jklol.models.parametric;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Longs;
+
+/**
+ * Caches models instantiated from parameter vectors, so that a model
+ * is only rebuilt when its parameters change. This cache is useful
+ * for models composed of several independently-parameterized
+ * components (e.g., a {@code CcgParser}); during training, many
+ * components may not change between iterations, and their previously
+ * instantiated models can be reused.
+ * <p>
+ * Parameters are compared using the version numbers of their
+ * {@link TensorSufficientStatistics} blocks (see
+ * {@link TensorSufficientStatistics#getVersion()}), so checking
+ * whether a model is current takes time proportional to the number
+ * of blocks, not the number of parameters, and the cache does not
+ * copy any parameters. {@link ListSufficientStatistics} are compared
+ * block-by-block; models built from any other type of parameters are
+ * always rebuilt.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author jayantk
+ */
+public class InstantiationCache {
+
+  private final Map<Object, CacheEntry> entries;
+
+  public InstantiationCache() {
+    this.entries = Maps.newHashMap();
+  }
+
+  /**
+   * Gets the model of {@code family} for {@code parameters},
+   * reusing the model cached under {@code key} if it was
+   * instantiated from identical parameters. Otherwise, the model is
+   * instantiated and cached under {@code key}.
+   *
+   * @param key
+   * @param family
+   * @param parameters
+   * @return
+   */
+  public <T> T getModel(Object key, final ParametricFamily<? extends T> family,
+      final SufficientStatistics parameters) {
+    return getModel(key, parameters, new Supplier<T>() {
+      @Override
+      public T get() {
+        return family.getModelFromParameters(parameters);
+      }
+    });
+  }
+
+  /**
+   * Same as {@link #getModel(Object, ParametricFamily, SufficientStatistics)},
+   * except that the model is instantiated from {@code parameters} by
+   * {@code instantiator}.
+   *
+   * @param key
+   * @param parameters
+   * @param instantiator
+   * @return
+   */
+  public <T> T getModel(Object key, SufficientStatistics parameters,
+      Supplier<? extends T> instantiator) {
+    // The versions must be read before instantiating the model, so
+    // that concurrent modifications to the parameters invalidate
+    // the cached model.
+    long[] versions = getVersions(parameters);
+    if (versions == null) {
+      return instantiator.get();
+    }
+
+    CacheEntry entry = null;
+    synchronized (this) {
+      entry = entries.get(key);
+    }
+
+    if (entry != null && Arrays.equals(entry.getVersions(), versions)) {
+      @SuppressWarnings("unchecked")
+      T model = (T) entry.getModel();
+      return model;
+    }
+
+    T model = instantiator.get();
+    synchronized (this) {
+      entries.put(key, new CacheEntry(versions, model));
+    }
+    return model;
+  }
+
+  /**
+   * Removes all models from this cache.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Gets the versions of every block of {@code parameters}, or
+   * {@code null} if {@code parameters} contains statistics without
+   * versions.
+   *
+   * @param parameters
+   * @return
+   */
+  private static long[] getVersions(SufficientStatistics parameters) {
+    List<Long> versions = Lists.newArrayList();
+    if (addVersions(parameters, versions)) {
+      return Longs.toArray(versions);
+    }
+    return null;
+  }
+
+  private static boolean addVersions(SufficientStatistics parameters, List<Long> versions) {
+    if (parameters instanceof TensorSufficientStatistics) {
+      versions.add(((TensorSufficientStatistics) parameters).getVersion());
+      return true;
+    } else if (parameters instanceof ListSufficientStatistics) {
+      for (SufficientStatistics statistic : ((ListSufficientStatistics) parameters).getStatistics()) {
+        if (!addVersions(statistic, versions)) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  private static class CacheEntry {
+    private final long[] versions;
+    private final Object model;
+
+    public CacheEntry(long[] versions, Object model) {
+      this.versions = versions;
+      this.model = model;
+    }
+
+    public long[] getVersions() {
+      return versions;
+    }
+
+    public Object getModel() {
+      return model;
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package com.jayantkrish.jklol.models.parametric;
 
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import com.google.common.base.Preconditions;
 import com.google.common.primitives.Ints;
@@ -11,6 +13,7 @@ import com.jayantkrish.jklol.models.TableFactor;
 import com.jayantkrish.jklol.models.VariableNumMap;
 import com.jayantkrish.jklol.tensor.DenseTensor;
 import com.jayantkrish.jklol.tensor.DenseTensorBuilder;
+import com.jayantkrish.jklol.tensor.SparseDeltaTensorBuilder;
 import com.jayantkrish.jklol.tensor.SparseTensor;
 import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.tensor.TensorBuilder;
@@ -27,6 +30,14 @@ public class TensorSufficientStatistics implements SufficientStatistics {
 
   private static final long serialVersionUID = -888818836179147365L;
 
+  // Source of version numbers. Version numbers are unique across
+  // all instances, except that duplicates share the version of
+  // the statistics they were copied from.
+  private static final AtomicLong NEXT_VERSION = new AtomicLong(1);
+  private static final long UNVERSIONED = 0;
+  private static final AtomicLongFieldUpdater<TensorSufficientStatistics> VERSION_UPDATER =
+      AtomicLongFieldUpdater.newUpdater(TensorSufficientStatistics.class, "version");
+
   private final VariableNumMap statisticNames;
 
   // This flag determines whether statisticsTensor or statistics
@@ -35,6 +46,15 @@ public class TensorSufficientStatistics implements SufficientStatistics {
   private Tensor statisticsTensor;
   private TensorBuilder statistics;
 
+  // Version of the current parameter values, or UNVERSIONED if
+  // the parameters have been modified since the last call to
+  // getVersion(). Parameters may be read and modified by several
+  // threads (e.g., during asynchronous training), so versions are
+  // only assigned by compare-and-set from UNVERSIONED; a version
+  // taken before a concurrent modification can never overwrite
+  // that modification's reset.
+  private transient volatile long version;
+
   /**
    * Copy constructor.
    * 
@@ -52,6 +72,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
       // Tensors are immutable, so this tensor can be shared.
       this.statisticsTensor = toCopy.statisticsTensor;
     }
+    this.version = toCopy.getVersion();
   }
 
   /**
@@ -109,6 +130,22 @@ public class TensorSufficientStatistics implements SufficientStatistics {
         new DenseTensorBuilder(statisticNames.getVariableNumsArray(), statisticNames.getVariableSizes()));
   }
 
+  /**
+   * Creates a sufficient statistics vector for accumulating sparse
+   * updates, such as the gradient of a single example. The returned
+   * vector stores only the entries that have been incremented, so the
+   * cost of incrementing, zeroing out, and adding it to another vector
+   * is proportional to the number of touched entries rather than the
+   * number of parameters. See {@link SparseDeltaTensorBuilder}.
+   * 
+   * @param statisticNames
+   * @return
+   */
+  public static TensorSufficientStatistics createSparseDelta(VariableNumMap statisticNames) {
+    return new TensorSufficientStatistics(statisticNames,
+        new SparseDeltaTensorBuilder(statisticNames.getVariableNumsArray(), statisticNames.getVariableSizes()));
+  }
+
   /**
    * Gets the tensor in {@code this}.
    * <p>
@@ -126,6 +163,23 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     }
   }
 
+  /**
+   * Gets the mutable builder containing the values of these
+   * statistics, which must be dense (see {@link #makeDense()}).
+   * Modifying the returned builder does not change the version
+   * number of these statistics; callers must invoke
+   * {@link #markModified()} after modifying it. This method lets
+   * callers that update many entries at once (e.g., asynchronous
+   * training) change the version number once, instead of once per
+   * entry.
+   * 
+   * @return
+   */
+  public TensorBuilder getDenseBuilder() {
+    Preconditions.checkState(isDense, "Statistics are not dense.");
+    return statistics;
+  }
+
   private int[] getTensorDimensions() {
     if (isDense) {
       return statistics.getDimensionNumbers();
@@ -163,6 +217,41 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     return statisticNames;
   }
 
+  /**
+   * Gets a version number for the current values of these
+   * statistics. Any modification to these statistics (through
+   * the methods of this class) changes the version number, and
+   * statistics with the same version number have the same values.
+   * A copy created by {@link #duplicate()} has the same version
+   * number as the original until either is modified. Version
+   * numbers allow callers to detect unchanged parameters without
+   * comparing every value; see {@link InstantiationCache}.
+   * 
+   * @return
+   */
+  public long getVersion() {
+    long current = version;
+    while (current == UNVERSIONED) {
+      long next = NEXT_VERSION.getAndIncrement();
+      if (VERSION_UPDATER.compareAndSet(this, UNVERSIONED, next)) {
+        return next;
+      }
+      current = version;
+    }
+    return current;
+  }
+
+  /**
+   * Records that the values of these statistics have changed, so
+   * that the next call to {@link #getVersion()} returns a new
+   * version number. The methods of this class call this method
+   * automatically; it only needs to be called after modifying the
+   * builder returned by {@link #getDenseBuilder()}.
+   */
+  public void markModified() {
+    version = UNVERSIONED;
+  }
+
   @Override
   public void increment(SufficientStatistics other, double multiplier) {
     Preconditions.checkArgument(other instanceof TensorSufficientStatistics);
@@ -176,6 +265,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     } else {
       statisticsTensor = statisticsTensor.elementwiseAddition(other.elementwiseProduct(multiplier));
     }
+    markModified();
   }
   
   public void incrementOuterProduct(Tensor leftTensor, Tensor rightTensor, double multiplier) {
@@ -185,6 +275,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
       Tensor other = leftTensor.outerProduct(rightTensor);
       statisticsTensor = statisticsTensor.elementwiseAddition(other.elementwiseProduct(multiplier));
     }
+    markModified();
   }
 
   public void incrementInnerProduct(Tensor leftTensor, Tensor rightTensor, double multiplier) {
@@ -194,6 +285,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
       Tensor other = leftTensor.innerProduct(rightTensor);
       statisticsTensor = statisticsTensor.elementwiseAddition(other.elementwiseProduct(multiplier));
     }
+    markModified();
   }
 
   /**
@@ -211,6 +303,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
           statisticNames.assignmentToIntArray(featureAssignment), amount);
       statisticsTensor = statisticsTensor.elementwiseAddition(increment);
     }
+    markModified();
   }
   
   public void incrementFeatureByName(double amount, Object ... featureName) {
@@ -232,6 +325,40 @@ public class TensorSufficientStatistics implements SufficientStatistics {
           key, amount);
       statisticsTensor = statisticsTensor.elementwiseAddition(increment);
     }
+    markModified();
+  }
+
+  /**
+   * Increments the value of the statistic with {@code keyNum} by
+   * {@code amount}.
+   * 
+   * @param amount
+   * @param keyNum
+   */
+  public void incrementFeatureByKeyNum(double amount, long keyNum) {
+    if (isDense) {
+      statistics.incrementEntryByKeyNum(amount, keyNum);
+    } else {
+      incrementFeatureByIndex(amount, statisticsTensor.keyNumToDimKey(keyNum));
+    }
+    markModified();
+  }
+
+  /**
+   * Multiplies the value of the statistic with {@code keyNum} by
+   * {@code amount}.
+   * 
+   * @param amount
+   * @param keyNum
+   */
+  public void multiplyFeatureByKeyNum(double amount, long keyNum) {
+    if (isDense) {
+      statistics.multiplyEntryByKeyNum(amount, keyNum);
+    } else {
+      double value = statisticsTensor.get(keyNum);
+      incrementFeatureByKeyNum((amount - 1.0) * value, keyNum);
+    }
+    markModified();
   }
 
   @Override
@@ -256,6 +383,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     } else {
       statisticsTensor = statisticsTensor.elementwiseAddition(amount);
     }
+    markModified();
   }
 
   @Override
@@ -265,6 +393,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     } else {
       statisticsTensor = statisticsTensor.elementwiseProduct(amount);
     }
+    markModified();
   }
 
   @Override
@@ -274,6 +403,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     } else {
       statisticsTensor = statisticsTensor.softThreshold(threshold);
     }
+    markModified();
   }
 
   @Override
@@ -283,6 +413,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     } else {
       statisticsTensor = statisticsTensor.getEntriesLargerThan(threshold);
     }
+    markModified();
   }
 
   @Override
@@ -296,6 +427,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
 
     Tensor perturbation = DenseTensor.random(getTensorDimensions(), getTensorSizes(), 0.0, stddev);
     statistics.increment(perturbation);
+    markModified();
   }
 
   @Override
@@ -344,6 +476,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
     } else {
       statisticsTensor = statisticsTensor.elementwiseProduct(0); 
     }
+    markModified();
   }
   
   @Override
@@ -356,6 +489,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
       Tensor square = otherStatistics.elementwiseProduct(otherStatistics.elementwiseProduct(multiplier));
       statisticsTensor = statisticsTensor.elementwiseAddition(square);
     }
+    markModified();
   }
 
   @Override
@@ -373,6 +507,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
       increment = increment.elementwiseProduct(increment);
       statisticsTensor = statisticsTensor.elementwiseAddition(increment);
     }
+    markModified();
   }
 
   @Override
@@ -388,6 +523,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
           .elementwiseProduct(multiplier).elementwiseAddition(constant);
       statisticsTensor = statisticsTensor.elementwiseProduct(multiplierTensor);
     }
+    markModified();
   }
 
   @Override
@@ -405,6 +541,7 @@ public class TensorSufficientStatistics implements SufficientStatistics {
         .elementwiseInverse().elementwiseSqrt()).elementwiseProduct(multiplier);
       statisticsTensor = statisticsTensor.elementwiseAddition(increment);
     }
+    markModified();
   }
 
   @Override
@@ -0,0 +1,130 @@
+package com.jayantkrish.jklol.parallel;
+
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A pool of reusable accumulators for a {@link PooledReducer}. Each
+ * batch of a map-reduce computation acquires an accumulator from the
+ * pool, reduces its items into it, then releases it back to the pool.
+ * Since at most one batch runs on each worker thread at a time, the
+ * pool grows to (roughly) one accumulator per worker thread, and these
+ * accumulators are reused across map-reduce calls instead of being
+ * reallocated for every batch.
+ * <p>
+ * An {@code AccumulatorPool} is safe to use from multiple threads, but
+ * should not be shared by concurrently executing map-reduce calls, as
+ * the executor zeroes out the pooled accumulators at the end of each
+ * call. If a call fails, the executor discards the pooled
+ * accumulators using {@link #clear()}, since they may contain
+ * partially reduced values.
+ * 
+ * @author jayantk
+ * @param <C> accumulator type
+ */
+public class AccumulatorPool<C> {
+
+  private final Queue<C> freeAccumulators;
+  // Incremented by clear(). Accumulators acquired before a clear
+  // are not returned to the pool.
+  private final AtomicInteger generation;
+
+  public AccumulatorPool() {
+    this.freeAccumulators = new ConcurrentLinkedQueue<C>();
+    this.generation = new AtomicInteger(0);
+  }
+
+  /**
+   * Gets the current generation of this pool, which must be passed
+   * to {@link #release(Object, int)}.
+   * 
+   * @return
+   */
+  public int getGeneration() {
+    return generation.get();
+  }
+
+  /**
+   * Gets an accumulator that is not currently in use by any other
+   * batch. If no such accumulator exists, a new one is created using
+   * {@code reducer.getInitialValue()}. The returned accumulator must
+   * be returned to the pool using {@link #release}.
+   * 
+   * @param reducer
+   * @return
+   */
+  public C acquire(Reducer<?, C> reducer) {
+    C accumulator = freeAccumulators.poll();
+    if (accumulator == null) {
+      accumulator = reducer.getInitialValue();
+    }
+    return accumulator;
+  }
+
+  /**
+   * Returns {@code accumulator} to this pool, making it available to
+   * other batches.
+   * 
+   * @param accumulator
+   */
+  public void release(C accumulator) {
+    freeAccumulators.offer(Preconditions.checkNotNull(accumulator));
+  }
+
+  /**
+   * Returns {@code accumulator} to this pool, unless the pool has
+   * been cleared since {@code acquiredGeneration}, in which case
+   * {@code accumulator} is discarded.
+   * 
+   * @param accumulator
+   * @param acquiredGeneration value of {@link #getGeneration()}
+   * before {@code accumulator} was acquired.
+   */
+  public synchronized void release(C accumulator, int acquiredGeneration) {
+    if (acquiredGeneration == generation.get()) {
+      release(accumulator);
+    }
+  }
+
+  /**
+   * Removes {@code accumulator} from this pool, so that it is never
+   * returned by {@link #acquire}. The caller takes ownership of
+   * {@code accumulator}.
+   * 
+   * @param accumulator
+   */
+  public synchronized void remove(C accumulator) {
+    Iterator<C> iter = freeAccumulators.iterator();
+    while (iter.hasNext()) {
+      // Accumulators are compared by identity, as distinct
+      // accumulators may be equal.
+      if (iter.next() == accumulator) {
+        iter.remove();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Discards all of the accumulators in this pool, including any
+   * that are currently acquired.
+   */
+  public synchronized void clear() {
+    generation.incrementAndGet();
+    freeAccumulators.clear();
+  }
+
+  /**
+   * Gets the number of accumulators that are currently available
+   * in this pool.
+   * 
+   * @return
+   */
+  public int getNumFreeAccumulators() {
+    return freeAccumulators.size();
+  }
+}
@@ -0,0 +1,63 @@
+package com.jayantkrish.jklol.parallel;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+/**
+ * Thread pools for fine-grained parallelism within a single
+ * computation, such as parsing a sentence or running inference in a
+ * graphical model. Pools are shared by the whole program and keyed by
+ * number of threads, so that repeated computations do not create
+ * (and tear down) their own threads.
+ *
+ * @author jayantk
+ */
+public class ForkJoinPools {
+
+  private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = Maps.newConcurrentMap();
+
+  /**
+   * Gets the shared pool with {@code numThreads} threads, creating it
+   * if necessary. The returned pool's threads are daemon threads, so
+   * the pool does not need to be shut down.
+   *
+   * @param numThreads
+   * @return
+   */
+  public static ForkJoinPool getSharedPool(int numThreads) {
+    Preconditions.checkArgument(numThreads > 0);
+    ForkJoinPool pool = POOLS.get(numThreads);
+    if (pool == null) {
+      // ForkJoinPool's default thread factory creates daemon threads.
+      ForkJoinPool newPool = new ForkJoinPool(numThreads);
+      pool = POOLS.putIfAbsent(numThreads, newPool);
+      if (pool == null) {
+        pool = newPool;
+      } else {
+        newPool.shutdown();
+      }
+    }
+    return pool;
+  }
+
+  /**
+   * Returns {@code true} if the current thread is a worker thread of
+   * {@code pool}. Computations that block waiting on tasks in
+   * {@code pool} should not run on its worker threads, as they may
+   * deadlock.
+   *
+   * @param pool
+   * @return
+   */
+  public static boolean isWorkerOf(ForkJoinPool pool) {
+    return ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool;
+  }
+
+  private ForkJoinPools() {
+    // Prevent instantiation.
+  }
+}
@@ -2,22 +2,32 @@ package com.jayantkrish.jklol.parallel;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 
+import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.jayantkrish.jklol.parallel.Reducers.FilterReducer;
 
 /**
  * A parallelized, single-machine implementation of map-reduce pipelines. This
  * executor batches the input items and executes them on multiple local CPUs.
+ * <p>
+ * The threads used to execute batches are created once and reused
+ * across calls to {@code mapReduce} and {@code map}, so callers that
+ * invoke this executor many times (e.g., once per minibatch during
+ * training) do not pay thread creation costs on every call. By
+ * default, batches run on a work-stealing {@code ForkJoinPool} whose
+ * threads are daemon threads, so the program can terminate without
+ * calling {@link #shutdown()}.
  * 
  * @author jayantk
  */
@@ -26,6 +36,12 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
   private final int batchesPerThread;
   private final int numThreads;
 
+  // Lazily-created pool shared by every call to this executor.
+  private ExecutorService executor;
+  // True if this instance created executor and is therefore
+  // responsible for shutting it down.
+  private final boolean ownsExecutor;
+
   /**
    * Constructs an executor that processes batches of items using a fixed number
    * of local threads. {@code numThreads} threads are created, and items are
@@ -36,8 +52,36 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
    * @param batchesPerThread
    */
   public LocalMapReduceExecutor(int numThreads, int batchesPerThread) {
+    Preconditions.checkArgument(numThreads > 0);
+    Preconditions.checkArgument(batchesPerThread > 0);
+    this.numThreads = numThreads;
+    this.batchesPerThread = batchesPerThread;
+    this.executor = null;
+    this.ownsExecutor = true;
+  }
+
+  /**
+   * Constructs an executor that runs batches on {@code executor}
+   * instead of a pool created by this class. This constructor can be
+   * used to share a single pool between multiple map-reduce executors
+   * or to run batches on a different kind of thread (e.g., a
+   * virtual-thread-per-task executor on JVMs that support them).
+   * {@code numThreads} is only used to determine the batch size.
+   * {@code executor} is not shut down by {@link #shutdown()}; its
+   * lifecycle is managed by the caller.
+   *
+   * @param executor
+   * @param numThreads
+   * @param batchesPerThread
+   */
+  public LocalMapReduceExecutor(ExecutorService executor, int numThreads,
+      int batchesPerThread) {
+    Preconditions.checkArgument(numThreads > 0);
+    Preconditions.checkArgument(batchesPerThread > 0);
     this.numThreads = numThreads;
     this.batchesPerThread = batchesPerThread;
+    this.executor = Preconditions.checkNotNull(executor);
+    this.ownsExecutor = false;
   }
   
   @Override
@@ -49,6 +93,14 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
   @Override
   public <A, B, C, D extends Mapper<A, B>, E extends Reducer<B, C>> C mapReduce(
       Collection<? extends A> items, D mapper, E reducer, C accumulator) {
+    if (items.size() != 1 && reducer instanceof PooledReducer) {
+      @SuppressWarnings("unchecked")
+      PooledReducer<B, C> pooledReducer = (PooledReducer<B, C>) reducer;
+      if (pooledReducer.getAccumulatorPool() != null) {
+        return pooledMapReduce(items, mapper, pooledReducer, accumulator);
+      }
+    }
+
     if (accumulator == null) {
       accumulator = reducer.getInitialValue();
     }
@@ -83,25 +135,143 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
         accumulator = reducer.combine(result.get(), accumulator);
       }
     } catch (InterruptedException e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
+    } catch (ExecutionException e) {
       e.printStackTrace();
       e.getCause().printStackTrace();
       throw new RuntimeException(e);
+    } finally {
+      // The executor is reused across calls, so any batches that
+      // are still pending after a failure must be cancelled here.
+      cancelAll(results);
+    }
+    return accumulator;
+  }
+
+  /**
+   * Implementation of {@code mapReduce} for reducers with an
+   * {@code AccumulatorPool}. Each batch reduces into an accumulator
+   * from the pool. The accumulators used by any batch are then merged
+   * using a parallel pairwise reduction, and the result is combined
+   * into {@code accumulator}. Finally, the pooled accumulators are
+   * zeroed out so they can be reused by the next call. If any batch
+   * fails, the pool is cleared instead.
+   * <p>
+   * If {@code accumulator} is {@code null}, the merged pooled
+   * accumulator is removed from the pool and returned, rather than
+   * being combined into a newly-allocated accumulator. Callers that
+   * invoke this method repeatedly should pass in a (zeroed)
+   * accumulator, so that the pool retains all of its accumulators
+   * and no accumulators are allocated in steady state.
+   */
+  private <A, B, C> C pooledMapReduce(Collection<? extends A> items, Mapper<A, B> mapper,
+      PooledReducer<B, C> reducer, C accumulator) {
+    ExecutorService executor = getExecutor();
+    AccumulatorPool<C> pool = reducer.getAccumulatorPool();
+
+    ImmutableList<A> itemsAsList = ImmutableList.copyOf(items);
+    int batchSize = (int) Math.ceil(((double) items.size()) / (numThreads * batchesPerThread));
+    int numBatches = (int) Math.ceil(((double) items.size()) / batchSize);
+    List<Future<C>> results = Lists.newArrayList();
+    for (int i = 0; i < numBatches; i++) {
+      ImmutableList<A> batchItems = itemsAsList.subList(
+          Math.min(i * batchSize, items.size()), Math.min((i + 1) * batchSize, items.size()));
+      results.add(executor.submit(new PooledMapReduceBatch<A, B, C>(batchItems, mapper,
+          reducer, pool)));
+    }
+
+    // Many batches may reduce into the same pooled accumulator, so
+    // deduplicate the accumulators by identity before merging them.
+    Set<C> usedAccumulatorSet = Sets.newIdentityHashSet();
+    boolean succeeded = false;
+    try {
+      for (Future<C> result : results) {
+        usedAccumulatorSet.add(result.get());
+      }
+      List<C> usedAccumulators = Lists.newArrayList(usedAccumulatorSet);
+      if (usedAccumulators.size() > 0) {
+        treeCombine(usedAccumulators, reducer, executor);
+        if (accumulator == null) {
+          accumulator = usedAccumulators.remove(0);
+          pool.remove(accumulator);
+        } else {
+          accumulator = reducer.combine(usedAccumulators.get(0), accumulator);
+        }
+        zeroOutAll(usedAccumulators, reducer, executor);
+      } else if (accumulator == null) {
+        accumulator = reducer.getInitialValue();
+      }
+      succeeded = true;
+    } catch (InterruptedException e) {
+      e.printStackTrace();
+      throw new RuntimeException(e);
     } catch (ExecutionException e) {
       e.printStackTrace();
       e.getCause().printStackTrace();
       throw new RuntimeException(e);
     } finally {
-      executor.shutdown();
+      cancelAll(results);
+      if (!succeeded) {
+        // The pooled accumulators may contain partial results from
+        // this call, so they cannot be reused.
+        pool.clear();
+      }
     }
     return accumulator;
   }
 
+  /**
+   * Combines the elements of {@code accumulators} in parallel, using
+   * a sequence of rounds that each combine disjoint pairs of
+   * accumulators. The combined value is stored in the first element of
+   * {@code accumulators}.
+   */
+  private static <B, C> void treeCombine(final List<C> accumulators, final Reducer<B, C> reducer,
+      ExecutorService executor) throws InterruptedException, ExecutionException {
+    for (int stride = 1; stride < accumulators.size(); stride *= 2) {
+      List<Future<?>> roundResults = Lists.newArrayList();
+      for (int i = 0; i + stride < accumulators.size(); i += 2 * stride) {
+        final int left = i;
+        final int right = i + stride;
+        roundResults.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            accumulators.set(left, reducer.combine(accumulators.get(right),
+                accumulators.get(left)));
+          }
+        }));
+      }
+
+      for (Future<?> roundResult : roundResults) {
+        roundResult.get();
+      }
+    }
+  }
+
+  private static <B, C> void zeroOutAll(List<C> accumulators, final PooledReducer<B, C> reducer,
+      ExecutorService executor) throws InterruptedException, ExecutionException {
+    List<Future<?>> results = Lists.newArrayList();
+    for (final C accumulator : accumulators) {
+      results.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          reducer.zeroOut(accumulator);
+        }
+      }));
+    }
+
+    for (Future<?> result : results) {
+      result.get();
+    }
+  }
+
   @Override
   public <A, B, C extends Mapper<A, B>> List<B> map(Collection<? extends A> items, C mapper) {
     List<B> results = Lists.newArrayList();
     ExecutorService executor = getExecutor();
+    List<Future<B>> futureResults = Lists.newArrayList();
     try {
-      List<Future<B>> futureResults = Lists.newArrayList();
       for (A item : items) {
         futureResults.add(executor.submit(new MapBatch<A, B>(item, mapper)));
       }
@@ -111,14 +281,13 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
       }
     } catch (InterruptedException e) {
       e.printStackTrace();
-      e.getCause().printStackTrace();
       throw new RuntimeException(e);
     } catch (ExecutionException e) {
       e.printStackTrace();
       e.getCause().printStackTrace();
       throw new RuntimeException(e);
     } finally {
-      executor.shutdownNow();
+      cancelAll(futureResults);
     }
     return results;
   }
@@ -128,16 +297,54 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
     return mapReduce(items, Mappers.<A>identity(), new FilterReducer<A>(predicate));
   }
 
-  private ExecutorService getExecutor() {
-    // This thread pool executor is equivalent to using 
-    // Executors.newFixedThreadPool(numThreads), except that
-    // unused threads are eventually terminated, allowing the
-    // program to terminate without the user invoking shutdown().
-    ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 10, TimeUnit.SECONDS,
-        new LinkedBlockingQueue<Runnable>());
+  /**
+   * Shuts down the thread pool used by this executor, waiting for
+   * any currently executing batches to complete. If this executor
+   * was constructed with an externally-managed {@code ExecutorService},
+   * that service is not shut down. After this method is invoked,
+   * any subsequent call to {@code mapReduce} or {@code map} will
+   * create a new thread pool.
+   */
+  @Override
+  public synchronized void shutdown() {
+    if (ownsExecutor && executor != null) {
+      executor.shutdown();
+      try {
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      executor = null;
+    }
+  }
+
+  /**
+   * Gets the thread pool used to execute batches, creating it if
+   * necessary. The returned pool is shared by all calls to this
+   * executor, including nested calls from within a mapper. Nested
+   * calls do not deadlock, as a {@code ForkJoinPool} worker waiting
+   * on a batch executes other queued batches in the meantime.
+   *
+   * @return
+   */
+  private synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      // ForkJoinPool's default thread factory creates daemon threads,
+      // allowing the program to terminate without the user invoking
+      // shutdown().
+      executor = new ForkJoinPool(numThreads);
+    }
     return executor;
   }
 
+  private static <T> void cancelAll(List<Future<T>> futures) {
+    for (Future<T> future : futures) {
+      if (!future.isDone()) {
+        future.cancel(true);
+      }
+    }
+  }
+
   /*
   private static class MapReduceThread<A, B, C> extends Thread {
   }
@@ -173,6 +380,43 @@ public class LocalMapReduceExecutor implements MapReduceExecutor {
     }
   }
   
+  /**
+   * A batch of items that is reduced into an accumulator from an
+   * {@code AccumulatorPool}. Returns the accumulator that was used.
+   * 
+   * @author jayantk
+   */
+  private static class PooledMapReduceBatch<A, B, C> implements Callable<C> {
+
+    private final ImmutableList<A> items;
+    private final Mapper<A, B> mapper;
+    private final Reducer<B, C> reducer;
+    private final AccumulatorPool<C> pool;
+
+    public PooledMapReduceBatch(ImmutableList<A> items, Mapper<A, B> mapper,
+        Reducer<B, C> reducer, AccumulatorPool<C> pool) {
+      this.items = items;
+      this.mapper = mapper;
+      this.reducer = reducer;
+      this.pool = pool;
+    }
+
+    @Override
+    public C call() {
+      int generation = pool.getGeneration();
+      C accumulator = pool.acquire(reducer);
+      try {
+        for (A item : items) {
+          B mappedItem = mapper.map(item);
+          accumulator = reducer.reduce(mappedItem, accumulator);
+        }
+      } finally {
+        pool.release(accumulator, generation);
+      }
+      return accumulator;
+    }
+  }
+
   public static class MapBatch<A, B> implements Callable<B> {
     private final A item;
     private final Mapper<A, B> mapper;
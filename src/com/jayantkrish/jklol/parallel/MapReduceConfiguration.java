@@ -13,19 +13,25 @@ public class MapReduceConfiguration {
 
   /**
    * Sets the global map-reduce executor to the {@code newExecutor}.
+   * The previously configured executor (if any) is shut down.
    * 
    * @param newExecutor
    */
-  public static void setMapReduceExecutor(MapReduceExecutor newExecutor) {
+  public static synchronized void setMapReduceExecutor(MapReduceExecutor newExecutor) {
+    if (executor != null && executor != newExecutor) {
+      executor.shutdown();
+    }
     executor = newExecutor;
   }
 
   /**
-   * Gets the global map-reduce executor.
+   * Gets the global map-reduce executor. The returned executor is
+   * long-lived and shared by the whole program, so callers should not
+   * shut it down themselves; use {@link #shutdown()} instead.
    * 
    * @return
    */
-  public static MapReduceExecutor getMapReduceExecutor() {
+  public static synchronized MapReduceExecutor getMapReduceExecutor() {
     if (executor == null) {
       // Default to using a local executor with one thread per CPU.
       executor = new LocalMapReduceExecutor(
@@ -34,6 +40,17 @@ public class MapReduceConfiguration {
     return executor;
   }
 
+  /**
+   * Shuts down the global map-reduce executor, releasing its threads.
+   * The executor is recreated on demand if
+   * {@link #getMapReduceExecutor()} is invoked again.
+   */
+  public static synchronized void shutdown() {
+    if (executor != null) {
+      executor.shutdown();
+    }
+  }
+
   private MapReduceConfiguration() {
     // Prevent instantiation.
   }
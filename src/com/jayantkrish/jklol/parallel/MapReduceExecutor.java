@@ -52,4 +52,11 @@ public interface MapReduceExecutor {
    * @return
    */
   public <A> List<A> filter(List<A> items, Predicate<A> predicate);
+
+  /**
+   * Releases any resources (e.g., threads) held by this executor.
+   * Implementations should remain usable after this method is called,
+   * recreating any resources they need on demand.
+   */
+  public void shutdown();
 }
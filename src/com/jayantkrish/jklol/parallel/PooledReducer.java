@@ -0,0 +1,39 @@
+package com.jayantkrish.jklol.parallel;
+
+/**
+ * A {@code Reducer} whose accumulators can be reset and reused across
+ * multiple map-reduce calls. When a {@code PooledReducer} has an
+ * {@link AccumulatorPool}, {@link LocalMapReduceExecutor} reduces each
+ * batch into an accumulator drawn from the pool, merges the used
+ * accumulators with a parallel pairwise (tree) reduction, then zeroes
+ * them in place for the next call. This mode avoids allocating a new
+ * accumulator for every batch, which is expensive when accumulators
+ * are large (e.g., model gradients).
+ * <p>
+ * Reducers used in this mode must return {@code accumulated} from
+ * {@link #combine}, as pooled accumulators are zeroed out after the
+ * result is computed.
+ * 
+ * @author jayantk
+ * @param <B> input type
+ * @param <C> accumulator type
+ */
+public interface PooledReducer<B, C> extends Reducer<B, C> {
+
+  /**
+   * Gets the pool of reusable accumulators for this reducer. Returns
+   * {@code null} if this reducer should allocate a new accumulator for
+   * every batch.
+   * 
+   * @return
+   */
+  public AccumulatorPool<C> getAccumulatorPool();
+
+  /**
+   * Resets {@code accumulator} to the initial value (i.e., the value
+   * returned by {@link #getInitialValue()}) in place.
+   * 
+   * @param accumulator
+   */
+  public void zeroOut(C accumulator);
+}
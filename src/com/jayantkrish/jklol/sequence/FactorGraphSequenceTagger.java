@@ -1,14 +1,19 @@
 package com.jayantkrish.jklol.sequence;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import com.google.common.base.Function;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
+import com.google.common.primitives.Doubles;
 import com.jayantkrish.jklol.cli.TrainedModelSet;
 import com.jayantkrish.jklol.inference.FactorMarginalSet;
 import com.jayantkrish.jklol.inference.JunctionTree;
 import com.jayantkrish.jklol.inference.MarginalCalculator;
+import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
 import com.jayantkrish.jklol.models.DiscreteFactor;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.VariableNumMap;
@@ -19,6 +24,8 @@ import com.jayantkrish.jklol.models.dynamic.VariablePattern.VariableMatch;
 import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.preprocessing.FeatureVectorGenerator;
+import com.jayantkrish.jklol.sequence.LinearChainInference.ChainMarginals;
+import com.jayantkrish.jklol.tensor.Tensor;
 import com.jayantkrish.jklol.util.Assignment;
 
 /**
@@ -46,6 +53,12 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
   private final I startInput;
   private final O startLabel;
 
+  // The instantiated model flattened for linear-chain inference,
+  // or null if the model is not a linear chain. Constructed lazily,
+  // since it is not serialized.
+  private transient volatile LinearChainModel chainModel;
+  private transient volatile boolean chainModelInitialized;
+
   public FactorGraphSequenceTagger(ParametricFactorGraph modelFamily,
       SufficientStatistics parameters, DynamicFactorGraph instantiatedModel,
       FeatureVectorGenerator<LocalContext<I>> featureGenerator, 
@@ -93,8 +106,35 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
     return startLabel;
   }
 
+  /**
+   * Gets the instantiated model of this tagger as a
+   * {@code LinearChainModel}, or {@code null} if the model does not
+   * have a linear-chain structure.
+   * 
+   * @return
+   */
+  public LinearChainModel getLinearChainModel() {
+    if (!chainModelInitialized) {
+      chainModel = LinearChainModel.fromFactorGraph(getInstantiatedModel());
+      chainModelInitialized = true;
+    }
+    return chainModel;
+  }
+
   @Override
   public TaggedSequence<I, O> tag(List<I> items) {
+    LinearChainModel chain = getLinearChainModel();
+    if (chain != null) {
+      int[] labelIndexes = LinearChainInference.viterbi(getEmissionScores(items, chain),
+          chain.getTransitions());
+      List<O> labels = Lists.newArrayList();
+      int startIndex = (startInput == null) ? 0 : 1;
+      for (int i = startIndex; i < labelIndexes.length; i++) {
+        labels.add(outputClass.cast(chain.getLabelType().getValue(labelIndexes[i])));
+      }
+      return new ListTaggedSequence<I, O>(items, labels);
+    }
+
     TaggedSequence<I, O> sequence = new ListTaggedSequence<I, O>(items, null);
 
     DynamicAssignment input = TaggerUtils.reformatTrainingData(sequence, getFeatureGenerator(),
@@ -123,6 +163,23 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
   public MultitaggedSequence<I, O> multitag(List<I> items, double tagThreshold) {
     Preconditions.checkArgument(tagThreshold >= 0 && tagThreshold <= 1.0, "tagThreshold must be between 0 and 1");
 
+    LinearChainModel chain = getLinearChainModel();
+    if (chain != null) {
+      return multitagWithChain(items, tagThreshold, chain);
+    }
+    return multitagWithJunctionTree(items, tagThreshold);
+  }
+
+  /**
+   * Implementation of {@link #multitag} for models with arbitrary
+   * structure. Like the linear-chain implementation, the returned
+   * label probabilities are normalized marginals.
+   *
+   * @param items
+   * @param tagThreshold
+   * @return
+   */
+  MultitaggedSequence<I, O> multitagWithJunctionTree(List<I> items, double tagThreshold) {
     TaggedSequence<I, O> sequence = new ListTaggedSequence<I, O>(items, null);
     DynamicAssignment input = TaggerUtils.reformatTrainingData(sequence, getFeatureGenerator(),
         inputGen, getModelFamily().getVariables(), startInput, startLabel).getInput();
@@ -147,7 +204,7 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
     for (int i = startIndex; i < matches.size(); i++) {
       VariableMatch match = matches.get(i);
       int varNum = match.getMatchedVariablesFromTemplateVariables(templateLabelVar).getOnlyVariableNum();
-      DiscreteFactor marginal = marginals.getUnnormalizedMarginal(varNum).coerceToDiscrete();
+      DiscreteFactor marginal = marginals.getMarginal(varNum).coerceToDiscrete();
       List<Assignment> bestAssignments = marginal.getMostLikelyAssignments(-1);
 
       List<O> curLabels = Lists.newArrayList();
@@ -171,4 +228,78 @@ public class FactorGraphSequenceTagger<I, O> extends TrainedModelSet implements
 
     return new ListMultitaggedSequence<I, O>(items, labels, labelProbs);
   }
+
+  private MultitaggedSequence<I, O> multitagWithChain(List<I> items, double tagThreshold,
+      LinearChainModel chain) {
+    ChainMarginals marginals = LinearChainInference.forwardBackward(
+        getEmissionScores(items, chain), chain.getTransitions());
+    if (Double.isInfinite(marginals.getLogPartitionFunction())) {
+      throw new ZeroProbabilityError();
+    }
+
+    List<List<O>> labels = Lists.newArrayList();
+    List<List<Double>> labelProbs = Lists.newArrayList();
+    int startIndex = (startInput == null) ? 0 : 1;
+    for (int i = startIndex; i < marginals.getMarginals().length; i++) {
+      final double[] marginal = marginals.getMarginals()[i];
+      int bestIndex = Doubles.indexOf(marginal, Doubles.max(marginal));
+      double bestProb = marginal[bestIndex];
+
+      // The best label is always included, along with any other label
+      // whose probability exceeds the threshold.
+      List<Integer> labelIndexes = Lists.newArrayList();
+      for (int j = 0; j < marginal.length; j++) {
+        if (j == bestIndex || marginal[j] > tagThreshold * bestProb) {
+          labelIndexes.add(j);
+        }
+      }
+      Collections.sort(labelIndexes, new Comparator<Integer>() {
+        @Override
+        public int compare(Integer first, Integer second) {
+          return Double.compare(marginal[second], marginal[first]);
+        }
+      });
+
+      List<O> curLabels = Lists.newArrayList();
+      List<Double> curProbs = Lists.newArrayList();
+      for (int labelIndex : labelIndexes) {
+        curLabels.add(outputClass.cast(chain.getLabelType().getValue(labelIndex)));
+        curProbs.add(marginal[labelIndex]);
+      }
+      labels.add(curLabels);
+      labelProbs.add(curProbs);
+    }
+
+    return new ListMultitaggedSequence<I, O>(items, labels, labelProbs);
+  }
+
+  /**
+   * Gets the emission scores of {@code items} under {@code chain},
+   * including the start symbol if one is provided. The contexts
+   * of each item are identical to those created by
+   * {@link TaggerUtils#reformatTrainingData}.
+   */
+  private double[][] getEmissionScores(List<I> items, LinearChainModel chain) {
+    List<Tensor> featureVectors = Lists.newArrayList();
+    List<Object> inputs = Lists.newArrayList();
+    int[] fixedLabels = new int[items.size() + (startInput == null ? 0 : 1)];
+    Arrays.fill(fixedLabels, -1);
+
+    if (startInput != null) {
+      List<I> newItems = Lists.newArrayList();
+      newItems.add(startInput);
+      newItems.addAll(items);
+      LocalContext<I> startContext = new ListLocalContext<I>(newItems, 0);
+      featureVectors.add(featureGenerator.apply(startContext));
+      inputs.add(inputGen.apply(startContext));
+      fixedLabels[0] = chain.getLabelType().getValueIndex(startLabel);
+    }
+
+    TaggedSequence<I, O> sequence = new ListTaggedSequence<I, O>(items, null);
+    for (LocalContext<I> context : sequence.getLocalContexts()) {
+      featureVectors.add(featureGenerator.apply(context));
+      inputs.add(inputGen.apply(context));
+    }
+    return chain.getEmissionScores(featureVectors, inputs, fixedLabels);
+  }
 }
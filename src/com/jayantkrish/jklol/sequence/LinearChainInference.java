@@ -0,0 +1,314 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Arrays;
+
+import com.google.common.base.Preconditions;
+import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+
+/**
+ * Exact inference for linear-chain models whose scores are given as
+ * flat arrays. The score of a label sequence {@code y} is the sum of
+ * the emission scores {@code emissions[i][y_i]} and the transition
+ * scores {@code transitions[y_{i-1} * numLabels + y_i]}. Scores are
+ * in log space, and negative infinity indicates a disallowed label
+ * or transition.
+ * <p>
+ * These algorithms take time linear in the length of the sequence and
+ * quadratic in the number of labels, and avoid the overhead of
+ * constructing a factor graph and running generic inference (e.g.,
+ * {@link com.jayantkrish.jklol.inference.JunctionTree}) on it.
+ *
+ * @author jayantk
+ */
+public class LinearChainInference {
+
+  /**
+   * Gets the highest-scoring label sequence. {@code transitions} may
+   * be {@code null}, in which case all transitions have score 0.
+   * Throws {@code ZeroProbabilityError} if every label sequence is
+   * disallowed.
+   *
+   * @param emissions
+   * @param transitions
+   * @return
+   */
+  public static int[] viterbi(double[][] emissions, double[] transitions) {
+    int length = emissions.length;
+    int[] labels = new int[length];
+    if (length == 0) {
+      return labels;
+    }
+    int numLabels = emissions[0].length;
+    checkTransitions(transitions, numLabels);
+
+    double[] scores = Arrays.copyOf(emissions[0], numLabels);
+    double[] nextScores = new double[numLabels];
+    int[][] backpointers = new int[length][numLabels];
+    for (int i = 1; i < length; i++) {
+      Arrays.fill(nextScores, Double.NEGATIVE_INFINITY);
+      int[] curBackpointers = backpointers[i];
+      for (int prev = 0; prev < numLabels; prev++) {
+        double prevScore = scores[prev];
+        if (prevScore == Double.NEGATIVE_INFINITY) {
+          continue;
+        }
+        int offset = prev * numLabels;
+        for (int cur = 0; cur < numLabels; cur++) {
+          double score = (transitions == null) ? prevScore : prevScore + transitions[offset + cur];
+          if (score > nextScores[cur]) {
+            nextScores[cur] = score;
+            curBackpointers[cur] = prev;
+          }
+        }
+      }
+
+      double[] curEmissions = emissions[i];
+      for (int cur = 0; cur < numLabels; cur++) {
+        nextScores[cur] += curEmissions[cur];
+      }
+
+      double[] swap = scores;
+      scores = nextScores;
+      nextScores = swap;
+    }
+
+    int best = -1;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int cur = 0; cur < numLabels; cur++) {
+      if (scores[cur] > bestScore) {
+        best = cur;
+        bestScore = scores[cur];
+      }
+    }
+    if (best == -1) {
+      throw new ZeroProbabilityError();
+    }
+
+    labels[length - 1] = best;
+    for (int i = length - 1; i > 0; i--) {
+      labels[i - 1] = backpointers[i][labels[i]];
+    }
+    return labels;
+  }
+
+  /**
+   * Runs the forward-backward algorithm, computing the marginal
+   * distribution over each label and the expected number of
+   * occurrences of each transition. {@code transitions} may be
+   * {@code null}, in which case all transitions have score 0 and
+   * expected transition counts are not computed. If every label
+   * sequence is disallowed, the returned log partition function is
+   * negative infinity.
+   * <p>
+   * Messages are computed in probability space and rescaled at each
+   * position, which avoids evaluating exponentials in the inner loop.
+   *
+   * @param emissions
+   * @param transitions
+   * @return
+   */
+  public static ChainMarginals forwardBackward(double[][] emissions, double[] transitions) {
+    int length = emissions.length;
+    if (length == 0) {
+      return new ChainMarginals(0.0, new double[0][], null);
+    }
+    int numLabels = emissions[0].length;
+    checkTransitions(transitions, numLabels);
+
+    // Exponentiate the transition scores, shifting them by their
+    // maximum to avoid overflow.
+    double[] transitionPotentials = null;
+    double transitionShift = 0.0;
+    if (transitions != null) {
+      transitionShift = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < transitions.length; i++) {
+        transitionShift = Math.max(transitionShift, transitions[i]);
+      }
+      if (transitionShift == Double.NEGATIVE_INFINITY) {
+        return zeroProbability(length, numLabels);
+      }
+      transitionPotentials = new double[transitions.length];
+      for (int i = 0; i < transitions.length; i++) {
+        transitionPotentials[i] = Math.exp(transitions[i] - transitionShift);
+      }
+    }
+
+    // Exponentiated emission scores, similarly shifted per position.
+    double logPartitionFunction = transitionShift * (length - 1);
+    double[][] potentials = new double[length][numLabels];
+    for (int i = 0; i < length; i++) {
+      double[] curEmissions = emissions[i];
+      double shift = Double.NEGATIVE_INFINITY;
+      for (int j = 0; j < numLabels; j++) {
+        shift = Math.max(shift, curEmissions[j]);
+      }
+      if (shift == Double.NEGATIVE_INFINITY) {
+        return zeroProbability(length, numLabels);
+      }
+      for (int j = 0; j < numLabels; j++) {
+        potentials[i][j] = Math.exp(curEmissions[j] - shift);
+      }
+      logPartitionFunction += shift;
+    }
+
+    // Forward pass. alphas[i] is normalized to sum to 1, and
+    // scales[i] is its normalizing constant.
+    double[][] alphas = new double[length][];
+    double[] scales = new double[length];
+    alphas[0] = Arrays.copyOf(potentials[0], numLabels);
+    for (int i = 0; i < length; i++) {
+      double[] alpha = alphas[i];
+      if (i > 0) {
+        alpha = new double[numLabels];
+        double[] prevAlpha = alphas[i - 1];
+        for (int prev = 0; prev < numLabels; prev++) {
+          double prevValue = prevAlpha[prev];
+          if (prevValue == 0.0) {
+            continue;
+          }
+          if (transitionPotentials == null) {
+            for (int cur = 0; cur < numLabels; cur++) {
+              alpha[cur] += prevValue;
+            }
+          } else {
+            int offset = prev * numLabels;
+            for (int cur = 0; cur < numLabels; cur++) {
+              alpha[cur] += prevValue * transitionPotentials[offset + cur];
+            }
+          }
+        }
+        double[] potential = potentials[i];
+        for (int cur = 0; cur < numLabels; cur++) {
+          alpha[cur] *= potential[cur];
+        }
+        alphas[i] = alpha;
+      }
+
+      double scale = 0.0;
+      for (int cur = 0; cur < numLabels; cur++) {
+        scale += alpha[cur];
+      }
+      if (scale == 0.0) {
+        return zeroProbability(length, numLabels);
+      }
+      for (int cur = 0; cur < numLabels; cur++) {
+        alpha[cur] /= scale;
+      }
+      scales[i] = scale;
+      logPartitionFunction += Math.log(scale);
+    }
+
+    // Backward pass, using the same scaling constants as the forward
+    // pass. With this scaling, the product of alphas[i] and beta is
+    // the marginal distribution of position i.
+    double[][] marginals = alphas;
+    double[] expectedTransitions = (transitionPotentials == null) ? null
+        : new double[numLabels * numLabels];
+    double[] beta = new double[numLabels];
+    Arrays.fill(beta, 1.0);
+    double[] nextBeta = new double[numLabels];
+    double[] weightedBeta = new double[numLabels];
+    for (int i = length - 1; i >= 0; i--) {
+      if (i < length - 1) {
+        // weightedBeta contains the contribution of position i + 1.
+        double[] alpha = alphas[i];
+        for (int prev = 0; prev < numLabels; prev++) {
+          double value = 0.0;
+          if (transitionPotentials == null) {
+            for (int cur = 0; cur < numLabels; cur++) {
+              value += weightedBeta[cur];
+            }
+          } else {
+            int offset = prev * numLabels;
+            double alphaValue = alpha[prev];
+            for (int cur = 0; cur < numLabels; cur++) {
+              double transitionValue = transitionPotentials[offset + cur] * weightedBeta[cur];
+              value += transitionValue;
+              expectedTransitions[offset + cur] += alphaValue * transitionValue;
+            }
+          }
+          nextBeta[prev] = value;
+        }
+        double[] swap = beta;
+        beta = nextBeta;
+        nextBeta = swap;
+      }
+
+      if (i > 0) {
+        double[] potential = potentials[i];
+        double scale = scales[i];
+        for (int cur = 0; cur < numLabels; cur++) {
+          weightedBeta[cur] = potential[cur] * beta[cur] / scale;
+        }
+      }
+
+      // alphas[i] is no longer needed by the backward pass, so the
+      // marginal overwrites it.
+      double[] marginal = marginals[i];
+      for (int cur = 0; cur < numLabels; cur++) {
+        marginal[cur] *= beta[cur];
+      }
+    }
+
+    return new ChainMarginals(logPartitionFunction, marginals, expectedTransitions);
+  }
+
+  private static ChainMarginals zeroProbability(int length, int numLabels) {
+    return new ChainMarginals(Double.NEGATIVE_INFINITY, new double[length][numLabels], null);
+  }
+
+  private static void checkTransitions(double[] transitions, int numLabels) {
+    Preconditions.checkArgument(transitions == null || transitions.length == numLabels * numLabels,
+        "Expected %s transition scores, got %s", numLabels * numLabels,
+        transitions == null ? 0 : transitions.length);
+  }
+
+  /**
+   * The result of running {@link LinearChainInference#forwardBackward}.
+   */
+  public static class ChainMarginals {
+    private final double logPartitionFunction;
+    private final double[][] marginals;
+    private final double[] expectedTransitions;
+
+    public ChainMarginals(double logPartitionFunction, double[][] marginals,
+        double[] expectedTransitions) {
+      this.logPartitionFunction = logPartitionFunction;
+      this.marginals = Preconditions.checkNotNull(marginals);
+      this.expectedTransitions = expectedTransitions;
+    }
+
+    /**
+     * Gets the log of the sum of the exponentiated scores of all
+     * label sequences.
+     *
+     * @return
+     */
+    public double getLogPartitionFunction() {
+      return logPartitionFunction;
+    }
+
+    /**
+     * Gets the marginal distribution over labels at each position.
+     * {@code getMarginals()[i][j]} is the probability that position
+     * {@code i} has label {@code j}.
+     *
+     * @return
+     */
+    public double[][] getMarginals() {
+      return marginals;
+    }
+
+    /**
+     * Gets the expected number of times each transition occurs in a
+     * label sequence, indexed by
+     * {@code prevLabel * numLabels + label}. Returns {@code null} if
+     * the model has no transition scores.
+     *
+     * @return
+     */
+    public double[] getExpectedTransitions() {
+      return expectedTransitions;
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.jayantkrish.jklol.evaluation.Example;
+import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.metrics.Timer;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.dynamic.DynamicAssignment;
+import com.jayantkrish.jklol.models.parametric.ListSufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
+import com.jayantkrish.jklol.sequence.LinearChainInference.ChainMarginals;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.training.GradientOracle;
+import com.jayantkrish.jklol.training.LogFunction;
+import com.jayantkrish.jklol.util.Assignment;
+
+/**
+ * Loglikelihood objective for sequence models constructed by
+ * {@link TaggerUtils#buildFeaturizedSequenceModel}, which computes
+ * gradients using {@link LinearChainInference}. This oracle computes
+ * the same objective and gradient as
+ * {@link com.jayantkrish.jklol.training.LoglikelihoodOracle}, but is
+ * much faster because it avoids instantiating a factor graph for
+ * each example. {@code family} must satisfy
+ * {@link LinearChainModel#isLinearChainFamily}.
+ *
+ * @author jayantk
+ */
+public class LinearChainLoglikelihoodOracle implements GradientOracle<LinearChainModel,
+Example<DynamicAssignment, DynamicAssignment>> {
+
+  private static final Timer EMISSION_SCORES_TIMER =
+      Metrics.timer("update_gradient/emission_scores");
+  private static final Timer INPUT_MARGINAL_TIMER =
+      Metrics.timer("update_gradient/input_marginal");
+  private static final Timer OUTPUT_MARGINAL_TIMER =
+      Metrics.timer("update_gradient/output_marginal");
+  private static final Timer INCREMENT_TIMER =
+      Metrics.timer("update_gradient/increment");
+
+  private final ParametricFactorGraph family;
+
+  // Dimension numbers of the sufficient statistics of the classifier
+  // (features, labels) and transition (prev label, label) factors.
+  private final int[] featureDims;
+  private final int[] labelDims;
+  private final int[] transitionDims;
+
+  public LinearChainLoglikelihoodOracle(ParametricFactorGraph family) {
+    Preconditions.checkArgument(LinearChainModel.isLinearChainFamily(family));
+    this.family = family;
+
+    ListSufficientStatistics statistics = family.getNewSufficientStatistics();
+    VariableNumMap classifierVars = ((TensorSufficientStatistics) statistics
+        .getStatisticByName(TaggerUtils.WORD_LABEL_FACTOR)).getStatisticNames();
+    int[] classifierVarNums = classifierVars.getVariableNumsArray();
+    this.featureDims = new int[] {classifierVarNums[0]};
+    this.labelDims = new int[] {classifierVarNums[1]};
+
+    SufficientStatistics transitionStatistics = statistics.getStatisticByName(TaggerUtils.TRANSITION_FACTOR);
+    this.transitionDims = (transitionStatistics == null) ? null
+        : ((TensorSufficientStatistics) transitionStatistics).getStatisticNames().getVariableNumsArray();
+  }
+
+  @Override
+  public SufficientStatistics initializeGradient() {
+    return family.getNewSufficientStatistics();
+  }
+
+  @Override
+  public LinearChainModel instantiateModel(SufficientStatistics parameters) {
+    LinearChainModel model = LinearChainModel.fromFactorGraph(family.getModelFromParameters(parameters));
+    Preconditions.checkState(model != null);
+    return model;
+  }
+
+  @Override
+  public double accumulateGradient(SufficientStatistics gradient,
+      SufficientStatistics currentParameters, LinearChainModel model,
+      Example<DynamicAssignment, DynamicAssignment> example, LogFunction log) {
+    long start = EMISSION_SCORES_TIMER.start();
+    List<Assignment> inputs = example.getInput().getPlateFixedAssignments(TaggerUtils.PLATE_NAME);
+    DynamicAssignment output = example.getOutput();
+    List<Assignment> outputs = output.containsPlateValue(TaggerUtils.PLATE_NAME) ?
+        output.getPlateFixedAssignments(TaggerUtils.PLATE_NAME) : Collections.<Assignment>emptyList();
+    Preconditions.checkArgument(outputs.size() <= inputs.size());
+    double[][] inputEmissions = model.getEmissionScores(inputs);
+    int[] outputLabels = model.getLabels(outputs);
+
+    // Emission scores conditioned on the observed labels.
+    double[][] outputEmissions = new double[inputEmissions.length][];
+    for (int i = 0; i < inputEmissions.length; i++) {
+      outputEmissions[i] = inputEmissions[i];
+      if (i < outputLabels.length && outputLabels[i] >= 0) {
+        outputEmissions[i] = new double[model.getNumLabels()];
+        for (int j = 0; j < outputEmissions[i].length; j++) {
+          outputEmissions[i][j] = (j == outputLabels[i]) ? inputEmissions[i][j] : Double.NEGATIVE_INFINITY;
+        }
+      }
+    }
+    EMISSION_SCORES_TIMER.stop(start);
+
+    start = INPUT_MARGINAL_TIMER.start();
+    ChainMarginals inputMarginals = LinearChainInference.forwardBackward(
+        inputEmissions, model.getTransitions());
+    INPUT_MARGINAL_TIMER.stop(start);
+    start = OUTPUT_MARGINAL_TIMER.start();
+    ChainMarginals outputMarginals = LinearChainInference.forwardBackward(
+        outputEmissions, model.getTransitions());
+    OUTPUT_MARGINAL_TIMER.stop(start);
+
+    double inputLogPartitionFunction = inputMarginals.getLogPartitionFunction();
+    double outputLogPartitionFunction = outputMarginals.getLogPartitionFunction();
+    if (Double.isInfinite(inputLogPartitionFunction) || Double.isNaN(inputLogPartitionFunction)
+        || Double.isInfinite(outputLogPartitionFunction) || Double.isNaN(outputLogPartitionFunction)) {
+      throw new ZeroProbabilityError();
+    }
+
+    // The gradient is the difference between the expected feature
+    // counts conditioned on the observed labels and the unconditional
+    // expected feature counts.
+    start = INCREMENT_TIMER.start();
+    ListSufficientStatistics statistics = gradient.coerceToList();
+    TensorSufficientStatistics classifierGradient = (TensorSufficientStatistics)
+        statistics.getStatisticByName(TaggerUtils.WORD_LABEL_FACTOR);
+    int numLabels = model.getNumLabels();
+    int[] labelSizes = new int[] {numLabels};
+    for (int i = 0; i < inputs.size(); i++) {
+      double[] inputMarginal = inputMarginals.getMarginals()[i];
+      double[] outputMarginal = outputMarginals.getMarginals()[i];
+      double[] delta = new double[numLabels];
+      boolean isZero = true;
+      for (int j = 0; j < numLabels; j++) {
+        delta[j] = outputMarginal[j] - inputMarginal[j];
+        isZero = isZero && delta[j] == 0.0;
+      }
+
+      if (!isZero) {
+        Tensor features = ((Tensor) inputs.get(i).getValue(model.getFeatureVarNum()))
+            .relabelDimensions(featureDims);
+        classifierGradient.incrementOuterProduct(features,
+            new DenseTensor(labelDims, labelSizes, delta), 1.0);
+      }
+    }
+
+    if (transitionDims != null) {
+      double[] inputTransitions = inputMarginals.getExpectedTransitions();
+      double[] outputTransitions = outputMarginals.getExpectedTransitions();
+      double[] delta = new double[numLabels * numLabels];
+      for (int i = 0; i < delta.length; i++) {
+        delta[i] = outputTransitions[i] - inputTransitions[i];
+      }
+      ((TensorSufficientStatistics) statistics.getStatisticByName(TaggerUtils.TRANSITION_FACTOR))
+          .increment(new DenseTensor(transitionDims, new int[] {numLabels, numLabels}, delta), 1.0);
+    }
+    INCREMENT_TIMER.stop(start);
+
+    return outputLogPartitionFunction - inputLogPartitionFunction;
+  }
+}
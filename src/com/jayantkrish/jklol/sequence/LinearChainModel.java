@@ -0,0 +1,311 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.models.DiscreteFactor;
+import com.jayantkrish.jklol.models.DiscreteVariable;
+import com.jayantkrish.jklol.models.Factor;
+import com.jayantkrish.jklol.models.LinearClassifierFactor;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.dynamic.DynamicFactorGraph;
+import com.jayantkrish.jklol.models.dynamic.DynamicVariableSet;
+import com.jayantkrish.jklol.models.dynamic.PlateFactor;
+import com.jayantkrish.jklol.models.loglinear.DenseIndicatorLogLinearFactor;
+import com.jayantkrish.jklol.models.loglinear.ParametricLinearClassifierFactor;
+import com.jayantkrish.jklol.models.parametric.ParametricFactor;
+import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.util.Assignment;
+
+/**
+ * A sequence model constructed by
+ * {@link TaggerUtils#buildFeaturizedSequenceModel}, with its factors
+ * flattened into arrays of scores for {@link LinearChainInference}.
+ * Only models that are not locally normalized can be represented
+ * this way; {@link #fromFactorGraph} returns {@code null} for other
+ * models, which require generic inference.
+ *
+ * @author jayantk
+ */
+public class LinearChainModel {
+
+  private final DiscreteVariable labelType;
+  private final DiscreteVariable inputType;
+  private final int numLabels;
+
+  // Classifier weights, indexed by feature * numLabels + label.
+  private final double[] featureWeights;
+  // Weights of the label restriction factor over (input, label).
+  // May be null, in which case all labels are permitted.
+  private final Tensor restrictions;
+  // Log transition scores, indexed by prevLabel * numLabels + label.
+  // May be null if the model has no transition factor.
+  private final double[] transitions;
+
+  // Variable numbers of the plate's template variables.
+  private final int featureVarNum;
+  private final int inputVarNum;
+  private final int labelVarNum;
+
+  public LinearChainModel(DiscreteVariable labelType, DiscreteVariable inputType,
+      double[] featureWeights, Tensor restrictions, double[] transitions, int featureVarNum,
+      int inputVarNum, int labelVarNum) {
+    this.labelType = Preconditions.checkNotNull(labelType);
+    this.inputType = inputType;
+    this.numLabels = labelType.numValues();
+    this.featureWeights = Preconditions.checkNotNull(featureWeights);
+    this.restrictions = restrictions;
+    this.transitions = transitions;
+    Preconditions.checkArgument(featureWeights.length % numLabels == 0);
+    Preconditions.checkArgument(transitions == null || transitions.length == numLabels * numLabels);
+    Preconditions.checkArgument(restrictions == null || inputType != null);
+
+    this.featureVarNum = featureVarNum;
+    this.inputVarNum = inputVarNum;
+    this.labelVarNum = labelVarNum;
+  }
+
+  /**
+   * Returns {@code true} if every model in {@code family} can be
+   * represented as a {@code LinearChainModel}. Such families are
+   * constructed by {@link TaggerUtils#buildFeaturizedSequenceModel}
+   * without local normalization.
+   *
+   * @param family
+   * @return
+   */
+  public static boolean isLinearChainFamily(ParametricFactorGraph family) {
+    List<ParametricFactor> factors = family.getParametricFactors();
+    ParametricFactor classifier = family.getParametricFactorByName(TaggerUtils.WORD_LABEL_FACTOR);
+    ParametricFactor transitions = family.getParametricFactorByName(TaggerUtils.TRANSITION_FACTOR);
+    int numFactors = (classifier == null ? 0 : 1) + (transitions == null ? 0 : 1);
+
+    return numFactors == factors.size()
+        && classifier instanceof ParametricLinearClassifierFactor
+        && (transitions == null || transitions instanceof DenseIndicatorLogLinearFactor)
+        && fromFactorGraph(family.getModelFromParameters(family.getNewSufficientStatistics())) != null;
+  }
+
+  /**
+   * Flattens {@code model} into a {@code LinearChainModel}. Returns
+   * {@code null} if {@code model} does not have the structure of an
+   * (unnormalized) model created by
+   * {@link TaggerUtils#buildFeaturizedSequenceModel}.
+   *
+   * @param model
+   * @return
+   */
+  public static LinearChainModel fromFactorGraph(DynamicFactorGraph model) {
+    Set<String> names = Sets.newHashSet(TaggerUtils.WORD_LABEL_FACTOR,
+        TaggerUtils.LABEL_RESTRICTION_FACTOR, TaggerUtils.TRANSITION_FACTOR);
+    if (!names.containsAll(model.getFactorNames())) {
+      return null;
+    }
+
+    DynamicVariableSet plate = model.getVariables().getPlate(TaggerUtils.PLATE_NAME);
+    if (plate == null) {
+      return null;
+    }
+    VariableNumMap plateVars = plate.getFixedVariables();
+    int featureVarNum = plateVars.getVariablesByName(TaggerUtils.INPUT_FEATURES_NAME).getOnlyVariableNum();
+    int inputVarNum = plateVars.getVariablesByName(TaggerUtils.INPUT_NAME).getOnlyVariableNum();
+    int labelVarNum = plateVars.getVariablesByName(TaggerUtils.OUTPUT_NAME).getOnlyVariableNum();
+
+    // The classifier's weights must be a (feature, label) matrix.
+    Factor classifierFactor = getFactor(model, TaggerUtils.WORD_LABEL_FACTOR);
+    if (!(classifierFactor instanceof LinearClassifierFactor)) {
+      return null;
+    }
+    LinearClassifierFactor classifier = (LinearClassifierFactor) classifierFactor;
+    VariableNumMap outputVars = classifier.getOutputVariables();
+    if (outputVars.size() != 1 || classifier.getConditionalVariables().size() != 0) {
+      return null;
+    }
+    int outputVarNum = outputVars.getOnlyVariableNum();
+    DiscreteVariable labelType = (DiscreteVariable) outputVars.getOnlyVariable();
+    Tensor weights = classifier.getFeatureWeights();
+    if (!Arrays.equals(weights.getDimensionNumbers(),
+        new int[] {classifier.getInputVariable().getOnlyVariableNum(), outputVarNum})) {
+      return null;
+    }
+    double[] featureWeights = DenseTensor.copyOf(weights).getValues();
+
+    // The restrictions must be a table over (input, label).
+    DiscreteVariable inputType = null;
+    Tensor restrictions = null;
+    Factor restrictionFactor = getFactor(model, TaggerUtils.LABEL_RESTRICTION_FACTOR);
+    if (restrictionFactor != null) {
+      VariableNumMap restrictionVars = restrictionFactor.getVars();
+      int[] restrictionVarNums = restrictionVars.getVariableNumsArray();
+      if (!(restrictionFactor instanceof DiscreteFactor) || restrictionVarNums.length != 2
+          || !restrictionVars.getVariable(restrictionVarNums[1]).equals(labelType)) {
+        return null;
+      }
+      inputType = (DiscreteVariable) restrictionVars.getVariable(restrictionVarNums[0]);
+      restrictions = ((DiscreteFactor) restrictionFactor).getWeights();
+    }
+
+    // The transitions must be a table over (previous label, label).
+    double[] transitions = null;
+    Factor transitionFactor = getFactor(model, TaggerUtils.TRANSITION_FACTOR);
+    if (transitionFactor != null) {
+      VariableNumMap transitionVars = transitionFactor.getVars();
+      if (!(transitionFactor instanceof DiscreteFactor) || transitionVars.size() != 2
+          || !transitionVars.getDiscreteVariables().get(0).equals(labelType)
+          || !transitionVars.getDiscreteVariables().get(1).equals(labelType)) {
+        return null;
+      }
+      Tensor transitionWeights = ((DiscreteFactor) transitionFactor).getWeights();
+      int numLabels = labelType.numValues();
+      transitions = new double[numLabels * numLabels];
+      for (int i = 0; i < numLabels; i++) {
+        for (int j = 0; j < numLabels; j++) {
+          transitions[i * numLabels + j] = Math.log(transitionWeights.getByDimKey(i, j));
+        }
+      }
+    }
+
+    return new LinearChainModel(labelType, inputType, featureWeights, restrictions,
+        transitions, featureVarNum, inputVarNum, labelVarNum);
+  }
+
+  private static Factor getFactor(DynamicFactorGraph model, String name) {
+    PlateFactor factor = model.getFactorByName(name);
+    return (factor == null) ? null : factor.getFactor();
+  }
+
+  public DiscreteVariable getLabelType() {
+    return labelType;
+  }
+
+  public int getNumLabels() {
+    return numLabels;
+  }
+
+  /**
+   * Gets the log transition scores of this model, indexed by
+   * {@code prevLabel * numLabels + label}. Returns {@code null} if
+   * the model has no transitions.
+   *
+   * @return
+   */
+  public double[] getTransitions() {
+    return transitions;
+  }
+
+  public int getFeatureVarNum() {
+    return featureVarNum;
+  }
+
+  public int getInputVarNum() {
+    return inputVarNum;
+  }
+
+  public int getLabelVarNum() {
+    return labelVarNum;
+  }
+
+  /**
+   * Gets the emission scores of a sequence, indexed by position then
+   * label. The feature vector and input of position {@code i} are
+   * {@code featureVectors.get(i)} and {@code inputs.get(i)}. If
+   * {@code fixedLabels[i]} is nonnegative, position {@code i} is
+   * constrained to take that label.
+   *
+   * @param featureVectors
+   * @param inputs
+   * @param fixedLabels
+   * @return
+   */
+  public double[][] getEmissionScores(List<Tensor> featureVectors, List<?> inputs,
+      int[] fixedLabels) {
+    Preconditions.checkArgument(featureVectors.size() == inputs.size()
+        && inputs.size() == fixedLabels.length);
+    double[][] emissions = new double[featureVectors.size()][];
+    for (int i = 0; i < emissions.length; i++) {
+      emissions[i] = getEmissionScores(featureVectors.get(i), inputs.get(i), fixedLabels[i]);
+    }
+    return emissions;
+  }
+
+  /**
+   * Gets the emission scores of a sequence whose plate assignments
+   * are given by {@code plateAssignments}. Labels contained in these
+   * assignments are fixed.
+   *
+   * @param plateAssignments
+   * @return
+   */
+  public double[][] getEmissionScores(List<Assignment> plateAssignments) {
+    double[][] emissions = new double[plateAssignments.size()][];
+    for (int i = 0; i < emissions.length; i++) {
+      Assignment assignment = plateAssignments.get(i);
+      int label = assignment.contains(labelVarNum) ?
+          labelType.getValueIndex(assignment.getValue(labelVarNum)) : -1;
+      emissions[i] = getEmissionScores((Tensor) assignment.getValue(featureVarNum),
+          assignment.getValue(inputVarNum), label);
+    }
+    return emissions;
+  }
+
+  /**
+   * Gets the label indexes of the label assignments in
+   * {@code plateAssignments}, or -1 for positions with no label.
+   *
+   * @param plateAssignments
+   * @return
+   */
+  public int[] getLabels(List<Assignment> plateAssignments) {
+    int[] labels = new int[plateAssignments.size()];
+    for (int i = 0; i < labels.length; i++) {
+      Assignment assignment = plateAssignments.get(i);
+      labels[i] = assignment.contains(labelVarNum) ?
+          labelType.getValueIndex(assignment.getValue(labelVarNum)) : -1;
+    }
+    return labels;
+  }
+
+  private double[] getEmissionScores(Tensor featureVector, Object input, int fixedLabel) {
+    double[] scores = new double[numLabels];
+    if (restrictions != null) {
+      // Labels absent from the restriction tensor have weight 0.
+      Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+      long startKeyNum = ((long) inputType.getValueIndex(input)) * numLabels;
+      long endKeyNum = startKeyNum + numLabels;
+      int numEntries = restrictions.size();
+      for (int i = restrictions.getNearestIndex(startKeyNum); i < numEntries; i++) {
+        long keyNum = restrictions.indexToKeyNum(i);
+        if (keyNum >= endKeyNum) {
+          break;
+        }
+        scores[(int) (keyNum - startKeyNum)] = Math.log(restrictions.getByIndex(i));
+      }
+    }
+
+    int numFeatureEntries = featureVector.size();
+    for (int i = 0; i < numFeatureEntries; i++) {
+      double value = featureVector.getByIndex(i);
+      if (value == 0.0) {
+        continue;
+      }
+      int offset = ((int) featureVector.indexToKeyNum(i)) * numLabels;
+      for (int j = 0; j < numLabels; j++) {
+        scores[j] += value * featureWeights[offset + j];
+      }
+    }
+
+    if (fixedLabel >= 0) {
+      for (int j = 0; j < numLabels; j++) {
+        if (j != fixedLabel) {
+          scores[j] = Double.NEGATIVE_INFINITY;
+        }
+      }
+    }
+    return scores;
+  }
+}
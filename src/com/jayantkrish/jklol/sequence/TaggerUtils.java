@@ -347,10 +347,17 @@ public class TaggerUtils {
     System.out.println(trainingData.size() + " training examples.");
 
     // Estimate parameters
-    GradientOracle<DynamicFactorGraph, Example<DynamicAssignment, DynamicAssignment>> oracle;
     SufficientStatistics initialParameters = sequenceModel.getNewSufficientStatistics();
     initialParameters.makeDense();
     System.out.println("Training...");
+    if (!useMaxMargin && LinearChainModel.isLinearChainFamily(sequenceModel)) {
+      // Use specialized chain inference instead of instantiating
+      // a factor graph per example.
+      return optimizer.train(new LinearChainLoglikelihoodOracle(sequenceModel),
+          initialParameters, trainingData);
+    }
+
+    GradientOracle<DynamicFactorGraph, Example<DynamicAssignment, DynamicAssignment>> oracle;
     if (useMaxMargin) {
       oracle = new MaxMarginOracle(sequenceModel, new MaxMarginOracle.HammingCost(), new JunctionTree());
     } else {
@@ -10,6 +10,8 @@ import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.jayantkrish.jklol.cli.AbstractCli;
 import com.jayantkrish.jklol.cli.TrainedModelSet;
+import com.jayantkrish.jklol.data.LineDataFormat;
+import com.jayantkrish.jklol.data.StreamingLineDataset;
 import com.jayantkrish.jklol.evaluation.Example;
 import com.jayantkrish.jklol.inference.JunctionTree;
 import com.jayantkrish.jklol.models.VariableNumMap;
@@ -42,6 +44,8 @@ public class TrainSequenceModel extends AbstractCli {
   private OptionSpec<String> emissionFeatures;
   private OptionSpec<String> emissionFeaturesDelimiter;
   private OptionSpec<String> modelOutput;
+  private OptionSpec<Integer> streamTrainingData;
+  private OptionSpec<Integer> shuffleBucketSize;
   private static final String MAX_MARGIN = "maxMargin";
 
   public TrainSequenceModel() {
@@ -64,6 +68,12 @@ public class TrainSequenceModel extends AbstractCli {
     modelOutput = parser.accepts("output").withRequiredArg().ofType(String.class).required();
     // Optional arguments.
     parser.accepts(MAX_MARGIN); // Trains with a max-margin method.
+    streamTrainingData = parser.accepts("streamTrainingData", "Read the training data "
+        + "incrementally during training using this many parsing threads, instead of "
+        + "loading it into memory.").withRequiredArg().ofType(Integer.class);
+    shuffleBucketSize = parser.accepts("shuffleBucketSize", "When streaming training data, "
+        + "shuffle it on disk in buckets of this many examples.").withRequiredArg()
+        .ofType(Integer.class);
   }
 
   @Override
@@ -74,10 +84,27 @@ public class TrainSequenceModel extends AbstractCli {
         options.valueOf(emissionFeaturesDelimiter));
 
     // Read in the training data, formatted as assignments.
-    List<Example<DynamicAssignment, DynamicAssignment>> trainingData = readTrainingData(
-        sequenceModel, options.valueOf(trainingFilename));
-
-    SufficientStatistics parameters = run(sequenceModel, trainingData, options.has(MAX_MARGIN));
+    SufficientStatistics parameters = null;
+    if (options.has(streamTrainingData)) {
+      Preconditions.checkState(!gradientOptimizerLoadsTrainingData(),
+          "--streamTrainingData cannot be used with --lbfgs or --asynchronous, "
+          + "which load the entire training data set into memory.");
+      int bucketSize = options.has(shuffleBucketSize) ? options.valueOf(shuffleBucketSize) : -1;
+      StreamingLineDataset<Example<DynamicAssignment, DynamicAssignment>> trainingData =
+          new StreamingLineDataset<Example<DynamicAssignment, DynamicAssignment>>(
+              options.valueOf(trainingFilename), new SequenceExampleFormat(sequenceModel),
+              options.valueOf(streamTrainingData), 10000, bucketSize,
+              options.valueOf(randomSeed));
+      try {
+        parameters = run(sequenceModel, trainingData, trainingData.size(), options.has(MAX_MARGIN));
+      } finally {
+        trainingData.close();
+      }
+    } else {
+      List<Example<DynamicAssignment, DynamicAssignment>> trainingData = readTrainingData(
+          sequenceModel, options.valueOf(trainingFilename));
+      parameters = run(sequenceModel, trainingData, options.has(MAX_MARGIN));
+    }
 
     DynamicFactorGraph factorGraph = sequenceModel.getModelFromParameters(parameters);
 
@@ -89,7 +116,13 @@ public class TrainSequenceModel extends AbstractCli {
   public SufficientStatistics run(ParametricFactorGraph sequenceModel,
       List<Example<DynamicAssignment, DynamicAssignment>> trainingData,
       boolean useMaxMargin) {
-    System.out.println(trainingData.size() + " training examples.");
+    return run(sequenceModel, trainingData, trainingData.size(), useMaxMargin);
+  }
+
+  public SufficientStatistics run(ParametricFactorGraph sequenceModel,
+      Iterable<Example<DynamicAssignment, DynamicAssignment>> trainingData,
+      int numExamples, boolean useMaxMargin) {
+    System.out.println(numExamples + " training examples.");
 
     // Estimate parameters
     GradientOracle<DynamicFactorGraph, Example<DynamicAssignment, DynamicAssignment>> oracle;
@@ -100,7 +133,7 @@ public class TrainSequenceModel extends AbstractCli {
     }
 
     System.out.println("Training...");
-    GradientOptimizer trainer = createGradientOptimizer(trainingData.size());
+    GradientOptimizer trainer = createGradientOptimizer(numExamples);
     SufficientStatistics initialParameters = sequenceModel.getNewSufficientStatistics();
     initialParameters.makeDense();
     SufficientStatistics parameters = trainer.train(
@@ -115,12 +148,26 @@ public class TrainSequenceModel extends AbstractCli {
 
   private static List<Example<DynamicAssignment, DynamicAssignment>> readTrainingData(
       ParametricFactorGraph model, String trainingFilename) {
-    DynamicVariableSet plate = model.getVariables().getPlate(PLATE_NAME);
-    VariableNumMap x = plate.getFixedVariables().getVariablesByName(INPUT_NAME);
-    VariableNumMap y = plate.getFixedVariables().getVariablesByName(OUTPUT_NAME);
+    return new SequenceExampleFormat(model).parseFromFile(trainingFilename);
+  }
 
-    List<Example<DynamicAssignment, DynamicAssignment>> examples = Lists.newArrayList();
-    for (String line : IoUtils.readLines(trainingFilename)) {
+  /**
+   * Format for training examples, where each line contains
+   * space-separated pairs of words and labels.
+   */
+  private static class SequenceExampleFormat extends
+      LineDataFormat<Example<DynamicAssignment, DynamicAssignment>> {
+    private final VariableNumMap x;
+    private final VariableNumMap y;
+
+    public SequenceExampleFormat(ParametricFactorGraph model) {
+      DynamicVariableSet plate = model.getVariables().getPlate(PLATE_NAME);
+      this.x = plate.getFixedVariables().getVariablesByName(INPUT_NAME);
+      this.y = plate.getFixedVariables().getVariablesByName(OUTPUT_NAME);
+    }
+
+    @Override
+    public Example<DynamicAssignment, DynamicAssignment> parseFrom(String line) {
       String[] chunks = line.split(" ");
       Preconditions.checkState(chunks.length % 2 == 0, "Invalid input line: " + line);
 
@@ -132,9 +179,7 @@ public class TrainSequenceModel extends AbstractCli {
       }
       DynamicAssignment input = DynamicAssignment.createPlateAssignment(PLATE_NAME, inputs);
       DynamicAssignment output = DynamicAssignment.createPlateAssignment(PLATE_NAME, outputs);
-      examples.add(Example.create(input, output));
+      return Example.create(input, output);
     }
-
-    return examples;
   }
-}
\ No newline at end of file
+}
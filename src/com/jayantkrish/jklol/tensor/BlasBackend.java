@@ -0,0 +1,62 @@
+package com.jayantkrish.jklol.tensor;
+
+/**
+ * Dense linear algebra routines used by {@link DenseTensor}. The
+ * signatures mirror the corresponding BLAS routines, restricted to
+ * row-major, densely-packed matrices and coefficients
+ * {@code alpha = beta = 1}. This restriction means that a native BLAS
+ * library can implement this interface by directly calling
+ * {@code cblas_dgemm} and {@code cblas_dgemv}.
+ * <p>
+ * The backend used by {@code DenseTensor} is set with
+ * {@link BlasBackends#setBackend}.
+ *
+ * @author jayantk
+ */
+public interface BlasBackend {
+
+  /**
+   * Computes {@code C += op(A) * op(B)}, where {@code op(A)} is an
+   * {@code m x k} matrix, {@code op(B)} is a {@code k x n} matrix and
+   * {@code C} is an {@code m x n} matrix. If {@code transposeA}, then
+   * {@code A} is stored as a {@code k x m} matrix and {@code op(A)} is
+   * its transpose; otherwise {@code op(A) = A}. {@code op(B)} is
+   * defined similarly. Each matrix is stored in row-major order,
+   * starting at the given offset of its array.
+   *
+   * @param transposeA
+   * @param transposeB
+   * @param m
+   * @param n
+   * @param k
+   * @param a
+   * @param aOffset
+   * @param b
+   * @param bOffset
+   * @param c
+   * @param cOffset
+   */
+  void gemm(boolean transposeA, boolean transposeB, int m, int n, int k,
+      double[] a, int aOffset, double[] b, int bOffset, double[] c, int cOffset);
+
+  /**
+   * Computes {@code y += op(A) * x}, where {@code A} is an
+   * {@code m x n} matrix stored in row-major order. If
+   * {@code transposeA}, {@code op(A)} is the transpose of {@code A},
+   * {@code x} has {@code m} entries and {@code y} has {@code n}
+   * entries. Otherwise, {@code op(A) = A}, {@code x} has {@code n}
+   * entries and {@code y} has {@code m} entries.
+   *
+   * @param transposeA
+   * @param m
+   * @param n
+   * @param a
+   * @param aOffset
+   * @param x
+   * @param xOffset
+   * @param y
+   * @param yOffset
+   */
+  void gemv(boolean transposeA, int m, int n, double[] a, int aOffset,
+      double[] x, int xOffset, double[] y, int yOffset);
+}
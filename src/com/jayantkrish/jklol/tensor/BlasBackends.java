@@ -0,0 +1,37 @@
+package com.jayantkrish.jklol.tensor;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Holds the {@link BlasBackend} used for dense matrix operations. The
+ * default backend is a single-threaded {@link JavaBlasBackend}.
+ *
+ * @author jayantk
+ */
+public class BlasBackends {
+
+  private static volatile BlasBackend backend = new JavaBlasBackend();
+
+  /**
+   * Gets the backend used for dense matrix operations.
+   *
+   * @return
+   */
+  public static BlasBackend getBackend() {
+    return backend;
+  }
+
+  /**
+   * Sets the backend used for dense matrix operations by all
+   * threads of this program.
+   *
+   * @param newBackend
+   */
+  public static void setBackend(BlasBackend newBackend) {
+    backend = Preconditions.checkNotNull(newBackend);
+  }
+
+  private BlasBackends() {
+    // Prevent instantiation.
+  }
+}
@@ -7,13 +7,12 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.SortedSet;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
-import com.google.common.collect.Sets;
+import com.google.common.primitives.Booleans;
 import com.google.common.primitives.Ints;
 import com.jayantkrish.jklol.util.ArrayUtils;
 import com.jayantkrish.jklol.util.Pseudorandom;
@@ -28,6 +27,11 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
 
   private static final long serialVersionUID = 1L;
 
+  // Reduction operations performed by reduceDimensions.
+  private static final int REDUCE_SUM = 0;
+  private static final int REDUCE_MAX = 1;
+  private static final int REDUCE_EXP_SUM = 2;
+
   /**
    * Creates a tensor that spans {@code dimensions}, and each dimension has the
    * corresponding size from {@code sizes}. Most users should use a
@@ -184,6 +188,12 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
             Ints.asList(otherSizes));
       }
 
+      if (other instanceof DenseTensor) {
+        DenseTensorBuilder resultBuilder = new DenseTensorBuilder(newDims, newSizes);
+        BlasBackends.getBackend().gemv(false, resultBuilder.values.length, other.size(), values, 0,
+            other.getValues(), 0, resultBuilder.values, 0);
+        return resultBuilder.buildNoCopy();
+      }
       return fastInnerProductRightAligned(other, maxKeyNum, keyNumIncrement, newDims, newSizes);
     } else if (areDimensionsLeftAligned(otherDims)) {
       int minDimIndex = otherDims.length;
@@ -197,6 +207,12 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
             Ints.asList(otherSizes));
       }
 
+      if (other instanceof DenseTensor) {
+        DenseTensorBuilder resultBuilder = new DenseTensorBuilder(newDims, newSizes);
+        BlasBackends.getBackend().gemv(true, other.size(), resultBuilder.values.length, values, 0,
+            other.getValues(), 0, resultBuilder.values, 0);
+        return resultBuilder.buildNoCopy();
+      }
       return fastInnerProductLeftAligned(other, maxKeyNum, newDims, newSizes);
     } else {
       // Slow, default inner product.
@@ -206,8 +222,93 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
   
   @Override
   public Tensor matrixInnerProduct(Tensor other) {
+    if (other instanceof DenseTensor) {
+      DenseTensor result = denseMatrixInnerProduct((DenseTensor) other);
+      if (result != null) {
+        return result;
+      }
+    }
     return AbstractTensor.innerProduct(this, other, DenseTensorBuilder.getFactory());
   }
+
+  /**
+   * Implementation of {@link #matrixInnerProduct} where both tensors are
+   * dense, which uses matrix multiplication from {@link BlasBackends}. Both
+   * tensors are viewed as matrices: this tensor's dimensions are split
+   * into a prefix, the dimensions shared with {@code other} and a suffix,
+   * and {@code other}'s dimensions are split into the shared dimensions
+   * and the remaining dimensions. Returns {@code null} if the dimensions
+   * of the tensors are not arranged in this fashion.
+   * 
+   * @param other
+   * @return
+   */
+  private DenseTensor denseMatrixInnerProduct(DenseTensor other) {
+    int[] myDims = getDimensionNumbers();
+    int[] mySizes = getDimensionSizes();
+    int[] otherDims = other.getDimensionNumbers();
+    int[] otherSizes = other.getDimensionSizes();
+    if (otherDims.length == 0) {
+      return null;
+    }
+
+    int firstAlignedDim = Ints.indexOf(myDims, otherDims[0]);
+    if (firstAlignedDim == -1) {
+      return null;
+    }
+    int numAlignedDims = 0;
+    while (firstAlignedDim + numAlignedDims < myDims.length && numAlignedDims < otherDims.length
+        && myDims[firstAlignedDim + numAlignedDims] == otherDims[numAlignedDims]) {
+      numAlignedDims++;
+    }
+    int suffixStart = firstAlignedDim + numAlignedDims;
+    if (numAlignedDims < otherDims.length && suffixStart < myDims.length
+        && myDims[suffixStart] <= otherDims[otherDims.length - 1]) {
+      // The dimensions of the result would not be sorted.
+      return null;
+    }
+
+    int prefixSize = 1, alignedSize = 1, suffixSize = 1, otherSize = 1;
+    for (int i = 0; i < myDims.length; i++) {
+      if (i < firstAlignedDim) {
+        prefixSize *= mySizes[i];
+      } else if (i < suffixStart) {
+        Preconditions.checkArgument(mySizes[i] == otherSizes[i - firstAlignedDim],
+            "Tensor dimension sizes do not agree: %s and %s", Ints.asList(mySizes),
+            Ints.asList(otherSizes));
+        alignedSize *= mySizes[i];
+      } else {
+        suffixSize *= mySizes[i];
+      }
+    }
+    for (int i = numAlignedDims; i < otherDims.length; i++) {
+      otherSize *= otherSizes[i];
+    }
+
+    int[] resultDims = Ints.concat(ArrayUtils.copyOfRange(myDims, 0, firstAlignedDim),
+        ArrayUtils.copyOfRange(otherDims, numAlignedDims, otherDims.length),
+        ArrayUtils.copyOfRange(myDims, suffixStart, myDims.length));
+    int[] resultSizes = Ints.concat(ArrayUtils.copyOfRange(mySizes, 0, firstAlignedDim),
+        ArrayUtils.copyOfRange(otherSizes, numAlignedDims, otherSizes.length),
+        ArrayUtils.copyOfRange(mySizes, suffixStart, mySizes.length));
+    DenseTensorBuilder resultBuilder = new DenseTensorBuilder(resultDims, resultSizes);
+
+    BlasBackend blas = BlasBackends.getBackend();
+    if (suffixSize == 1) {
+      // (prefix x aligned) * (aligned x other) matrix product.
+      blas.gemm(false, false, prefixSize, otherSize, alignedSize, values, 0,
+          other.values, 0, resultBuilder.values, 0);
+    } else {
+      // For each prefix, (aligned x other)^T * (aligned x suffix).
+      int mySliceSize = alignedSize * suffixSize;
+      int resultSliceSize = otherSize * suffixSize;
+      for (int i = 0; i < prefixSize; i++) {
+        blas.gemm(true, false, otherSize, suffixSize, alignedSize, other.values, 0,
+            values, i * mySliceSize, resultBuilder.values, i * resultSliceSize);
+      }
+    }
+    return resultBuilder.buildNoCopy();
+  }
   
   /**
    * Implementation of inner product where both tensors are dense and have
@@ -437,7 +538,7 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
 
   @Override
   public DenseTensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
-    return reduceDimensions(dimensionsToEliminate, true, null);
+    return reduceDimensions(dimensionsToEliminate, REDUCE_SUM, null, null);
   }
    
   @Override
@@ -447,18 +548,34 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
   
   @Override
   public Tensor logSumOutDimensions(Collection<Integer> dimensionsToEliminate) {
-    return AbstractTensor.logSumOutDimensions(this, dimensionsToEliminate);
+    if (dimensionsToEliminate.size() == 0) {
+      return this;
+    }
+
+    // Shift each sum by its maximum value to avoid overflow.
+    DenseTensor maxValues = reduceDimensions(dimensionsToEliminate, REDUCE_MAX, null, null);
+    double[] shifts = maxValues.values;
+    for (int i = 0; i < shifts.length; i++) {
+      if (Double.isInfinite(shifts[i])) {
+        shifts[i] = 0.0;
+      }
+    }
+    DenseTensor sums = reduceDimensions(dimensionsToEliminate, REDUCE_EXP_SUM, shifts, null);
+    double[] sumValues = sums.values;
+    for (int i = 0; i < sumValues.length; i++) {
+      sumValues[i] = Math.log(sumValues[i]) + shifts[i];
+    }
+    return sums;
   }
 
   @Override 
   public Tensor logSumOutDimensions(int[] dimensionsToEliminate) {
-    return AbstractTensor.logSumOutDimensions(this, Ints.asList(dimensionsToEliminate));
+    return logSumOutDimensions(Ints.asList(dimensionsToEliminate));
   }
 
-
   @Override
   public DenseTensor maxOutDimensions(Collection<Integer> dimensionsToEliminate) {
-    return reduceDimensions(dimensionsToEliminate, false, null);
+    return reduceDimensions(dimensionsToEliminate, REDUCE_MAX, null, null);
   }
   
   @Override
@@ -469,7 +586,7 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
   @Override
   public DenseTensor maxOutDimensions(Collection<Integer> dimensionsToEliminate,
       Backpointers backpointers) {
-    return reduceDimensions(dimensionsToEliminate, false, backpointers);
+    return reduceDimensions(dimensionsToEliminate, REDUCE_MAX, null, backpointers);
   }
   
   @Override
@@ -479,86 +596,195 @@ public class DenseTensor extends DenseTensorBase implements Tensor, Serializable
 
   /**
    * Performs reduction operations which eliminate some subset of the existing
-   * dimensions.
+   * dimensions. Adjacent dimensions which are both kept or both eliminated
+   * are merged into a single block. The values of the innermost block are
+   * contiguous in {@code values}, and are reduced by a tight loop over the
+   * array (see {@link #reduceBlock}).
    * 
    * @param dimensionsToEliminate
-   * @param useSum
+   * @param operation one of {@code REDUCE_SUM}, {@code REDUCE_MAX} or
+   * {@code REDUCE_EXP_SUM}
+   * @param shifts for {@code REDUCE_EXP_SUM}, the amount subtracted
+   * from each value before exponentiating it, indexed by the index of
+   * the returned tensor.
+   * @param backpointers for {@code REDUCE_MAX}, optionally stores the
+   * keynum of the maximum value for each key of the returned tensor.
    * @return
    */
   private DenseTensor reduceDimensions(Collection<Integer> dimensionsToEliminate,
-      boolean useSum, Backpointers backpointers) {
-    SortedSet<Integer> dimensionsToKeep = Sets.newTreeSet(Ints.asList(getDimensionNumbers()));
-    dimensionsToKeep.removeAll(dimensionsToEliminate);
-
+      int operation, double[] shifts, Backpointers backpointers) {
     int[] myDimensionNumbers = getDimensionNumbers();
     int[] myDimensionSizes = getDimensionSizes();
     List<Integer> dimensionNumsToKeep = Lists.newArrayList();
     List<Integer> dimensionSizesToKeep = Lists.newArrayList();
-    List<Integer> dimensionNumsToEliminate = Lists.newArrayList();
-    List<Integer> dimensionSizesToEliminate = Lists.newArrayList();
+    List<Integer> blockSizes = Lists.newArrayList();
+    List<Boolean> blockKept = Lists.newArrayList();
     for (int i = 0; i < myDimensionNumbers.length; i++) {
-      if (!dimensionsToEliminate.contains(myDimensionNumbers[i])) {
+      boolean keep = !dimensionsToEliminate.contains(myDimensionNumbers[i]);
+      if (keep) {
         dimensionNumsToKeep.add(myDimensionNumbers[i]);
         dimensionSizesToKeep.add(myDimensionSizes[i]);
+      }
+
+      int lastBlock = blockSizes.size() - 1;
+      if (lastBlock >= 0 && blockKept.get(lastBlock) == keep) {
+        blockSizes.set(lastBlock, blockSizes.get(lastBlock) * myDimensionSizes[i]);
       } else {
-        dimensionNumsToEliminate.add(myDimensionNumbers[i]);
-        dimensionSizesToEliminate.add(myDimensionSizes[i]);
+        blockSizes.add(myDimensionSizes[i]);
+        blockKept.add(keep);
       }
     }
+    if (blockSizes.size() == 0) {
+      // This tensor has no dimensions and a single value.
+      blockSizes.add(1);
+      blockKept.add(true);
+    }
 
     DenseTensorBuilder outputBuilder = new DenseTensorBuilder(Ints.toArray(dimensionNumsToKeep),
         Ints.toArray(dimensionSizesToKeep));
-    // Optionally return the list of keynums which determined the values
-    // in the returned tensor.
-    long[] newBackpointerNums = null;
-    long[] oldBackpointerNums = null;
+    double[] result = outputBuilder.values;
+    int[] argmaxes = null;
+    if (operation == REDUCE_MAX) {
+      Arrays.fill(result, Double.NEGATIVE_INFINITY);
+      if (backpointers != null) {
+        argmaxes = new int[result.length];
+        Arrays.fill(argmaxes, -1);
+      }
+    }
+
+    if (values.length > 0) {
+      reduceBlocks(values, Ints.toArray(blockSizes), Booleans.toArray(blockKept), operation,
+          shifts, result, argmaxes);
+    }
+
     if (backpointers != null) {
-      newBackpointerNums = new long[outputBuilder.values.length];
-      oldBackpointerNums = new long[outputBuilder.values.length];
+      long[] newBackpointerNums = new long[result.length];
+      long[] oldBackpointerNums = new long[result.length];
+      for (int i = 0; i < result.length; i++) {
+        newBackpointerNums[i] = i;
+        oldBackpointerNums[i] = argmaxes[i];
+      }
+      backpointers.setBackpointers(newBackpointerNums, oldBackpointerNums, result.length, this);
     }
 
-    // Maps a key of the reduced tensor into a partial key of this.
-    int[] dimensionMapping = getDimensionMapping(outputBuilder.getDimensionNumbers());
-    int[] partialKey = new int[getDimensionNumbers().length];
-    Arrays.fill(partialKey, -1);
-    Iterator<KeyValue> otherKeyValues = outputBuilder.keyValueIterator();
+    return outputBuilder.buildNoCopy();
+  }
 
-    int backpointerIndex = 0;
-    while (otherKeyValues.hasNext()) {
-      KeyValue otherKeyValue = otherKeyValues.next();
-      for (int i = 0; i < otherKeyValue.getKey().length; i++) {
-        partialKey[dimensionMapping[i]] = otherKeyValue.getKey()[i];
+  /**
+   * Reduces {@code values}, a row-major array whose dimensions are given by
+   * {@code blockSizes}, into {@code result}, eliminating each block {@code i}
+   * where {@code blockKept[i]} is false. Blocks alternate between kept and
+   * eliminated. The input is scanned once, in order, so each value of
+   * {@code result} is accumulated in the same order as in a slice-by-slice
+   * reduction.
+   */
+  private static void reduceBlocks(double[] values, int[] blockSizes, boolean[] blockKept,
+      int operation, double[] shifts, double[] result, int[] argmaxes) {
+    int numBlocks = blockSizes.length;
+    int innerSize = blockSizes[numBlocks - 1];
+    boolean innerKept = blockKept[numBlocks - 1];
+
+    // Offset in result of each block's index, i.e., 0 for eliminated blocks.
+    int[] resultOffsets = new int[numBlocks];
+    int offset = 1;
+    for (int i = numBlocks - 1; i >= 0; i--) {
+      if (blockKept[i]) {
+        resultOffsets[i] = offset;
+        offset *= blockSizes[i];
       }
+    }
+
+    int[] blockIndexes = new int[numBlocks];
+    int resultIndex = 0;
+    for (int valueIndex = 0; valueIndex < values.length; valueIndex += innerSize) {
+      reduceBlock(values, valueIndex, innerSize, innerKept, operation, shifts, result,
+          resultIndex, argmaxes);
 
-      Iterator<int[]> myKeyIterator = new SliceIndexIterator(getDimensionSizes(), partialKey);
-      double resultVal = (useSum) ? 0.0 : Double.NEGATIVE_INFINITY;
-      long backpointerKeyNum = -1;
-      while (myKeyIterator.hasNext()) {
-        if (useSum) {
-          resultVal += getByDimKey(myKeyIterator.next());
+      // Advance to the next index of the outer blocks.
+      for (int i = numBlocks - 2; i >= 0; i--) {
+        blockIndexes[i]++;
+        resultIndex += resultOffsets[i];
+        if (blockIndexes[i] < blockSizes[i]) {
+          break;
+        }
+        blockIndexes[i] = 0;
+        resultIndex -= resultOffsets[i] * blockSizes[i];
+      }
+    }
+  }
+
+  /**
+   * Reduces the {@code length} contiguous values starting at
+   * {@code valueIndex}. If {@code kept}, these values are combined with the
+   * contiguous values of {@code result} starting at {@code resultIndex};
+   * otherwise, they are all combined into {@code result[resultIndex]}.
+   */
+  private static void reduceBlock(double[] values, int valueIndex, int length, boolean kept,
+      int operation, double[] shifts, double[] result, int resultIndex, int[] argmaxes) {
+    if (kept) {
+      switch (operation) {
+      case REDUCE_SUM:
+        for (int i = 0; i < length; i++) {
+          result[resultIndex + i] += values[valueIndex + i];
+        }
+        break;
+      case REDUCE_EXP_SUM:
+        for (int i = 0; i < length; i++) {
+          result[resultIndex + i] += Math.exp(values[valueIndex + i] - shifts[resultIndex + i]);
+        }
+        break;
+      case REDUCE_MAX:
+        if (argmaxes == null) {
+          for (int i = 0; i < length; i++) {
+            double value = values[valueIndex + i];
+            if (value > result[resultIndex + i]) {
+              result[resultIndex + i] = value;
+            }
+          }
         } else {
-          int[] nextKey = myKeyIterator.next();
-          double keyVal = getByDimKey(nextKey);
-          if (keyVal > resultVal) {
-            resultVal = keyVal;
-            backpointerKeyNum = dimKeyToKeyNum(nextKey);
+          for (int i = 0; i < length; i++) {
+            if (values[valueIndex + i] > result[resultIndex + i]) {
+              result[resultIndex + i] = values[valueIndex + i];
+              argmaxes[resultIndex + i] = valueIndex + i;
+            }
           }
         }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown operation: " + operation);
       }
-      outputBuilder.put(otherKeyValue.getKey(), resultVal);
-
-      if (backpointers != null) {
-        newBackpointerNums[backpointerIndex] = outputBuilder.dimKeyToKeyNum(otherKeyValue.getKey());
-        oldBackpointerNums[backpointerIndex] = backpointerKeyNum;
-        backpointerIndex++;
+    } else {
+      int end = valueIndex + length;
+      double accumulator = result[resultIndex];
+      switch (operation) {
+      case REDUCE_SUM:
+        for (int i = valueIndex; i < end; i++) {
+          accumulator += values[i];
+        }
+        break;
+      case REDUCE_EXP_SUM:
+        double shift = shifts[resultIndex];
+        for (int i = valueIndex; i < end; i++) {
+          accumulator += Math.exp(values[i] - shift);
+        }
+        break;
+      case REDUCE_MAX:
+        int argmax = -1;
+        for (int i = valueIndex; i < end; i++) {
+          if (values[i] > accumulator) {
+            accumulator = values[i];
+            argmax = i;
+          }
+        }
+        if (argmaxes != null && argmax != -1) {
+          argmaxes[resultIndex] = argmax;
+        }
+        break;
+      default:
+        throw new IllegalArgumentException("Unknown operation: " + operation);
       }
+      result[resultIndex] = accumulator;
     }
-
-    if (backpointers != null) {
-      backpointers.setBackpointers(newBackpointerNums, oldBackpointerNums, backpointerIndex, this);
-    }
-
-    return outputBuilder.buildNoCopy();
   }
 
   @Override
@@ -122,7 +122,14 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
         values[i] += otherVal * otherVal * square;
       }
     } else {
-      throw new UnsupportedOperationException();
+      // Sparse increment, e.g., from a sparse gradient.
+      Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+      double square = multiplier * multiplier;
+      int otherSize = other.size();
+      for (int i = 0; i < otherSize; i++) {
+        double otherVal = other.getByIndex(i);
+        values[keyNumToIndex(other.indexToKeyNum(i))] += otherVal * otherVal * square;
+      }
     }
   }
 
@@ -143,6 +150,19 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
           values[i] += otherVal * multiplier / Math.sqrt(squareVal);
         }
       }
+    } else if (squareTensor instanceof DenseTensorBase) {
+      // Sparse increment, e.g., from a sparse gradient.
+      Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+      double[] squareTensorValues = ((DenseTensorBase) squareTensor).values;
+      Preconditions.checkArgument(squareTensorValues.length == values.length);
+      int otherSize = other.size();
+      for (int i = 0; i < otherSize; i++) {
+        int index = keyNumToIndex(other.indexToKeyNum(i));
+        double squareVal = squareTensorValues[index];
+        if (squareVal != 0.0) {
+          values[index] += other.getByIndex(i) * multiplier / Math.sqrt(squareVal);
+        }
+      }
     } else {
       throw new UnsupportedOperationException();
     }
@@ -182,6 +202,28 @@ public class DenseTensorBuilder extends DenseTensorBase implements TensorBuilder
         val = gradientTensorValues[i] + (multiplier * parameterTensorValues[i]);
         values[i] += val * val;
       }
+    } else if (parameters instanceof DenseTensorBase) {
+      // Sparse gradient. The regularization term is dense, so every
+      // value is updated, then corrected for the nonzero gradient entries.
+      Preconditions.checkArgument(Arrays.equals(gradient.getDimensionNumbers(), getDimensionNumbers()));
+      double[] parameterTensorValues = ((DenseTensorBase) parameters).values;
+      Preconditions.checkArgument(parameterTensorValues.length == values.length);
+
+      int length = values.length;
+      double val = 0;
+      for (int i = 0; i < length; i++) {
+        val = multiplier * parameterTensorValues[i];
+        values[i] += val * val;
+      }
+
+      int gradientSize = gradient.size();
+      for (int i = 0; i < gradientSize; i++) {
+        int index = keyNumToIndex(gradient.indexToKeyNum(i));
+        double gradientVal = gradient.getByIndex(i);
+        val = multiplier * parameterTensorValues[index];
+        // (g + val)^2 - val^2
+        values[index] += gradientVal * (gradientVal + 2 * val);
+      }
     } else {
       throw new UnsupportedOperationException();
     }
@@ -0,0 +1,489 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.util.ArrayUtils;
+
+/**
+ * Builder for incrementally constructing sparse tensors, backed by
+ * an open-addressing hash table of primitive {@code long} keys and
+ * {@code double} values. This builder supports the same operations
+ * as {@link SparseTensorBuilder}, but does not allocate an object
+ * per entry, which makes it considerably faster and smaller when
+ * accumulating many entries (e.g., when constructing large factors or
+ * computing inner products).
+ * <p>
+ * Entries are stored in insertion order, and the index of each key
+ * is its position in this order. Keys are only sorted once, when the
+ * builder is built into a {@code SparseTensor} (or iterated over).
+ * Setting the value of a key to zero does not remove it from the
+ * table, so {@link #size()} may count some zero-valued entries;
+ * however, these entries are omitted from built tensors.
+ *
+ * @author jayantk
+ */
+public class HashSparseTensorBuilder extends AbstractTensorBase implements TensorBuilder {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  // Entries in insertion order.
+  private long[] keyNums;
+  private double[] values;
+  private int size;
+
+  // Open-addressing hash table mapping each key to its position in
+  // keyNums / values. Each slot contains the position plus 1, and
+  // empty slots are 0. The number of slots is a power of 2.
+  private int[] slots;
+
+  public HashSparseTensorBuilder(int[] dimensionNums, int[] dimensionSizes) {
+    this(dimensionNums, dimensionSizes, INITIAL_CAPACITY);
+  }
+
+  /**
+   * Creates a builder with space for {@code expectedSize} entries.
+   *
+   * @param dimensionNums
+   * @param dimensionSizes
+   * @param expectedSize
+   */
+  public HashSparseTensorBuilder(int[] dimensionNums, int[] dimensionSizes, int expectedSize) {
+    super(dimensionNums, dimensionSizes);
+    Preconditions.checkArgument(Ordering.natural().isOrdered(Ints.asList(dimensionNums)));
+    int capacity = Math.max(expectedSize, 1);
+    this.keyNums = new long[capacity];
+    this.values = new double[capacity];
+    this.size = 0;
+    this.slots = new int[getNumSlots(capacity)];
+  }
+
+  /**
+   * Copy constructor.
+   */
+  private HashSparseTensorBuilder(HashSparseTensorBuilder builder) {
+    super(builder.getDimensionNumbers(), builder.getDimensionSizes());
+    this.keyNums = Arrays.copyOf(builder.keyNums, builder.keyNums.length);
+    this.values = Arrays.copyOf(builder.values, builder.values.length);
+    this.size = builder.size;
+    this.slots = Arrays.copyOf(builder.slots, builder.slots.length);
+  }
+
+  /**
+   * Gets a builder which contains the same key value pairs as
+   * {@code tensor}.
+   *
+   * @param tensor
+   * @return
+   */
+  public static HashSparseTensorBuilder copyOf(TensorBase tensor) {
+    int tensorSize = tensor.size();
+    HashSparseTensorBuilder builder = new HashSparseTensorBuilder(tensor.getDimensionNumbers(),
+        tensor.getDimensionSizes(), tensorSize);
+    for (int i = 0; i < tensorSize; i++) {
+      double value = tensor.getByIndex(i);
+      if (value != 0.0) {
+        builder.putByKeyNum(tensor.indexToKeyNum(i), value);
+      }
+    }
+    return builder;
+  }
+
+  /**
+   * Gets a {@code TensorFactory} which creates
+   * {@code HashSparseTensorBuilder}s.
+   *
+   * @return
+   */
+  public static TensorFactory getFactory() {
+    return new TensorFactory() {
+      @Override
+      public TensorBuilder getBuilder(int[] dimNums, int[] dimSizes) {
+        return new HashSparseTensorBuilder(dimNums, dimSizes);
+      }
+    };
+  }
+
+  // /////////////////////////////////////////////////////////////
+  // TensorBase methods
+  // /////////////////////////////////////////////////////////////
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    if (index == -1) {
+      return 0.0;
+    }
+    return values[index];
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return Math.log(getByIndex(index));
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return keyNums[index];
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    int mask = slots.length - 1;
+    int slot = hash(keyNum) & mask;
+    while (slots[slot] != 0) {
+      int index = slots[slot] - 1;
+      if (keyNums[index] == keyNum) {
+        return index;
+      }
+      slot = (slot + 1) & mask;
+    }
+    // -1 is reserved for all keys which are not in this tensor.
+    return -1;
+  }
+
+  /**
+   * Returns {@code true} if this builder has a nonzero value
+   * associated with {@code key}.
+   *
+   * @param key
+   * @return
+   */
+  public boolean containsKey(int[] key) {
+    return getByIndex(keyNumToIndex(dimKeyToKeyNum(key))) != 0.0;
+  }
+
+  /**
+   * Iterates over the nonzero entries of this builder in key order.
+   */
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    SparseTensor tensor = build();
+    return new SparseKeyValueIterator(tensor.getKeyNums(), tensor.getValues(), 0,
+        tensor.size(), this);
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    return build().keyValuePrefixIterator(keyPrefix);
+  }
+
+  @Override
+  public double getL2Norm() {
+    double sumSquares = 0.0;
+    for (int i = 0; i < size; i++) {
+      sumSquares += values[i] * values[i];
+    }
+    return Math.sqrt(sumSquares);
+  }
+
+  @Override
+  public double getTrace() {
+    double sum = 0.0;
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+  @Override
+  public void maximum(TensorBase other) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    // Keys of this which are not in other are compared against 0.
+    int mySize = size;
+    for (int i = 0; i < mySize; i++) {
+      values[i] = Math.max(values[i], other.get(keyNums[i]));
+    }
+
+    int otherSize = other.size();
+    for (int i = 0; i < otherSize; i++) {
+      long keyNum = other.indexToKeyNum(i);
+      if (keyNumToIndex(keyNum) == -1) {
+        putByKeyNum(keyNum, Math.max(0.0, other.getByIndex(i)));
+      }
+    }
+  }
+
+  @Override
+  public double innerProduct(TensorBase other) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    double total = 0.0;
+    for (int i = 0; i < size; i++) {
+      total += values[i] * other.get(keyNums[i]);
+    }
+    return total;
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    return build().getLargestValues(n);
+  }
+
+  // /////////////////////////////////////////////////////////////
+  // TensorBuilder methods
+  // /////////////////////////////////////////////////////////////
+
+  @Override
+  public void put(int[] key, double value) {
+    putByKeyNum(dimKeyToKeyNum(key), value);
+  }
+
+  @Override
+  public void putByKeyNum(long keyNum, double value) {
+    int index = keyNumToIndex(keyNum);
+    if (index != -1) {
+      values[index] = value;
+    } else if (value != 0.0) {
+      insert(keyNum, value);
+    }
+  }
+
+  @Override
+  public void increment(TensorBase other) {
+    incrementWithMultiplier(other, 1.0);
+  }
+
+  @Override
+  public void increment(double amount) {
+    // Invoking this method on a sparse tensor is a bad idea, because it
+    // destroys the sparsity. Use a dense tensor instead.
+    for (long keyNum = 0; keyNum < getMaxKeyNum(); keyNum++) {
+      incrementEntryByKeyNum(amount, keyNum);
+    }
+  }
+
+  @Override
+  public void incrementWithMultiplier(TensorBase other, double multiplier) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    int otherSize = other.size();
+    for (int i = 0; i < otherSize; i++) {
+      incrementEntryByKeyNum(other.getByIndex(i) * multiplier, other.indexToKeyNum(i));
+    }
+  }
+
+  @Override
+  public void incrementSquare(TensorBase other, double multiplier) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    double square = multiplier * multiplier;
+    int otherSize = other.size();
+    for (int i = 0; i < otherSize; i++) {
+      double otherValue = other.getByIndex(i);
+      incrementEntryByKeyNum(otherValue * otherValue * square, other.indexToKeyNum(i));
+    }
+  }
+
+  @Override
+  public void incrementAdagrad(TensorBase other, TensorBase squareTensor, double multiplier) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void multiplyInverseAdagrad(TensorBase squareTensor, double constant, double multiplier) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void incrementSquareAdagrad(TensorBase gradient, TensorBase parameters, double multiplier) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void incrementOuterProductWithMultiplier(Tensor leftTensor, Tensor rightTensor,
+      double multiplier) {
+    incrementWithMultiplier(leftTensor.outerProduct(rightTensor), multiplier);
+  }
+
+  @Override
+  public void incrementInnerProductWithMultiplier(Tensor leftTensor, Tensor rightTensor,
+      double multiplier) {
+    incrementWithMultiplier(leftTensor.innerProduct(rightTensor), multiplier);
+  }
+
+  @Override
+  public void incrementEntry(double amount, int... key) {
+    Preconditions.checkArgument(key.length == getDimensionNumbers().length);
+    incrementEntryByKeyNum(amount, dimKeyToKeyNum(key));
+  }
+
+  @Override
+  public void incrementEntryByKeyNum(double amount, long keyNum) {
+    int index = keyNumToIndex(keyNum);
+    if (index != -1) {
+      values[index] += amount;
+    } else if (amount != 0.0) {
+      insert(keyNum, amount);
+    }
+  }
+
+  @Override
+  public void multiply(TensorBase other) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    for (int i = 0; i < size; i++) {
+      values[i] *= other.get(keyNums[i]);
+    }
+  }
+
+  @Override
+  public void multiply(double amount) {
+    if (amount == 0.0) {
+      size = 0;
+      Arrays.fill(slots, 0);
+      return;
+    }
+
+    for (int i = 0; i < size; i++) {
+      values[i] *= amount;
+    }
+  }
+
+  @Override
+  public void multiplyEntry(double amount, int... key) {
+    multiplyEntryByKeyNum(amount, dimKeyToKeyNum(key));
+  }
+
+  @Override
+  public void multiplyEntryByKeyNum(double amount, long keyNum) {
+    int index = keyNumToIndex(keyNum);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+  @Override
+  public void softThreshold(double threshold) {
+    double negativeThreshold = -1.0 * threshold;
+    for (int i = 0; i < size; i++) {
+      double value = values[i];
+      if (value > threshold) {
+        values[i] = value - threshold;
+      } else if (value < negativeThreshold) {
+        values[i] = value + threshold;
+      } else {
+        values[i] = 0.0;
+      }
+    }
+  }
+
+  @Override
+  public void findEntriesLargerThan(double threshold) {
+    Preconditions.checkArgument(threshold >= 0.0);
+    for (int i = 0; i < size; i++) {
+      values[i] = (values[i] >= threshold) ? 1.0 : 0.0;
+    }
+  }
+
+  @Override
+  public void exp() {
+    for (long keyNum = 0; keyNum < getMaxKeyNum(); keyNum++) {
+      putByKeyNum(keyNum, Math.exp(get(keyNum)));
+    }
+  }
+
+  /**
+   * Constructs and returns a {@code SparseTensor} containing all of the
+   * nonzero key/value pairs added to {@code this}.
+   *
+   * @return
+   */
+  @Override
+  public SparseTensor build() {
+    int numNonzero = 0;
+    for (int i = 0; i < size; i++) {
+      if (values[i] != 0.0) {
+        numNonzero++;
+      }
+    }
+
+    long[] tableKeyNums = new long[numNonzero];
+    double[] tableValues = new double[numNonzero];
+    int index = 0;
+    for (int i = 0; i < size; i++) {
+      if (values[i] != 0.0) {
+        tableKeyNums[index] = keyNums[i];
+        tableValues[index] = values[i];
+        index++;
+      }
+    }
+    return SparseTensor.fromUnorderedKeyValuesNoCopy(getDimensionNumbers(), getDimensionSizes(),
+        tableKeyNums, tableValues);
+  }
+
+  @Override
+  public SparseTensor buildNoCopy() {
+    return build();
+  }
+
+  @Override
+  public HashSparseTensorBuilder getCopy() {
+    return new HashSparseTensorBuilder(this);
+  }
+
+  @Override
+  public String toString() {
+    return build().toString();
+  }
+
+  // /////////////////////////////////////////////////////////////
+  // Hash table maintenance
+  // /////////////////////////////////////////////////////////////
+
+  /**
+   * Adds {@code keyNum}, which must not already be in this builder.
+   */
+  private void insert(long keyNum, double value) {
+    if (size == keyNums.length) {
+      keyNums = ArrayUtils.copyOf(keyNums, keyNums.length * 2);
+      values = ArrayUtils.copyOf(values, values.length * 2);
+    }
+    keyNums[size] = keyNum;
+    values[size] = value;
+    size++;
+
+    if (size * 2 > slots.length) {
+      // Keep the load factor at most 1/2, so that probe sequences
+      // remain short.
+      slots = new int[slots.length * 2];
+      for (int i = 0; i < size; i++) {
+        insertSlot(keyNums[i], i);
+      }
+    } else {
+      insertSlot(keyNum, size - 1);
+    }
+  }
+
+  private void insertSlot(long keyNum, int index) {
+    int mask = slots.length - 1;
+    int slot = hash(keyNum) & mask;
+    while (slots[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slots[slot] = index + 1;
+  }
+
+  private static int getNumSlots(int capacity) {
+    int numSlots = INITIAL_CAPACITY;
+    while (numSlots < capacity * 2) {
+      numSlots *= 2;
+    }
+    return numSlots;
+  }
+
+  /**
+   * Mixes the bits of {@code keyNum}. Key numbers of tensor
+   * entries are often consecutive or evenly spaced, which would
+   * otherwise lead to long probe sequences.
+   */
+  private static int hash(long keyNum) {
+    long h = keyNum * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+}
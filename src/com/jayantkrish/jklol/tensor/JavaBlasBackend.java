@@ -0,0 +1,177 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
+
+/**
+ * Pure Java implementation of {@link BlasBackend}. Matrix
+ * multiplication is tiled so that the tile of {@code B} being
+ * multiplied stays in cache, and its inner loop runs over contiguous
+ * rows of {@code B} and {@code C}. Large matrix multiplications are
+ * optionally split by rows of {@code C} across multiple threads.
+ * <p>
+ * Every entry of the result is accumulated in the same order as the
+ * naive triple loop, so results do not depend on the tile sizes or
+ * the number of threads.
+ *
+ * @author jayantk
+ */
+public class JavaBlasBackend implements BlasBackend {
+
+  // Tile sizes for matrix multiplication. An INNER_BLOCK x COLUMN_BLOCK
+  // tile of B is 256KB.
+  private static final int INNER_BLOCK = 128;
+  private static final int COLUMN_BLOCK = 256;
+
+  // Minimum number of multiply-adds and rows of C before a matrix
+  // multiplication is split across threads.
+  private static final long PARALLEL_MIN_OPERATIONS = 1L << 21;
+  private static final int PARALLEL_MIN_ROWS = 32;
+
+  private final int numThreads;
+
+  /**
+   * Creates a single-threaded backend.
+   */
+  public JavaBlasBackend() {
+    this(1);
+  }
+
+  /**
+   * Creates a backend which multiplies large matrices using
+   * {@code numThreads} threads from a shared pool.
+   *
+   * @param numThreads
+   */
+  public JavaBlasBackend(int numThreads) {
+    Preconditions.checkArgument(numThreads > 0);
+    this.numThreads = numThreads;
+  }
+
+  @Override
+  public void gemm(final boolean transposeA, final boolean transposeB, final int m, final int n,
+      final int k, final double[] a, final int aOffset, final double[] b, final int bOffset,
+      final double[] c, final int cOffset) {
+    Preconditions.checkArgument(m >= 0 && n >= 0 && k >= 0);
+    Preconditions.checkArgument(aOffset + ((long) m * k) <= a.length);
+    Preconditions.checkArgument(bOffset + ((long) k * n) <= b.length);
+    Preconditions.checkArgument(cOffset + ((long) m * n) <= c.length);
+
+    if (numThreads > 1 && ((long) m) * n * k >= PARALLEL_MIN_OPERATIONS
+        && m >= PARALLEL_MIN_ROWS) {
+      ForkJoinPool pool = ForkJoinPools.getSharedPool(numThreads);
+      if (!ForkJoinPools.isWorkerOf(pool)) {
+        int rowsPerTask = (m + numThreads - 1) / numThreads;
+        List<Callable<Void>> tasks = Lists.newArrayList();
+        for (int start = 0; start < m; start += rowsPerTask) {
+          final int rowStart = start;
+          final int rowEnd = Math.min(m, start + rowsPerTask);
+          tasks.add(new Callable<Void>() {
+            @Override
+            public Void call() {
+              gemmRows(transposeA, transposeB, m, n, k, a, aOffset, b, bOffset, c, cOffset,
+                  rowStart, rowEnd);
+              return null;
+            }
+          });
+        }
+
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+          try {
+            future.get();
+          } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+          } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+          }
+        }
+        return;
+      }
+    }
+
+    gemmRows(transposeA, transposeB, m, n, k, a, aOffset, b, bOffset, c, cOffset, 0, m);
+  }
+
+  /**
+   * Computes rows {@code rowStart} (inclusive) to {@code rowEnd}
+   * (exclusive) of {@code C += op(A) * op(B)}.
+   */
+  private static void gemmRows(boolean transposeA, boolean transposeB, int m, int n, int k,
+      double[] a, int aOffset, double[] b, int bOffset, double[] c, int cOffset,
+      int rowStart, int rowEnd) {
+    // Strides of op(A) along its rows and columns.
+    int aRowStride = transposeA ? 1 : k;
+    int aColumnStride = transposeA ? m : 1;
+
+    if (transposeB) {
+      // Rows of B are columns of op(B), so each entry of C
+      // is an inner product of two contiguous vectors.
+      for (int i = rowStart; i < rowEnd; i++) {
+        int aRow = aOffset + i * aRowStride;
+        int cRow = cOffset + i * n;
+        for (int j = 0; j < n; j++) {
+          int bRow = bOffset + j * k;
+          double value = c[cRow + j];
+          for (int l = 0; l < k; l++) {
+            value += a[aRow + l * aColumnStride] * b[bRow + l];
+          }
+          c[cRow + j] = value;
+        }
+      }
+      return;
+    }
+
+    for (int innerStart = 0; innerStart < k; innerStart += INNER_BLOCK) {
+      int innerEnd = Math.min(k, innerStart + INNER_BLOCK);
+      for (int columnStart = 0; columnStart < n; columnStart += COLUMN_BLOCK) {
+        int columnEnd = Math.min(n, columnStart + COLUMN_BLOCK);
+        for (int i = rowStart; i < rowEnd; i++) {
+          int aRow = aOffset + i * aRowStride;
+          int cRow = cOffset + i * n;
+          for (int l = innerStart; l < innerEnd; l++) {
+            double aValue = a[aRow + l * aColumnStride];
+            int bRow = bOffset + l * n;
+            for (int j = columnStart; j < columnEnd; j++) {
+              c[cRow + j] += aValue * b[bRow + j];
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Override
+  public void gemv(boolean transposeA, int m, int n, double[] a, int aOffset,
+      double[] x, int xOffset, double[] y, int yOffset) {
+    Preconditions.checkArgument(m >= 0 && n >= 0);
+    Preconditions.checkArgument(aOffset + ((long) m * n) <= a.length);
+    Preconditions.checkArgument(xOffset + (transposeA ? m : n) <= x.length);
+    Preconditions.checkArgument(yOffset + (transposeA ? n : m) <= y.length);
+
+    if (transposeA) {
+      for (int i = 0; i < m; i++) {
+        double xValue = x[xOffset + i];
+        int aRow = aOffset + i * n;
+        for (int j = 0; j < n; j++) {
+          y[yOffset + j] += a[aRow + j] * xValue;
+        }
+      }
+    } else {
+      for (int i = 0; i < m; i++) {
+        int aRow = aOffset + i * n;
+        double value = y[yOffset + i];
+        for (int j = 0; j < n; j++) {
+          value += a[aRow + j] * x[xOffset + j];
+        }
+        y[yOffset + i] = value;
+      }
+    }
+  }
+}
@@ -196,6 +196,10 @@ public class LogSpaceTensorAdapter extends AbstractTensor {
 
   @Override
   public Tensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    if (logWeights instanceof DenseTensor) {
+      // Avoids exponentiating the entire tensor before summing.
+      return logWeights.logSumOutDimensions(dimensionsToEliminate).elementwiseExp();
+    }
     return logWeights.elementwiseExp().sumOutDimensions(dimensionsToEliminate);
   }
 
@@ -0,0 +1,136 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.nio.DoubleBuffer;
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+import com.jayantkrish.jklol.util.HeapUtils;
+import com.jayantkrish.jklol.util.IntegerArrayIterator;
+
+/**
+ * Read-only dense tensor whose values are stored in a buffer,
+ * typically a view of a memory-mapped file (see
+ * {@link com.jayantkrish.jklol.util.MappedModelFormat}). This tensor
+ * has the same representation as {@link DenseTensor}: the value of
+ * each {@code keyNum} is stored at that index of the buffer.
+ *
+ * @author jayantk
+ */
+public class MappedDenseTensor extends MappedTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  // Buffers are not serializable; see MappedTensor#writeReplace.
+  private final transient DoubleBuffer values;
+
+  /**
+   * Creates a tensor backed by {@code values}. The entries of the
+   * buffer are read by absolute index, so its position is ignored.
+   * The contents of the buffer must not be modified while this
+   * tensor is in use.
+   *
+   * @param dimensions
+   * @param sizes
+   * @param values
+   */
+  public MappedDenseTensor(int[] dimensions, int[] sizes, DoubleBuffer values) {
+    super(dimensions, sizes);
+    long size = 1;
+    for (int i = 0; i < sizes.length; i++) {
+      size *= sizes[i];
+    }
+    Preconditions.checkArgument(values.capacity() == size, "Expected size: %s, was: %s", size,
+        values.capacity());
+    this.values = values.asReadOnlyBuffer();
+  }
+
+  /**
+   * Gets the buffer containing the values of this tensor.
+   *
+   * @return
+   */
+  public DoubleBuffer getValueBuffer() {
+    return values.duplicate();
+  }
+
+  @Override
+  public DenseTensor copyToHeap() {
+    return new DenseTensor(getDimensionNumbers(), getDimensionSizes(), getValues());
+  }
+
+  @Override
+  public int size() {
+    return values.capacity();
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    return values.get(index);
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return Math.log(values.get(index));
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return (long) index;
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    return (int) keyNum;
+  }
+
+  @Override
+  public int getNearestIndex(long keyNum) {
+    // Dense tensors contain values for all keyNums.
+    return (int) keyNum;
+  }
+
+  @Override
+  public double[] getValues() {
+    double[] valueArray = new double[size()];
+    values.duplicate().get(valueArray);
+    return valueArray;
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    return new KeyToKeyValueIterator(new IntegerArrayIterator(getDimensionSizes(), new int[0]),
+        this);
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    return new KeyToKeyValueIterator(IntegerArrayIterator.createFromKeyPrefix(
+        getDimensionSizes(), keyPrefix), this);
+  }
+
+  @Override
+  public double getL2Norm() {
+    double sumSquares = 0.0;
+    int size = size();
+    for (int i = 0; i < size; i++) {
+      double value = values.get(i);
+      sumSquares += value * value;
+    }
+    return Math.sqrt(sumSquares);
+  }
+
+  @Override
+  public double getTrace() {
+    double sum = 0.0;
+    int size = size();
+    for (int i = 0; i < size; i++) {
+      sum += values.get(i);
+    }
+    return sum;
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    return HeapUtils.findLargestItemIndexes(getValues(), n);
+  }
+}
@@ -0,0 +1,231 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.util.HeapUtils;
+
+/**
+ * Read-only sparse tensor whose keys and values are stored in buffers,
+ * typically views of a memory-mapped file (see
+ * {@link com.jayantkrish.jklol.util.MappedModelFormat}). This tensor
+ * has the same representation as {@link SparseTensor}: the
+ * {@code keyNums} buffer is sorted, and {@code values} contains the
+ * value of each key.
+ *
+ * @author jayantk
+ */
+public class MappedSparseTensor extends MappedTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  // Buffers are not serializable; see MappedTensor#writeReplace.
+  private final transient LongBuffer keyNums;
+  private final transient DoubleBuffer values;
+
+  /**
+   * Creates a tensor backed by {@code keyNums} and {@code values}.
+   * The entries of each buffer are read by absolute index, so their
+   * positions are ignored. The contents of the buffers must not be
+   * modified while this tensor is in use.
+   *
+   * @param dimensionNums
+   * @param dimensionSizes
+   * @param keyNums
+   * @param values
+   */
+  public MappedSparseTensor(int[] dimensionNums, int[] dimensionSizes, LongBuffer keyNums,
+      DoubleBuffer values) {
+    super(dimensionNums, dimensionSizes);
+    Preconditions.checkArgument(Ordering.natural().isOrdered(Ints.asList(dimensionNums)));
+    Preconditions.checkArgument(keyNums.capacity() == values.capacity());
+    this.keyNums = keyNums.asReadOnlyBuffer();
+    this.values = values.asReadOnlyBuffer();
+  }
+
+  /**
+   * Gets the buffer containing the keys of this tensor.
+   *
+   * @return
+   */
+  public LongBuffer getKeyNumBuffer() {
+    return keyNums.duplicate();
+  }
+
+  /**
+   * Gets the buffer containing the values of this tensor.
+   *
+   * @return
+   */
+  public DoubleBuffer getValueBuffer() {
+    return values.duplicate();
+  }
+
+  @Override
+  public SparseTensor copyToHeap() {
+    long[] keyNumArray = new long[size()];
+    double[] valueArray = new double[size()];
+    keyNums.duplicate().get(keyNumArray);
+    values.duplicate().get(valueArray);
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(), keyNumArray, valueArray);
+  }
+
+  @Override
+  public int size() {
+    return values.capacity();
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    if (index == -1) {
+      return 0.0;
+    }
+    return values.get(index);
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return Math.log(getByIndex(index));
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    return keyNums.get(index);
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    int index = binarySearch(keyNum);
+    return index >= 0 ? index : -1;
+  }
+
+  @Override
+  public int getNearestIndex(long keyNum) {
+    int index = binarySearch(keyNum);
+    if (index < 0) {
+      index = (-1 * index) - 1;
+    }
+    return index;
+  }
+
+  /**
+   * Same as {@code Arrays.binarySearch} on the key buffer.
+   */
+  private int binarySearch(long keyNum) {
+    int low = 0;
+    int high = size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midKeyNum = keyNums.get(mid);
+      if (midKeyNum < keyNum) {
+        low = mid + 1;
+      } else if (midKeyNum > keyNum) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+    return -(low + 1);
+  }
+
+  @Override
+  public double[] getValues() {
+    double[] valueArray = new double[size()];
+    values.duplicate().get(valueArray);
+    return valueArray;
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    return new IndexKeyValueIterator(this, 0, size());
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    if (keyPrefix.length == 0) {
+      return keyValueIterator();
+    }
+
+    long startKeyNum = dimKeyPrefixToKeyNum(keyPrefix);
+    long endKeyNum = startKeyNum + indexOffsets[keyPrefix.length - 1];
+    return new IndexKeyValueIterator(this, getNearestIndex(startKeyNum),
+        getNearestIndex(endKeyNum));
+  }
+
+  @Override
+  public double getL2Norm() {
+    double sumSquared = 0.0;
+    int size = size();
+    for (int i = 0; i < size; i++) {
+      double value = values.get(i);
+      sumSquared += value * value;
+    }
+    return Math.sqrt(sumSquared);
+  }
+
+  @Override
+  public double getTrace() {
+    double sum = 0.0;
+    int size = size();
+    for (int i = 0; i < size; i++) {
+      sum += values.get(i);
+    }
+    return sum;
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    long[] largestKeyIndexes = HeapUtils.findLargestItemIndexes(getValues(), n);
+    long[] largestKeyNums = new long[largestKeyIndexes.length];
+    for (int i = 0; i < largestKeyIndexes.length; i++) {
+      largestKeyNums[i] = keyNums.get((int) largestKeyIndexes[i]);
+    }
+    return largestKeyNums;
+  }
+
+  /**
+   * Iterates over the entries of a tensor from {@code initialIndex}
+   * (inclusive) to {@code finalIndex} (exclusive).
+   */
+  private static class IndexKeyValueIterator implements Iterator<KeyValue> {
+    private final TensorBase tensor;
+    private int curIndex;
+    private final int finalIndex;
+
+    private final KeyValue keyValue;
+
+    public IndexKeyValueIterator(TensorBase tensor, int initialIndex, int finalIndex) {
+      this.tensor = tensor;
+      this.curIndex = initialIndex;
+      this.finalIndex = finalIndex;
+      this.keyValue = new KeyValue(new int[tensor.getDimensionNumbers().length], 0.0);
+    }
+
+    @Override
+    public boolean hasNext() {
+      return curIndex < finalIndex;
+    }
+
+    @Override
+    public KeyValue next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      // This call mutates the key field of {@code keyValue}.
+      tensor.keyNumToDimKey(tensor.indexToKeyNum(curIndex), keyValue.getKey());
+      keyValue.setValue(tensor.getByIndex(curIndex));
+      curIndex++;
+      return keyValue;
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Common implementation of read-only tensors whose keys and values are
+ * stored in (typically memory-mapped) buffers instead of arrays on the
+ * Java heap. Processes that map the same file share its pages, and
+ * creating a mapped tensor does not read its values.
+ * <p>
+ * Subclasses read the buffers directly to implement lookups and
+ * iteration, which are the operations required to use a trained
+ * model. Operations that create a new tensor (e.g., products and
+ * marginalization) are performed on a heap copy of this tensor (see
+ * {@link #getHeapCopy()}); the result of these operations is an
+ * ordinary, heap-allocated tensor. The heap copy is created on first
+ * use and cached by a soft reference, so repeated operations share a
+ * single copy, but the garbage collector may reclaim it (leaving only
+ * the mapped pages) when memory is low.
+ * <p>
+ * Mapped tensors are serialized as their heap copies.
+ *
+ * @author jayantk
+ */
+public abstract class MappedTensor extends AbstractTensor {
+
+  private static final long serialVersionUID = 1L;
+
+  private transient volatile SoftReference<Tensor> heapCopy;
+
+  public MappedTensor(int[] dimensions, int[] sizes) {
+    super(dimensions, sizes);
+  }
+
+  /**
+   * Copies this tensor into a new, equivalent heap-allocated tensor.
+   * Each call creates a new copy; see {@link #getHeapCopy()}.
+   *
+   * @return
+   */
+  public abstract Tensor copyToHeap();
+
+  /**
+   * Gets a heap-allocated tensor equivalent to this one, reusing a
+   * previously created copy if it has not been garbage collected.
+   * Concurrent callers may create redundant copies, which is harmless
+   * because tensors are immutable.
+   *
+   * @return
+   */
+  public Tensor getHeapCopy() {
+    SoftReference<Tensor> reference = heapCopy;
+    Tensor copy = reference != null ? reference.get() : null;
+    if (copy == null) {
+      copy = copyToHeap();
+      heapCopy = new SoftReference<Tensor>(copy);
+    }
+    return copy;
+  }
+
+  /**
+   * Replaces this tensor with its heap copy during serialization, as
+   * buffers are not serializable.
+   *
+   * @return
+   */
+  protected Object writeReplace() {
+    return getHeapCopy();
+  }
+
+  @Override
+  public Tensor slice(int[] dimensionNumbers, int[] keys) {
+    return getHeapCopy().slice(dimensionNumbers, keys);
+  }
+
+  @Override
+  public Tensor retainKeys(Tensor indicatorTensor) {
+    return getHeapCopy().retainKeys(indicatorTensor);
+  }
+
+  @Override
+  public Tensor findKeysLargerThan(double thresholdValue) {
+    return getHeapCopy().findKeysLargerThan(thresholdValue);
+  }
+
+  @Override
+  public Tensor elementwiseProduct(Tensor other) {
+    return getHeapCopy().elementwiseProduct(other);
+  }
+
+  @Override
+  public Tensor elementwiseProduct(Collection<Tensor> others) {
+    return getHeapCopy().elementwiseProduct(others);
+  }
+
+  @Override
+  public Tensor elementwiseProduct(double value) {
+    return getHeapCopy().elementwiseProduct(value);
+  }
+
+  @Override
+  public Tensor innerProduct(Tensor other) {
+    return getHeapCopy().innerProduct(other);
+  }
+
+  @Override
+  public Tensor matrixInnerProduct(Tensor other) {
+    return getHeapCopy().matrixInnerProduct(other);
+  }
+
+  @Override
+  public Tensor outerProduct(Tensor other) {
+    return getHeapCopy().outerProduct(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(Tensor other) {
+    return getHeapCopy().elementwiseAddition(other);
+  }
+
+  @Override
+  public Tensor elementwiseAddition(double value) {
+    return getHeapCopy().elementwiseAddition(value);
+  }
+
+  @Override
+  public Tensor elementwiseMaximum(Tensor other) {
+    return getHeapCopy().elementwiseMaximum(other);
+  }
+
+  @Override
+  public Tensor elementwiseInverse() {
+    return getHeapCopy().elementwiseInverse();
+  }
+
+  @Override
+  public Tensor elementwiseSqrt() {
+    return getHeapCopy().elementwiseSqrt();
+  }
+
+  @Override
+  public Tensor elementwiseLog() {
+    return getHeapCopy().elementwiseLog();
+  }
+
+  @Override
+  public Tensor elementwiseLogSparse() {
+    return getHeapCopy().elementwiseLogSparse();
+  }
+
+  @Override
+  public Tensor elementwiseExp() {
+    return getHeapCopy().elementwiseExp();
+  }
+
+  @Override
+  public Tensor elementwiseExpSparse() {
+    return getHeapCopy().elementwiseExpSparse();
+  }
+
+  @Override
+  public Tensor elementwiseTanh() {
+    return getHeapCopy().elementwiseTanh();
+  }
+
+  @Override
+  public Tensor elementwiseAbs() {
+    return getHeapCopy().elementwiseAbs();
+  }
+
+  @Override
+  public Tensor elementwiseLaplaceSigmoid(double smoothness) {
+    return getHeapCopy().elementwiseLaplaceSigmoid(smoothness);
+  }
+
+  @Override
+  public Tensor softThreshold(double threshold) {
+    return getHeapCopy().softThreshold(threshold);
+  }
+
+  @Override
+  public Tensor getEntriesLargerThan(double threshold) {
+    return getHeapCopy().getEntriesLargerThan(threshold);
+  }
+
+  @Override
+  public Tensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return getHeapCopy().sumOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor logSumOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return getHeapCopy().logSumOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    return getHeapCopy().maxOutDimensions(dimensionsToEliminate);
+  }
+
+  @Override
+  public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate,
+      Backpointers backpointers) {
+    return getHeapCopy().maxOutDimensions(dimensionsToEliminate, backpointers);
+  }
+
+  @Override
+  public Tensor relabelDimensions(int[] newDimensions) {
+    return getHeapCopy().relabelDimensions(newDimensions);
+  }
+
+  @Override
+  public Tensor relabelDimensions(Map<Integer, Integer> relabeling) {
+    return getHeapCopy().relabelDimensions(relabeling);
+  }
+
+  @Override
+  public Tensor replaceValues(double[] values) {
+    return getHeapCopy().replaceValues(values);
+  }
+
+  @Override
+  public TensorHash toHash() {
+    return getHeapCopy().toHash();
+  }
+
+  @Override
+  public String toString() {
+    return getHeapCopy().toString();
+  }
+}
@@ -0,0 +1,513 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Arrays;
+import java.util.Iterator;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.util.ArrayUtils;
+import com.jayantkrish.jklol.util.IntegerArrayIterator;
+
+/**
+ * A sparse tensor builder for accumulating many small updates, such
+ * as per-example gradients. Increments are appended to a log of
+ * (keyNum, value) pairs stored in primitive arrays, and duplicate keys
+ * are merged lazily (by sorting the log) when the builder is read or
+ * the log fills up. The cost of incrementing, scaling, zeroing out and
+ * building this tensor is proportional to the number of entries that
+ * have been touched, not the size of the tensor.
+ * <p>
+ * Operations that would destroy sparsity (e.g., adding a constant to
+ * every entry) are not supported.
+ *
+ * @author jayantk
+ */
+public class SparseDeltaTensorBuilder extends AbstractTensorBase implements TensorBuilder {
+
+  private static final long serialVersionUID = 1L;
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private long[] keyNums;
+  private double[] values;
+  // Number of entries of keyNums / values that are in use.
+  private int size;
+  // True if keyNums[0..size) is sorted and contains no duplicates.
+  private boolean isMerged;
+
+  public SparseDeltaTensorBuilder(int[] dimensionNums, int[] dimensionSizes) {
+    super(dimensionNums, dimensionSizes);
+    Preconditions.checkArgument(Ordering.natural().isOrdered(Ints.asList(dimensionNums)));
+    this.keyNums = new long[INITIAL_CAPACITY];
+    this.values = new double[INITIAL_CAPACITY];
+    this.size = 0;
+    this.isMerged = true;
+  }
+
+  /**
+   * Copy constructor.
+   */
+  private SparseDeltaTensorBuilder(SparseDeltaTensorBuilder builder) {
+    super(builder.getDimensionNumbers(), builder.getDimensionSizes());
+    this.keyNums = Arrays.copyOf(builder.keyNums, builder.keyNums.length);
+    this.values = Arrays.copyOf(builder.values, builder.values.length);
+    this.size = builder.size;
+    this.isMerged = builder.isMerged;
+  }
+
+  /**
+   * Gets a {@code TensorFactory} which creates
+   * {@code SparseDeltaTensorBuilder}s.
+   *
+   * @return
+   */
+  public static TensorFactory getFactory() {
+    return new TensorFactory() {
+      @Override
+      public TensorBuilder getBuilder(int[] dimNums, int[] dimSizes) {
+        return new SparseDeltaTensorBuilder(dimNums, dimSizes);
+      }
+    };
+  }
+
+  // /////////////////////////////////////////////////////////////
+  // TensorBase methods
+  // /////////////////////////////////////////////////////////////
+
+  @Override
+  public int size() {
+    merge();
+    return size;
+  }
+
+  @Override
+  public double getByIndex(int index) {
+    if (index == -1) {
+      return 0.0;
+    }
+    merge();
+    return values[index];
+  }
+
+  @Override
+  public double getLogByIndex(int index) {
+    return Math.log(getByIndex(index));
+  }
+
+  @Override
+  public int keyNumToIndex(long keyNum) {
+    merge();
+    int index = Arrays.binarySearch(keyNums, 0, size, keyNum);
+    return index >= 0 ? index : -1;
+  }
+
+  @Override
+  public long indexToKeyNum(int index) {
+    merge();
+    return keyNums[index];
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValueIterator() {
+    merge();
+    return new SparseKeyValueIterator(keyNums, values, 0, size, this);
+  }
+
+  @Override
+  public Iterator<KeyValue> keyValuePrefixIterator(int[] keyPrefix) {
+    return build().keyValuePrefixIterator(keyPrefix);
+  }
+
+  @Override
+  public double getL2Norm() {
+    merge();
+    double sumSquares = 0.0;
+    for (int i = 0; i < size; i++) {
+      sumSquares += values[i] * values[i];
+    }
+    return Math.sqrt(sumSquares);
+  }
+
+  @Override
+  public double getTrace() {
+    // The trace is linear, so duplicate keys need not be merged.
+    double sum = 0.0;
+    for (int i = 0; i < size; i++) {
+      sum += values[i];
+    }
+    return sum;
+  }
+
+  @Override
+  public long[] getLargestValues(int n) {
+    return build().getLargestValues(n);
+  }
+
+  // /////////////////////////////////////////////////////////////
+  // TensorBuilder methods
+  // /////////////////////////////////////////////////////////////
+
+  @Override
+  public void put(int[] key, double value) {
+    putByKeyNum(dimKeyToKeyNum(key), value);
+  }
+
+  @Override
+  public void putByKeyNum(long keyNum, double value) {
+    int index = keyNumToIndex(keyNum);
+    if (index != -1) {
+      values[index] = value;
+    } else {
+      append(keyNum, value);
+    }
+  }
+
+  @Override
+  public void increment(TensorBase other) {
+    incrementWithMultiplier(other, 1.0);
+  }
+
+  /**
+   * Not supported, as adding {@code amount} to every entry would
+   * make this tensor dense.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void increment(double amount) {
+    throw new UnsupportedOperationException("Incrementing every entry destroys sparsity.");
+  }
+
+  @Override
+  public void incrementWithMultiplier(TensorBase other, double multiplier) {
+    if (Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers())) {
+      int otherSize = other.size();
+      for (int i = 0; i < otherSize; i++) {
+        append(other.indexToKeyNum(i), other.getByIndex(i) * multiplier);
+      }
+    } else {
+      repmatIncrement(other, multiplier);
+    }
+  }
+
+  /**
+   * Replicates the values in {@code other} across all dimensions of
+   * {@code this} that are not in {@code other}, incrementing each key
+   * appropriately. This method matches the behavior of
+   * {@link DenseTensorBuilder#incrementWithMultiplier} for tensors with
+   * fewer dimensions than this one.
+   *
+   * @param other
+   * @param multiplier
+   */
+  private void repmatIncrement(TensorBase other, double multiplier) {
+    int[] dimensionNums = getDimensionNumbers();
+    int[] otherDimensionNums = other.getDimensionNumbers();
+    int[] dimensionMapping = new int[otherDimensionNums.length];
+    for (int i = 0; i < otherDimensionNums.length; i++) {
+      dimensionMapping[i] = getDimensionIndex(otherDimensionNums[i]);
+      Preconditions.checkArgument(dimensionMapping[i] != -1);
+    }
+
+    int[] partialKey = ArrayUtils.copyOf(getDimensionSizes(), dimensionNums.length);
+    for (int i = 0; i < dimensionMapping.length; i++) {
+      partialKey[dimensionMapping[i]] = 1;
+    }
+
+    Iterator<KeyValue> otherKeyValues = other.keyValueIterator();
+    while (otherKeyValues.hasNext()) {
+      KeyValue otherKeyValue = otherKeyValues.next();
+      int[] otherKey = otherKeyValue.getKey();
+      double value = otherKeyValue.getValue() * multiplier;
+
+      Iterator<int[]> keyIterator = new IntegerArrayIterator(partialKey, new int[0]);
+      while (keyIterator.hasNext()) {
+        int[] key = keyIterator.next();
+        for (int i = 0; i < dimensionMapping.length; i++) {
+          key[dimensionMapping[i]] = otherKey[i];
+        }
+        append(dimKeyToKeyNum(key), value);
+      }
+    }
+  }
+
+  @Override
+  public void incrementSquare(TensorBase other, double multiplier) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    double square = multiplier * multiplier;
+    int otherSize = other.size();
+    for (int i = 0; i < otherSize; i++) {
+      double otherValue = other.getByIndex(i);
+      append(other.indexToKeyNum(i), otherValue * otherValue * square);
+    }
+  }
+
+  @Override
+  public void incrementAdagrad(TensorBase other, TensorBase squareTensor, double multiplier) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void multiplyInverseAdagrad(TensorBase squareTensor, double constant, double multiplier) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void incrementSquareAdagrad(TensorBase gradient, TensorBase parameters, double multiplier) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public void incrementOuterProductWithMultiplier(Tensor leftTensor, Tensor rightTensor,
+      double multiplier) {
+    incrementWithMultiplier(leftTensor.outerProduct(rightTensor), multiplier);
+  }
+
+  @Override
+  public void incrementInnerProductWithMultiplier(Tensor leftTensor, Tensor rightTensor,
+      double multiplier) {
+    incrementWithMultiplier(leftTensor.innerProduct(rightTensor), multiplier);
+  }
+
+  @Override
+  public void incrementEntry(double amount, int... key) {
+    Preconditions.checkArgument(key.length == getDimensionNumbers().length);
+    append(dimKeyToKeyNum(key), amount);
+  }
+
+  @Override
+  public void incrementEntryByKeyNum(double amount, long keyNum) {
+    append(keyNum, amount);
+  }
+
+  @Override
+  public void multiply(TensorBase other) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    merge();
+    for (int i = 0; i < size; i++) {
+      values[i] *= other.get(keyNums[i]);
+    }
+  }
+
+  @Override
+  public void multiply(double amount) {
+    if (amount == 0.0) {
+      // Zeroing out only requires forgetting the touched entries.
+      size = 0;
+      isMerged = true;
+      return;
+    }
+
+    // Multiplication distributes over the unmerged increments.
+    for (int i = 0; i < size; i++) {
+      values[i] *= amount;
+    }
+  }
+
+  @Override
+  public void multiplyEntry(double amount, int... key) {
+    multiplyEntryByKeyNum(amount, dimKeyToKeyNum(key));
+  }
+
+  @Override
+  public void multiplyEntryByKeyNum(double amount, long keyNum) {
+    int index = keyNumToIndex(keyNum);
+    if (index != -1) {
+      values[index] *= amount;
+    }
+  }
+
+  @Override
+  public void softThreshold(double threshold) {
+    merge();
+    double negativeThreshold = -1.0 * threshold;
+    for (int i = 0; i < size; i++) {
+      double value = values[i];
+      if (value > threshold) {
+        values[i] = value - threshold;
+      } else if (value < negativeThreshold) {
+        values[i] = value + threshold;
+      } else {
+        values[i] = 0.0;
+      }
+    }
+  }
+
+  @Override
+  public void findEntriesLargerThan(double threshold) {
+    Preconditions.checkArgument(threshold >= 0.0);
+    merge();
+    for (int i = 0; i < size; i++) {
+      values[i] = (values[i] >= threshold) ? 1.0 : 0.0;
+    }
+  }
+
+  @Override
+  public void maximum(TensorBase other) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    merge();
+    int originalSize = size;
+    for (int i = 0; i < originalSize; i++) {
+      values[i] = Math.max(values[i], other.get(keyNums[i]));
+    }
+
+    // Keys of other that are not stored in this tensor have value 0
+    // here. These keys are found before appending to the log, as
+    // appending may reorder keyNums.
+    int otherSize = other.size();
+    long[] newKeyNums = new long[otherSize];
+    double[] newValues = new double[otherSize];
+    int numNew = 0;
+    for (int i = 0; i < otherSize; i++) {
+      double otherValue = other.getByIndex(i);
+      long keyNum = other.indexToKeyNum(i);
+      if (otherValue > 0.0 && Arrays.binarySearch(keyNums, 0, originalSize, keyNum) < 0) {
+        newKeyNums[numNew] = keyNum;
+        newValues[numNew] = otherValue;
+        numNew++;
+      }
+    }
+
+    for (int i = 0; i < numNew; i++) {
+      append(newKeyNums[i], newValues[i]);
+    }
+  }
+
+  @Override
+  public double innerProduct(TensorBase other) {
+    Preconditions.checkArgument(Arrays.equals(other.getDimensionNumbers(), getDimensionNumbers()));
+    // The inner product is linear, so duplicate keys need not be merged.
+    double total = 0.0;
+    for (int i = 0; i < size; i++) {
+      total += values[i] * other.get(keyNums[i]);
+    }
+    return total;
+  }
+
+  /**
+   * Not supported, as {@code exp(0) = 1} would make every entry of
+   * this tensor nonzero.
+   *
+   * @throws UnsupportedOperationException always
+   */
+  @Override
+  public void exp() {
+    throw new UnsupportedOperationException("Exponentiating every entry destroys sparsity.");
+  }
+
+  /**
+   * Constructs and returns a {@code SparseTensor} containing all of the
+   * key/value pairs added to {@code this}.
+   *
+   * @return
+   */
+  @Override
+  public SparseTensor build() {
+    merge();
+    return new SparseTensor(getDimensionNumbers(), getDimensionSizes(),
+        ArrayUtils.copyOf(keyNums, size), ArrayUtils.copyOf(values, size));
+  }
+
+  @Override
+  public SparseTensor buildNoCopy() {
+    return build();
+  }
+
+  @Override
+  public SparseDeltaTensorBuilder getCopy() {
+    return new SparseDeltaTensorBuilder(this);
+  }
+
+  // /////////////////////////////////////////////////////////////
+  // Log maintenance
+  // /////////////////////////////////////////////////////////////
+
+  private void append(long keyNum, double value) {
+    if (size == keyNums.length) {
+      // Merge before growing the arrays, as duplicate keys may free
+      // enough space to avoid the allocation.
+      merge();
+      if (size > keyNums.length / 2) {
+        keyNums = Arrays.copyOf(keyNums, keyNums.length * 2);
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+    }
+
+    if (isMerged && size > 0 && keyNums[size - 1] >= keyNum) {
+      isMerged = false;
+    }
+    keyNums[size] = keyNum;
+    values[size] = value;
+    size++;
+  }
+
+  /**
+   * Sorts the logged increments by key and sums the values of
+   * duplicate keys, so that each key appears at most once.
+   */
+  private void merge() {
+    if (isMerged) {
+      return;
+    }
+
+    long[] keyNumsTemp = new long[size];
+    double[] valuesTemp = new double[size];
+    mergeSort(keyNums, values, keyNumsTemp, valuesTemp, 0, size);
+
+    int numUnique = 0;
+    for (int i = 0; i < size; i++) {
+      if (numUnique > 0 && keyNums[numUnique - 1] == keyNums[i]) {
+        values[numUnique - 1] += values[i];
+      } else {
+        keyNums[numUnique] = keyNums[i];
+        values[numUnique] = values[i];
+        numUnique++;
+      }
+    }
+    size = numUnique;
+    isMerged = true;
+  }
+
+  /**
+   * Stable sort of {@code keys[start, end)} with the corresponding
+   * {@code values}. Unlike {@link ArrayUtils#sortKeyValuePairs}, this
+   * sort runs in O(n log n) time when {@code keys} contains many
+   * duplicates.
+   */
+  private static void mergeSort(long[] keys, double[] values, long[] keysTemp,
+      double[] valuesTemp, int start, int end) {
+    if (end - start <= 1) {
+      return;
+    }
+
+    int mid = (start + end) >>> 1;
+    mergeSort(keys, values, keysTemp, valuesTemp, start, mid);
+    mergeSort(keys, values, keysTemp, valuesTemp, mid, end);
+    if (keys[mid - 1] <= keys[mid]) {
+      // Already in order.
+      return;
+    }
+
+    System.arraycopy(keys, start, keysTemp, start, end - start);
+    System.arraycopy(values, start, valuesTemp, start, end - start);
+    int left = start;
+    int right = mid;
+    for (int i = start; i < end; i++) {
+      if (right >= end || (left < mid && keysTemp[left] <= keysTemp[right])) {
+        keys[i] = keysTemp[left];
+        values[i] = valuesTemp[left];
+        left++;
+      } else {
+        keys[i] = keysTemp[right];
+        values[i] = valuesTemp[right];
+        right++;
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return build().toString();
+  }
+}
@@ -125,16 +125,28 @@ public class SparseLogSpaceTensorAdapter extends AbstractTensor {
 
   @Override
   public Tensor sumOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    // Reductions are only implemented when every key has an explicit
+    // log weight, in which case they are the same as for a dense tensor.
+    if (logWeights instanceof DenseTensor) {
+      return logWeights.logSumOutDimensions(dimensionsToEliminate).elementwiseExp();
+    }
     throw new UnsupportedOperationException("Not implemented.");
   }
 
   @Override
   public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate) {
+    if (logWeights instanceof DenseTensor) {
+      return new SparseLogSpaceTensorAdapter(logWeights.maxOutDimensions(dimensionsToEliminate));
+    }
     throw new UnsupportedOperationException("Not implemented.");
   }
 
   @Override
   public Tensor maxOutDimensions(Collection<Integer> dimensionsToEliminate, Backpointers backpointers) {
+    if (logWeights instanceof DenseTensor) {
+      return new SparseLogSpaceTensorAdapter(logWeights.maxOutDimensions(dimensionsToEliminate,
+          backpointers));
+    }
     throw new UnsupportedOperationException("Not implemented.");
   }
 
@@ -478,7 +478,7 @@ public class SparseTensor extends AbstractTensor implements Serializable {
 
   @Override
   public Tensor matrixInnerProduct(Tensor other) {
-    return AbstractTensor.innerProduct(this, other, SparseTensorBuilder.getFactory());
+    return AbstractTensor.innerProduct(this, other, HashSparseTensorBuilder.getFactory());
   }
 
   @Override
@@ -1303,9 +1303,11 @@ public class SparseTensor extends AbstractTensor implements Serializable {
   public static SparseTensor copyOf(Tensor tensor) {
     if (tensor instanceof SparseTensor) {
       return (SparseTensor) tensor;
+    } else if (tensor instanceof MappedSparseTensor) {
+      return ((MappedSparseTensor) tensor).copyToHeap();
     } else {
-      SparseTensorBuilder builder = new SparseTensorBuilder(tensor.getDimensionNumbers(),
-          tensor.getDimensionSizes());
+      HashSparseTensorBuilder builder = new HashSparseTensorBuilder(tensor.getDimensionNumbers(),
+          tensor.getDimensionSizes(), tensor.size());
       double[] otherValues = tensor.getValues();
       // TODO: this could be made a lot faster using
       // fromUnorderedKeyValues
@@ -19,7 +19,8 @@ import com.google.common.primitives.Longs;
  * Builder for incrementally constructing sparse tensors. 
  *
  * <p> This implementation is quite inefficient, and should not be used in
- * performance-sensitive code.
+ * performance-sensitive code. {@link HashSparseTensorBuilder} supports the
+ * same operations much more efficiently.
  * 
  * @author jayantk
  */
@@ -2,8 +2,9 @@ package com.jayantkrish.jklol.tensor;
 
 /**
  * Provides methods for retrieving {@link TensorBuilder}s. This interface
- * abstracts over different tensor implementations (specifically,
- * {@link DenseTensorBuilder} and {@link SparseTensorBuilder}).
+ * abstracts over different tensor implementations (e.g.,
+ * {@link DenseTensorBuilder}, {@link SparseTensorBuilder} and
+ * {@link HashSparseTensorBuilder}).
  * 
  * @author jayantk
  */
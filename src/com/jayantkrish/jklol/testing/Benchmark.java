@@ -0,0 +1,27 @@
+package com.jayantkrish.jklol.testing;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation which declares a method as a benchmark. Unlike
+ * {@link PerformanceTest}s, benchmarks are run repeatedly after a
+ * warm-up period, and are timed over many invocations (see
+ * {@link BenchmarkRunner}). Benchmark methods should return the
+ * result of the benchmarked computation, so that it cannot be
+ * optimized away by the JIT compiler.
+ * 
+ * @author jayantk
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Benchmark {
+  // Number of untimed iterations run before measurement, which
+  // allow the JIT compiler to optimize the benchmarked code.
+  int warmupIterations() default 5;
+
+  // Number of timed iterations.
+  int iterations() default 10;
+}
@@ -0,0 +1,130 @@
+package com.jayantkrish.jklol.testing;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+
+/**
+ * Timing statistics for a single benchmark, as measured by
+ * {@link BenchmarkRunner}. Times are reported in nanoseconds per
+ * invocation of the benchmark method. Results can be serialized
+ * as tab-separated lines, e.g., to compare performance against a
+ * previous release.
+ *
+ * @author jayantk
+ */
+public class BenchmarkResult {
+
+  private final String name;
+  private final int numIterations;
+  private final long numInvocations;
+
+  private final double meanNanos;
+  private final double stdDevNanos;
+  private final double minNanos;
+
+  public BenchmarkResult(String name, int numIterations, long numInvocations,
+      double meanNanos, double stdDevNanos, double minNanos) {
+    this.name = Preconditions.checkNotNull(name);
+    this.numIterations = numIterations;
+    this.numInvocations = numInvocations;
+    this.meanNanos = meanNanos;
+    this.stdDevNanos = stdDevNanos;
+    this.minNanos = minNanos;
+  }
+
+  /**
+   * Computes statistics from the time per invocation of each timed
+   * iteration.
+   *
+   * @param name
+   * @param iterationNanos
+   * @param numInvocations total number of invocations across all
+   * iterations.
+   * @return
+   */
+  public static BenchmarkResult fromIterations(String name, double[] iterationNanos,
+      long numInvocations) {
+    Preconditions.checkArgument(iterationNanos.length > 0);
+    double sum = 0.0;
+    double min = Double.POSITIVE_INFINITY;
+    for (int i = 0; i < iterationNanos.length; i++) {
+      sum += iterationNanos[i];
+      min = Math.min(min, iterationNanos[i]);
+    }
+    double mean = sum / iterationNanos.length;
+
+    double sumSquares = 0.0;
+    for (int i = 0; i < iterationNanos.length; i++) {
+      sumSquares += (iterationNanos[i] - mean) * (iterationNanos[i] - mean);
+    }
+    double stdDev = iterationNanos.length > 1 ?
+        Math.sqrt(sumSquares / (iterationNanos.length - 1)) : 0.0;
+
+    return new BenchmarkResult(name, iterationNanos.length, numInvocations, mean, stdDev, min);
+  }
+
+  /**
+   * Parses a result from a line produced by {@link #toTsv()}.
+   *
+   * @param line
+   * @return
+   */
+  public static BenchmarkResult fromTsv(String line) {
+    String[] parts = line.split("\t");
+    Preconditions.checkArgument(parts.length == 6, "Invalid benchmark result: %s", line);
+    return new BenchmarkResult(parts[0], Integer.parseInt(parts[1]), Long.parseLong(parts[2]),
+        Double.parseDouble(parts[3]), Double.parseDouble(parts[4]), Double.parseDouble(parts[5]));
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getNumIterations() {
+    return numIterations;
+  }
+
+  public long getNumInvocations() {
+    return numInvocations;
+  }
+
+  /**
+   * Gets the mean time per invocation of the benchmark, in
+   * nanoseconds.
+   *
+   * @return
+   */
+  public double getMeanNanos() {
+    return meanNanos;
+  }
+
+  public double getStdDevNanos() {
+    return stdDevNanos;
+  }
+
+  public double getMinNanos() {
+    return minNanos;
+  }
+
+  /**
+   * Gets the relative change in mean time of this result compared
+   * to {@code baseline}. Positive values indicate that this result
+   * is slower than {@code baseline}.
+   *
+   * @param baseline
+   * @return
+   */
+  public double getRelativeChange(BenchmarkResult baseline) {
+    return (meanNanos - baseline.meanNanos) / baseline.meanNanos;
+  }
+
+  public String toTsv() {
+    return Joiner.on("\t").join(name, numIterations, numInvocations, meanNanos, stdDevNanos, minNanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%-60s %12.3f +- %10.3f us/op (min %.3f, %d iterations)", name,
+        meanNanos / 1000, stdDevNanos / 1000, minNanos / 1000, numIterations);
+  }
+}
@@ -0,0 +1,153 @@
+package com.jayantkrish.jklol.testing;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+
+/**
+ * Runs benchmarks, which are methods of a
+ * {@code PerformanceTestCase} annotated with {@link Benchmark}. Each
+ * benchmark is run for a number of untimed warm-up iterations, then
+ * a number of timed iterations. During each iteration, the benchmark
+ * method is invoked repeatedly until {@code iterationMillis} have
+ * elapsed, and the iteration's time per invocation is recorded.
+ * <p>
+ * {@code setUp} and {@code tearDown} are invoked once for each
+ * test case, before and after running all of its benchmarks. Hence,
+ * benchmark methods should not modify the state of the test case.
+ * Benchmarks are run in order of their names, so that results are
+ * reproducible from run to run.
+ *
+ * @author jayantk
+ */
+public class BenchmarkRunner {
+
+  private final long iterationMillis;
+  private final int warmupIterations;
+  private final int iterations;
+  private final Pattern filter;
+
+  // Values returned by benchmarks are written to this field, which
+  // prevents the JIT compiler from eliminating the benchmarked code.
+  private static volatile Object sink;
+
+  /**
+   * Creates a new benchmark runner.
+   *
+   * @param iterationMillis minimum duration of each iteration.
+   * @param warmupIterations number of warm-up iterations. If
+   * negative, the number specified by each benchmark's
+   * annotation is used.
+   * @param iterations number of timed iterations. If
+   * nonpositive, the number specified by each benchmark's
+   * annotation is used.
+   * @param filter if non-null, only benchmarks whose names contain
+   * a match for this pattern are run. Benchmark names are of the form
+   * {@code ClassName.methodName}.
+   */
+  public BenchmarkRunner(long iterationMillis, int warmupIterations, int iterations,
+      Pattern filter) {
+    Preconditions.checkArgument(iterationMillis > 0);
+    this.iterationMillis = iterationMillis;
+    this.warmupIterations = warmupIterations;
+    this.iterations = iterations;
+    this.filter = filter;
+  }
+
+  /**
+   * Runs every benchmark in {@code testCase}, printing and
+   * returning the results.
+   *
+   * @param testCase
+   * @return
+   */
+  public List<BenchmarkResult> run(PerformanceTestCase testCase) {
+    List<Method> benchmarks = Lists.newArrayList();
+    List<String> names = Lists.newArrayList();
+    Method[] methods = testCase.getClass().getMethods();
+    Arrays.sort(methods, new Comparator<Method>() {
+      @Override
+      public int compare(Method first, Method second) {
+        return first.getName().compareTo(second.getName());
+      }
+    });
+    for (int i = 0; i < methods.length; i++) {
+      String name = testCase.getClass().getSimpleName() + "." + methods[i].getName();
+      if (methods[i].getAnnotation(Benchmark.class) != null
+          && (filter == null || filter.matcher(name).find())) {
+        benchmarks.add(methods[i]);
+        names.add(name);
+      }
+    }
+
+    List<BenchmarkResult> results = Lists.newArrayList();
+    if (benchmarks.size() == 0) {
+      // Avoid running (potentially expensive) set up.
+      return results;
+    }
+
+    testCase.setUp();
+    try {
+      for (int i = 0; i < benchmarks.size(); i++) {
+        BenchmarkResult result = runBenchmark(testCase, benchmarks.get(i), names.get(i));
+        System.out.println(result);
+        results.add(result);
+      }
+    } finally {
+      testCase.tearDown();
+    }
+    return results;
+  }
+
+  private BenchmarkResult runBenchmark(PerformanceTestCase testCase, Method benchmark,
+      String name) {
+    Benchmark annotation = benchmark.getAnnotation(Benchmark.class);
+    int numWarmup = warmupIterations >= 0 ? warmupIterations : annotation.warmupIterations();
+    int numIterations = iterations > 0 ? iterations : annotation.iterations();
+
+    long[] numInvocations = new long[1];
+    for (int i = 0; i < numWarmup; i++) {
+      runIteration(testCase, benchmark, numInvocations);
+    }
+
+    numInvocations[0] = 0;
+    double[] iterationNanos = new double[numIterations];
+    for (int i = 0; i < numIterations; i++) {
+      iterationNanos[i] = runIteration(testCase, benchmark, numInvocations);
+    }
+    return BenchmarkResult.fromIterations(name, iterationNanos, numInvocations[0]);
+  }
+
+  /**
+   * Invokes {@code benchmark} until {@code iterationMillis} have
+   * elapsed, returning the average time per invocation in
+   * nanoseconds. The number of invocations is added to
+   * {@code numInvocations[0]}.
+   */
+  private double runIteration(PerformanceTestCase testCase, Method benchmark,
+      long[] numInvocations) {
+    long minDuration = iterationMillis * 1000000;
+    long count = 0;
+    long start = System.nanoTime();
+    long elapsed = 0;
+    try {
+      do {
+        sink = benchmark.invoke(testCase);
+        count++;
+        elapsed = System.nanoTime() - start;
+      } while (elapsed < minDuration);
+    } catch (InvocationTargetException e) {
+      throw new RuntimeException("Benchmark " + benchmark.getName() + " failed", e.getCause());
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    }
+    numInvocations[0] += count;
+    return ((double) elapsed) / count;
+  }
+}
@@ -1,4 +1,4 @@
 /**
- * Simple performance testing framework.
+ * Simple performance testing and benchmarking framework.
  */
 package com.jayantkrish.jklol.testing;
\ No newline at end of file
@@ -1,71 +1,90 @@
 package com.jayantkrish.jklol.training;
 
-import java.util.Collections;
 import java.util.Map;
 import java.util.Set;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.metrics.MetricRegistry;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.metrics.Timer;
 
 /**
- * Implementation of the timer methods from {@link LogFunction}.
- * 
+ * Implementation of the timer methods from {@link LogFunction}. Timer
+ * durations are recorded in a {@link MetricRegistry}, by default one
+ * owned by this log function, so that separate log functions (e.g.,
+ * for two trainings in the same process) do not mix their timings.
+ * Timers recorded by library code use the process-wide registry from
+ * {@link Metrics} instead.
+ *
  * @author jayantk
  */
 public abstract class AbstractLogFunction implements LogFunction {
-  
-  // Each thread has its own collection of timers.
-  private final Map<Long, Map<String, Long>> activeTimers;
-  private final Map<String, Long> timerSumTimes;
-  private final Map<String, Long> timerInvocations;
-  
+
+  private final MetricRegistry registry;
+
+  // Each thread has its own collection of active timers.
+  private final ThreadLocal<Map<String, Long>> activeTimers;
+
   private final long TIME_DENOMINATOR = 1000000;
-  
+
   public AbstractLogFunction() {
-    activeTimers = Collections.synchronizedMap(Maps.<Long, Map<String, Long>>newHashMap());
-    timerSumTimes = Collections.synchronizedMap(Maps.<String, Long>newHashMap());
-    timerInvocations = Collections.synchronizedMap(Maps.<String, Long>newHashMap());
+    this(new MetricRegistry());
+  }
+
+  /**
+   * Creates a log function that records timers in {@code registry},
+   * which may be shared with other log functions.
+   *
+   * @param registry
+   */
+  public AbstractLogFunction(MetricRegistry registry) {
+    this.registry = Preconditions.checkNotNull(registry);
+    this.activeTimers = new ThreadLocal<Map<String, Long>>() {
+      @Override
+      protected Map<String, Long> initialValue() {
+        return Maps.newHashMap();
+      }
+    };
   }
 
   @Override
   public void startTimer(String timerName) {
-    Long threadId = Thread.currentThread().getId();
-    if (!activeTimers.containsKey(threadId)) {
-      activeTimers.put(threadId, Maps.<String, Long>newHashMap());
-    }
-    activeTimers.get(threadId).put(timerName, System.nanoTime());
+    activeTimers.get().put(timerName, System.nanoTime());
   }
 
   @Override
   public double stopTimer(String timerName) {
-    Long threadId = Thread.currentThread().getId();
-    Preconditions.checkArgument(activeTimers.get(threadId).containsKey(timerName));
     long end = System.nanoTime();
-    long start = activeTimers.get(threadId).remove(timerName);
-    
-    if (!timerSumTimes.containsKey(timerName)) {
-      timerSumTimes.put(timerName, 0L);
-    }
-    if (!timerInvocations.containsKey(timerName)) {
-      timerInvocations.put(timerName, 0L);
-    }
-    timerSumTimes.put(timerName, timerSumTimes.get(timerName) + (end - start));
-    timerInvocations.put(timerName, timerInvocations.get(timerName) + 1L);
-    
-    return (end - start) / TIME_DENOMINATOR;
+    Long start = activeTimers.get().remove(timerName);
+    Preconditions.checkArgument(start != null, "Timer not started: %s", timerName);
+
+    long elapsed = end - start;
+    registry.timer(timerName).record(Math.max(0, elapsed));
+    return elapsed / TIME_DENOMINATOR;
+  }
+
+  protected MetricRegistry getRegistry() {
+    return registry;
   }
 
   protected Set<String> getAllTimers() {
-    return timerSumTimes.keySet();
+    Set<String> names = Sets.newHashSet();
+    for (Timer timer : registry.getTimers()) {
+      if (timer.getCount() > 0) {
+        names.add(timer.getName());
+      }
+    }
+    return names;
   }
-  
+
   protected long getTimerElapsedTime(String timerName) {
-    Preconditions.checkArgument(timerSumTimes.containsKey(timerName));
-    return timerSumTimes.get(timerName) / TIME_DENOMINATOR; // Return time in milliseconds.
+    // Return time in milliseconds.
+    return registry.timer(timerName).getSnapshot().getSum() / TIME_DENOMINATOR;
   }
-  
+
   protected long getTimerInvocations(String timerName) {
-    Preconditions.checkArgument(timerInvocations.containsKey(timerName));
-    return timerInvocations.get(timerName);
+    return registry.timer(timerName).getCount();
   }
 }
@@ -0,0 +1,267 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
+import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
+import com.jayantkrish.jklol.parallel.MapReduceExecutor;
+import com.jayantkrish.jklol.parallel.Mapper;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.tensor.TensorBuilder;
+
+/**
+ * Asynchronous stochastic gradient descent, in which several worker
+ * threads compute gradients and update a shared parameter vector
+ * without waiting for each other. Unlike
+ * {@link StochasticGradientTrainer}, there is no barrier between
+ * gradient computation and the parameter update, so workers never
+ * idle while waiting for the slowest example in a minibatch. This
+ * is the method described in:
+ * <p>
+ * Hogwild!: A Lock-Free Approach to Parallelizing Stochastic Gradient
+ * Descent. Feng Niu, Benjamin Recht, Christopher Re and Stephen J.
+ * Wright. NIPS 2011.
+ * <p>
+ * Each worker accumulates its gradient in a sparse representation
+ * (see {@link SparseGradientOracle}), then applies only the nonzero
+ * entries to the shared parameters. If {@code numLockStripes} is 0,
+ * these updates are lock-free, and concurrent updates to the same
+ * parameter may occasionally be lost; this is harmless in practice
+ * when gradients are sparse. Otherwise, each parameter update is
+ * performed while holding one of {@code numLockStripes} locks, which
+ * guarantees that no updates are lost. In both cases, gradients may
+ * be computed from parameters that are partially updated by other
+ * workers.
+ * <p>
+ * The L2 penalty is applied only to parameters with a nonzero
+ * gradient, so that updates remain sparse. Parameters must be
+ * composed of {@code TensorSufficientStatistics}, and are converted to
+ * a dense representation before training.
+ *
+ * @author jayantk
+ */
+public class AsynchronousStochasticGradientTrainer implements GradientOptimizer {
+
+  private final long numIterations;
+  private final int batchSize;
+  private final int numWorkers;
+  private final int modelRefreshInterval;
+  private final int numLockStripes;
+
+  private final double stepSize;
+  private final boolean decayStepSize;
+  private final double l2Penalty;
+
+  private final LogFunction log;
+
+  private static final Counter SEARCH_ERRORS = Metrics.counter("async_sgd_search_errors");
+
+  /**
+   * Creates a new trainer.
+   *
+   * @param numIterations total number of parameter updates, summed
+   * across all workers.
+   * @param batchSize number of examples used to compute each update.
+   * @param stepSize
+   * @param decayStepSize if {@code true}, the step size of update
+   * {@code t} is {@code stepSize / sqrt(t + 2)}.
+   * @param l2Penalty
+   * @param numWorkers number of concurrent workers. This should not
+   * be larger than the number of threads of the current
+   * {@code MapReduceExecutor}.
+   * @param modelRefreshInterval number of updates each worker makes
+   * before re-instantiating its model from the shared parameters.
+   * @param numLockStripes number of locks used to guard parameter
+   * updates. If 0, updates are lock-free.
+   * @param log
+   */
+  public AsynchronousStochasticGradientTrainer(long numIterations, int batchSize,
+      double stepSize, boolean decayStepSize, double l2Penalty, int numWorkers,
+      int modelRefreshInterval, int numLockStripes, LogFunction log) {
+    Preconditions.checkArgument(numIterations >= 0);
+    Preconditions.checkArgument(batchSize > 0);
+    Preconditions.checkArgument(l2Penalty >= 0.0);
+    Preconditions.checkArgument(numWorkers > 0);
+    Preconditions.checkArgument(modelRefreshInterval > 0);
+    Preconditions.checkArgument(numLockStripes >= 0);
+    this.numIterations = numIterations;
+    this.batchSize = batchSize;
+    this.numWorkers = numWorkers;
+    this.modelRefreshInterval = modelRefreshInterval;
+    this.numLockStripes = numLockStripes;
+
+    this.stepSize = stepSize;
+    this.decayStepSize = decayStepSize;
+    this.l2Penalty = l2Penalty;
+
+    this.log = (log != null) ? log : new NullLogFunction();
+  }
+
+  @Override
+  public <M, E, T extends E> SufficientStatistics train(GradientOracle<M, E> oracle,
+      SufficientStatistics initialParameters, Iterable<T> trainingData) {
+    List<T> trainingDataList = ImmutableList.copyOf(trainingData);
+    Preconditions.checkArgument(trainingDataList.size() > 0);
+
+    // Dense parameters are updated in place, so concurrent updates
+    // never change the structure of the parameter vector.
+    initialParameters.makeDense();
+    List<TensorSufficientStatistics> parameterBlocks = SparseGradientOracle
+        .getTensorBlocks(initialParameters);
+
+    Object[] locks = new Object[numLockStripes];
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+
+    List<Integer> workerIds = Lists.newArrayList();
+    for (int i = 0; i < numWorkers; i++) {
+      workerIds.add(i);
+    }
+
+    AtomicLong nextIteration = new AtomicLong(0);
+    AtomicLong searchErrors = new AtomicLong(0);
+    MapReduceExecutor executor = MapReduceConfiguration.getMapReduceExecutor();
+    List<Double> objectiveValues = executor.map(workerIds, new WorkerMapper<M, E, T>(oracle,
+        initialParameters, parameterBlocks, trainingDataList, nextIteration, searchErrors, locks));
+
+    double objectiveValue = 0.0;
+    for (Double workerObjectiveValue : objectiveValues) {
+      objectiveValue += workerObjectiveValue;
+    }
+    if (numIterations > 0) {
+      log.logStatistic(numIterations - 1, "objective value (avg.)",
+          objectiveValue / (numIterations * batchSize));
+      log.logStatistic(numIterations - 1, "search errors", searchErrors.get());
+    }
+    return initialParameters;
+  }
+
+  /**
+   * Applies the nonzero entries of {@code gradient} to
+   * {@code parameterBlocks}. The entries are written directly into
+   * each block's builder, and each modified block is marked modified
+   * once, so that workers do not repeatedly write the block's shared
+   * version number.
+   */
+  void applyUpdate(List<TensorSufficientStatistics> gradientBlocks,
+      List<TensorSufficientStatistics> parameterBlocks, double currentStepSize, Object[] locks) {
+    double decay = 1.0 - (currentStepSize * l2Penalty);
+    for (int i = 0; i < gradientBlocks.size(); i++) {
+      Tensor gradientTensor = gradientBlocks.get(i).get();
+      TensorSufficientStatistics block = parameterBlocks.get(i);
+      TensorBuilder builder = block.getDenseBuilder();
+      Tensor blockTensor = builder.buildNoCopy();
+
+      boolean modified = false;
+      int size = gradientTensor.size();
+      for (int j = 0; j < size; j++) {
+        double gradientValue = gradientTensor.getByIndex(j);
+        if (gradientValue == 0.0) {
+          continue;
+        }
+        long keyNum = gradientTensor.indexToKeyNum(j);
+        int index = blockTensor.keyNumToIndex(keyNum);
+        if (locks.length == 0) {
+          double oldValue = blockTensor.getByIndex(index);
+          double newValue = (oldValue * decay) + (currentStepSize * gradientValue);
+          builder.incrementEntryByKeyNum(newValue - oldValue, keyNum);
+        } else {
+          Object lock = locks[(int) ((keyNum + i) % locks.length)];
+          synchronized (lock) {
+            double oldValue = blockTensor.getByIndex(index);
+            double newValue = (oldValue * decay) + (currentStepSize * gradientValue);
+            builder.incrementEntryByKeyNum(newValue - oldValue, keyNum);
+          }
+        }
+        modified = true;
+      }
+
+      if (modified) {
+        block.markModified();
+      }
+    }
+  }
+
+  /**
+   * Runs a single worker, which repeatedly claims an iteration,
+   * computes a gradient on that iteration's examples and updates
+   * the shared parameters, until all iterations have been claimed.
+   * Returns the sum of the objective values of the processed
+   * examples.
+   */
+  private class WorkerMapper<M, E, T extends E> extends Mapper<Integer, Double> {
+    private final GradientOracle<M, E> oracle;
+    private final SufficientStatistics parameters;
+    private final List<TensorSufficientStatistics> parameterBlocks;
+    private final List<T> trainingData;
+    private final AtomicLong nextIteration;
+    private final AtomicLong searchErrors;
+    private final Object[] locks;
+
+    public WorkerMapper(GradientOracle<M, E> oracle, SufficientStatistics parameters,
+        List<TensorSufficientStatistics> parameterBlocks, List<T> trainingData,
+        AtomicLong nextIteration, AtomicLong searchErrors, Object[] locks) {
+      this.oracle = oracle;
+      this.parameters = parameters;
+      this.parameterBlocks = parameterBlocks;
+      this.trainingData = trainingData;
+      this.nextIteration = nextIteration;
+      this.searchErrors = searchErrors;
+      this.locks = locks;
+    }
+
+    @Override
+    public Double map(Integer workerId) {
+      SufficientStatistics gradient = SparseGradientOracle.toSparseDelta(oracle.initializeGradient());
+      List<TensorSufficientStatistics> gradientBlocks = SparseGradientOracle.getTensorBlocks(gradient);
+      Preconditions.checkArgument(gradientBlocks.size() == parameterBlocks.size());
+
+      M model = null;
+      int updatesSinceRefresh = 0;
+      double objectiveValue = 0.0;
+      long iteration;
+      while ((iteration = nextIteration.getAndIncrement()) < numIterations) {
+        if (model == null || updatesSinceRefresh >= modelRefreshInterval) {
+          log.startTimer("instantiate_model");
+          model = oracle.instantiateModel(parameters);
+          updatesSinceRefresh = 0;
+          log.stopTimer("instantiate_model");
+        }
+
+        log.startTimer("compute_gradient");
+        gradient.zeroOut();
+        long firstExample = iteration * batchSize;
+        for (int i = 0; i < batchSize; i++) {
+          T example = trainingData.get((int) ((firstExample + i) % trainingData.size()));
+          try {
+            objectiveValue += oracle.accumulateGradient(gradient, parameters, model, example, log);
+          } catch (ZeroProbabilityError e) {
+            // Skip the example, as in GradientReducer.
+            searchErrors.incrementAndGet();
+            SEARCH_ERRORS.increment();
+          }
+        }
+        if (batchSize > 1) {
+          gradient.multiply(1.0 / batchSize);
+        }
+        log.stopTimer("compute_gradient");
+
+        log.startTimer("parameter_update");
+        double currentStepSize = decayStepSize ? (stepSize / Math.sqrt(iteration + 2)) : stepSize;
+        applyUpdate(gradientBlocks, parameterBlocks, currentStepSize, locks);
+        updatesSinceRefresh++;
+        log.stopTimer("parameter_update");
+      }
+      return objectiveValue;
+    }
+  }
+}
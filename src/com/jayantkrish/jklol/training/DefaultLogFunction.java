@@ -1,12 +1,9 @@
 package com.jayantkrish.jklol.training;
 
 import java.io.File;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
@@ -131,14 +128,8 @@ public class DefaultLogFunction extends AbstractLogFunction {
 
   public void printTimeStatistics() {
     print("Elapsed time statistics:");
-
-    List<String> timers = Lists.newArrayList(getAllTimers());
-    Collections.sort(timers);
-    for (String timer : timers) {
-      double total = (double) getTimerElapsedTime(timer);
-      long invocations = getTimerInvocations(timer);
-      double average = total / invocations;
-      print(String.format("%s: %.3f sec (%.3f ms * %d)", timer, (total / 1000), average, invocations));
+    for (String line : getRegistry().getReport()) {
+      print(line);
     }
   }
 }
@@ -2,15 +2,28 @@ package com.jayantkrish.jklol.training;
 
 import com.google.common.base.Preconditions;
 import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.metrics.Timer;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
-import com.jayantkrish.jklol.parallel.Reducer;
+import com.jayantkrish.jklol.parallel.AccumulatorPool;
+import com.jayantkrish.jklol.parallel.PooledReducer;
 
 /**
  * Reducer for accumulating gradients from multiple examples.
+ * <p>
+ * If constructed with an {@code AccumulatorPool}, this reducer reuses
+ * a single gradient accumulator per worker thread across calls to the
+ * {@code MapReduceExecutor}, instead of allocating a new gradient for
+ * every batch. The pool should be reused across training iterations.
  * 
  * @author jayantk
  */
-public class GradientReducer<M, E> implements Reducer<E, GradientEvaluation> {
+public class GradientReducer<M, E> implements PooledReducer<E, GradientEvaluation> {
+
+  private static final Timer INITIALIZE_TIMER = Metrics.timer("mr_gradient_initialize");
+  private static final Timer MAP_TIMER = Metrics.timer("mr_gradient_map");
+  private static final Counter SEARCH_ERRORS = Metrics.counter("mr_gradient_search_errors");
 
   private final M instantiatedModel;
   private final SufficientStatistics instantiatedModelParameters;
@@ -18,25 +31,55 @@ public class GradientReducer<M, E> implements Reducer<E, GradientEvaluation> {
 
   private final LogFunction log;
 
+  private final AccumulatorPool<GradientEvaluation> accumulatorPool;
+
   public GradientReducer(M instantiatedModel, SufficientStatistics instantiatedModelParameters,
       GradientOracle<M, ? super E> oracle, LogFunction log) {
+    this(instantiatedModel, instantiatedModelParameters, oracle, log, null);
+  }
+
+  /**
+   * Creates a reducer that accumulates gradients into accumulators
+   * drawn from {@code accumulatorPool}. If {@code accumulatorPool} is
+   * {@code null}, a new gradient is allocated for every batch.
+   * 
+   * @param instantiatedModel
+   * @param instantiatedModelParameters
+   * @param oracle
+   * @param log
+   * @param accumulatorPool
+   */
+  public GradientReducer(M instantiatedModel, SufficientStatistics instantiatedModelParameters,
+      GradientOracle<M, ? super E> oracle, LogFunction log,
+      AccumulatorPool<GradientEvaluation> accumulatorPool) {
     this.instantiatedModel = Preconditions.checkNotNull(instantiatedModel);
     this.instantiatedModelParameters = Preconditions.checkNotNull(instantiatedModelParameters);
     this.oracle = Preconditions.checkNotNull(oracle);
     this.log = log;
+    this.accumulatorPool = accumulatorPool;
+  }
+
+  @Override
+  public AccumulatorPool<GradientEvaluation> getAccumulatorPool() {
+    return accumulatorPool;
+  }
+
+  @Override
+  public void zeroOut(GradientEvaluation accumulator) {
+    accumulator.zeroOut();
   }
 
   @Override
   public GradientEvaluation getInitialValue() {
-    log.startTimer("mr_gradient_initialize");
+    long start = INITIALIZE_TIMER.start();
     SufficientStatistics gradient = oracle.initializeGradient();
-    log.stopTimer("mr_gradient_initialize");
+    INITIALIZE_TIMER.stop(start);
     return new GradientEvaluation(gradient, 0.0, 0);
   }
 
   @Override
   public GradientEvaluation reduce(E item, GradientEvaluation accumulated) {
-    log.startTimer("mr_gradient_map");
+    long start = MAP_TIMER.start();
     double objective = 0.0;
     int searchErrors = 0;
     try {
@@ -45,10 +88,11 @@ public class GradientReducer<M, E> implements Reducer<E, GradientEvaluation> {
     } catch (ZeroProbabilityError e) {
       // Ignore the example, returning the zero vector.
       searchErrors = 1;
+      SEARCH_ERRORS.increment();
     }
     accumulated.incrementSearchErrors(searchErrors);
     accumulated.incrementObjectiveValue(objective);
-    log.stopTimer("mr_gradient_map");
+    MAP_TIMER.stop(start);
     return accumulated;
   }
 
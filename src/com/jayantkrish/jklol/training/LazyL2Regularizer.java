@@ -0,0 +1,219 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
+import com.jayantkrish.jklol.tensor.Tensor;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.Regularizer;
+
+/**
+ * An L2 regularization penalty that is applied lazily, i.e., only to
+ * the parameters with a nonzero gradient on each iteration. The
+ * regularization penalty multiplies every parameter by
+ * {@code (1 - stepSize * l2Penalty)} on every iteration; rather than
+ * touching every parameter, this regularizer tracks the cumulative
+ * product of these factors and applies the accumulated decay to a
+ * parameter the next time its gradient is nonzero. Parameter
+ * averaging is handled in the same fashion, using the cumulative sum
+ * of the decay products. The cost of an iteration is therefore
+ * proportional to the number of nonzero gradient entries, rather
+ * than the number of parameters.
+ * <p>
+ * Deferred updates are applied to all parameters every
+ * {@code flushInterval} iterations (and at the end of training), so
+ * parameters that have not been touched recently lag behind the
+ * exact regularized value by at most {@code flushInterval}
+ * iterations of decay. This regularizer is best paired with a sparse
+ * gradient representation (see {@link SparseGradientOracle}). It does
+ * not support Adagrad.
+ * <p>
+ * {@link #initialize} must be called before each training run.
+ * {@link StochasticGradientTrainer} does this automatically.
+ *
+ * @author jayantk
+ */
+public class LazyL2Regularizer implements Regularizer {
+
+  private final double l2Penalty;
+  private final int flushInterval;
+
+  // Decay products smaller than this are flushed to avoid underflow
+  // when dividing by them.
+  private static final double MIN_DECAY_PRODUCT = 1e-100;
+
+  // State for the current training run.
+  private SufficientStatistics parameters;
+  private List<TensorSufficientStatistics> parameterBlocks;
+  private List<TensorSufficientStatistics> averageBlocks;
+  private double averageWeight;
+
+  // The number of iterations since the last flush, and the
+  // iteration (since the last flush) at which each parameter was
+  // last brought up to date.
+  private int numUpdates;
+  private List<int[]> lastUpdated;
+
+  // decayProducts[k] is the product of the decay factors for
+  // iterations 1...k since the last flush, and decaySums[k] is
+  // the sum of decayProducts[1...k].
+  private double[] decayProducts;
+  private double[] decaySums;
+
+  public LazyL2Regularizer(double l2Penalty, int flushInterval) {
+    Preconditions.checkArgument(l2Penalty >= 0.0);
+    Preconditions.checkArgument(flushInterval > 0);
+    this.l2Penalty = l2Penalty;
+    this.flushInterval = flushInterval;
+  }
+
+  /**
+   * Prepares this regularizer to update {@code parameters} for
+   * {@code numIterations} iterations. If {@code averagedParameters}
+   * is non-null, it is also updated lazily by adding
+   * {@code parameters / numIterations} after each iteration.
+   * {@code parameters} and {@code averagedParameters} are converted
+   * to a dense representation.
+   *
+   * @param parameters
+   * @param averagedParameters
+   * @param numIterations
+   */
+  public void initialize(SufficientStatistics parameters,
+      SufficientStatistics averagedParameters, long numIterations) {
+    this.parameters = parameters;
+    parameters.makeDense();
+    this.parameterBlocks = SparseGradientOracle.getTensorBlocks(parameters);
+
+    if (averagedParameters != null) {
+      Preconditions.checkArgument(numIterations > 0);
+      averagedParameters.makeDense();
+      this.averageBlocks = SparseGradientOracle.getTensorBlocks(averagedParameters);
+      Preconditions.checkArgument(averageBlocks.size() == parameterBlocks.size());
+      this.averageWeight = 1.0 / numIterations;
+    } else {
+      this.averageBlocks = null;
+      this.averageWeight = 0.0;
+    }
+
+    this.lastUpdated = Lists.newArrayList();
+    for (TensorSufficientStatistics block : parameterBlocks) {
+      lastUpdated.add(new int[block.get().size()]);
+    }
+
+    this.numUpdates = 0;
+    this.decayProducts = new double[Math.min(flushInterval, 1024) + 1];
+    this.decaySums = new double[decayProducts.length];
+    decayProducts[0] = 1.0;
+    decaySums[0] = 0.0;
+  }
+
+  @Override
+  public void apply(SufficientStatistics gradient, SufficientStatistics currentParameters,
+      SufficientStatistics gradientSumSquares, double currentStepSize) {
+    Preconditions.checkArgument(gradientSumSquares == null);
+    Preconditions.checkState(parameters == currentParameters,
+        "LazyL2Regularizer must be initialized with the parameters being trained.");
+
+    int prev = numUpdates;
+    int cur = prev + 1;
+    ensureCapacity(cur + 1);
+    double decay = 1.0 - (currentStepSize * l2Penalty);
+    decayProducts[cur] = decayProducts[prev] * decay;
+    decaySums[cur] = decaySums[prev] + decayProducts[cur];
+
+    List<TensorSufficientStatistics> gradientBlocks = SparseGradientOracle.getTensorBlocks(gradient);
+    Preconditions.checkArgument(gradientBlocks.size() == parameterBlocks.size());
+    for (int i = 0; i < gradientBlocks.size(); i++) {
+      Tensor gradientTensor = gradientBlocks.get(i).get();
+      TensorSufficientStatistics block = parameterBlocks.get(i);
+      TensorSufficientStatistics averageBlock = averageBlocks != null ? averageBlocks.get(i) : null;
+      Tensor blockTensor = block.get();
+      int[] blockLastUpdated = lastUpdated.get(i);
+
+      int size = gradientTensor.size();
+      for (int j = 0; j < size; j++) {
+        double gradientValue = gradientTensor.getByIndex(j);
+        if (gradientValue == 0.0) {
+          continue;
+        }
+        long keyNum = gradientTensor.indexToKeyNum(j);
+        int index = blockTensor.keyNumToIndex(keyNum);
+        catchUp(block, blockTensor, averageBlock, blockLastUpdated, index, keyNum, prev);
+
+        double oldValue = blockTensor.getByIndex(index);
+        double newValue = (oldValue * decay) + (currentStepSize * gradientValue);
+        block.incrementFeatureByKeyNum(newValue - oldValue, keyNum);
+        if (averageBlock != null) {
+          averageBlock.incrementFeatureByKeyNum(newValue * averageWeight, keyNum);
+        }
+        blockLastUpdated[index] = cur;
+      }
+    }
+
+    numUpdates = cur;
+    if (numUpdates >= flushInterval || decayProducts[numUpdates] < MIN_DECAY_PRODUCT) {
+      flush();
+    }
+  }
+
+  /**
+   * Applies all deferred regularization and averaging updates, so
+   * that every parameter (and averaged parameter) reflects all
+   * iterations applied so far.
+   */
+  public void flush() {
+    Preconditions.checkState(parameters != null, "LazyL2Regularizer has not been initialized.");
+    for (int i = 0; i < parameterBlocks.size(); i++) {
+      TensorSufficientStatistics block = parameterBlocks.get(i);
+      TensorSufficientStatistics averageBlock = averageBlocks != null ? averageBlocks.get(i) : null;
+      Tensor blockTensor = block.get();
+      int[] blockLastUpdated = lastUpdated.get(i);
+      for (int j = 0; j < blockLastUpdated.length; j++) {
+        catchUp(block, blockTensor, averageBlock, blockLastUpdated, j,
+            blockTensor.indexToKeyNum(j), numUpdates);
+      }
+      Arrays.fill(blockLastUpdated, 0);
+    }
+
+    numUpdates = 0;
+    decayProducts[0] = 1.0;
+    decaySums[0] = 0.0;
+  }
+
+  /**
+   * Applies the decay (and averaging) updates for iterations
+   * {@code blockLastUpdated[index] + 1} through {@code target} to
+   * the parameter at {@code index}.
+   */
+  private void catchUp(TensorSufficientStatistics block, Tensor blockTensor,
+      TensorSufficientStatistics averageBlock, int[] blockLastUpdated, int index,
+      long keyNum, int target) {
+    int last = blockLastUpdated[index];
+    if (last == target) {
+      return;
+    }
+
+    double value = blockTensor.getByIndex(index);
+    if (value != 0.0) {
+      double scaledValue = value / decayProducts[last];
+      if (averageBlock != null) {
+        averageBlock.incrementFeatureByKeyNum(
+            scaledValue * (decaySums[target] - decaySums[last]) * averageWeight, keyNum);
+      }
+      block.multiplyFeatureByKeyNum(decayProducts[target] / decayProducts[last], keyNum);
+    }
+    blockLastUpdated[index] = target;
+  }
+
+  private void ensureCapacity(int length) {
+    if (decayProducts.length < length) {
+      int newLength = Math.max(length, decayProducts.length * 2);
+      decayProducts = Arrays.copyOf(decayProducts, newLength);
+      decaySums = Arrays.copyOf(decaySums, newLength);
+    }
+  }
+}
@@ -6,6 +6,7 @@ import java.util.List;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Lists;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.parallel.AccumulatorPool;
 import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
 import com.jayantkrish.jklol.parallel.MapReduceExecutor;
 import com.jayantkrish.jklol.parallel.Mappers;
@@ -106,14 +107,19 @@ public class Lbfgs implements GradientOptimizer {
 
     MapReduceExecutor executor = MapReduceConfiguration.getMapReduceExecutor();
     List<T> dataList = Lists.newArrayList(trainingData);
+    AccumulatorPool<GradientEvaluation> accumulatorPool = new AccumulatorPool<GradientEvaluation>();
     GradientEvaluation gradientEvaluation = null;
+    // The line search evaluates candidate steps into this accumulator,
+    // which is then swapped with gradientEvaluation. Reusing these two
+    // accumulators avoids allocating a gradient on every evaluation.
+    GradientEvaluation nextGradientEvaluation = null;
     for (int i = 0; i < maxIterations || maxIterations < 0; i++) {
       log.notifyIterationStart(i);
       log.logParameters(i, initialParameters);
 
       if (gradientEvaluation == null) {
         gradientEvaluation = evaluateGradient(currentParameters, dataList,
-            oracle, executor, log);
+            oracle, executor, accumulatorPool, null, log);
       }
       SufficientStatistics gradient = gradientEvaluation.getGradient();
       
@@ -206,12 +212,13 @@ public class Lbfgs implements GradientOptimizer {
           // nextParameters.increment(currentParameters, 1.0);
         // }
         nextParameters.increment(direction, -1.0 * stepSize);
-        gradientEvaluation = evaluateGradient(nextParameters, dataList, oracle, executor, log);
+        nextGradientEvaluation = evaluateGradient(nextParameters, dataList, oracle, executor,
+            accumulatorPool, nextGradientEvaluation, log);
 
         // Check the Wolfe conditions to ensure sufficient descent.
-        nextObjectiveValue = gradientEvaluation.getObjectiveValue();
+        nextObjectiveValue = nextGradientEvaluation.getObjectiveValue();
         curInnerProd = gradient.innerProduct(direction);
-        SufficientStatistics nextGradient = gradientEvaluation.getGradient();
+        SufficientStatistics nextGradient = nextGradientEvaluation.getGradient();
         nextInnerProd = nextGradient.innerProduct(direction);
 
         cond1Rhs = currentObjectiveValue - (WOLFE_CONDITION_C1 * stepSize * curInnerProd);
@@ -227,6 +234,9 @@ public class Lbfgs implements GradientOptimizer {
             currentParameters, direction, stepSize, i);
       }
       currentParameters = nextParameters;
+      GradientEvaluation previousGradientEvaluation = gradientEvaluation;
+      gradientEvaluation = nextGradientEvaluation;
+      nextGradientEvaluation = previousGradientEvaluation;
 
       log.notifyIterationEnd(i);
     }
@@ -235,6 +245,7 @@ public class Lbfgs implements GradientOptimizer {
 
   private <M, E, T extends E> GradientEvaluation evaluateGradient(SufficientStatistics parameters,
       List<T> dataList, GradientOracle<M, E> oracle, MapReduceExecutor executor,
+      AccumulatorPool<GradientEvaluation> accumulatorPool, GradientEvaluation accumulator,
       LogFunction log) {
     // Create the factor graph (or whatever else) from the parameter
     // vector.
@@ -246,8 +257,12 @@ public class Lbfgs implements GradientOptimizer {
     // set. Note that this computation does not include the added
     // regularization term.
     log.startTimer("compute_gradient_(serial)");
+    if (accumulator != null) {
+      accumulator.zeroOut();
+    }
     GradientEvaluation evaluation = executor.mapReduce(dataList,
-        Mappers.<T>identity(), new GradientReducer<M, T>(nextModel, parameters, oracle, log));
+        Mappers.<T>identity(), new GradientReducer<M, T>(nextModel, parameters, oracle, log,
+            accumulatorPool), accumulator);
     log.stopTimer("compute_gradient_(serial)");
 
     // Normalize the objective term, then apply regularization
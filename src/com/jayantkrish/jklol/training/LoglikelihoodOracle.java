@@ -5,6 +5,8 @@ import com.jayantkrish.jklol.evaluation.Example;
 import com.jayantkrish.jklol.inference.MarginalCalculator;
 import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
 import com.jayantkrish.jklol.inference.MarginalSet;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.metrics.Timer;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.models.dynamic.DynamicAssignment;
 import com.jayantkrish.jklol.models.dynamic.DynamicFactorGraph;
@@ -25,6 +27,21 @@ import com.jayantkrish.jklol.util.Assignment;
 public class LoglikelihoodOracle implements GradientOracle<DynamicFactorGraph, 
 Example<DynamicAssignment, DynamicAssignment>> {
 
+  private static final Timer GET_FACTOR_GRAPH_FROM_ASSIGNMENT_TIMER =
+      Metrics.timer("update_gradient/get_factor_graph_from_assignment");
+  private static final Timer GET_FACTOR_GRAPH_TIMER =
+      Metrics.timer("update_gradient/get_factor_graph");
+  private static final Timer TO_ASSIGNMENT_TIMER =
+      Metrics.timer("update_gradient/get_factor_graph_to_assignment");
+  private static final Timer CONDITION_TIMER =
+      Metrics.timer("update_gradient/condition");
+  private static final Timer INPUT_MARGINAL_TIMER =
+      Metrics.timer("update_gradient/input_marginal");
+  private static final Timer OUTPUT_MARGINAL_TIMER =
+      Metrics.timer("update_gradient/output_marginal");
+  private static final Timer INCREMENT_TIMER =
+      Metrics.timer("update_gradient/increment");
+
   private final ParametricFactorGraph family;
   private final MarginalCalculator marginalCalculator;
 
@@ -48,33 +65,33 @@ Example<DynamicAssignment, DynamicAssignment>> {
       SufficientStatistics currentParameters, DynamicFactorGraph dynamicFactorGraph,
       Example<DynamicAssignment, DynamicAssignment> dynamicExample, LogFunction log) {
     // Instantiate any replicated factors, etc.
-    log.startTimer("update_gradient/get_factor_graph_from_assignment");
-    log.startTimer("update_gradient/get_factor_graph");
+    long totalStart = GET_FACTOR_GRAPH_FROM_ASSIGNMENT_TIMER.start();
+    long start = GET_FACTOR_GRAPH_TIMER.start();
     FactorGraph factorGraph = dynamicFactorGraph.getFactorGraph(dynamicExample.getInput());
-    log.stopTimer("update_gradient/get_factor_graph");
+    GET_FACTOR_GRAPH_TIMER.stop(start);
 
-    log.startTimer("update_gradient/get_factor_graph_to_assignment");
+    start = TO_ASSIGNMENT_TIMER.start();
     Assignment input = dynamicFactorGraph.getVariables().toAssignment(dynamicExample.getInput());
     Assignment observed = dynamicFactorGraph.getVariables().toAssignment(
         dynamicExample.getOutput().union(dynamicExample.getInput()));
-    log.stopTimer("update_gradient/get_factor_graph_to_assignment");
+    TO_ASSIGNMENT_TIMER.stop(start);
 
-    log.stopTimer("update_gradient/get_factor_graph_from_assignment");
+    GET_FACTOR_GRAPH_FROM_ASSIGNMENT_TIMER.stop(totalStart);
     log.log(input, factorGraph);
     log.log(observed, factorGraph);
 
-    log.startTimer("update_gradient/condition");
+    start = CONDITION_TIMER.start();
     // Compute the second term of the gradient, the unconditional expected
     // feature counts
     FactorGraph inputFactorGraph = factorGraph.conditional(input);
-    log.stopTimer("update_gradient/condition");
-    log.startTimer("update_gradient/input_marginal");
+    CONDITION_TIMER.stop(start);
+    start = INPUT_MARGINAL_TIMER.start();
     // System.out.println("input factor graph:");
     // System.out.println(inputFactorGraph.getParameterDescription());
     MarginalSet inputMarginals = marginalCalculator.computeMarginals(inputFactorGraph);
-    log.stopTimer("update_gradient/input_marginal");
+    INPUT_MARGINAL_TIMER.stop(start);
 
-    log.startTimer("update_gradient/output_marginal");
+    start = OUTPUT_MARGINAL_TIMER.start();
     // Compute the first term of the gradient, the model expectations
     // conditioned on the training example.
     FactorGraph outputFactorGraph = inputFactorGraph.conditional(observed
@@ -82,7 +99,7 @@ Example<DynamicAssignment, DynamicAssignment>> {
     // System.out.println("output factor graph:");
     // System.out.println(outputFactorGraph.getParameterDescription());
     MarginalSet outputMarginals = marginalCalculator.computeMarginals(outputFactorGraph);
-    log.stopTimer("update_gradient/output_marginal");
+    OUTPUT_MARGINAL_TIMER.stop(start);
 
     double inputLogPartitionFunction = inputMarginals.getLogPartitionFunction();
     double outputLogPartitionFunction = outputMarginals.getLogPartitionFunction();
@@ -98,7 +115,7 @@ Example<DynamicAssignment, DynamicAssignment>> {
     // Perform the gradient update. Note that this occurs after both marginal
     // calculations, since the marginal calculations may throw ZeroProbabilityErrors
     // (if inference in the graphical model fails.)
-    log.startTimer("update_gradient/increment");
+    start = INCREMENT_TIMER.start();
     family.incrementSufficientStatistics(gradient, currentParameters, inputMarginals, -1.0);
     // System.out.println("=== input marginals ===");
     // System.out.println(inputMarginals);
@@ -108,7 +125,7 @@ Example<DynamicAssignment, DynamicAssignment>> {
     // System.out.println("=== output marginals ===");
     // System.out.println(outputMarginals);
     // System.out.println(gradient);
-    log.stopTimer("update_gradient/increment");
+    INCREMENT_TIMER.stop(start);
 
     return outputLogPartitionFunction - inputLogPartitionFunction;
   }
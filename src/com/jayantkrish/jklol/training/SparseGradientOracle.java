@@ -0,0 +1,113 @@
+package com.jayantkrish.jklol.training;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.models.parametric.ListSufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
+
+/**
+ * Adapts a {@code GradientOracle} to accumulate gradients in a sparse
+ * representation. Per-example gradients typically touch only a small
+ * fraction of the model's features; this oracle replaces each
+ * {@code TensorSufficientStatistics} in the gradient with a sparse
+ * delta (see {@link TensorSufficientStatistics#createSparseDelta}),
+ * so that accumulating, zeroing out, and applying the gradient costs
+ * time proportional to the number of active features instead of the
+ * number of parameters.
+ * <p>
+ * Only {@link #initializeGradient()} is affected; model instantiation
+ * and gradient computation are delegated to the wrapped oracle. Initial
+ * parameters for training should be created using the wrapped oracle,
+ * as the sparse representation is not suitable for parameter vectors.
+ * {@link StochasticGradientTrainer} applies this wrapper to any oracle
+ * when constructed with {@code sparseGradients} (the
+ * {@code --sparseGradients} command line option).
+ * 
+ * @author jayantk
+ * @param <M> model type
+ * @param <E> example type
+ */
+public class SparseGradientOracle<M, E> implements GradientOracle<M, E> {
+
+  private final GradientOracle<M, E> oracle;
+
+  public SparseGradientOracle(GradientOracle<M, E> oracle) {
+    this.oracle = Preconditions.checkNotNull(oracle);
+  }
+
+  /**
+   * Gets a sparse, all-zero vector with the same structure as
+   * {@code statistics}. Any {@code TensorSufficientStatistics}
+   * (including those nested inside {@code ListSufficientStatistics})
+   * are replaced by sparse deltas; other types of statistics are
+   * duplicated and zeroed out.
+   * 
+   * @param statistics
+   * @return
+   */
+  public static SufficientStatistics toSparseDelta(SufficientStatistics statistics) {
+    if (statistics instanceof TensorSufficientStatistics) {
+      return TensorSufficientStatistics.createSparseDelta(
+          ((TensorSufficientStatistics) statistics).getStatisticNames());
+    } else if (statistics instanceof ListSufficientStatistics) {
+      ListSufficientStatistics list = (ListSufficientStatistics) statistics;
+      List<SufficientStatistics> sparseStatistics = Lists.newArrayList();
+      for (SufficientStatistics statistic : list.getStatistics()) {
+        sparseStatistics.add(toSparseDelta(statistic));
+      }
+      return new ListSufficientStatistics(list.getStatisticNames(), sparseStatistics);
+    } else {
+      SufficientStatistics zero = statistics.duplicate();
+      zero.zeroOut();
+      return zero;
+    }
+  }
+
+  /**
+   * Gets the {@code TensorSufficientStatistics} contained in
+   * {@code statistics}, in order, flattening any nested
+   * {@code ListSufficientStatistics}. Throws an
+   * {@code IllegalArgumentException} if {@code statistics} contains
+   * any other type of statistics.
+   * 
+   * @param statistics
+   * @return
+   */
+  static List<TensorSufficientStatistics> getTensorBlocks(SufficientStatistics statistics) {
+    List<TensorSufficientStatistics> blocks = Lists.newArrayList();
+    addTensorBlocks(statistics, blocks);
+    return blocks;
+  }
+
+  private static void addTensorBlocks(SufficientStatistics statistics,
+      List<TensorSufficientStatistics> blocks) {
+    if (statistics instanceof TensorSufficientStatistics) {
+      blocks.add((TensorSufficientStatistics) statistics);
+    } else if (statistics instanceof ListSufficientStatistics) {
+      for (SufficientStatistics child : ((ListSufficientStatistics) statistics).getStatistics()) {
+        addTensorBlocks(child, blocks);
+      }
+    } else {
+      throw new IllegalArgumentException("Unsupported type of statistics: " + statistics);
+    }
+  }
+
+  @Override
+  public SufficientStatistics initializeGradient() {
+    return toSparseDelta(oracle.initializeGradient());
+  }
+
+  @Override
+  public M instantiateModel(SufficientStatistics parameters) {
+    return oracle.instantiateModel(parameters);
+  }
+
+  @Override
+  public double accumulateGradient(SufficientStatistics gradient,
+      SufficientStatistics currentParameters, M instantiatedModel, E example, LogFunction log) {
+    return oracle.accumulateGradient(gradient, currentParameters, instantiatedModel, example, log);
+  }
+}
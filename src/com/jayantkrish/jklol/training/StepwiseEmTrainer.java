@@ -10,6 +10,7 @@ import com.jayantkrish.jklol.models.dynamic.DynamicAssignment;
 import com.jayantkrish.jklol.models.dynamic.DynamicFactorGraph;
 import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.parallel.AccumulatorPool;
 import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
 
 /**
@@ -81,6 +82,12 @@ public class StepwiseEmTrainer extends AbstractTrainer
     int numUpdates = 0;
 
     Collections.shuffle(trainingDataList);
+    // Reuse the per-thread statistics accumulators across batches.
+    AccumulatorPool<SufficientStatisticsBatch> accumulatorPool =
+        new AccumulatorPool<SufficientStatisticsBatch>();
+    // The statistics of each batch are combined into this accumulator,
+    // which is reused across batches.
+    SufficientStatisticsBatch result = null;
 
     for (int i = 0; i < numIterations; i++) {
       log.notifyIterationStart(i);
@@ -92,10 +99,13 @@ public class StepwiseEmTrainer extends AbstractTrainer
 
         // Calculate the sufficient statistics for batch.
         DynamicFactorGraph factorGraph = bn.getModelFromParameters(initialParameters);
-        SufficientStatisticsBatch result = MapReduceConfiguration.getMapReduceExecutor()
+        if (result != null) {
+          result.zeroOut();
+        }
+        result = MapReduceConfiguration.getMapReduceExecutor()
             .mapReduce(batch,
                 new SufficientStatisticsMapper(factorGraph, marginalCalculator, log),
-                new SufficientStatisticsReducer(bn, initialParameters));
+                new SufficientStatisticsReducer(bn, initialParameters, accumulatorPool), result);
         SufficientStatistics batchStatistics = result.getStatistics();
         log.logStatistic(i, "average loglikelihood",
             result.getLoglikelihood() / result.getNumExamples());
@@ -2,11 +2,20 @@ package com.jayantkrish.jklol.training;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.parallel.AccumulatorPool;
 import com.jayantkrish.jklol.parallel.MapReduceConfiguration;
 import com.jayantkrish.jklol.parallel.MapReduceExecutor;
 import com.jayantkrish.jklol.parallel.Mapper;
@@ -35,6 +44,14 @@ public class StochasticGradientTrainer implements GradientOptimizer {
   // Gradients are clipped to at most maxGradientNorm 
   private final double maxGradientNorm;
 
+  // If true, the model for each iteration is instantiated in the
+  // background during the previous iteration.
+  private final boolean pipelineInstantiation;
+
+  // If true, gradients are accumulated in a sparse representation
+  // (see SparseGradientOracle).
+  private final boolean sparseGradients;
+
   // Factor used to discount earlier observations in the moving average
   // estimates of the gradient norm and objective value. Smaller values
   // forget history faster.
@@ -64,6 +81,8 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     this.adaGrad = false;
     this.maxGradientNorm = maxGradientNorm;
     this.regularizer = new StochasticL2Regularizer(0.0, 0.0);
+    this.pipelineInstantiation = false;
+    this.sparseGradients = false;
   }
   
   /**
@@ -82,6 +101,64 @@ public class StochasticGradientTrainer implements GradientOptimizer {
   public StochasticGradientTrainer(long numIterations, int batchSize,
       double stepSize, boolean decayStepSize, boolean returnAveragedParameters, boolean adaGrad,
       double maxGradientNorm, Regularizer regularizer, LogFunction log) {
+    this(numIterations, batchSize, stepSize, decayStepSize, returnAveragedParameters, adaGrad,
+        maxGradientNorm, regularizer, false, log);
+  }
+
+  /**
+   * Regularized stochastic gradient descent, using {@code regularizer}.
+   * If {@code pipelineInstantiation} is {@code true}, the model for each
+   * iteration is instantiated on a background thread while the gradient
+   * for the previous iteration is computed. In this case, the gradient
+   * of each iteration is computed using the parameters from before the
+   * previous iteration's update, i.e., gradients are delayed by one
+   * iteration.
+   * 
+   * @param numIterations
+   * @param batchSize
+   * @param stepSize
+   * @param decayStepSize
+   * @param returnAveragedParameters
+   * @param adaGrad
+   * @param maxGradientNorm
+   * @param regularizer
+   * @param pipelineInstantiation
+   * @param log
+   */
+  public StochasticGradientTrainer(long numIterations, int batchSize,
+      double stepSize, boolean decayStepSize, boolean returnAveragedParameters, boolean adaGrad,
+      double maxGradientNorm, Regularizer regularizer, boolean pipelineInstantiation,
+      LogFunction log) {
+    this(numIterations, batchSize, stepSize, decayStepSize, returnAveragedParameters, adaGrad,
+        maxGradientNorm, regularizer, pipelineInstantiation, false, log);
+  }
+
+  /**
+   * Regularized stochastic gradient descent, using {@code regularizer}.
+   * If {@code sparseGradients} is {@code true}, the oracle passed to
+   * {@link #train} is wrapped in a {@link SparseGradientOracle}, so
+   * that gradients are accumulated in a sparse representation. This
+   * reduces the cost of each iteration when gradients touch only a
+   * small fraction of the parameters, especially with
+   * {@link LazyL2Regularizer}. See the other constructors for the
+   * remaining arguments.
+   * 
+   * @param numIterations
+   * @param batchSize
+   * @param stepSize
+   * @param decayStepSize
+   * @param returnAveragedParameters
+   * @param adaGrad
+   * @param maxGradientNorm
+   * @param regularizer
+   * @param pipelineInstantiation
+   * @param sparseGradients
+   * @param log
+   */
+  public StochasticGradientTrainer(long numIterations, int batchSize,
+      double stepSize, boolean decayStepSize, boolean returnAveragedParameters, boolean adaGrad,
+      double maxGradientNorm, Regularizer regularizer, boolean pipelineInstantiation,
+      boolean sparseGradients, LogFunction log) {
     this.numIterations = numIterations;
     this.batchSize = batchSize;
     this.log = (log != null) ? log : new NullLogFunction();
@@ -92,6 +169,8 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     this.adaGrad = adaGrad;
     this.maxGradientNorm = maxGradientNorm;
     this.regularizer = regularizer;
+    this.pipelineInstantiation = pipelineInstantiation;
+    this.sparseGradients = sparseGradients;
   }
 
   public static StochasticGradientTrainer createWithL2Regularization(long numIterations, int batchSize,
@@ -124,9 +203,27 @@ public class StochasticGradientTrainer implements GradientOptimizer {
         returnAveragedParameters, false, maxGradientNorm, new L1Regularizer(l1Penalty), log);
   }
 
+  /**
+   * Stochastic gradient descent with an L2 penalty that is applied
+   * lazily, only to the parameters with a nonzero gradient on each
+   * iteration. Deferred regularization is applied to all parameters
+   * every {@code flushInterval} iterations. See
+   * {@link LazyL2Regularizer}.
+   */
+  public static StochasticGradientTrainer createWithLazyL2Regularization(long numIterations,
+      int batchSize, double stepSize, boolean decayStepSize, boolean returnAveragedParameters,
+      double maxGradientNorm, double l2Penalty, int flushInterval, LogFunction log) {
+    return new StochasticGradientTrainer(numIterations, batchSize, stepSize, decayStepSize,
+        returnAveragedParameters, false, maxGradientNorm,
+        new LazyL2Regularizer(l2Penalty, flushInterval), log);
+  }
+
   @Override
   public <M, E, T extends E> SufficientStatistics train(GradientOracle<M, E> oracle,
       SufficientStatistics initialParameters, Iterable<T> trainingData) {
+    if (sparseGradients) {
+      oracle = new SparseGradientOracle<M, E>(oracle);
+    }
 
     // cycledTrainingData loops indefinitely over the elements of trainingData.
     // This is desirable because we want batchSize examples but don't
@@ -135,97 +232,131 @@ public class StochasticGradientTrainer implements GradientOptimizer {
 
     MapReduceExecutor executor = MapReduceConfiguration.getMapReduceExecutor();
 
+    // These vectors are initialized from the parameters rather than
+    // the oracle, as the oracle may use a sparse gradient
+    // representation (see SparseGradientOracle).
     SufficientStatistics averagedParameters = null;
     if (returnAveragedParameters) {
       // Compute the average of the parameter values from each iteration  
       // by tracking the sum of the parameters, then dividing.
-      averagedParameters = oracle.initializeGradient();
-      averagedParameters.increment(initialParameters, 1.0);
+      averagedParameters = initialParameters.duplicate();
     }
     
     SufficientStatistics gradientSumSquares = null;
     if (adaGrad) {
-      gradientSumSquares = oracle.initializeGradient();
+      gradientSumSquares = initialParameters.duplicate();
+      gradientSumSquares.zeroOut();
+    }
+
+    // The lazy regularizer also maintains the averaged parameters,
+    // since it defers updates to parameters that are not touched by
+    // the gradient.
+    LazyL2Regularizer lazyRegularizer = null;
+    if (regularizer instanceof LazyL2Regularizer) {
+      Preconditions.checkState(!adaGrad, "Lazy regularization does not support adagrad.");
+      lazyRegularizer = (LazyL2Regularizer) regularizer;
+      lazyRegularizer.initialize(initialParameters, averagedParameters, numIterations);
     }
 
     double gradientL2 = 0.0;
     GradientEvaluation gradientAccumulator = null;
+    // Per-thread gradient accumulators, which are reused across iterations.
+    AccumulatorPool<GradientEvaluation> accumulatorPool = new AccumulatorPool<GradientEvaluation>();
     // This is an attempt at estimating how much the parameters are still
     // changing.
     double exponentiallyWeightedUpdateNorm = 0.0;
     double exponentiallyWeightedObjectiveValue = 0.0;
     double exponentiallyWeightedDenom = 0.0;
     int totalSearchErrors = 0;
-    for (long i = 0; i < numIterations; i++) {
-      log.notifyIterationStart(i);
-      log.startTimer("serialize_parameters");
-      log.logParameters(i, initialParameters);
-      log.stopTimer("serialize_parameters");
-
-      // Get the examples for this batch. Ideally, this would be a random
-      // sample; however, deterministically iterating over the examples is
-      // more efficient and is fairly close if the examples are provided in
-      // random order.
-      log.startTimer("instantiate_model");
-      List<T> batchData = getBatch(cycledTrainingData, batchSize);
-      M currentModel = oracle.instantiateModel(initialParameters);
-      log.stopTimer("instantiate_model");
-
-      log.startTimer("compute_gradient_(serial)");
-      Mapper<T, T> mapper = Mappers.<T>identity();
-      GradientReducer<M, T> reducer = new GradientReducer<M, T>(currentModel, initialParameters,
-          oracle, log);
-      gradientAccumulator = executor.mapReduce(batchData, mapper, reducer, gradientAccumulator);
-
-      totalSearchErrors += gradientAccumulator.getSearchErrors();
-      SufficientStatistics gradient = gradientAccumulator.getGradient();
-      if (batchSize > 1) {
-        gradient.multiply(1.0 / batchSize);
-      }
-      log.stopTimer("compute_gradient_(serial)");
-
-      log.startTimer("parameter_update");
-      // Apply regularization and take a gradient step.
-      double currentStepSize = decayStepSize ? (stepSize / Math.sqrt(i + 2)) : stepSize;
+    ModelPipeline<M> pipeline = pipelineInstantiation ? new ModelPipeline<M>(oracle, log) : null;
+    try {
+      for (long i = 0; i < numIterations; i++) {
+        log.notifyIterationStart(i);
+        log.startTimer("serialize_parameters");
+        log.logParameters(i, initialParameters);
+        log.stopTimer("serialize_parameters");
+
+        // Get the examples for this batch. Ideally, this would be a random
+        // sample; however, deterministically iterating over the examples is
+        // more efficient and is fairly close if the examples are provided in
+        // random order.
+        log.startTimer("instantiate_model");
+        List<T> batchData = getBatch(cycledTrainingData, batchSize);
+        M currentModel = null;
+        SufficientStatistics modelParameters = null;
+        if (pipeline == null) {
+          currentModel = oracle.instantiateModel(initialParameters);
+          modelParameters = initialParameters;
+        } else {
+          currentModel = pipeline.nextModel(initialParameters, i + 1 < numIterations);
+          modelParameters = pipeline.getModelParameters();
+        }
+        log.stopTimer("instantiate_model");
+
+        log.startTimer("compute_gradient_(serial)");
+        Mapper<T, T> mapper = Mappers.<T>identity();
+        GradientReducer<M, T> reducer = new GradientReducer<M, T>(currentModel, modelParameters,
+            oracle, log, accumulatorPool);
+        gradientAccumulator = executor.mapReduce(batchData, mapper, reducer, gradientAccumulator);
+
+        totalSearchErrors += gradientAccumulator.getSearchErrors();
+        SufficientStatistics gradient = gradientAccumulator.getGradient();
+        if (batchSize > 1) {
+          gradient.multiply(1.0 / batchSize);
+        }
+        log.stopTimer("compute_gradient_(serial)");
+
+        log.startTimer("parameter_update");
+        // Apply regularization and take a gradient step.
+        double currentStepSize = decayStepSize ? (stepSize / Math.sqrt(i + 2)) : stepSize;
       
-      // Clip gradient if necessary.
-      gradientL2 = gradient.getL2Norm();
-      if (gradientL2 * currentStepSize > maxGradientNorm) {
-        gradient.multiply(maxGradientNorm / (gradientL2 * currentStepSize));
-        gradientL2 = maxGradientNorm / currentStepSize;
-      }
+        // Clip gradient if necessary.
+        gradientL2 = gradient.getL2Norm();
+        if (gradientL2 * currentStepSize > maxGradientNorm) {
+          gradient.multiply(maxGradientNorm / (gradientL2 * currentStepSize));
+          gradientL2 = maxGradientNorm / currentStepSize;
+        }
       
-      regularizer.apply(gradient, initialParameters, gradientSumSquares, currentStepSize);
-
-      // System.out.println(initialParameters);
-      log.stopTimer("parameter_update");
-
-      log.startTimer("compute_statistics");
-      double objectiveValue = gradientAccumulator.getObjectiveValue() / batchSize;
-      exponentiallyWeightedUpdateNorm = gradientL2 
-          + (MOVING_AVG_DISCOUNT * exponentiallyWeightedUpdateNorm);
-      exponentiallyWeightedObjectiveValue = objectiveValue
-          + (MOVING_AVG_DISCOUNT * exponentiallyWeightedObjectiveValue);
-      exponentiallyWeightedDenom = 1 + (MOVING_AVG_DISCOUNT * exponentiallyWeightedDenom);
-      log.stopTimer("compute_statistics");
-
-      if (returnAveragedParameters) {
-        log.startTimer("average_parameters");
-        averagedParameters.increment(initialParameters, 1.0 / numIterations);
-        log.stopTimer("average_parameters");
+        regularizer.apply(gradient, initialParameters, gradientSumSquares, currentStepSize);
+
+        // System.out.println(initialParameters);
+        log.stopTimer("parameter_update");
+
+        log.startTimer("compute_statistics");
+        double objectiveValue = gradientAccumulator.getObjectiveValue() / batchSize;
+        exponentiallyWeightedUpdateNorm = gradientL2 
+            + (MOVING_AVG_DISCOUNT * exponentiallyWeightedUpdateNorm);
+        exponentiallyWeightedObjectiveValue = objectiveValue
+            + (MOVING_AVG_DISCOUNT * exponentiallyWeightedObjectiveValue);
+        exponentiallyWeightedDenom = 1 + (MOVING_AVG_DISCOUNT * exponentiallyWeightedDenom);
+        log.stopTimer("compute_statistics");
+
+        if (returnAveragedParameters && lazyRegularizer == null) {
+          log.startTimer("average_parameters");
+          averagedParameters.increment(initialParameters, 1.0 / numIterations);
+          log.stopTimer("average_parameters");
+        }
+
+        log.logStatistic(i, "search errors", totalSearchErrors);
+        log.logStatistic(i, "gradient l2 norm", gradientL2);
+        log.logStatistic(i, "step size", currentStepSize);
+        log.logStatistic(i, "objective value", objectiveValue);
+        log.logStatistic(i, "objective value (moving avg.)", exponentiallyWeightedObjectiveValue
+            / exponentiallyWeightedDenom);
+        log.logStatistic(i, "gradient l2 norm (moving avg.)", exponentiallyWeightedUpdateNorm
+            / exponentiallyWeightedDenom);
+
+        gradientAccumulator.zeroOut();
+        log.notifyIterationEnd(i);
+      }
+    } finally {
+      if (pipeline != null) {
+        pipeline.shutdown();
       }
+    }
 
-      log.logStatistic(i, "search errors", totalSearchErrors);
-      log.logStatistic(i, "gradient l2 norm", gradientL2);
-      log.logStatistic(i, "step size", currentStepSize);
-      log.logStatistic(i, "objective value", objectiveValue);
-      log.logStatistic(i, "objective value (moving avg.)", exponentiallyWeightedObjectiveValue
-          / exponentiallyWeightedDenom);
-      log.logStatistic(i, "gradient l2 norm (moving avg.)", exponentiallyWeightedUpdateNorm
-          / exponentiallyWeightedDenom);
-
-      gradientAccumulator.zeroOut();
-      log.notifyIterationEnd(i);
+    if (lazyRegularizer != null) {
+      lazyRegularizer.flush();
     }
 
     if (returnAveragedParameters) {
@@ -243,6 +374,94 @@ public class StochasticGradientTrainer implements GradientOptimizer {
     return batchData;
   }
 
+  /**
+   * Instantiates models on a background thread, so that model
+   * instantiation overlaps with gradient computation. The model
+   * returned for each iteration is instantiated from a copy of the
+   * parameters at the start of the previous iteration.
+   * 
+   * @param <M> model type
+   */
+  private static class ModelPipeline<M> {
+    private final GradientOracle<M, ?> oracle;
+    private final LogFunction log;
+    private final ExecutorService executor;
+
+    private Future<M> nextModel;
+    private SufficientStatistics nextModelParameters;
+    private SufficientStatistics modelParameters;
+
+    public ModelPipeline(GradientOracle<M, ?> oracle, LogFunction log) {
+      this.oracle = oracle;
+      this.log = log;
+      this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true).setNameFormat("model-pipeline-%d").build());
+    }
+
+    /**
+     * Gets the model to use for the current iteration and, if
+     * {@code hasNext}, starts instantiating the model for the next
+     * iteration from {@code currentParameters}.
+     * 
+     * @param currentParameters
+     * @param hasNext
+     * @return
+     */
+    public M nextModel(SufficientStatistics currentParameters, boolean hasNext) {
+      M model = null;
+      if (nextModel == null) {
+        // The first iteration has nothing to overlap with, so
+        // instantiate its model directly. The next iteration reuses
+        // this model.
+        modelParameters = currentParameters.duplicate();
+        model = oracle.instantiateModel(modelParameters);
+        nextModel = Futures.immediateFuture(model);
+        nextModelParameters = modelParameters;
+        return model;
+      }
+
+      try {
+        model = nextModel.get();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+      modelParameters = nextModelParameters;
+
+      if (hasNext) {
+        // Copy the parameters, as they are updated while the model
+        // is being instantiated.
+        final SufficientStatistics parameters = currentParameters.duplicate();
+        nextModelParameters = parameters;
+        nextModel = executor.submit(new Callable<M>() {
+          @Override
+          public M call() {
+            log.startTimer("instantiate_model_(background)");
+            M model = oracle.instantiateModel(parameters);
+            log.stopTimer("instantiate_model_(background)");
+            return model;
+          }
+        });
+      }
+      return model;
+    }
+
+    /**
+     * Gets the parameters of the model returned by the last call to
+     * {@link #nextModel}.
+     * 
+     * @return
+     */
+    public SufficientStatistics getModelParameters() {
+      return modelParameters;
+    }
+
+    public void shutdown() {
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * A regularization penalty applicable to gradients during gradient descent.
    * 
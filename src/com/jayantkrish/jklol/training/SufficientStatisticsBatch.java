@@ -54,6 +54,16 @@ public class SufficientStatisticsBatch {
     numExamples += other.numExamples;
   }
   
+  /**
+   * Resets {@code this} to contain no examples, zeroing out the
+   * statistics in place.
+   */
+  public void zeroOut() {
+    statistics.zeroOut();
+    loglikelihood = 0.0;
+    numExamples = 0;
+  }
+
   public void incrementLogLikelihood(double increment) {
     loglikelihood += increment;
   }
@@ -4,24 +4,45 @@ import com.google.common.base.Preconditions;
 import com.jayantkrish.jklol.inference.MarginalSet;
 import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
-import com.jayantkrish.jklol.parallel.Reducer;
+import com.jayantkrish.jklol.parallel.AccumulatorPool;
+import com.jayantkrish.jklol.parallel.PooledReducer;
 
 /**
  * Second half of a map-reduce pipeline for computing the sufficient statistics
  * of a batch of examples. This reducer adds up the sufficient statistics each
- * example.
+ * example. If constructed with an {@code AccumulatorPool}, the
+ * per-batch statistics are accumulated into reusable, pooled
+ * accumulators (see {@link PooledReducer}).
  * 
  * @author jayantk
  */
-public class SufficientStatisticsReducer implements Reducer<MarginalSet, SufficientStatisticsBatch> {
+public class SufficientStatisticsReducer implements PooledReducer<MarginalSet, SufficientStatisticsBatch> {
 
   private final ParametricFactorGraph parametricFactorGraph;
   private final SufficientStatistics currentParameters;
+  private final AccumulatorPool<SufficientStatisticsBatch> accumulatorPool;
 
   public SufficientStatisticsReducer(ParametricFactorGraph parametricFactorGraph,
       SufficientStatistics currentParameters) {
+    this(parametricFactorGraph, currentParameters, null);
+  }
+
+  public SufficientStatisticsReducer(ParametricFactorGraph parametricFactorGraph,
+      SufficientStatistics currentParameters,
+      AccumulatorPool<SufficientStatisticsBatch> accumulatorPool) {
     this.parametricFactorGraph = Preconditions.checkNotNull(parametricFactorGraph);
     this.currentParameters = Preconditions.checkNotNull(currentParameters);
+    this.accumulatorPool = accumulatorPool;
+  }
+
+  @Override
+  public AccumulatorPool<SufficientStatisticsBatch> getAccumulatorPool() {
+    return accumulatorPool;
+  }
+
+  @Override
+  public void zeroOut(SufficientStatisticsBatch accumulator) {
+    accumulator.zeroOut();
   }
 
   @Override
@@ -37,7 +58,8 @@ public class SufficientStatisticsReducer implements Reducer<MarginalSet, Suffici
     accumulator.incrementNumExamples(1);
     return accumulator;
   }
-  
+
+  @Override
   public SufficientStatisticsBatch combine(SufficientStatisticsBatch item, SufficientStatisticsBatch accumulated) {
     accumulated.increment(item);
     return accumulated;
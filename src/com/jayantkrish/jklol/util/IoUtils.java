@@ -155,7 +155,40 @@ public class IoUtils {
     }    
   }
 
+  /**
+   * Serializes {@code object} into {@code filename} using
+   * {@link MappedModelFormat}, which loads large models much faster
+   * than standard Java serialization. Files in this format can be read
+   * using {@link #readSerializedObject}.
+   * 
+   * @param object
+   * @param filename
+   */
+  public static void serializeObjectToMappedFile(Object object, String filename) {
+    try {
+      MappedModelFormat.write(object, filename);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Reads an object serialized by either {@link #serializeObjectToFile}
+   * or {@link #serializeObjectToMappedFile} from {@code filename}.
+   * 
+   * @param filename
+   * @param clazz
+   * @return
+   */
   public static <T> T readSerializedObject(String filename, Class<T> clazz) {
+    if (MappedModelFormat.isMappedModelFile(filename)) {
+      try {
+        return MappedModelFormat.read(filename, clazz);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
     // Read in the serialized model.
     T object = null;
     FileInputStream fis = null;
@@ -0,0 +1,567 @@
+package com.jayantkrish.jklol.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.MappedDenseTensor;
+import com.jayantkrish.jklol.tensor.MappedSparseTensor;
+import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
+
+/**
+ * Binary file format for large models, such as trained parsers. Models
+ * in this format are written with Java serialization, except that large
+ * tensors and primitive arrays (e.g., hash tables) are stored separately
+ * in a raw, aligned section of the file. When the model is read, this
+ * section is memory-mapped, and each large {@code SparseTensor} or
+ * {@code DenseTensor} is replaced by a read-only
+ * {@link MappedSparseTensor} or {@link MappedDenseTensor} that reads
+ * its keys and values directly from the mapped file. Reading a model
+ * therefore takes time proportional to the size of its object graph,
+ * not the number of parameters, and processes that load the same file
+ * share its pages. Other large primitive arrays are copied in bulk from
+ * the mapped section onto the heap.
+ * <p>
+ * File layout (little-endian):
+ * <pre>
+ * int magic, int version, int numArrays, long objectSectionLength
+ * numArrays * (byte arrayType, int arrayLength, long fileOffset)
+ * objectSectionLength bytes of Java serialization
+ * array data, each array aligned to 8 bytes
+ * </pre>
+ *
+ * @author jayantk
+ */
+public class MappedModelFormat {
+
+  private static final int MAGIC = 0x4A4B4D4D;
+  private static final int VERSION = 2;
+  // Version 1 files never contain TensorReferences, so they can be
+  // read by the current implementation.
+  private static final int MIN_READABLE_VERSION = 1;
+  private static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  // Primitive arrays with fewer elements than this are left in the
+  // Java serialization section.
+  private static final int MIN_EXTERNAL_ARRAY_LENGTH = 256;
+
+  private static final byte LONG_ARRAY = 0;
+  private static final byte DOUBLE_ARRAY = 1;
+  private static final byte INT_ARRAY = 2;
+
+  private static final int HEADER_SIZE = 4 + 4 + 4 + 8;
+  private static final int ARRAY_ENTRY_SIZE = 1 + 4 + 8;
+  // Maximum number of bytes buffered at once when writing or copying
+  // arrays that are too large to map.
+  private static final int CHUNK_SIZE = 1 << 26;
+  // Maximum number of bytes in a single mapping of the array section.
+  // Arrays larger than this are copied onto the heap.
+  private static final int MAX_REGION_SIZE = 1 << 30;
+
+  /**
+   * Writes {@code object} to {@code filename} in this format. All
+   * objects reachable from {@code object} must be serializable.
+   *
+   * @param object
+   * @param filename
+   * @throws IOException
+   */
+  public static void write(Object object, String filename) throws IOException {
+    ByteArrayOutputStream objectBytes = new ByteArrayOutputStream();
+    ArrayExternalizingOutputStream out = new ArrayExternalizingOutputStream(objectBytes);
+    out.writeObject(object);
+    out.close();
+    List<Object> arrays = out.getArrays();
+
+    long offset = align(HEADER_SIZE + ((long) ARRAY_ENTRY_SIZE * arrays.size()) + objectBytes.size());
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + ARRAY_ENTRY_SIZE * arrays.size());
+    header.order(BYTE_ORDER);
+    header.putInt(MAGIC).putInt(VERSION).putInt(arrays.size()).putLong(objectBytes.size());
+    for (Object array : arrays) {
+      int length = arrayLength(array);
+      header.put(arrayType(array)).putInt(length).putLong(offset);
+      offset = align(offset + ((long) length) * elementSize(arrayType(array)));
+    }
+    header.flip();
+
+    RandomAccessFile file = new RandomAccessFile(filename, "rw");
+    try {
+      file.setLength(0);
+      FileChannel channel = file.getChannel();
+      writeFully(channel, header);
+      writeFully(channel, ByteBuffer.wrap(objectBytes.toByteArray()));
+      for (Object array : arrays) {
+        channel.position(align(channel.position()));
+        writeArray(channel, array);
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Reads an object written by {@link #write} from {@code filename}.
+   *
+   * @param filename
+   * @param clazz
+   * @return
+   * @throws IOException
+   */
+  public static <T> T read(String filename, Class<T> clazz) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(filename, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(BYTE_ORDER);
+      readFully(channel, header, 0);
+      header.flip();
+      Preconditions.checkArgument(header.getInt() == MAGIC, "Not a mapped model file: %s", filename);
+      int version = header.getInt();
+      Preconditions.checkArgument(version >= MIN_READABLE_VERSION && version <= VERSION,
+          "Unsupported mapped model version: %s", version);
+      int numArrays = header.getInt();
+      long objectSectionLength = header.getLong();
+
+      ByteBuffer arrayEntries = ByteBuffer.allocate(ARRAY_ENTRY_SIZE * numArrays).order(BYTE_ORDER);
+      readFully(channel, arrayEntries, HEADER_SIZE);
+      arrayEntries.flip();
+      byte[] types = new byte[numArrays];
+      int[] lengths = new int[numArrays];
+      long[] offsets = new long[numArrays];
+      for (int i = 0; i < numArrays; i++) {
+        types[i] = arrayEntries.get();
+        lengths[i] = arrayEntries.getInt();
+        offsets[i] = arrayEntries.getLong();
+        if (types[i] != LONG_ARRAY && types[i] != DOUBLE_ARRAY && types[i] != INT_ARRAY) {
+          throw new IOException("Unknown array type: " + types[i]);
+        }
+      }
+      MappedArrays arrays = new MappedArrays(channel, types, lengths, offsets);
+
+      long objectSectionOffset = HEADER_SIZE + ((long) ARRAY_ENTRY_SIZE * numArrays);
+      Preconditions.checkArgument(objectSectionLength <= Integer.MAX_VALUE);
+      MappedByteBuffer objectSection = channel.map(MapMode.READ_ONLY, objectSectionOffset,
+          objectSectionLength);
+      ArrayResolvingInputStream in = new ArrayResolvingInputStream(
+          new ByteBufferInputStream(objectSection), arrays);
+      try {
+        return clazz.cast(in.readObject());
+      } catch (ClassNotFoundException e) {
+        throw new IOException(e);
+      } finally {
+        in.close();
+      }
+    } finally {
+      file.close();
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@code filename} begins with the header of
+   * this format.
+   *
+   * @param filename
+   * @return
+   */
+  public static boolean isMappedModelFile(String filename) {
+    File file = new File(filename);
+    if (!file.isFile() || file.length() < HEADER_SIZE) {
+      return false;
+    }
+
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(file));
+      try {
+        return Integer.reverseBytes(in.readInt()) == MAGIC;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static long align(long offset) {
+    return (offset + 7) & ~7L;
+  }
+
+  private static byte arrayType(Object array) {
+    if (array instanceof long[]) {
+      return LONG_ARRAY;
+    } else if (array instanceof double[]) {
+      return DOUBLE_ARRAY;
+    } else {
+      Preconditions.checkArgument(array instanceof int[]);
+      return INT_ARRAY;
+    }
+  }
+
+  private static int arrayLength(Object array) {
+    switch (arrayType(array)) {
+    case LONG_ARRAY: return ((long[]) array).length;
+    case DOUBLE_ARRAY: return ((double[]) array).length;
+    default: return ((int[]) array).length;
+    }
+  }
+
+  private static int elementSize(byte type) {
+    return type == INT_ARRAY ? 4 : 8;
+  }
+
+  private static void writeArray(FileChannel channel, Object array) throws IOException {
+    byte type = arrayType(array);
+    int length = arrayLength(array);
+    int elementsPerChunk = CHUNK_SIZE / elementSize(type);
+    ByteBuffer buffer = ByteBuffer.allocate(
+        Math.min(length, elementsPerChunk) * elementSize(type)).order(BYTE_ORDER);
+    for (int start = 0; start < length; start += elementsPerChunk) {
+      int chunkLength = Math.min(elementsPerChunk, length - start);
+      buffer.clear();
+      switch (type) {
+      case LONG_ARRAY:
+        buffer.asLongBuffer().put((long[]) array, start, chunkLength);
+        break;
+      case DOUBLE_ARRAY:
+        buffer.asDoubleBuffer().put((double[]) array, start, chunkLength);
+        break;
+      default:
+        buffer.asIntBuffer().put((int[]) array, start, chunkLength);
+      }
+      buffer.limit(chunkLength * elementSize(type));
+      writeFully(channel, buffer);
+    }
+  }
+
+  /**
+   * Copies an array from {@code channel} onto the heap, mapping at
+   * most {@code CHUNK_SIZE} bytes at a time.
+   */
+  private static Object readArray(FileChannel channel, byte type, int length, long offset)
+      throws IOException {
+    Object array = newArray(type, length);
+    int elementsPerChunk = CHUNK_SIZE / elementSize(type);
+    for (int start = 0; start < length; start += elementsPerChunk) {
+      int chunkLength = Math.min(elementsPerChunk, length - start);
+      ByteBuffer mapped = channel.map(MapMode.READ_ONLY,
+          offset + ((long) start) * elementSize(type), ((long) chunkLength) * elementSize(type));
+      mapped.order(BYTE_ORDER);
+      copyToArray(mapped, type, array, start, chunkLength);
+    }
+    return array;
+  }
+
+  /**
+   * Copies an array from {@code buffer}, which contains exactly the
+   * array's elements, onto the heap.
+   */
+  private static Object readArray(ByteBuffer buffer, byte type, int length) {
+    Object array = newArray(type, length);
+    copyToArray(buffer.duplicate().order(BYTE_ORDER), type, array, 0, length);
+    return array;
+  }
+
+  private static Object newArray(byte type, int length) {
+    switch (type) {
+    case LONG_ARRAY: return new long[length];
+    case DOUBLE_ARRAY: return new double[length];
+    default: return new int[length];
+    }
+  }
+
+  private static void copyToArray(ByteBuffer buffer, byte type, Object array, int start,
+      int length) {
+    switch (type) {
+    case LONG_ARRAY:
+      buffer.asLongBuffer().get((long[]) array, start, length);
+      break;
+    case DOUBLE_ARRAY:
+      buffer.asDoubleBuffer().get((double[]) array, start, length);
+      break;
+    default:
+      buffer.asIntBuffer().get((int[]) array, start, length);
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int numRead = channel.read(buffer, position);
+      if (numRead < 0) {
+        throw new IOException("Unexpected end of file.");
+      }
+      position += numRead;
+    }
+  }
+
+  /**
+   * Placeholder for a primitive array stored outside of the Java
+   * serialization section.
+   */
+  private static class ArrayReference implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int arrayNum;
+
+    public ArrayReference(int arrayNum) {
+      this.arrayNum = arrayNum;
+    }
+  }
+
+  /**
+   * Placeholder for a {@code SparseTensor} or {@code DenseTensor} whose
+   * keys and values are stored outside of the Java serialization
+   * section. {@code keyNumArrayNum} is -1 for dense tensors.
+   */
+  private static class TensorReference implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int[] dimensionNums;
+    private final int[] dimensionSizes;
+    private final int keyNumArrayNum;
+    private final int valueArrayNum;
+
+    public TensorReference(int[] dimensionNums, int[] dimensionSizes, int keyNumArrayNum,
+        int valueArrayNum) {
+      this.dimensionNums = dimensionNums;
+      this.dimensionSizes = dimensionSizes;
+      this.keyNumArrayNum = keyNumArrayNum;
+      this.valueArrayNum = valueArrayNum;
+    }
+  }
+
+  /**
+   * Serializes objects, replacing large tensors with
+   * {@code TensorReference}s and large primitive arrays with
+   * {@code ArrayReference}s. Arrays referenced by multiple objects are
+   * only stored once.
+   */
+  private static class ArrayExternalizingOutputStream extends ObjectOutputStream {
+    private final List<Object> arrays;
+    private final Map<Object, Integer> arrayNums;
+
+    public ArrayExternalizingOutputStream(ByteArrayOutputStream out) throws IOException {
+      super(out);
+      this.arrays = Lists.newArrayList();
+      this.arrayNums = new IdentityHashMap<Object, Integer>();
+      enableReplaceObject(true);
+    }
+
+    public List<Object> getArrays() {
+      return arrays;
+    }
+
+    @Override
+    protected Object replaceObject(Object obj) {
+      // Subclasses of these tensors may have additional state, so only
+      // exact instances are replaced.
+      if (obj.getClass() == SparseTensor.class
+          && ((SparseTensor) obj).size() >= MIN_EXTERNAL_ARRAY_LENGTH) {
+        SparseTensor tensor = (SparseTensor) obj;
+        return new TensorReference(tensor.getDimensionNumbers(), tensor.getDimensionSizes(),
+            getArrayNum(tensor.getKeyNums()), getArrayNum(tensor.getValues()));
+      } else if (obj.getClass() == DenseTensor.class
+          && ((DenseTensor) obj).size() >= MIN_EXTERNAL_ARRAY_LENGTH) {
+        DenseTensor tensor = (DenseTensor) obj;
+        return new TensorReference(tensor.getDimensionNumbers(), tensor.getDimensionSizes(),
+            -1, getArrayNum(tensor.getValues()));
+      } else if ((obj instanceof long[] || obj instanceof double[] || obj instanceof int[])
+          && arrayLength(obj) >= MIN_EXTERNAL_ARRAY_LENGTH) {
+        return new ArrayReference(getArrayNum(obj));
+      }
+      return obj;
+    }
+
+    private int getArrayNum(Object array) {
+      Integer arrayNum = arrayNums.get(array);
+      if (arrayNum == null) {
+        arrayNum = arrays.size();
+        arrayNums.put(array, arrayNum);
+        arrays.add(array);
+      }
+      return arrayNum;
+    }
+  }
+
+  /**
+   * The arrays in the array section of a file. Arrays are mapped in
+   * regions of up to {@code MAX_REGION_SIZE} bytes, so that a model
+   * with many arrays only requires a few mappings.
+   */
+  private static class MappedArrays {
+    private final FileChannel channel;
+    private final byte[] types;
+    private final int[] lengths;
+    private final long[] offsets;
+
+    // Views of the mapped file containing each array, or null if the
+    // array is too large to map.
+    private final ByteBuffer[] buffers;
+    // Heap copies of arrays, created the first time each array is
+    // resolved as an array.
+    private final Object[] heapArrays;
+
+    public MappedArrays(FileChannel channel, byte[] types, int[] lengths, long[] offsets)
+        throws IOException {
+      this.channel = channel;
+      this.types = types;
+      this.lengths = lengths;
+      this.offsets = offsets;
+      this.buffers = new ByteBuffer[types.length];
+      this.heapArrays = new Object[types.length];
+
+      long fileLength = channel.size();
+      MappedByteBuffer region = null;
+      long regionStart = 0;
+      long regionEnd = 0;
+      for (int i = 0; i < types.length; i++) {
+        long numBytes = ((long) lengths[i]) * elementSize(types[i]);
+        if (offsets[i] + numBytes > fileLength) {
+          throw new IOException("Unexpected end of file.");
+        } else if (numBytes > MAX_REGION_SIZE) {
+          continue;
+        }
+
+        if (region == null || offsets[i] < regionStart || offsets[i] + numBytes > regionEnd) {
+          regionStart = offsets[i];
+          regionEnd = Math.min(regionStart + MAX_REGION_SIZE, fileLength);
+          region = channel.map(MapMode.READ_ONLY, regionStart, regionEnd - regionStart);
+        }
+        ByteBuffer buffer = region.duplicate();
+        buffer.position((int) (offsets[i] - regionStart));
+        buffer.limit((int) (offsets[i] - regionStart + numBytes));
+        buffers[i] = buffer.slice().order(BYTE_ORDER);
+      }
+    }
+
+    public Object getArray(int arrayNum) throws IOException {
+      if (heapArrays[arrayNum] == null) {
+        if (buffers[arrayNum] != null) {
+          heapArrays[arrayNum] = readArray(buffers[arrayNum], types[arrayNum], lengths[arrayNum]);
+        } else {
+          heapArrays[arrayNum] = readArray(channel, types[arrayNum], lengths[arrayNum],
+              offsets[arrayNum]);
+        }
+      }
+      return heapArrays[arrayNum];
+    }
+
+    public Tensor getTensor(TensorReference reference) throws IOException {
+      int valueNum = reference.valueArrayNum;
+      int keyNum = reference.keyNumArrayNum;
+      checkArrayType(valueNum, DOUBLE_ARRAY);
+      if (keyNum != -1) {
+        checkArrayType(keyNum, LONG_ARRAY);
+      }
+
+      if (buffers[valueNum] == null || (keyNum != -1 && buffers[keyNum] == null)) {
+        // Too large to map.
+        if (keyNum == -1) {
+          return new DenseTensor(reference.dimensionNums, reference.dimensionSizes,
+              (double[]) getArray(valueNum));
+        } else {
+          return new SparseTensor(reference.dimensionNums, reference.dimensionSizes,
+              (long[]) getArray(keyNum), (double[]) getArray(valueNum));
+        }
+      }
+
+      DoubleBuffer values = buffers[valueNum].asDoubleBuffer();
+      if (keyNum == -1) {
+        return new MappedDenseTensor(reference.dimensionNums, reference.dimensionSizes, values);
+      } else {
+        return new MappedSparseTensor(reference.dimensionNums, reference.dimensionSizes,
+            buffers[keyNum].asLongBuffer(), values);
+      }
+    }
+
+    private void checkArrayType(int arrayNum, byte type) throws IOException {
+      if (types[arrayNum] != type) {
+        throw new IOException("Unexpected array type: " + types[arrayNum]);
+      }
+    }
+  }
+
+  /**
+   * Deserializes objects written by {@code ArrayExternalizingOutputStream},
+   * replacing each {@code TensorReference} with a mapped tensor and
+   * each {@code ArrayReference} with its array.
+   */
+  private static class ArrayResolvingInputStream extends ObjectInputStream {
+    private final MappedArrays arrays;
+
+    public ArrayResolvingInputStream(InputStream in, MappedArrays arrays) throws IOException {
+      super(in);
+      this.arrays = arrays;
+      enableResolveObject(true);
+    }
+
+    @Override
+    protected Object resolveObject(Object obj) throws IOException {
+      if (obj instanceof ArrayReference) {
+        return arrays.getArray(((ArrayReference) obj).arrayNum);
+      } else if (obj instanceof TensorReference) {
+        return arrays.getTensor((TensorReference) obj);
+      }
+      return obj;
+    }
+  }
+
+  /**
+   * Input stream that reads from a {@code ByteBuffer}.
+   */
+  private static class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    public ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? (buffer.get() & 0xff) : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      int numRead = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, numRead);
+      return numRead;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  private MappedModelFormat() {
+    // Prevent instantiation.
+  }
+}
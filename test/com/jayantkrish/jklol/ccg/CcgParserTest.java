@@ -1,5 +1,6 @@
 package com.jayantkrish.jklol.ccg;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
@@ -7,6 +8,11 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 
 import junit.framework.TestCase;
 
@@ -19,6 +25,7 @@ import com.google.common.collect.Sets;
 import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Doubles;
 import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.ccg.chart.CcgColumnarBeamSearchChart;
 import com.jayantkrish.jklol.ccg.chart.ChartCost;
 import com.jayantkrish.jklol.ccg.chart.ChartEntry;
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
@@ -36,16 +43,22 @@ import com.jayantkrish.jklol.ccg.lexicon.TableLexicon;
 import com.jayantkrish.jklol.ccg.lexicon.UnknownWordLexicon;
 import com.jayantkrish.jklol.ccg.supertag.SupertagAnnotation;
 import com.jayantkrish.jklol.ccg.supertag.SupertagLexiconScorer;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
 import com.jayantkrish.jklol.models.DiscreteFactor;
 import com.jayantkrish.jklol.models.DiscreteFactor.Outcome;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.models.TableFactor;
 import com.jayantkrish.jklol.models.TableFactorBuilder;
 import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.parallel.ForkJoinPools;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+import com.jayantkrish.jklol.tensor.MappedDenseTensor;
+import com.jayantkrish.jklol.tensor.MappedSparseTensor;
 import com.jayantkrish.jklol.tensor.SparseTensorBuilder;
 import com.jayantkrish.jklol.training.NullLogFunction;
 import com.jayantkrish.jklol.util.Assignment;
+import com.jayantkrish.jklol.util.IoUtils;
 
 public class CcgParserTest extends TestCase {
 
@@ -1010,6 +1023,28 @@ public class CcgParserTest extends TestCase {
     oos.close();
   }
 
+  public void testMappedSerialization() throws IOException {
+    File file = File.createTempFile("jklol-parser", ".bin");
+    file.deleteOnExit();
+    // The composition rules make the syntax distribution large enough
+    // to be stored in the mapped region of the file.
+    IoUtils.serializeObjectToMappedFile(parserWithComposition, file.getPath());
+    CcgParser read = IoUtils.readSerializedObject(file.getPath(), CcgParser.class);
+    assertTrue(read.getSyntaxDistribution().getWeights() instanceof MappedSparseTensor);
+    assertTrue(read.getBinaryRuleDistribution().getWeights() instanceof MappedSparseTensor);
+    SyntaxLexiconScorer scorer = (SyntaxLexiconScorer) read.getLexiconScorers().get(1);
+    assertTrue(scorer.getTerminalSyntaxDistribution().getWeights() instanceof MappedDenseTensor);
+
+    List<String> words = Arrays.asList("I", "quickly", "eat", "amazingly", "tasty", "berries");
+    List<CcgParse> expected = beamSearch(parserWithComposition, words, 20);
+    List<CcgParse> actual = beamSearch(read, words, 20);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getSubtreeProbability(), actual.get(i).getSubtreeProbability());
+      assertEquals(expected.get(i).getAllDependencies(), actual.get(i).getAllDependencies());
+    }
+  }
+
   public void testStringLexicon() {
     List<CcgParse> parses = beamSearch(parserWithString, Arrays.asList("stringfunc", "bar"), 20);
     assertTrue(parses.size() > 0);
@@ -1062,6 +1097,232 @@ public class CcgParserTest extends TestCase {
     assertTrue(foundString);
   }
   
+  public void testParallelBeamSearch() {
+    List<String> words = Arrays.asList("people", "that", "quickly", "eat", "amazingly",
+        "tasty", "berries", "in", "houses");
+    AnnotatedSentence sentence = new AnnotatedSentence(words,
+        Collections.nCopies(words.size(), DEFAULT_POS));
+    List<CcgParse> expected = parserWithComposition.beamSearch(sentence, 100, null,
+        new NullLogFunction(), -1, Integer.MAX_VALUE, 1);
+    assertTrue(expected.size() > 1);
+    for (int numThreads : new int[] {2, 3, 16}) {
+      List<CcgParse> actual = parserWithComposition.beamSearch(sentence, 100, null,
+          new NullLogFunction(), -1, Integer.MAX_VALUE, numThreads);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getSubtreeProbability(), actual.get(i).getSubtreeProbability(),
+            0.0001);
+      }
+    }
+  }
+
+  public void testBatchBeamSearch() {
+    List<List<String>> sentenceWords = Lists.newArrayList();
+    sentenceWords.add(Arrays.asList("people", "that", "quickly", "eat", "amazingly",
+        "tasty", "berries", "in", "houses"));
+    sentenceWords.add(Arrays.asList("people", "eat", "berries"));
+    sentenceWords.add(Arrays.asList("people", "eat", "tasty", "berries", "in", "houses"));
+    sentenceWords.add(Arrays.asList("berries"));
+
+    // Repeat the sentences to ensure that charts are recycled
+    // between sentences of different lengths.
+    List<AnnotatedSentence> sentences = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      for (List<String> words : sentenceWords) {
+        sentences.add(new AnnotatedSentence(words, Collections.nCopies(words.size(), DEFAULT_POS)));
+      }
+    }
+
+    List<List<CcgParse>> actual = parserWithComposition.beamSearch(sentences, 100, null,
+        new NullLogFunction(), -1, Integer.MAX_VALUE);
+    assertEquals(sentences.size(), actual.size());
+    for (int i = 0; i < sentences.size(); i++) {
+      List<CcgParse> expected = parserWithComposition.beamSearch(sentences.get(i), 100, null,
+          new NullLogFunction(), -1, Integer.MAX_VALUE, 1);
+      assertEquals(expected.size(), actual.get(i).size());
+      for (int j = 0; j < expected.size(); j++) {
+        assertEquals(expected.get(j).getSubtreeProbability(),
+            actual.get(i).get(j).getSubtreeProbability(), 0.0001);
+        assertEquals(expected.get(j).getAllDependencies(), actual.get(i).get(j).getAllDependencies());
+      }
+    }
+  }
+
+  public void testColumnarChart() {
+    List<List<String>> sentenceWords = Lists.newArrayList();
+    sentenceWords.add(Arrays.asList("people", "that", "quickly", "eat", "amazingly",
+        "tasty", "berries", "in", "houses"));
+    sentenceWords.add(Arrays.asList("people", "eat", "berries"));
+    sentenceWords.add(Arrays.asList("berries"));
+
+    for (CcgParser p : Arrays.asList(parser, parserWithComposition, parserWithUnary)) {
+      for (List<String> words : sentenceWords) {
+        AnnotatedSentence sentence = new AnnotatedSentence(words,
+            Collections.nCopies(words.size(), DEFAULT_POS));
+        // Use a small beam to exercise beam truncation.
+        for (int beamSize : new int[] {3, 100}) {
+          List<CcgParse> expected = p.beamSearch(sentence, beamSize, null,
+              new NullLogFunction(), -1, Integer.MAX_VALUE, 1);
+          for (int numThreads : new int[] {1, 3}) {
+            List<CcgParse> actual = p.beamSearch(new CcgColumnarBeamSearchChart(sentence,
+                Integer.MAX_VALUE, beamSize), null, new NullLogFunction(), -1, numThreads);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+              assertEquals(expected.get(i).getSubtreeProbability(),
+                  actual.get(i).getSubtreeProbability(), 0.0001);
+              assertEquals(expected.get(i).getAllDependencies(), actual.get(i).getAllDependencies());
+              assertEquals(expected.get(i).getSyntacticParse(), actual.get(i).getSyntacticParse());
+            }
+          }
+        }
+      }
+    }
+  }
+
+  public void testColumnarChartFilter() {
+    ChartCost filter = new TestChartFilter();
+    AnnotatedSentence sentence = new AnnotatedSentence(
+        Arrays.asList("I", "eat", "berries", "in", "people", "houses"),
+        Collections.nCopies(6, DEFAULT_POS));
+    List<CcgParse> expected = parserWithUnary.beamSearch(sentence, 10, filter,
+        new NullLogFunction(), -1, Integer.MAX_VALUE, 1);
+    List<CcgParse> actual = parserWithUnary.beamSearch(new CcgColumnarBeamSearchChart(sentence,
+        Integer.MAX_VALUE, 10), filter, new NullLogFunction(), -1, 1);
+
+    assertTrue(expected.size() > 0);
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).getSubtreeProbability(),
+          actual.get(i).getSubtreeProbability(), 0.0001);
+      assertEquals(expected.get(i).getAllDependencies(), actual.get(i).getAllDependencies());
+      assertEquals(expected.get(i).getSyntacticParse(), actual.get(i).getSyntacticParse());
+    }
+  }
+
+  public void testParseBudget() {
+    List<String> words = Arrays.asList("I", "quickly", "eat", "amazingly", "tasty", "berries");
+    AnnotatedSentence sentence = new AnnotatedSentence(words,
+        Collections.nCopies(words.size(), DEFAULT_POS));
+    List<CcgParse> expected = parser.beamSearch(sentence, 20, null, new NullLogFunction(),
+        -1, Integer.MAX_VALUE, 1);
+    assertEquals(1, expected.size());
+
+    for (int numThreads : new int[] {1, 3}) {
+      // A cancelled budget stops parsing immediately.
+      ParseBudget budget = new ParseBudget(-1, false);
+      budget.cancel();
+      assertEquals(0, parser.beamSearch(sentence, 20, null, new NullLogFunction(), budget,
+          Integer.MAX_VALUE, numThreads).size());
+
+      // The fallback parse combines the best entry of each span.
+      budget = new ParseBudget(-1, true);
+      budget.cancel();
+      List<CcgParse> actual = parser.beamSearch(sentence, 20, null, new NullLogFunction(), budget,
+          Integer.MAX_VALUE, numThreads);
+      assertEquals(1, actual.size());
+      assertEquals(expected.get(0).getSubtreeProbability(), actual.get(0).getSubtreeProbability(),
+          0.0001);
+      assertEquals(expected.get(0).getAllDependencies(), actual.get(0).getAllDependencies());
+
+      // Exceeding the chart size in the middle of the sentence.
+      assertEquals(0, parser.beamSearch(sentence, 20, null, new NullLogFunction(),
+          new ParseBudget(-1, false), 8, numThreads).size());
+      actual = parser.beamSearch(sentence, 20, null, new NullLogFunction(),
+          new ParseBudget(-1, true), 8, numThreads);
+      assertEquals(1, actual.size());
+      assertEquals(expected.get(0).getAllDependencies(), actual.get(0).getAllDependencies());
+
+      CcgParse parse = parser.parse(sentence, null, new NullLogFunction(),
+          new ParseBudget(-1, true), 8, numThreads);
+      assertEquals(expected.get(0).getAllDependencies(), parse.getAllDependencies());
+
+      // The fallback parse is limited to a multiple of the original
+      // chart size.
+      assertEquals(0, parser.beamSearch(sentence, 20, null, new NullLogFunction(),
+          new ParseBudget(-1, true), 1, numThreads).size());
+    }
+  }
+
+  public void testParallelParseInSharedPool() throws Exception {
+    List<String> words = Arrays.asList("I", "quickly", "eat", "amazingly", "tasty", "berries");
+    final AnnotatedSentence sentence = new AnnotatedSentence(words,
+        Collections.nCopies(words.size(), DEFAULT_POS));
+    final int numThreads = 2;
+    List<CcgParse> expected = parser.beamSearch(sentence, 20, null, new NullLogFunction(),
+        -1, Integer.MAX_VALUE, numThreads);
+
+    // Occupy every worker of the shared pool with a parse that itself
+    // requests numThreads threads from the same pool. Waiting on the
+    // pool from its own workers would deadlock.
+    ForkJoinPool pool = ForkJoinPools.getSharedPool(numThreads);
+    final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+    List<ForkJoinTask<List<CcgParse>>> tasks = Lists.newArrayList();
+    for (int i = 0; i < numThreads; i++) {
+      tasks.add(pool.submit(new Callable<List<CcgParse>>() {
+        public List<CcgParse> call() throws Exception {
+          barrier.await(60, TimeUnit.SECONDS);
+          return parser.beamSearch(sentence, 20, null, new NullLogFunction(),
+              -1, Integer.MAX_VALUE, numThreads);
+        }
+      }));
+    }
+
+    for (ForkJoinTask<List<CcgParse>> task : tasks) {
+      List<CcgParse> actual = task.get(60, TimeUnit.SECONDS);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).getSubtreeProbability(),
+            actual.get(i).getSubtreeProbability(), 0.0001);
+        assertEquals(expected.get(i).getAllDependencies(), actual.get(i).getAllDependencies());
+      }
+    }
+  }
+
+  public void testBatchBeamSearchFallback() {
+    List<List<String>> sentenceWords = Lists.newArrayList();
+    sentenceWords.add(Arrays.asList("I", "quickly", "eat", "amazingly", "tasty", "berries"));
+    sentenceWords.add(Arrays.asList("people", "eat", "berries"));
+    sentenceWords.add(Arrays.asList("berries"));
+    List<AnnotatedSentence> sentences = Lists.newArrayList();
+    for (List<String> words : sentenceWords) {
+      sentences.add(new AnnotatedSentence(words, Collections.nCopies(words.size(), DEFAULT_POS)));
+    }
+
+    Counter fallbackParses = Metrics.counter("ccg_parse/fallback");
+    Counter abortedParses = Metrics.counter("ccg_parse/aborted");
+    for (boolean useFallbackParse : new boolean[] {false, true}) {
+      long fallbackStart = fallbackParses.getCount();
+      long abortedStart = abortedParses.getCount();
+      List<List<CcgParse>> expected = Lists.newArrayList();
+      for (AnnotatedSentence sentence : sentences) {
+        expected.add(parser.beamSearch(sentence, 20, null, new NullLogFunction(),
+            new ParseBudget(-1, useFallbackParse), 8, 1));
+      }
+      long expectedFallbacks = fallbackParses.getCount() - fallbackStart;
+      long expectedAborted = abortedParses.getCount() - abortedStart;
+      assertTrue(expectedAborted > 0);
+      assertEquals(useFallbackParse, expectedFallbacks > 0);
+
+      fallbackStart = fallbackParses.getCount();
+      abortedStart = abortedParses.getCount();
+      List<List<CcgParse>> actual = parser.beamSearch(sentences, 20, null,
+          new NullLogFunction(), -1, useFallbackParse, 8);
+      assertEquals(expectedFallbacks, fallbackParses.getCount() - fallbackStart);
+      assertEquals(expectedAborted, abortedParses.getCount() - abortedStart);
+
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).size(), actual.get(i).size());
+        for (int j = 0; j < expected.get(i).size(); j++) {
+          assertEquals(expected.get(i).get(j).getSubtreeProbability(),
+              actual.get(i).get(j).getSubtreeProbability(), 0.0001);
+          assertEquals(expected.get(i).get(j).getAllDependencies(),
+              actual.get(i).get(j).getAllDependencies());
+        }
+      }
+    }
+  }
+
   public void testMultiwordLexiconEntry() {
     List<CcgParse> parses = beamSearch(parser, Arrays.asList("people", "backward"), 20);
     assertEquals(2, parses.size());
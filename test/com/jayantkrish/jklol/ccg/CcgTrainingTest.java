@@ -18,10 +18,12 @@ import com.jayantkrish.jklol.ccg.lambda2.ExpressionReplacementRule;
 import com.jayantkrish.jklol.ccg.lambda2.ExpressionSimplifier;
 import com.jayantkrish.jklol.ccg.lambda2.SimplificationComparator;
 import com.jayantkrish.jklol.data.DataFormat;
+import com.jayantkrish.jklol.models.parametric.InstantiationCache;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
 import com.jayantkrish.jklol.training.DefaultLogFunction;
 import com.jayantkrish.jklol.training.StochasticGradientTrainer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.StochasticL2Regularizer;
 
 /**
  * Regression tests for training CCG parsers from dependency
@@ -275,6 +277,50 @@ public class CcgTrainingTest extends TestCase {
     assertTrainedParserUsesSyntax(parser);
   }
 
+  public void testTrainPerceptronIncrementalPipelined() {
+    CcgParser parser = trainPerceptronParser(family, trainingExamplesWithSyntax, false, true);
+    assertZeroDependencyError(parser, trainingExamplesWithSyntax);
+    assertTrainedParserUsesSyntax(parser);
+  }
+
+  public void testIncrementalInstantiation() {
+    InstantiationCache cache = new InstantiationCache();
+    SufficientStatistics parameters = family.getNewSufficientStatistics();
+    parameters.perturb(1.0);
+    CcgParser first = family.getModelFromParameters(parameters, cache);
+
+    SufficientStatistics syntaxParameters = parameters.coerceToList()
+        .getStatisticByName(ParametricCcgParser.SYNTAX_PARAMETERS);
+    syntaxParameters.perturb(1.0);
+    CcgParser second = family.getModelFromParameters(parameters, cache);
+    CcgParser expected = family.getModelFromParameters(parameters);
+
+    // Only the components whose parameters changed should be rebuilt.
+    assertSame(first.getLexicons().get(0), second.getLexicons().get(0));
+    assertNotSame(first.getBinaryRuleDistribution(), second.getBinaryRuleDistribution());
+
+    // The parser is not rebuilt if no parameters changed, including
+    // when instantiating from a copy of the parameters.
+    assertSame(second, family.getModelFromParameters(parameters, cache));
+    assertSame(second, family.getModelFromParameters(parameters.duplicate(), cache));
+    syntaxParameters.multiply(1.0);
+    assertNotSame(second, family.getModelFromParameters(parameters, cache));
+
+    List<String> words = Arrays.asList("#", "2", "block");
+    List<CcgParse> expectedParses = beamSearch(expected, words, 10);
+    List<CcgParse> actualParses = beamSearch(second, words, 10);
+    assertEquals(expectedParses.size(), actualParses.size());
+    for (int i = 0; i < expectedParses.size(); i++) {
+      assertEquals(expectedParses.get(i).getSubtreeProbability(),
+          actualParses.get(i).getSubtreeProbability(), TOLERANCE);
+    }
+  }
+
+  public void testTrainLoglikelihoodSparseGradients() {
+    CcgParser parser = trainLoglikelihoodParser(family, trainingExamplesWithSyntax, true);
+    assertZeroDependencyError(parser, trainingExamplesWithSyntax);
+  }
+
   public void testTrainWordSkip() {
     CcgParser parser = trainLoglikelihoodParser(wordSkipFamily, trainingExamplesWithSyntax);
     assertZeroDependencyError(parser, trainingExamplesWithSyntax);
@@ -288,12 +334,18 @@ public class CcgTrainingTest extends TestCase {
   }
 
   private CcgParser trainLoglikelihoodParser(ParametricCcgParser family, List<CcgExample> examples) {
+    return trainLoglikelihoodParser(family, examples, false);
+  }
+
+  private CcgParser trainLoglikelihoodParser(ParametricCcgParser family, List<CcgExample> examples,
+      boolean sparseGradients) {
     ExpressionComparator comparator = new SimplificationComparator(getExpressionSimplifier());
     CcgInference inference = new CcgCkyInference(null, 100, -1, Integer.MAX_VALUE, 1);
     // CcgInference inference = new CcgShiftReduceInference(100);
     CcgLoglikelihoodOracle oracle = new CcgLoglikelihoodOracle(family, comparator, inference);
-    StochasticGradientTrainer trainer = StochasticGradientTrainer.createWithL2Regularization(10, 1, 1,
-        true, false, Double.MAX_VALUE, 0.1, new DefaultLogFunction());
+    StochasticGradientTrainer trainer = new StochasticGradientTrainer(10, 1, 1, true, false,
+        false, Double.MAX_VALUE, new StochasticL2Regularizer(0.1, 1.0), false, sparseGradients,
+        new DefaultLogFunction());
 
     SufficientStatistics parameters = trainer.train(oracle, oracle.initializeGradient(), examples);
     CcgParser parser = family.getModelFromParameters(parameters);
@@ -302,13 +354,19 @@ public class CcgTrainingTest extends TestCase {
 
   private CcgParser trainPerceptronParser(ParametricCcgParser family,
       List<CcgExample> examples, boolean maxMargin) {
+    return trainPerceptronParser(family, examples, maxMargin, false);
+  }
+
+  private CcgParser trainPerceptronParser(ParametricCcgParser family,
+      List<CcgExample> examples, boolean maxMargin, boolean pipelineInstantiation) {
     CcgInference inferenceAlg = new CcgCkyInference(null, 100, -1, Integer.MAX_VALUE, 1);
     ExpressionComparator comparator = new SimplificationComparator(getExpressionSimplifier());
     
     CcgPerceptronOracle oracle = new CcgPerceptronOracle(family, comparator,
-        inferenceAlg, maxMargin ? 1.0 : 0.0);
-    StochasticGradientTrainer trainer = StochasticGradientTrainer.createWithL2Regularization(100,
-        1, 1, true, true, Double.MAX_VALUE, 0.0, new DefaultLogFunction());
+        inferenceAlg, maxMargin ? 1.0 : 0.0, pipelineInstantiation);
+    StochasticGradientTrainer trainer = new StochasticGradientTrainer(100, 1, 1, true, true,
+        false, Double.MAX_VALUE, new StochasticL2Regularizer(0.0, 1.0), pipelineInstantiation,
+        new DefaultLogFunction());
 
     SufficientStatistics initialParameters = oracle.initializeGradient();
     SufficientStatistics parameters = trainer.train(oracle, initialParameters, examples);
@@ -0,0 +1,64 @@
+package com.jayantkrish.jklol.ccg.chart;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.jayantkrish.jklol.nlpannotation.AnnotatedSentence;
+
+public class CcgBeamSearchChartPoolTest extends TestCase {
+
+  CcgBeamSearchChartPool pool;
+  AnnotatedSentence shortSentence, longSentence;
+
+  public void setUp() {
+    pool = new CcgBeamSearchChartPool(10, 4, 2);
+    shortSentence = sentence("a", "b");
+    longSentence = sentence("a", "b", "c", "d", "e");
+  }
+
+  public void testRecycle() {
+    CcgBeamSearchChart chart = pool.acquire(shortSentence, 100);
+    assertEquals(4, chart.getCapacity());
+    pool.release(chart);
+    assertEquals(1, pool.getNumPooledCharts());
+
+    CcgBeamSearchChart recycled = pool.acquire(sentence("c"), 100);
+    assertEquals(0, pool.getNumPooledCharts());
+    assertEquals(1, recycled.size());
+
+    // Charts of a different capacity are not reused.
+    pool.release(recycled);
+    CcgBeamSearchChart longChart = pool.acquire(longSentence, 100);
+    assertEquals(8, longChart.getCapacity());
+    assertEquals(1, pool.getNumPooledCharts());
+  }
+
+  public void testMaxPooledCharts() {
+    CcgBeamSearchChart c1 = pool.acquire(shortSentence, 100);
+    CcgBeamSearchChart c2 = pool.acquire(shortSentence, 100);
+    CcgBeamSearchChart c3 = pool.acquire(longSentence, 100);
+    pool.release(c1);
+    pool.release(c2);
+    pool.release(c3);
+    assertEquals(2, pool.getNumPooledCharts());
+  }
+
+  public void testClear() {
+    pool.release(pool.acquire(shortSentence, 100));
+    pool.release(pool.acquire(longSentence, 100));
+    assertEquals(2, pool.getNumPooledCharts());
+
+    pool.clear();
+    assertEquals(0, pool.getNumPooledCharts());
+    pool.release(pool.acquire(shortSentence, 100));
+    assertEquals(1, pool.getNumPooledCharts());
+  }
+
+  private static AnnotatedSentence sentence(String... words) {
+    List<String> wordList = Arrays.asList(words);
+    return new AnnotatedSentence(wordList, Collections.nCopies(wordList.size(), "NN"));
+  }
+}
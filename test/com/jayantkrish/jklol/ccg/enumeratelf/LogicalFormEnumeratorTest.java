@@ -1,5 +1,6 @@
 package com.jayantkrish.jklol.ccg.enumeratelf;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 
@@ -77,12 +78,34 @@ public class LogicalFormEnumeratorTest extends TestCase {
     }
   }
   
+  public void testBinaryIntersection() {
+    Set<Expression2> actual = Sets.newHashSet(enumerate(30, false, "foo:s", "bar:s"));
+    assertTrue(actual.contains(lfParser.parse(
+        "(intersect:<c,<c,c>> (column:<s,c> foo:s) (row:<s,c> bar:s))")));
+    assertTrue(actual.contains(lfParser.parse(
+        "(intersect:<c,<c,c>> (row:<s,c> bar:s) (column:<s,c> foo:s))")));
+    assertFalse(actual.contains(lfParser.parse(
+        "(intersect:<c,<c,c>> (column:<s,c> foo:s) (row:<s,c> foo:s))")));
+  }
+
+  public void testParallel() {
+    for (int max : new int[] {5, 30, 100}) {
+      Set<Expression2> expected = Sets.newHashSet(enumerate(max, false, "foo:s", "bar:s", "baz:s"));
+      Set<Expression2> actual = Sets.newHashSet(enumerate(max, true, "foo:s", "bar:s", "baz:s"));
+      assertEquals(expected, actual);
+    }
+  }
+
   private List<Expression2> enumerate(int max, String... expressions) {
+    return enumerate(max, false, expressions);
+  }
+
+  private List<Expression2> enumerate(int max, boolean parallel, String... expressions) {
     List<Expression2> lfs = Lists.newArrayList();
     for (int i = 0; i < expressions.length; i++) {
       lfs.add(lfParser.parse(expressions[i]));
     }
     
-    return enumerator.enumerate(lfs, max);
+    return enumerator.enumerate(lfs, Collections.<EnumerationRuleFilter>emptyList(), max, parallel);
   }
 }
@@ -0,0 +1,101 @@
+package com.jayantkrish.jklol.ccg.lambda2;
+
+import junit.framework.TestCase;
+
+import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
+import com.jayantkrish.jklol.lisp.AmbEval;
+import com.jayantkrish.jklol.lisp.Environment;
+import com.jayantkrish.jklol.lisp.ParametricBfgBuilder;
+import com.jayantkrish.jklol.lisp.SExpression;
+import com.jayantkrish.jklol.util.IndexedList;
+
+public class AmbEvalEvaluatorTest extends TestCase {
+
+  AmbEval eval;
+  Environment env;
+  ExpressionParser<SExpression> sexpParser;
+  ExpressionParser<Expression2> expParser;
+  AmbEvalEvaluator evaluator;
+
+  private static final String PROGRAM = "(begin "
+      + "(define map (f l) (if (nil? l) (list) (cons (f (car l)) (map f (cdr l))))) "
+      + "(define add-n (n) (lambda (x) (+ x n))) "
+      + "(define ten 10))";
+
+  public void setUp() {
+    IndexedList<String> symbolTable = AmbEval.getInitialSymbolTable();
+    eval = new AmbEval(symbolTable);
+    env = AmbEval.getDefaultEnvironment(symbolTable);
+    sexpParser = ExpressionParser.sExpression(symbolTable);
+    expParser = ExpressionParser.expression2();
+    eval.eval(sexpParser.parse(PROGRAM), env, new ParametricBfgBuilder(true));
+
+    evaluator = new AmbEvalEvaluator(sexpParser, eval, env);
+  }
+
+  public void testToSExpression() {
+    Expression2 lf = Expression2.nested(Expression2.constant("list"),
+        Expression2.stringValue("a \"b\" (c)"), Expression2.constant("1"),
+        Expression2.constant("2.5"), Expression2.constant("#t"));
+    SExpression expected = sexpParser.parse(lf.toString());
+    SExpression actual = evaluator.toSExpression(lf);
+
+    assertEquals(expected, actual);
+    for (int i = 0; i < expected.getSubexpressions().size(); i++) {
+      SExpression e = expected.getSubexpressions().get(i);
+      SExpression a = actual.getSubexpressions().get(i);
+      assertEquals(e.getConstantIndex(), a.getConstantIndex());
+      assertEquals(e.getConstantPrimitiveValue(), a.getConstantPrimitiveValue());
+    }
+  }
+
+  public void testApplication() {
+    runTest("(+ 1 ten)");
+    runTest("(list \"a\" (+ 1 2) 3.5)");
+  }
+
+  public void testLambda() {
+    runTest("((lambda (x y) (- x y)) 5 2)");
+    runTest("((lambda x (* x 2)) 4)");
+    runTest("(((lambda (x) (lambda (y) (- x y))) 10) 3)");
+    runTest("((lambda (x) ((lambda (x) (+ x 1)) (* x 10))) 2)");
+    runTest("((lambda (x x) x) 1 2)");
+    runTest("((add-n 3) 4)");
+  }
+
+  public void testHigherOrder() {
+    runTest("(map (lambda (x) (+ x ten)) (list 1 2 3))");
+    runTest("((lambda (n) (map (lambda (x) (* x n)) (list 1 2 3))) 4)");
+  }
+
+  public void testSpecialForms() {
+    runTest("(if (= 1 2) \"a\" \"b\")");
+    runTest("(if (= ten 10) \"a\" \"b\")");
+    runTest("(quote (foo bar))");
+    runTest("((lambda (x) (let ((y 2)) (* x y))) 3)");
+    runTest("((lambda (x) (begin (define y 5) (+ x y))) 3)");
+    runTest("((lambda (x . rest) (cons x rest)) 1 2 3)");
+  }
+
+  public void testCaching() {
+    Expression2 lf = expParser.parse("((lambda (x) (+ x ten)) 5)");
+    assertEquals(15, evaluator.evaluate(lf));
+    assertEquals(15, evaluator.evaluate(lf));
+  }
+
+  public void testErrors() {
+    Object value = evaluator.evaluateSilentErrors(
+        expParser.parse("(+ 1 not-a-variable)"), "ERROR");
+    assertTrue(value.toString().startsWith("ERROR("));
+
+    value = evaluator.evaluateSilentErrors(
+        expParser.parse("((lambda (x) (+ x 1)) 1 2)"), "ERROR");
+    assertTrue(value.toString().startsWith("ERROR("));
+  }
+
+  private void runTest(String expression) {
+    Object expected = eval.eval(sexpParser.parse(expression), env, null).getValue();
+    Object actual = evaluator.evaluate(expParser.parse(expression));
+    assertEquals(expected, actual);
+  }
+}
@@ -0,0 +1,73 @@
+package com.jayantkrish.jklol.ccg.lambda2;
+
+import junit.framework.TestCase;
+
+import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
+import com.jayantkrish.jklol.lisp.AmbEval;
+import com.jayantkrish.jklol.lisp.Environment;
+import com.jayantkrish.jklol.lisp.EvalError;
+import com.jayantkrish.jklol.lisp.SExpression;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
+import com.jayantkrish.jklol.util.IndexedList;
+
+public class DenotationCacheTest extends TestCase {
+
+  ExpressionParser<Expression2> expParser;
+
+  public void setUp() {
+    expParser = ExpressionParser.expression2();
+  }
+
+  public void testGetPut() {
+    DenotationCache cache = new DenotationCache("test/denotation_cache", 10);
+    Counter hits = Metrics.counter("test/denotation_cache/hits");
+    Counter misses = Metrics.counter("test/denotation_cache/misses");
+    long initialHits = hits.getCount();
+    long initialMisses = misses.getCount();
+
+    Expression2 lf = expParser.parse("(foo (bar x))");
+    assertNull(cache.get("world1", lf));
+    cache.put("world1", lf, "a");
+    assertEquals("a", cache.get("world1", expParser.parse("(foo (bar x))")));
+    assertNull(cache.get("world2", lf));
+
+    assertEquals(1, hits.getCount() - initialHits);
+    assertEquals(2, misses.getCount() - initialMisses);
+  }
+
+  public void testEviction() {
+    DenotationCache cache = new DenotationCache("test/denotation_cache", 10);
+    for (int i = 0; i < 100; i++) {
+      cache.put("world", Expression2.constant(Integer.toString(i)), i);
+    }
+    assertTrue(cache.size() <= 10);
+    assertEquals(99, cache.get("world", Expression2.constant("99")));
+  }
+
+  public void testEvaluator() {
+    IndexedList<String> symbolTable = AmbEval.getInitialSymbolTable();
+    AmbEval eval = new AmbEval(symbolTable);
+    Environment env = AmbEval.getDefaultEnvironment(symbolTable);
+    ExpressionParser<SExpression> sexpParser = ExpressionParser.sExpression(symbolTable);
+    DenotationCache cache = new DenotationCache("test/denotation_cache", 10);
+    AmbEvalEvaluator evaluator = new AmbEvalEvaluator(sexpParser, eval, env,
+        AmbEvalEvaluator.DEFAULT_MAX_CACHED_EXPRESSIONS, cache);
+
+    Expression2 lf = expParser.parse("(+ 1 2)");
+    assertEquals(3, evaluator.evaluate(lf));
+    assertEquals(3, cache.get(env, lf));
+    assertEquals(3, evaluator.evaluate(lf));
+
+    Expression2 error = expParser.parse("(+ 1 unbound)");
+    for (int i = 0; i < 2; i++) {
+      try {
+        evaluator.evaluate(error);
+        fail("Expected EvalError");
+      } catch (EvalError e) {
+        // Expected.
+      }
+    }
+    assertTrue(cache.get(env, error) instanceof EvalError);
+  }
+}
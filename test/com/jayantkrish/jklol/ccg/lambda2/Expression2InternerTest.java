@@ -0,0 +1,73 @@
+package com.jayantkrish.jklol.ccg.lambda2;
+
+import junit.framework.TestCase;
+
+import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
+
+public class Expression2InternerTest extends TestCase {
+
+  ExpressionParser<Expression2> parser;
+  Expression2Interner interner;
+
+  public void setUp() {
+    parser = ExpressionParser.expression2();
+    interner = new Expression2Interner();
+  }
+
+  public void testIntern() {
+    Expression2 e1 = interner.intern(parser.parse("(foo (bar baz) (bar baz))"));
+    Expression2 e2 = interner.intern(parser.parse("(foo (bar baz) (bar baz))"));
+    Expression2 e3 = interner.intern(parser.parse("(foo (bar baz) bar)"));
+
+    assertSame(e1, e2);
+    assertSame(e1.getSubexpressions().get(1), e1.getSubexpressions().get(2));
+    assertSame(e1.getSubexpressions().get(1), e3.getSubexpressions().get(1));
+    assertTrue(interner.isInterned(e1));
+    assertTrue(interner.isInterned(e3.getSubexpressions().get(2)));
+    assertSame(e1, interner.intern(e1));
+
+    assertFalse(e1.equals(e3));
+    assertEquals(parser.parse("(foo (bar baz) (bar baz))"), e1);
+    assertEquals(e1, parser.parse("(foo (bar baz) (bar baz))"));
+    assertEquals(parser.parse("(foo (bar baz) (bar baz))").hashCode(), e1.hashCode());
+  }
+
+  public void testMultipleInterners() {
+    Expression2Interner other = new Expression2Interner();
+    Expression2 e1 = interner.intern(parser.parse("(foo (bar baz))"));
+    Expression2 e2 = other.intern(e1);
+
+    assertNotSame(e1, e2);
+    assertEquals(e1, e2);
+    assertTrue(interner.isInterned(e1));
+    assertTrue(other.isInterned(e2));
+    assertFalse(interner.isInterned(e2));
+  }
+
+  public void testSubstitute() {
+    Expression2 e = interner.intern(parser.parse("(foo (bar baz) (abcd (bar baz)))"));
+    Expression2 result = interner.substitute(e, 9, Expression2.constant("x"));
+
+    assertEquals(parser.parse("(foo (bar baz) (abcd (bar x)))"), result);
+    assertSame(interner.intern(parser.parse("(foo (bar baz) (abcd (bar x)))")), result);
+    assertSame(e.getSubexpressions().get(1), result.getSubexpressions().get(1));
+    assertEquals(e.substitute(9, Expression2.constant("x")), result);
+  }
+
+  public void testParse() {
+    ExpressionParser<Expression2> internedParser = ExpressionParser.expression2(interner);
+
+    Expression2 e = internedParser.parse("(foo (bar \"a b\"))");
+    assertTrue(interner.isInterned(e));
+    assertSame(e, interner.intern(parser.parse("(foo (bar \"a b\"))")));
+  }
+
+  public void testSubstituteSharesStructure() {
+    Expression2 e = parser.parse("(foo (bar baz) (abcd x))");
+    Expression2 result = e.substitute("x", "y");
+
+    assertEquals(parser.parse("(foo (bar baz) (abcd y))"), result);
+    assertSame(e.getSubexpressions().get(1), result.getSubexpressions().get(1));
+    assertSame(e, e.substitute("z", "y"));
+  }
+}
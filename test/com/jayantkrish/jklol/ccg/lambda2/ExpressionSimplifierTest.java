@@ -5,6 +5,8 @@ import java.util.Arrays;
 import junit.framework.TestCase;
 
 import com.jayantkrish.jklol.ccg.lambda.ExpressionParser;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
 
 public class ExpressionSimplifierTest extends TestCase {
 
@@ -101,6 +103,43 @@ public class ExpressionSimplifierTest extends TestCase {
         "(lambda ($0) (lambda ($1) (loc:<lo,<lo,t>> $1 $0)))");
   }
   
+  public void testSimplifyNested() {
+    // Beta reduction creates a new redex inside an argument that
+    // was already simplified.
+    runTest(simplifier, "((lambda (f) (g (f a) ((lambda (y) (f y)) b))) (lambda (x) (h x x)))",
+        "(g (h a a) (h b b))");
+  }
+
+  public void testSimplifyShadowed() {
+    runTest(simplifier, "((lambda (x) (foo x (lambda (x) (bar x)) (lambda (y) (baz x y)))) abcd)",
+        "(foo abcd (lambda (x) (bar x)) (lambda (y) (baz abcd y)))");
+  }
+
+  public void testHeadSymbol() {
+    ExpressionParser<Expression2> parser = ExpressionParser.expression2();
+    assertEquals("foo", ExpressionSimplifier.getHeadSymbol(parser.parse("foo")));
+    assertEquals("and:<t*,t>", ExpressionSimplifier.getHeadSymbol(parser.parse("(and:<t*,t> x y)")));
+    assertEquals("lambda", ExpressionSimplifier.getHeadSymbol(parser.parse("((lambda (x) x) y)")));
+    assertNull(ExpressionSimplifier.getHeadSymbol(Expression2.nested()));
+  }
+
+  public void testRuleCounts() {
+    Counter lambdaCount = Metrics.counter("expression_simplifier/LambdaApplicationReplacementRule");
+    Counter commutativeCount = Metrics.counter("expression_simplifier/CommutativeReplacementRule");
+    long initialLambdaCount = lambdaCount.getCount();
+    long initialCommutativeCount = commutativeCount.getCount();
+
+    String input = "((lambda ($0) (and:<t*,t> y x $0)) (and:<t*,t> z))";
+    runTest(conjunction, input, "(and:<t*,t> x y z)");
+    assertEquals(1, lambdaCount.getCount() - initialLambdaCount);
+    assertEquals(2, commutativeCount.getCount() - initialCommutativeCount);
+
+    // The second simplification is memoized.
+    runTest(conjunction, input, "(and:<t*,t> x y z)");
+    assertEquals(1, lambdaCount.getCount() - initialLambdaCount);
+    assertEquals(2, commutativeCount.getCount() - initialCommutativeCount);
+  }
+
   private void runTest(ExpressionSimplifier simp, String input, String expected) {
     ExpressionParser<Expression2> parser = ExpressionParser.expression2();
     Expression2 inputExpression = parser.parse(input);
@@ -0,0 +1,104 @@
+package com.jayantkrish.jklol.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.util.IoUtils;
+
+/**
+ * Unit tests for {@link StreamingLineDataset}.
+ * 
+ * @author jayantk
+ */
+public class StreamingLineDatasetTest extends TestCase {
+
+  private File file;
+  private List<Integer> expected;
+  
+  private static final int NUM_LINES = 1000;
+
+  @Override
+  public void setUp() throws IOException {
+    file = File.createTempFile("jklol-dataset", ".txt");
+    file.deleteOnExit();
+
+    List<String> lines = Lists.newArrayList();
+    expected = Lists.newArrayList();
+    for (int i = 0; i < NUM_LINES; i++) {
+      lines.add(Integer.toString(i));
+      expected.add(i);
+      if (i % 100 == 0) {
+        lines.add("");
+      }
+    }
+    IoUtils.writeLines(file.getPath(), lines);
+  }
+
+  public void testIterator() {
+    StreamingLineDataset<Integer> dataset = new StreamingLineDataset<Integer>(
+        file.getPath(), new IntegerFormat(), 3, 100);
+    assertEquals(NUM_LINES, dataset.size());
+    // Multiple passes should return the same items.
+    assertEquals(expected, Lists.newArrayList(dataset));
+    assertEquals(expected, Lists.newArrayList(dataset));
+  }
+
+  public void testShuffle() {
+    StreamingLineDataset<Integer> dataset = new StreamingLineDataset<Integer>(
+        file.getPath(), new IntegerFormat(), 3, 100, 128, 0L);
+    List<Integer> firstPass = Lists.newArrayList(dataset);
+    List<Integer> secondPass = Lists.newArrayList(dataset);
+    assertFalse(expected.equals(firstPass));
+    assertFalse(firstPass.equals(secondPass));
+
+    Collections.sort(firstPass);
+    Collections.sort(secondPass);
+    assertEquals(expected, firstPass);
+    assertEquals(expected, secondPass);
+  }
+
+  public void testParseError() {
+    StreamingLineDataset<Integer> dataset = new StreamingLineDataset<Integer>(
+        file.getPath(), new IntegerFormat() {
+          @Override
+          public Integer parseFrom(String item) {
+            Preconditions.checkState(!item.equals("500"));
+            return super.parseFrom(item);
+          }
+        }, 2, 100);
+
+    try {
+      Lists.newArrayList(dataset);
+    } catch (RuntimeException e) {
+      return;
+    }
+    fail("Expected RuntimeException");
+  }
+
+  public void testClose() {
+    StreamingLineDataset<Integer> dataset = new StreamingLineDataset<Integer>(
+        file.getPath(), new IntegerFormat(), 2, 100);
+    assertEquals(expected, Lists.newArrayList(dataset));
+    dataset.close();
+
+    try {
+      dataset.iterator();
+    } catch (IllegalStateException e) {
+      return;
+    }
+    fail("Expected IllegalStateException");
+  }
+
+  private static class IntegerFormat extends LineDataFormat<Integer> {
+    @Override
+    public Integer parseFrom(String item) {
+      return Integer.parseInt(item);
+    }
+  }
+}
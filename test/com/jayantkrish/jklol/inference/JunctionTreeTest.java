@@ -5,6 +5,8 @@ import java.util.Arrays;
 import junit.framework.TestCase;
 
 import com.google.common.primitives.Ints;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
 import com.jayantkrish.jklol.models.FactorGraph;
 import com.jayantkrish.jklol.util.Assignment;
 
@@ -29,6 +31,51 @@ public class JunctionTreeTest extends TestCase {
 	  InferenceTestCases.testTriangleFactorGraphMarginals().runTest(new JunctionTree(), TOLERANCE);
 	}
 
+	public void testCachedCliqueTreeStructure() {
+	  // Both factor graphs have the same structure, so the second
+	  // reuses the clique tree structure of the first.
+	  Counter hits = Metrics.counter("inference/clique_tree_cache_hits");
+	  FactorGraph fg = InferenceTestCases.nonCliqueTreeFactorGraph();
+	  JunctionTree.CliqueTree first = JunctionTree.CliqueTree.fromFactorGraph(fg);
+	  long initialHits = hits.getCount();
+	  JunctionTree.CliqueTree second = JunctionTree.CliqueTree.fromFactorGraph(
+	      InferenceTestCases.nonCliqueTreeFactorGraph());
+	  assertEquals(initialHits + 1, hits.getCount());
+	  assertTrue(first.sharesStructureWith(second));
+	  assertEquals(first.numFactors(), second.numFactors());
+	  assertEquals(first.getFactorEliminationOrder(), second.getFactorEliminationOrder());
+
+	  // Recomputing the structure does not use the cache.
+	  JunctionTree.CliqueTree uncached = JunctionTree.CliqueTree.fromHeuristicVariableElimination(fg);
+	  assertFalse(first.sharesStructureWith(uncached));
+	  assertEquals(first.getFactorEliminationOrder(), uncached.getFactorEliminationOrder());
+
+	  InferenceTestCases.testNonCliqueTreeUnconditional().runTest(new JunctionTree(), TOLERANCE);
+	  InferenceTestCases.testNonCliqueTreeUnconditional().runTest(new JunctionTree(), TOLERANCE);
+	}
+
+	public void testCachedCliqueTreeStructureDifferentGraphs() {
+	  // Factor graphs with different structures never share a cache entry.
+	  JunctionTree.CliqueTree nonCliqueTree = JunctionTree.CliqueTree.fromFactorGraph(
+	      InferenceTestCases.nonCliqueTreeFactorGraph());
+	  JunctionTree.CliqueTree basic = JunctionTree.CliqueTree.fromFactorGraph(
+	      InferenceTestCases.basicFactorGraph());
+	  JunctionTree.CliqueTree triangle = JunctionTree.CliqueTree.fromFactorGraph(
+	      InferenceTestCases.triangleFactorGraph());
+	  assertFalse(nonCliqueTree.sharesStructureWith(basic));
+	  assertFalse(nonCliqueTree.sharesStructureWith(triangle));
+	  assertFalse(basic.sharesStructureWith(triangle));
+
+	  // Conditioning removes variables from the minimal factors, which
+	  // changes the structure.
+	  FactorGraph fg = InferenceTestCases.basicFactorGraph();
+	  FactorGraph conditional = fg.conditional(fg.outcomeToAssignment(
+	      Arrays.asList("Var0"), Arrays.asList("T")));
+	  assertFalse(basic.sharesStructureWith(JunctionTree.CliqueTree.fromFactorGraph(conditional)));
+	  assertTrue(basic.sharesStructureWith(JunctionTree.CliqueTree.fromFactorGraph(
+	      InferenceTestCases.basicFactorGraph())));
+	}
+
 	public void testConditionals() {
 		InferenceTestCases.testBasicConditional().runTest(new JunctionTree(), 0.0);
 	}
@@ -56,5 +103,19 @@ public class JunctionTreeTest extends TestCase {
 	public void testTriangleMaxMarginals() {
 	  InferenceTestCases.testTriangleFactorGraphMaxMarginals().runTest(new JunctionTree(), 0.0);
 	}
-}
 
+	public void testParallelMarginals() {
+	  JunctionTree jt = new JunctionTree(false, null, 4);
+	  InferenceTestCases.testBasicUnconditional().runTest(jt, TOLERANCE);
+	  InferenceTestCases.testNonCliqueTreeUnconditional().runTest(jt, TOLERANCE);
+	  InferenceTestCases.testTriangleFactorGraphMarginals().runTest(jt, TOLERANCE);
+	  InferenceTestCases.testBasicConditional().runTest(jt, TOLERANCE);
+	}
+
+	public void testParallelMaxMarginals() {
+	  JunctionTree jt = new JunctionTree(false, null, 4);
+	  InferenceTestCases.testBasicMaxMarginals().runTest(jt, 0.0);
+	  InferenceTestCases.testConditionalMaxMarginals().runTest(jt, 0.0);
+	  InferenceTestCases.testTriangleFactorGraphMaxMarginals().runTest(jt, 0.0);
+	}
+}
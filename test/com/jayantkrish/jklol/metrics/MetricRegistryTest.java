@@ -0,0 +1,100 @@
+package com.jayantkrish.jklol.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.ObjectName;
+
+import junit.framework.TestCase;
+
+public class MetricRegistryTest extends TestCase {
+
+  private MetricRegistry registry;
+
+  public void setUp() {
+    registry = new MetricRegistry();
+  }
+
+  public void testBuckets() {
+    for (long value = 0; value < 100000; value += 7) {
+      int index = LatencyHistogram.getBucketIndex(value);
+      long lower = LatencyHistogram.getBucketLowerBound(index);
+      assertTrue(lower <= value);
+      assertTrue(value < lower + LatencyHistogram.getBucketWidth(index));
+    }
+    int index = LatencyHistogram.getBucketIndex(Long.MAX_VALUE);
+    assertTrue(LatencyHistogram.getBucketLowerBound(index) <= Long.MAX_VALUE);
+  }
+
+  public void testPercentiles() {
+    Timer timer = registry.timer("foo");
+    for (int i = 1; i <= 1000; i++) {
+      timer.record(i * 1000L);
+    }
+
+    LatencyHistogram.Snapshot snapshot = timer.getSnapshot();
+    assertEquals(1000, snapshot.getCount());
+    assertEquals(500500000L, snapshot.getSum());
+    assertEquals(1000000L, snapshot.getMax());
+    assertEquals(500000.0, snapshot.getPercentile(0.5), 500000.0 * 0.07);
+    assertEquals(990000.0, snapshot.getPercentile(0.99), 990000.0 * 0.07);
+    assertEquals(1000000L, snapshot.getPercentile(1.0));
+  }
+
+  public void testConcurrentRecording() throws InterruptedException {
+    final Timer timer = registry.timer("foo");
+    final Counter counter = registry.counter("bar");
+    final int numThreads = 8;
+    final int numEvents = 10000;
+    final CountDownLatch done = new CountDownLatch(numThreads);
+    for (int i = 0; i < numThreads; i++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = 0; j < numEvents; j++) {
+            timer.stop(timer.start());
+            counter.increment();
+          }
+          done.countDown();
+        }
+      }).start();
+    }
+    done.await();
+
+    assertEquals(numThreads * numEvents, timer.getCount());
+    assertEquals(numThreads * numEvents, counter.getCount());
+  }
+
+  public void testRegistry() {
+    assertSame(registry.timer("foo"), registry.timer("foo"));
+    assertSame(registry.counter("foo"), registry.counter("foo"));
+
+    registry.timer("b").record(10);
+    registry.timer("a").record(10);
+    registry.timer("unused");
+    registry.counter("c").increment(3);
+
+    List<String> report = registry.getReport();
+    assertEquals(3, report.size());
+    assertTrue(report.get(0).startsWith("a: "));
+    assertTrue(report.get(1).startsWith("b: "));
+    assertEquals("c: 3", report.get(2));
+
+    registry.reset();
+    assertEquals(0, registry.getReport().size());
+  }
+
+  public void testJmx() throws Exception {
+    registry.timer("foo").record(2000000);
+    registry.registerMBeans("jklol.test");
+    registry.counter("bar").increment();
+
+    ObjectName timerName = new ObjectName("jklol.test:type=Timer,name=\"foo\"");
+    ObjectName counterName = new ObjectName("jklol.test:type=Counter,name=\"bar\"");
+    assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(timerName, "Count"));
+    assertEquals(2.0, (Double) ManagementFactory.getPlatformMBeanServer()
+        .getAttribute(timerName, "TotalMillis"), 1e-9);
+    assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(counterName, "Count"));
+  }
+}
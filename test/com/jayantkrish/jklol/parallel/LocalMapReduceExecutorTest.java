@@ -1,6 +1,7 @@
 package com.jayantkrish.jklol.parallel;
 
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
@@ -56,6 +57,108 @@ public class LocalMapReduceExecutorTest extends TestCase {
     assertEquals(Doubles.asList(3.3, 3.9, 5.1, 6.1, 7.2, 8.3, 9.4), result);
   }
 
+  public void testShutdown() {
+    int value = executor.mapReduce(longItems, new RoundMapper(), new SumReducer());
+    assertEquals(45, value);
+    executor.shutdown();
+    // The executor should recreate its threads after being shut down.
+    value = executor.mapReduce(longItems, new RoundMapper(), new SumReducer());
+    assertEquals(45, value);
+    executor.shutdown();
+  }
+
+  public void testNestedMapReduce() {
+    // Mappers that themselves invoke the executor must not deadlock
+    // on the shared thread pool.
+    final List<Double> items = longItems;
+    Mapper<Double, Integer> nestedMapper = new Mapper<Double, Integer>() {
+      @Override
+      public Integer map(Double item) {
+        return executor.mapReduce(items, new RoundMapper(), new SumReducer());
+      }
+    };
+
+    int value = executor.mapReduce(longItems, nestedMapper, new SumReducer());
+    assertEquals(45 * 9, value);
+  }
+
+  public void testPooledMapReduce() {
+    PooledSumReducer reducer = new PooledSumReducer();
+    for (int i = 0; i < 5; i++) {
+      int[] value = executor.mapReduce(longItems, new RoundMapper(), reducer);
+      assertEquals(45, value[0]);
+      value = executor.mapReduce(shortItems, new RoundMapper(), reducer);
+      assertEquals(10, value[0]);
+    }
+
+    // Accumulators are reused across calls, and are zeroed out
+    // after each call.
+    AccumulatorPool<int[]> pool = reducer.getAccumulatorPool();
+    assertTrue(pool.getNumFreeAccumulators() <= 3 * 2);
+    for (int i = 0; i < pool.getNumFreeAccumulators(); i++) {
+      int[] accumulator = pool.acquire(reducer);
+      assertEquals(0, accumulator[0]);
+      pool.release(accumulator);
+    }
+  }
+
+  public void testPooledMapReduceAllocations() {
+    PooledSumReducer reducer = new PooledSumReducer();
+    AccumulatorPool<int[]> pool = reducer.getAccumulatorPool();
+
+    // Given an accumulator, every allocated accumulator is retained by
+    // the pool, so the number of allocations is bounded by the number
+    // of concurrently executing batches.
+    int[] accumulator = new int[1];
+    for (int i = 0; i < 10; i++) {
+      reducer.zeroOut(accumulator);
+      assertSame(accumulator, executor.mapReduce(longItems, new RoundMapper(), reducer,
+          accumulator));
+      assertEquals(45, accumulator[0]);
+    }
+    assertEquals(pool.getNumFreeAccumulators(), reducer.getNumAllocations());
+
+    // Otherwise, the merged pooled accumulator is handed to the caller
+    // and must not be reused by later calls.
+    int[] first = executor.mapReduce(longItems, new RoundMapper(), reducer);
+    int[] second = executor.mapReduce(shortItems, new RoundMapper(), reducer);
+    assertNotSame(first, second);
+    assertEquals(45, first[0]);
+    assertEquals(10, second[0]);
+    for (int i = 0; i < pool.getNumFreeAccumulators(); i++) {
+      int[] pooled = pool.acquire(reducer);
+      assertNotSame(first, pooled);
+      assertNotSame(second, pooled);
+      pool.release(pooled);
+    }
+  }
+
+  public void testPooledMapReduceFailure() {
+    PooledSumReducer reducer = new PooledSumReducer();
+    Mapper<Double, Integer> failingMapper = new Mapper<Double, Integer>() {
+      @Override
+      public Integer map(Double item) {
+        if (item > 8.5) {
+          throw new IllegalStateException("map failed");
+        }
+        return (int) Math.round(item);
+      }
+    };
+
+    try {
+      executor.mapReduce(longItems, failingMapper, reducer);
+      fail("Expected an exception");
+    } catch (RuntimeException e) {
+      // Expected.
+    }
+
+    // Partially reduced accumulators from the failed call must not
+    // be reused.
+    assertEquals(0, reducer.getAccumulatorPool().getNumFreeAccumulators());
+    int[] value = executor.mapReduce(longItems, new RoundMapper(), reducer);
+    assertEquals(45, value[0]);
+  }
+
   private static class RoundMapper extends Mapper<Double, Integer> {
     @Override
     public Integer map(Double item) {
@@ -74,4 +177,41 @@ public class LocalMapReduceExecutorTest extends TestCase {
       return item + accumulated;
     }
   }
+
+  private static class PooledSumReducer implements PooledReducer<Integer, int[]> {
+    private final AccumulatorPool<int[]> pool = new AccumulatorPool<int[]>();
+    private final AtomicInteger numAllocations = new AtomicInteger(0);
+
+    @Override
+    public int[] getInitialValue() {
+      numAllocations.incrementAndGet();
+      return new int[1];
+    }
+
+    public int getNumAllocations() {
+      return numAllocations.get();
+    }
+
+    @Override
+    public int[] reduce(Integer item, int[] accumulated) {
+      accumulated[0] += item;
+      return accumulated;
+    }
+
+    @Override
+    public int[] combine(int[] other, int[] accumulated) {
+      accumulated[0] += other[0];
+      return accumulated;
+    }
+
+    @Override
+    public AccumulatorPool<int[]> getAccumulatorPool() {
+      return pool;
+    }
+
+    @Override
+    public void zeroOut(int[] accumulator) {
+      accumulator[0] = 0;
+    }
+  }
 }
@@ -0,0 +1,261 @@
+package com.jayantkrish.jklol.sequence;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.evaluation.Example;
+import com.jayantkrish.jklol.inference.FactorMarginalSet;
+import com.jayantkrish.jklol.inference.JunctionTree;
+import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.models.DiscreteFactor;
+import com.jayantkrish.jklol.models.FactorGraph;
+import com.jayantkrish.jklol.models.VariableNumMap;
+import com.jayantkrish.jklol.models.dynamic.DynamicAssignment;
+import com.jayantkrish.jklol.models.dynamic.DynamicFactorGraph;
+import com.jayantkrish.jklol.models.dynamic.VariablePattern.VariableMatch;
+import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
+import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
+import com.jayantkrish.jklol.preprocessing.DictionaryFeatureVectorGenerator;
+import com.jayantkrish.jklol.preprocessing.FeatureGenerator;
+import com.jayantkrish.jklol.preprocessing.FeatureVectorGenerator;
+import com.jayantkrish.jklol.sequence.LinearChainInference.ChainMarginals;
+import com.jayantkrish.jklol.training.LoglikelihoodOracle;
+import com.jayantkrish.jklol.training.NullLogFunction;
+import com.jayantkrish.jklol.util.Assignment;
+import com.jayantkrish.jklol.util.Pseudorandom;
+
+public class LinearChainInferenceTest extends TestCase {
+
+  private static final double NEG_INF = Double.NEGATIVE_INFINITY;
+
+  private final double[][] emissions = {
+      {0.5, -1.0, NEG_INF},
+      {0.0, 2.0, 1.0},
+      {-0.5, NEG_INF, 0.3},
+      {1.0, 0.2, -2.0}};
+  private final double[] transitions = {
+      0.1, -0.3, 1.2,
+      NEG_INF, 0.4, -0.1,
+      0.7, 0.0, NEG_INF};
+
+  private final String[][] inputs = {{"the", "man"}, {"the", "big", "man"}, {"a", "man", "ran"}};
+  private final String[][] labels = {{"DT", "NN"}, {"DT", "JJ", "NN"}, {"DT", "NN", "VB"}};
+  private static final String START_POS = "START_POS";
+
+  private List<TaggedSequence<String, String>> sequences;
+  private FeatureVectorGenerator<LocalContext<String>> featureGen;
+  private ParametricFactorGraph family;
+  private SufficientStatistics parameters;
+
+  public void setUp() {
+    sequences = Lists.newArrayList();
+    Set<String> labelSet = Sets.newHashSet(START_POS);
+    for (int i = 0; i < inputs.length; i++) {
+      sequences.add(new ListTaggedSequence<String, String>(Arrays.asList(inputs[i]),
+          Arrays.asList(labels[i])));
+      labelSet.addAll(Arrays.asList(labels[i]));
+    }
+
+    featureGen = DictionaryFeatureVectorGenerator.createFromData(
+        TaggerUtils.extractContextsFromData(sequences), new WordFeatureGenerator(), true);
+    family = TaggerUtils.buildFeaturizedSequenceModel(labelSet,
+        featureGen.getFeatureDictionary(), false, false);
+
+    Pseudorandom.get().setSeed(0);
+    parameters = family.getNewSufficientStatistics();
+    parameters.perturb(1.0);
+  }
+
+  public void testForwardBackward() {
+    ChainMarginals marginals = LinearChainInference.forwardBackward(emissions, transitions);
+    int numLabels = emissions[0].length;
+
+    double[][] expectedMarginals = new double[emissions.length][numLabels];
+    double[] expectedTransitions = new double[numLabels * numLabels];
+    double partitionFunction = 0.0;
+    for (int[] labels : enumerateLabels(emissions.length, numLabels)) {
+      double prob = Math.exp(score(labels));
+      partitionFunction += prob;
+      for (int i = 0; i < labels.length; i++) {
+        expectedMarginals[i][labels[i]] += prob;
+        if (i > 0) {
+          expectedTransitions[labels[i - 1] * numLabels + labels[i]] += prob;
+        }
+      }
+    }
+
+    assertEquals(Math.log(partitionFunction), marginals.getLogPartitionFunction(), 1e-10);
+    for (int i = 0; i < emissions.length; i++) {
+      for (int j = 0; j < numLabels; j++) {
+        assertEquals(expectedMarginals[i][j] / partitionFunction,
+            marginals.getMarginals()[i][j], 1e-10);
+      }
+    }
+    for (int i = 0; i < expectedTransitions.length; i++) {
+      assertEquals(expectedTransitions[i] / partitionFunction,
+          marginals.getExpectedTransitions()[i], 1e-10);
+    }
+  }
+
+  public void testViterbi() {
+    int[] best = null;
+    double bestScore = NEG_INF;
+    for (int[] labels : enumerateLabels(emissions.length, emissions[0].length)) {
+      if (score(labels) > bestScore) {
+        best = labels;
+        bestScore = score(labels);
+      }
+    }
+    assertTrue(Arrays.equals(best, LinearChainInference.viterbi(emissions, transitions)));
+  }
+
+  public void testZeroProbability() {
+    double[][] disallowed = {{0.0, NEG_INF, NEG_INF}, {NEG_INF, NEG_INF, 1.0}, {0.0, 1.0, 2.0}};
+    // The only permitted first two labels are 0, 2, which is a
+    // disallowed transition.
+    double[] noTransitions = new double[9];
+    noTransitions[0 * 3 + 2] = NEG_INF;
+
+    assertEquals(NEG_INF, LinearChainInference.forwardBackward(disallowed, noTransitions)
+        .getLogPartitionFunction());
+    try {
+      LinearChainInference.viterbi(disallowed, noTransitions);
+    } catch (ZeroProbabilityError e) {
+      return;
+    }
+    fail("Expected ZeroProbabilityError");
+  }
+
+  public void testGradient() {
+    List<Example<DynamicAssignment, DynamicAssignment>> examples = TaggerUtils.reformatTrainingData(
+        sequences, featureGen, family.getVariables(), TaggerUtils.DEFAULT_INPUT_VALUE, START_POS);
+    LoglikelihoodOracle oracle = new LoglikelihoodOracle(family, new JunctionTree());
+    LinearChainLoglikelihoodOracle chainOracle = new LinearChainLoglikelihoodOracle(family);
+
+    DynamicFactorGraph model = oracle.instantiateModel(parameters);
+    LinearChainModel chainModel = chainOracle.instantiateModel(parameters);
+    for (Example<DynamicAssignment, DynamicAssignment> example : examples) {
+      SufficientStatistics gradient = oracle.initializeGradient();
+      double objective = oracle.accumulateGradient(gradient, parameters, model, example,
+          new NullLogFunction());
+
+      SufficientStatistics chainGradient = chainOracle.initializeGradient();
+      double chainObjective = chainOracle.accumulateGradient(chainGradient, parameters,
+          chainModel, example, new NullLogFunction());
+
+      assertEquals(objective, chainObjective, 1e-8);
+      chainGradient.increment(gradient, -1.0);
+      assertEquals(0.0, chainGradient.getL2Norm(), 1e-8);
+    }
+  }
+
+  public void testTagger() {
+    DynamicFactorGraph model = family.getModelFromParameters(parameters);
+    FactorGraphSequenceTagger<String, String> tagger = new FactorGraphSequenceTagger<String, String>(
+        family, parameters, model, featureGen, TaggerUtils.getDefaultInputGenerator(), String.class,
+        new JunctionTree(), new JunctionTree(true), TaggerUtils.DEFAULT_INPUT_VALUE, START_POS);
+    assertNotNull(tagger.getLinearChainModel());
+
+    VariableNumMap labelVar = model.getVariables().getPlate(TaggerUtils.PLATE_NAME)
+        .getFixedVariables().getVariablesByName(TaggerUtils.OUTPUT_NAME);
+    for (TaggedSequence<String, String> sequence : sequences) {
+      List<String> items = sequence.getItems();
+      DynamicAssignment input = TaggerUtils.reformatTrainingData(sequence, featureGen,
+          model.getVariables(), TaggerUtils.DEFAULT_INPUT_VALUE, START_POS).getInput();
+      FactorGraph fg = model.conditional(input);
+      List<VariableMatch> matches = model.getVariables().getPlateInstantiations(
+          fg.getAllVariables(), TaggerUtils.PLATE_NAME);
+
+      Assignment best = new JunctionTree().computeMaxMarginals(fg).getNthBestAssignment(0);
+      FactorMarginalSet marginals = new JunctionTree(true).computeMarginals(fg);
+      MultitaggedSequence<String, String> multitags = tagger.multitag(items, 0.0);
+      List<String> predicted = tagger.tag(items).getLabels();
+      for (int i = 0; i < items.size(); i++) {
+        int varNum = matches.get(i + 1).getMatchedVariablesFromTemplateVariables(labelVar)
+            .getOnlyVariableNum();
+        assertEquals(best.getValue(varNum), predicted.get(i));
+
+        DiscreteFactor marginal = marginals.getMarginal(varNum).coerceToDiscrete();
+        List<String> curLabels = multitags.getLabels().get(i);
+        List<Double> curProbs = multitags.getLabelProbabilities().get(i);
+        for (int j = 0; j < curLabels.size(); j++) {
+          assertEquals(marginal.getUnnormalizedProbability(curLabels.get(j))
+              / marginal.getTotalUnnormalizedProbability(), curProbs.get(j), 1e-8);
+        }
+        assertEquals(predicted.get(i), curLabels.get(0));
+      }
+    }
+  }
+
+  public void testTaggerMarginalsMatchJunctionTree() {
+    DynamicFactorGraph model = family.getModelFromParameters(parameters);
+    FactorGraphSequenceTagger<String, String> tagger = new FactorGraphSequenceTagger<String, String>(
+        family, parameters, model, featureGen, TaggerUtils.getDefaultInputGenerator(), String.class,
+        new JunctionTree(), new JunctionTree(true), TaggerUtils.DEFAULT_INPUT_VALUE, START_POS);
+    assertNotNull(tagger.getLinearChainModel());
+
+    for (TaggedSequence<String, String> sequence : sequences) {
+      List<String> items = sequence.getItems();
+      for (double threshold : new double[] {0.0, 0.3}) {
+        MultitaggedSequence<String, String> chainTags = tagger.multitag(items, threshold);
+        MultitaggedSequence<String, String> treeTags = tagger.multitagWithJunctionTree(items, threshold);
+
+        for (int i = 0; i < items.size(); i++) {
+          List<String> chainLabels = chainTags.getLabels().get(i);
+          List<String> treeLabels = treeTags.getLabels().get(i);
+          assertEquals(Sets.newHashSet(treeLabels), Sets.newHashSet(chainLabels));
+          for (int j = 0; j < treeLabels.size(); j++) {
+            int chainIndex = chainLabels.indexOf(treeLabels.get(j));
+            assertEquals(treeTags.getLabelProbabilities().get(i).get(j),
+                chainTags.getLabelProbabilities().get(i).get(chainIndex), 1e-8);
+          }
+        }
+      }
+    }
+  }
+
+  private double score(int[] labels) {
+    double score = 0.0;
+    for (int i = 0; i < labels.length; i++) {
+      score += emissions[i][labels[i]];
+      if (i > 0) {
+        score += transitions[labels[i - 1] * emissions[0].length + labels[i]];
+      }
+    }
+    return score;
+  }
+
+  private static List<int[]> enumerateLabels(int length, int numLabels) {
+    List<int[]> sequences = Lists.newArrayList();
+    int numSequences = (int) Math.pow(numLabels, length);
+    for (int i = 0; i < numSequences; i++) {
+      int[] labels = new int[length];
+      int value = i;
+      for (int j = 0; j < length; j++) {
+        labels[j] = value % numLabels;
+        value /= numLabels;
+      }
+      sequences.add(labels);
+    }
+    return sequences;
+  }
+
+  private static class WordFeatureGenerator implements FeatureGenerator<LocalContext<String>, String> {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public Map<String, Double> generateFeatures(LocalContext<String> item) {
+      Map<String, Double> map = Maps.newHashMap();
+      map.put(item.getItem(), 1.0);
+      map.put("BIAS", 1.0);
+      return map;
+    }
+  }
+}
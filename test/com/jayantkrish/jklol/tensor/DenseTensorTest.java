@@ -1,7 +1,10 @@
 package com.jayantkrish.jklol.tensor;
 
+import java.util.Arrays;
 import java.util.Iterator;
 
+import com.google.common.collect.Sets;
+
 import com.jayantkrish.jklol.tensor.TensorBase.KeyValue;
 
 /**
@@ -27,4 +30,54 @@ public class DenseTensorTest extends TensorTest {
     }
     assertEquals(6, keyCount);
   }
+
+  public void testReduceAlternatingDimensions() {
+    DenseTensor tensor = DenseTensor.random(new int[] {0, 1, 2, 3}, new int[] {2, 3, 4, 5}, 0.0, 1.0);
+    Tensor sum = tensor.sumOutDimensions(Sets.newHashSet(0, 2));
+    Tensor max = tensor.maxOutDimensions(Sets.newHashSet(0, 2));
+    Tensor logSum = tensor.logSumOutDimensions(Sets.newHashSet(0, 2));
+    Tensor logSpaceSum = new LogSpaceTensorAdapter(tensor).sumOutDimensions(Sets.newHashSet(0, 2));
+    assertTrue(Arrays.equals(new int[] {1, 3}, sum.getDimensionNumbers()));
+
+    for (int j = 0; j < 3; j++) {
+      for (int l = 0; l < 5; l++) {
+        double expectedSum = 0.0;
+        double expectedMax = Double.NEGATIVE_INFINITY;
+        double expectedExpSum = 0.0;
+        for (int i = 0; i < 2; i++) {
+          for (int k = 0; k < 4; k++) {
+            double value = tensor.getByDimKey(i, j, k, l);
+            expectedSum += value;
+            expectedMax = Math.max(expectedMax, value);
+            expectedExpSum += Math.exp(value);
+          }
+        }
+        assertEquals(expectedSum, sum.getByDimKey(j, l), 1e-10);
+        assertEquals(expectedMax, max.getByDimKey(j, l));
+        assertEquals(Math.log(expectedExpSum), logSum.getByDimKey(j, l), 1e-10);
+        assertEquals(expectedExpSum, logSpaceSum.getByDimKey(j, l), 1e-10);
+      }
+    }
+  }
+
+  public void testLogSumOutDimensionsInfinite() {
+    DenseTensor tensor = new DenseTensor(new int[] {0, 1}, new int[] {2, 2},
+        new double[] {Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, 1000.0, 1000.0});
+    Tensor logSum = tensor.logSumOutDimensions(new int[] {1});
+    assertEquals(Double.NEGATIVE_INFINITY, logSum.getByDimKey(0));
+    assertEquals(1000.0 + Math.log(2), logSum.getByDimKey(1), 1e-10);
+  }
+
+  public void testMatrixInnerProductSharedUnalignedDimension() {
+    // Dimension 3 appears in both tensors, but is not aligned with
+    // the shared prefix, so the product is rejected.
+    DenseTensor x = DenseTensor.random(new int[] {1, 3, 4}, new int[] {2, 3, 4}, 0.0, 1.0);
+    DenseTensor y = DenseTensor.random(new int[] {1, 2, 3}, new int[] {2, 5, 3}, 0.0, 1.0);
+    try {
+      x.matrixInnerProduct(y);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {
+      // Expected.
+    }
+  }
 }
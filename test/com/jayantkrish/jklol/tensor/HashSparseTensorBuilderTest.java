@@ -0,0 +1,49 @@
+package com.jayantkrish.jklol.tensor;
+
+/**
+ * Unit tests for {@link HashSparseTensorBuilder}. Most test cases
+ * are in the superclass, {@link TensorBuilderTest}.
+ * 
+ * @author jayantk
+ */
+public class HashSparseTensorBuilderTest extends TensorBuilderTest {
+
+  public HashSparseTensorBuilderTest() {
+    super(HashSparseTensorBuilder.getFactory());
+  }
+
+  public void testManyEntries() {
+    // Enough entries to resize the hash table several times.
+    TensorBuilder hash = HashSparseTensorBuilder.getFactory().getBuilder(
+        new int[] {0, 1}, new int[] {100, 100});
+    for (int i = 0; i < 3000; i++) {
+      hash.incrementEntry(1.0, i % 100, (i / 100) * 3);
+    }
+    for (int i = 0; i < 1000; i++) {
+      hash.incrementEntry(1.0, i % 100, (i / 100) * 3);
+    }
+    assertEquals(3000, hash.size());
+    assertEquals(2.0, hash.getByDimKey(7, 3));
+    assertEquals(1.0, hash.getByDimKey(7, 60));
+    assertEquals(0.0, hash.getByDimKey(7, 1));
+    assertEquals(4000.0, hash.getTrace(), 0.0001);
+
+    SparseTensor built = (SparseTensor) hash.build();
+    assertEquals(3000, built.size());
+    long[] keyNums = built.getKeyNums();
+    for (int i = 1; i < keyNums.length; i++) {
+      assertTrue(keyNums[i - 1] < keyNums[i]);
+    }
+  }
+
+  public void testZeroEntriesOmitted() {
+    builder.put(new int[] {0, 1, 2}, 0.0);
+    Tensor built = builder.build();
+    assertEquals(1, built.size());
+    assertEquals(2.0, built.getByDimKey(1, 2, 0));
+
+    builder.multiply(0.0);
+    assertEquals(0, builder.size());
+    assertEquals(0.0, builder.getByDimKey(1, 2, 0));
+  }
+}
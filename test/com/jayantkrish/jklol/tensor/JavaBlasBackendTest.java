@@ -0,0 +1,99 @@
+package com.jayantkrish.jklol.tensor;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link JavaBlasBackend}.
+ * 
+ * @author jayantk
+ */
+public class JavaBlasBackendTest extends TestCase {
+
+  private Random random;
+
+  @Override
+  public void setUp() {
+    random = new Random(0);
+  }
+
+  public void testGemm() {
+    runGemmTest(new JavaBlasBackend(), 7, 5, 3);
+    // Larger than a single tile.
+    runGemmTest(new JavaBlasBackend(), 20, 300, 150);
+  }
+
+  public void testGemmParallel() {
+    // Large enough to be split across threads.
+    runGemmTest(new JavaBlasBackend(4), 160, 130, 110);
+  }
+
+  public void testGemv() {
+    int m = 6, n = 9;
+    double[] a = randomArray(m * n);
+    double[] x = randomArray(n);
+    double[] y = randomArray(m);
+    double[] expected = y.clone();
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < n; j++) {
+        expected[i] += a[i * n + j] * x[j];
+      }
+    }
+    new JavaBlasBackend().gemv(false, m, n, a, 0, x, 0, y, 0);
+    assertArrayEquals(expected, y);
+
+    double[] xTranspose = randomArray(m);
+    double[] yTranspose = randomArray(n);
+    double[] expectedTranspose = yTranspose.clone();
+    for (int i = 0; i < m; i++) {
+      for (int j = 0; j < n; j++) {
+        expectedTranspose[j] += a[i * n + j] * xTranspose[i];
+      }
+    }
+    new JavaBlasBackend().gemv(true, m, n, a, 0, xTranspose, 0, yTranspose, 0);
+    assertArrayEquals(expectedTranspose, yTranspose);
+  }
+
+  private void runGemmTest(BlasBackend blas, int m, int n, int k) {
+    for (boolean transposeA : new boolean[] {false, true}) {
+      for (boolean transposeB : new boolean[] {false, true}) {
+        // Offsets check that the matrices need not start at index 0.
+        double[] a = randomArray(m * k + 1);
+        double[] b = randomArray(k * n + 2);
+        double[] c = randomArray(m * n + 3);
+
+        double[] expected = c.clone();
+        for (int i = 0; i < m; i++) {
+          for (int j = 0; j < n; j++) {
+            for (int l = 0; l < k; l++) {
+              double aValue = transposeA ? a[1 + l * m + i] : a[1 + i * k + l];
+              double bValue = transposeB ? b[2 + j * k + l] : b[2 + l * n + j];
+              expected[3 + i * n + j] += aValue * bValue;
+            }
+          }
+        }
+
+        blas.gemm(transposeA, transposeB, m, n, k, a, 1, b, 2, c, 3);
+        assertArrayEquals(expected, c);
+      }
+    }
+  }
+
+  private double[] randomArray(int size) {
+    double[] values = new double[size];
+    for (int i = 0; i < size; i++) {
+      values[i] = random.nextGaussian();
+    }
+    return values;
+  }
+
+  private static void assertArrayEquals(double[] expected, double[] actual) {
+    assertEquals(expected.length, actual.length);
+    for (int i = 0; i < expected.length; i++) {
+      // Results are accumulated in the same order as the naive
+      // implementation, so they should be identical.
+      assertEquals(expected[i], actual[i], 0.0);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package com.jayantkrish.jklol.tensor;
+
+/**
+ * Unit tests for {@link SparseDeltaTensorBuilder}. Most test cases
+ * are in the superclass, {@link TensorBuilderTest}.
+ * 
+ * @author jayantk
+ */
+public class SparseDeltaTensorBuilderTest extends TensorBuilderTest {
+
+  public SparseDeltaTensorBuilderTest() {
+    super(SparseDeltaTensorBuilder.getFactory());
+  }
+
+  @Override
+  public void testIncrementConstant() {
+    try {
+      builder.increment(5.0);
+    } catch (UnsupportedOperationException e) {
+      return;
+    }
+    fail("Expected UnsupportedOperationException");
+  }
+
+  @Override
+  public void testExp() {
+    try {
+      builder.exp();
+    } catch (UnsupportedOperationException e) {
+      return;
+    }
+    fail("Expected UnsupportedOperationException");
+  }
+
+  public void testManyDuplicateIncrements() {
+    TensorBuilder delta = SparseDeltaTensorBuilder.getFactory().getBuilder(dimNums, dimSizes);
+    for (int i = 0; i < 1000; i++) {
+      delta.incrementEntry(1.0, i % 4, i % 3, i % 5);
+    }
+    assertEquals(60, delta.size());
+    assertEquals(17.0, delta.getByDimKey(0, 0, 0));
+    assertEquals(1000.0, delta.getTrace(), 0.0001);
+
+    delta.multiply(0.0);
+    assertEquals(0, delta.size());
+    assertEquals(0.0, delta.getByDimKey(0, 0, 0));
+  }
+
+  public void testRepmatIncrement() {
+    Tensor vector = SparseTensor.vector(2, 3, new double[] {0, 2, 0});
+    builder.incrementWithMultiplier(vector, 0.5);
+    assertEquals(2.0, builder.getByDimKey(0, 1, 2));
+    assertEquals(1.0, builder.getByDimKey(3, 1, 4));
+    assertEquals(0.0, builder.getByDimKey(3, 0, 4));
+    assertEquals(2.0, builder.getByDimKey(1, 2, 0));
+  }
+
+  public void testMaximum() {
+    builder.incrementEntry(-2.0, 1, 1, 1);
+    for (TensorBuilder otherBuilder : otherBuilders) {
+      TensorBuilder max = builder.getCopy();
+      otherBuilder.incrementEntry(-1.0, 1, 1, 1);
+      otherBuilder.incrementEntry(-3.0, 2, 2, 2);
+      max.maximum(otherBuilder);
+
+      assertEquals(3.0, max.getByDimKey(0, 1, 2));
+      assertEquals(2.0, max.getByDimKey(1, 2, 0));
+      assertEquals(4.0, max.getByDimKey(2, 2, 3));
+      assertEquals(-1.0, max.getByDimKey(1, 1, 1));
+      assertEquals(0.0, max.getByDimKey(2, 2, 2));
+      assertEquals(0.0, max.getByDimKey(0, 0, 0));
+    }
+  }
+}
@@ -0,0 +1,27 @@
+package com.jayantkrish.jklol.training;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Sets;
+import com.jayantkrish.jklol.metrics.Metrics;
+
+public class DefaultLogFunctionTest extends TestCase {
+
+  public void testSeparateTimers() {
+    DefaultLogFunction log1 = new DefaultLogFunction();
+    DefaultLogFunction log2 = new DefaultLogFunction();
+    long globalCount = Metrics.timer("log_function_test").getCount();
+
+    log1.startTimer("log_function_test");
+    log1.stopTimer("log_function_test");
+    log1.startTimer("log_function_test");
+    log1.stopTimer("log_function_test");
+    log2.startTimer("log_function_test");
+    log2.stopTimer("log_function_test");
+
+    assertEquals(2, log1.getTimerInvocations("log_function_test"));
+    assertEquals(1, log2.getTimerInvocations("log_function_test"));
+    assertEquals(Sets.newHashSet("log_function_test"), log1.getAllTimers());
+    assertEquals(globalCount, Metrics.timer("log_function_test").getCount());
+  }
+}
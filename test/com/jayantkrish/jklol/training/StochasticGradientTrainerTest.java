@@ -10,16 +10,22 @@ import junit.framework.TestCase;
 import com.google.common.collect.Lists;
 import com.jayantkrish.jklol.evaluation.Example;
 import com.jayantkrish.jklol.inference.JunctionTree;
+import com.jayantkrish.jklol.inference.MarginalCalculator.ZeroProbabilityError;
+import com.jayantkrish.jklol.metrics.Counter;
+import com.jayantkrish.jklol.metrics.Metrics;
 import com.jayantkrish.jklol.models.DiscreteFactor;
 import com.jayantkrish.jklol.models.DiscreteVariable;
 import com.jayantkrish.jklol.models.VariableNumMap;
 import com.jayantkrish.jklol.models.dynamic.DynamicAssignment;
+import com.jayantkrish.jklol.models.dynamic.DynamicFactorGraph;
 import com.jayantkrish.jklol.models.loglinear.DiscreteLogLinearFactor;
 import com.jayantkrish.jklol.models.parametric.ParametricFactorGraph;
 import com.jayantkrish.jklol.models.parametric.ParametricFactorGraphBuilder;
 import com.jayantkrish.jklol.models.parametric.SufficientStatistics;
 import com.jayantkrish.jklol.models.parametric.TensorSufficientStatistics;
 import com.jayantkrish.jklol.tensor.TensorBase;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.Regularizer;
+import com.jayantkrish.jklol.training.StochasticGradientTrainer.StochasticL2Regularizer;
 import com.jayantkrish.jklol.util.Assignment;
 
 public class StochasticGradientTrainerTest extends TestCase {
@@ -125,7 +131,256 @@ public class StochasticGradientTrainerTest extends TestCase {
 	      Double.MAX_VALUE, 0.1, new DefaultLogFunction()));
 	}
 
+	public void testTrainL2SparseGradients() {
+	  runTest(StochasticGradientTrainer.createWithL2Regularization(100, 3, 1, true, false,
+	      Double.MAX_VALUE, 1, new DefaultLogFunction()), true);
+	}
+
+	public void testTrainAdagradL2SparseGradients() {
+	  runTest(StochasticGradientTrainer.createAdagrad(100, 3, 0.01, true, false, Double.MAX_VALUE,
+	      1, 1, new DefaultLogFunction()), true);
+	}
+
+	public void testTrainL1AveragedSparseGradients() {
+	  runTest(StochasticGradientTrainer.createWithL1Regularization(100, 3, 0.01, true, true,
+	      Double.MAX_VALUE, 0.1, new DefaultLogFunction()), true);
+	}
+
+	public void testTrainLazyL2() {
+	  runTest(StochasticGradientTrainer.createWithLazyL2Regularization(100, 3, 1, true, false,
+	      Double.MAX_VALUE, 1, 10, new DefaultLogFunction()));
+	}
+
+	public void testTrainLazyL2AveragedSparseGradients() {
+	  runTest(StochasticGradientTrainer.createWithLazyL2Regularization(100, 3, 0.01, true, true,
+	      Double.MAX_VALUE, 1, 10, new DefaultLogFunction()), true);
+	}
+
+	public void testLazyL2MatchesL2() {
+	  // With a flush interval of 1, the lazy regularizer should
+	  // produce exactly the same parameters as the eager one.
+	  for (boolean averaged : new boolean[] {false, true}) {
+	    LoglikelihoodOracle oracle = new LoglikelihoodOracle(logLinearModel, new JunctionTree());
+	    SufficientStatistics expected = StochasticGradientTrainer.createWithL2Regularization(
+	        50, 3, 0.1, true, averaged, Double.MAX_VALUE, 0.5, null)
+	        .train(oracle, oracle.initializeGradient(), trainingData);
+	    SufficientStatistics actual = StochasticGradientTrainer.createWithLazyL2Regularization(
+	        50, 3, 0.1, true, averaged, Double.MAX_VALUE, 0.5, 1, null)
+	        .train(new SparseGradientOracle<DynamicFactorGraph,
+	            Example<DynamicAssignment, DynamicAssignment>>(oracle), oracle.initializeGradient(), trainingData);
+	    assertParametersEqual(expected, actual);
+	  }
+	}
+
+	public void testSparseGradientsOption() {
+	  // Constructing the trainer with sparseGradients is equivalent
+	  // to wrapping the oracle in a SparseGradientOracle.
+	  LoglikelihoodOracle oracle = new LoglikelihoodOracle(logLinearModel, new JunctionTree());
+	  SufficientStatistics expected = new StochasticGradientTrainer(50, 3, 0.1, true, false, false,
+	      Double.MAX_VALUE, new LazyL2Regularizer(0.5, 10), false, false, null)
+	      .train(new SparseGradientOracle<DynamicFactorGraph,
+	          Example<DynamicAssignment, DynamicAssignment>>(oracle), oracle.initializeGradient(), trainingData);
+	  SufficientStatistics actual = new StochasticGradientTrainer(50, 3, 0.1, true, false, false,
+	      Double.MAX_VALUE, new LazyL2Regularizer(0.5, 10), false, true, null)
+	      .train(oracle, oracle.initializeGradient(), trainingData);
+	  assertParametersEqual(expected, actual);
+	}
+
+	public void testLazyL2Regularizer() {
+	  // Applying a sequence of gradients lazily should produce the
+	  // same parameters as applying them eagerly, once the deferred
+	  // updates are flushed.
+	  LoglikelihoodOracle oracle = new LoglikelihoodOracle(logLinearModel, new JunctionTree());
+	  SufficientStatistics eager = oracle.initializeGradient();
+	  eager.perturb(1.0);
+	  SufficientStatistics eagerAverage = eager.duplicate();
+	  SufficientStatistics lazy = eager.duplicate();
+	  SufficientStatistics lazyAverage = eager.duplicate();
+
+	  int numIterations = 20;
+	  Regularizer eagerRegularizer = new StochasticL2Regularizer(0.3, 1.0);
+	  LazyL2Regularizer lazyRegularizer = new LazyL2Regularizer(0.3, 7);
+	  lazyRegularizer.initialize(lazy, lazyAverage, numIterations);
+	  for (int i = 0; i < numIterations; i++) {
+	    SufficientStatistics gradient = SparseGradientOracle.toSparseDelta(oracle.initializeGradient());
+	    List<SufficientStatistics> blocks = gradient.coerceToList().getStatistics();
+	    ((TensorSufficientStatistics) blocks.get(i % blocks.size())).incrementFeatureByIndex(i + 1.0, i % 3);
+	    double stepSize = 1.0 / Math.sqrt(i + 2);
+
+	    eagerRegularizer.apply(gradient.duplicate(), eager, null, stepSize);
+	    eagerAverage.increment(eager, 1.0 / numIterations);
+	    lazyRegularizer.apply(gradient, lazy, null, stepSize);
+	  }
+	  lazyRegularizer.flush();
+
+	  assertParametersEqual(eager, lazy);
+	  assertParametersEqual(eagerAverage, lazyAverage);
+	}
+
+	public void testTrainL2Pipelined() {
+	  runTest(new StochasticGradientTrainer(100, 3, 1, true, false, false, Double.MAX_VALUE,
+	      new StochasticL2Regularizer(1, 1.0), true, new DefaultLogFunction()));
+	}
+
+	public void testTrainL2AveragedPipelined() {
+	  runTest(new StochasticGradientTrainer(100, 3, 0.01, true, true, false, Double.MAX_VALUE,
+	      new StochasticL2Regularizer(1, 1.0), true, new DefaultLogFunction()));
+	}
+
+	public void testTrainAsynchronous() {
+	  runTest(new AsynchronousStochasticGradientTrainer(300, 1, 1.0, true, 0.1, 4, 1, 0,
+	      new DefaultLogFunction()));
+	}
+
+	public void testTrainAsynchronousLocked() {
+	  runTest(new AsynchronousStochasticGradientTrainer(100, 3, 1.0, true, 0.1, 4, 2, 16,
+	      new DefaultLogFunction()));
+	}
+
+	public void testTrainAsynchronousZeroProbability() {
+	  final LoglikelihoodOracle oracle = new LoglikelihoodOracle(logLinearModel, new JunctionTree());
+	  GradientOracle<DynamicFactorGraph, Example<DynamicAssignment, DynamicAssignment>> failingOracle =
+	      new GradientOracle<DynamicFactorGraph, Example<DynamicAssignment, DynamicAssignment>>() {
+	    public SufficientStatistics initializeGradient() {
+	      return oracle.initializeGradient();
+	    }
+
+	    public DynamicFactorGraph instantiateModel(SufficientStatistics parameters) {
+	      return oracle.instantiateModel(parameters);
+	    }
+
+	    public double accumulateGradient(SufficientStatistics gradient,
+	        SufficientStatistics currentParameters, DynamicFactorGraph instantiatedModel,
+	        Example<DynamicAssignment, DynamicAssignment> example, LogFunction log) {
+	      if (example == trainingData.get(0)) {
+	        throw new ZeroProbabilityError();
+	      }
+	      return oracle.accumulateGradient(gradient, currentParameters, instantiatedModel, example, log);
+	    }
+	  };
+
+	  AsynchronousStochasticGradientTrainer trainer = new AsynchronousStochasticGradientTrainer(
+	      100, 3, 1.0, true, 0.1, 2, 1, 0, new DefaultLogFunction());
+	  Counter searchErrors = Metrics.counter("async_sgd_search_errors");
+	  long initialSearchErrors = searchErrors.getCount();
+	  SufficientStatistics initialParameters = oracle.initializeGradient();
+	  assertEquals(0.0, initialParameters.getL2Norm());
+
+	  // Training skips the failing example instead of aborting.
+	  SufficientStatistics parameters = trainer.train(failingOracle, initialParameters, trainingData);
+	  double norm = parameters.getL2Norm();
+	  assertFalse(Double.isNaN(norm) || Double.isInfinite(norm));
+	  assertTrue(norm > 0.0);
+	  assertTrue(searchErrors.getCount() > initialSearchErrors);
+	}
+
+	public void testAsynchronousUpdateThroughput() throws InterruptedException {
+	  int numThreads = 4;
+	  int numKeysPerThread = 200;
+	  int numUpdates = 2000;
+	  VariableNumMap statisticNames = VariableNumMap.singleton(0, "x",
+	      DiscreteVariable.sequence("x", numThreads * numKeysPerThread));
+	  List<TensorSufficientStatistics> parameterBlocks = Lists.newArrayList(
+	      TensorSufficientStatistics.createDense(statisticNames));
+	  AsynchronousStochasticGradientTrainer trainer = new AsynchronousStochasticGradientTrainer(
+	      1, 1, 1.0, false, 0.0, numThreads, 1, 0, new NullLogFunction());
+
+	  // Each thread updates a disjoint set of parameters, so updates
+	  // should not contend for any shared state.
+	  List<List<TensorSufficientStatistics>> gradients = Lists.newArrayList();
+	  for (int i = 0; i < numThreads; i++) {
+	    TensorSufficientStatistics gradient = TensorSufficientStatistics
+	        .createSparseDelta(statisticNames);
+	    for (int j = 0; j < numKeysPerThread; j++) {
+	      gradient.incrementFeatureByKeyNum(1.0, (j * numThreads) + i);
+	    }
+	    gradients.add(Lists.newArrayList(gradient));
+	  }
+
+	  // Warm up, then measure single-threaded throughput. Timings use
+	  // the fastest of several trials to reduce noise.
+	  int numTrials = 5;
+	  runUpdates(trainer, gradients.subList(0, 1), parameterBlocks, numUpdates);
+	  long singleThreadedNanos = Long.MAX_VALUE;
+	  for (int i = 0; i < numTrials; i++) {
+	    singleThreadedNanos = Math.min(singleThreadedNanos,
+	        runUpdates(trainer, gradients.subList(0, 1), parameterBlocks, numUpdates));
+	  }
+
+	  long version = parameterBlocks.get(0).getVersion();
+	  long multiThreadedNanos = Long.MAX_VALUE;
+	  for (int i = 0; i < numTrials; i++) {
+	    multiThreadedNanos = Math.min(multiThreadedNanos,
+	        runUpdates(trainer, gradients, parameterBlocks, numUpdates));
+	  }
+	  assertTrue(parameterBlocks.get(0).getVersion() != version);
+
+	  // No updates are lost, as no two threads update the same parameter.
+	  TensorBase parameters = parameterBlocks.get(0).get();
+	  for (int i = 0; i < numThreads * numKeysPerThread; i++) {
+	    int numThreadUpdates = (i % numThreads == 0) ? (2 * numTrials) + 1 : numTrials;
+	    double expected = numThreadUpdates * numUpdates;
+	    assertEquals(expected, parameters.getByIndex(i), 1e-8);
+	  }
+
+	  // Aggregate throughput should not collapse as threads are added,
+	  // even on a single processor.
+	  double singleThreadedThroughput = ((double) numUpdates) / singleThreadedNanos;
+	  double multiThreadedThroughput = ((double) numThreads * numUpdates) / multiThreadedNanos;
+	  assertTrue("Throughput: " + multiThreadedThroughput + " vs. " + singleThreadedThroughput,
+	      multiThreadedThroughput >= 0.5 * singleThreadedThroughput);
+	}
+
+	/**
+	 * Applies each gradient in {@code gradients} to {@code parameterBlocks}
+	 * {@code numUpdates} times, using one thread per gradient. Returns
+	 * the elapsed time in nanoseconds.
+	 */
+	private static long runUpdates(final AsynchronousStochasticGradientTrainer trainer,
+	    List<List<TensorSufficientStatistics>> gradients,
+	    final List<TensorSufficientStatistics> parameterBlocks, final int numUpdates)
+	    throws InterruptedException {
+	  final Object[] locks = new Object[0];
+	  List<Thread> threads = Lists.newArrayList();
+	  for (final List<TensorSufficientStatistics> gradient : gradients) {
+	    threads.add(new Thread(new Runnable() {
+	      public void run() {
+	        for (int i = 0; i < numUpdates; i++) {
+	          trainer.applyUpdate(gradient, parameterBlocks, 1.0, locks);
+	        }
+	      }
+	    }));
+	  }
+
+	  long start = System.nanoTime();
+	  for (Thread thread : threads) {
+	    thread.start();
+	  }
+	  for (Thread thread : threads) {
+	    thread.join();
+	  }
+	  return System.nanoTime() - start;
+	}
+
+	private static void assertParametersEqual(SufficientStatistics expected, SufficientStatistics actual) {
+	  List<SufficientStatistics> expectedList = expected.coerceToList().getStatistics();
+	  List<SufficientStatistics> actualList = actual.coerceToList().getStatistics();
+	  assertEquals(expectedList.size(), actualList.size());
+	  for (int i = 0; i < expectedList.size(); i++) {
+	    TensorBase expectedWeights = ((TensorSufficientStatistics) expectedList.get(i)).get();
+	    TensorBase actualWeights = ((TensorSufficientStatistics) actualList.get(i)).get();
+	    assertEquals(expectedWeights.size(), actualWeights.size());
+	    for (int j = 0; j < expectedWeights.size(); j++) {
+	      assertEquals(expectedWeights.getByIndex(j), actualWeights.getByIndex(j), 1e-8);
+	    }
+	  }
+	}
+
 	private void runTest(GradientOptimizer trainer) {
+	  runTest(trainer, false);
+	}
+
+	private void runTest(GradientOptimizer trainer, boolean sparseGradients) {
 	  		// These assignments should have positive weight for clique 1
 		Set<Assignment> clique1PositiveAssignments = new HashSet<Assignment>();
 		clique1PositiveAssignments.add(allVariables.getVariablesByName(clique1Names)
@@ -138,7 +393,14 @@ public class StochasticGradientTrainerTest extends TestCase {
 		    .outcomeToAssignment(Arrays.asList(new String[] {"F", "T"})));
 
 		LoglikelihoodOracle oracle = new LoglikelihoodOracle(logLinearModel, new JunctionTree());
-		SufficientStatistics parameters = trainer.train(oracle, oracle.initializeGradient(), trainingData);
+		SufficientStatistics initialParameters = oracle.initializeGradient();
+		SufficientStatistics parameters = null;
+		if (sparseGradients) {
+		  parameters = trainer.train(new SparseGradientOracle<DynamicFactorGraph,
+		      Example<DynamicAssignment, DynamicAssignment>>(oracle), initialParameters, trainingData);
+		} else {
+		  parameters = trainer.train(oracle, initialParameters, trainingData);
+		}
 		
 		System.out.println(logLinearModel.getParameterDescription(parameters));
 
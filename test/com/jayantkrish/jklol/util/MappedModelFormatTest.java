@@ -0,0 +1,203 @@
+package com.jayantkrish.jklol.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.google.common.collect.Lists;
+import com.jayantkrish.jklol.tensor.DenseTensor;
+import com.jayantkrish.jklol.tensor.MappedDenseTensor;
+import com.jayantkrish.jklol.tensor.MappedSparseTensor;
+import com.jayantkrish.jklol.tensor.MappedTensor;
+import com.jayantkrish.jklol.tensor.SparseTensor;
+import com.jayantkrish.jklol.tensor.Tensor;
+
+/**
+ * Unit tests for {@link MappedModelFormat}.
+ * 
+ * @author jayantk
+ */
+public class MappedModelFormatTest extends TestCase {
+
+  private File file;
+  private TestModel model;
+
+  @Override
+  public void setUp() throws IOException {
+    file = File.createTempFile("jklol-model", ".bin");
+    file.deleteOnExit();
+
+    long[] keyNums = new long[1000];
+    double[] values = new double[1000];
+    for (int i = 0; i < keyNums.length; i++) {
+      keyNums[i] = i * 7;
+      values[i] = Math.sqrt(i);
+    }
+    SparseTensor sparse = new SparseTensor(new int[] {0, 1}, new int[] {100, 100}, keyNums, values);
+    DenseTensor dense = DenseTensor.random(new int[] {2, 3}, new int[] {30, 40}, 0.0, 1.0);
+    DenseTensor small = DenseTensor.random(new int[] {0}, new int[] {3}, 0.0, 1.0);
+
+    int[] shared = new int[500];
+    for (int i = 0; i < shared.length; i++) {
+      shared[i] = -i;
+    }
+    model = new TestModel(Lists.<Tensor>newArrayList(sparse, dense, small), shared, shared,
+        "model");
+  }
+
+  public void testReadWrite() throws IOException {
+    MappedModelFormat.write(model, file.getPath());
+    assertTrue(MappedModelFormat.isMappedModelFile(file.getPath()));
+
+    TestModel read = MappedModelFormat.read(file.getPath(), TestModel.class);
+    assertModelsEqual(model, read);
+    // Arrays referenced twice should not be duplicated.
+    assertSame(read.array1, read.array2);
+
+    assertTrue(read.tensors.get(0) instanceof MappedSparseTensor);
+    assertTrue(read.tensors.get(1) instanceof MappedDenseTensor);
+    // Small tensors are serialized normally.
+    assertTrue(read.tensors.get(2) instanceof DenseTensor);
+  }
+
+  public void testMappedTensorsBackedByFile() throws IOException {
+    MappedModelFormat.write(model, file.getPath());
+    TestModel read = MappedModelFormat.read(file.getPath(), TestModel.class);
+    MappedSparseTensor sparse = (MappedSparseTensor) read.tensors.get(0);
+    MappedDenseTensor dense = (MappedDenseTensor) read.tensors.get(1);
+
+    DoubleBuffer sparseValues = sparse.getValueBuffer();
+    assertTrue(sparseValues.isDirect());
+    assertTrue(sparseValues.isReadOnly());
+    assertTrue(sparse.getKeyNumBuffer().isDirect());
+    assertTrue(dense.getValueBuffer().isDirect());
+
+    // Modifying the file must be visible through the loaded tensors.
+    long keyNum = 999 * 7;
+    assertEquals(Math.sqrt(999), sparse.get(keyNum));
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      MappedByteBuffer contents = raf.getChannel().map(MapMode.READ_WRITE, 0,
+          raf.getChannel().size());
+      contents.order(ByteOrder.LITTLE_ENDIAN);
+      int offset = findDouble(contents, Math.sqrt(999));
+      assertTrue(offset >= 0);
+      contents.putDouble(offset, 42.0);
+      contents.force();
+    } finally {
+      raf.close();
+    }
+    assertEquals(42.0, sparse.get(keyNum));
+    assertEquals(42.0, sparseValues.get(999));
+  }
+
+  public void testMappedTensorOperations() throws IOException {
+    MappedModelFormat.write(model, file.getPath());
+    TestModel read = MappedModelFormat.read(file.getPath(), TestModel.class);
+
+    for (int i = 0; i < 2; i++) {
+      Tensor expected = model.tensors.get(i);
+      Tensor actual = read.tensors.get(i);
+      assertEquals(expected.size(), actual.size());
+      assertEquals(expected.getL2Norm(), actual.getL2Norm(), 1e-10);
+      assertEquals(expected.getByDimKey(7, 0), actual.getByDimKey(7, 0));
+      assertEquals(expected.getByDimKey(9, 9), actual.getByDimKey(9, 9));
+      assertEquals(expected.elementwiseProduct(expected),
+          actual.elementwiseProduct(expected));
+      assertEquals(expected.sumOutDimensions(Arrays.asList(expected.getDimensionNumbers()[0])),
+          actual.sumOutDimensions(Arrays.asList(actual.getDimensionNumbers()[0])));
+      assertTrue(Arrays.equals(expected.getLargestValues(5), actual.getLargestValues(5)));
+    }
+  }
+
+  public void testMappedTensorHeapCopyReused() throws IOException {
+    MappedModelFormat.write(model, file.getPath());
+    TestModel read = MappedModelFormat.read(file.getPath(), TestModel.class);
+
+    for (int i = 0; i < 2; i++) {
+      MappedTensor tensor = (MappedTensor) read.tensors.get(i);
+      Tensor heapCopy = tensor.getHeapCopy();
+      assertFalse(heapCopy instanceof MappedTensor);
+      assertEquals(model.tensors.get(i), heapCopy);
+
+      // Derived operations should not copy the tensor again.
+      tensor.elementwiseProduct(2.0);
+      tensor.sumOutDimensions(Arrays.asList(tensor.getDimensionNumbers()[0]));
+      assertSame(heapCopy, tensor.getHeapCopy());
+      assertNotSame(heapCopy, tensor.copyToHeap());
+    }
+  }
+
+  public void testReserializeMappedTensors() throws IOException {
+    MappedModelFormat.write(model, file.getPath());
+    TestModel read = MappedModelFormat.read(file.getPath(), TestModel.class);
+
+    File other = File.createTempFile("jklol-model", ".ser");
+    other.deleteOnExit();
+    IoUtils.serializeObjectToFile(read, other.getPath());
+    TestModel reread = IoUtils.readSerializedObject(other.getPath(), TestModel.class);
+    assertTrue(reread.tensors.get(0) instanceof SparseTensor);
+    assertTrue(reread.tensors.get(1) instanceof DenseTensor);
+    assertModelsEqual(model, reread);
+  }
+
+  public void testIoUtils() {
+    IoUtils.serializeObjectToMappedFile(model, file.getPath());
+    assertModelsEqual(model, IoUtils.readSerializedObject(file.getPath(), TestModel.class));
+
+    IoUtils.serializeObjectToFile(model, file.getPath());
+    assertFalse(MappedModelFormat.isMappedModelFile(file.getPath()));
+    assertModelsEqual(model, IoUtils.readSerializedObject(file.getPath(), TestModel.class));
+  }
+
+  private static void assertModelsEqual(TestModel expected, TestModel actual) {
+    assertEquals(expected.tensors.size(), actual.tensors.size());
+    for (int i = 0; i < expected.tensors.size(); i++) {
+      assertEquals(toHeap(expected.tensors.get(i)), toHeap(actual.tensors.get(i)));
+    }
+    assertTrue(Arrays.equals(expected.array1, actual.array1));
+    assertEquals(expected.name, actual.name);
+  }
+
+  private static Tensor toHeap(Tensor tensor) {
+    if (tensor instanceof MappedTensor) {
+      return ((MappedTensor) tensor).copyToHeap();
+    }
+    return tensor;
+  }
+
+  private static int findDouble(ByteBuffer buffer, double value) {
+    for (int i = 0; i + 8 <= buffer.limit(); i += 8) {
+      if (buffer.getDouble(i) == value) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  private static class TestModel implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final List<Tensor> tensors;
+    private final int[] array1;
+    private final int[] array2;
+    private final String name;
+
+    public TestModel(List<Tensor> tensors, int[] array1, int[] array2, String name) {
+      this.tensors = tensors;
+      this.array1 = array1;
+      this.array2 = array2;
+      this.name = name;
+    }
+  }
+}